@@ -29,6 +29,14 @@ public interface AccountRateLimitSettings {
    */
   Optional<Integer> maxPacketsPerSecond();
 
+  /**
+   * The maximum total amount, denominated in this account's units, of the prepare packets that this account may send
+   * in any one-second window. If this value is not specified, then no limit is applied to this account.
+   *
+   * @return The maximum amount-per-second that is allowed for this account.
+   */
+  Optional<Long> maxAmountPerSecond();
+
   @Value.Immutable(intern = true)
   @Value.Modifiable
   @JsonSerialize(as = ImmutableAccountRateLimitSettings.class)
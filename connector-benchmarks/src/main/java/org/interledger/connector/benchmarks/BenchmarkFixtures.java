@@ -0,0 +1,169 @@
+package org.interledger.connector.benchmarks;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.eventbus.EventBus;
+import com.google.common.primitives.UnsignedLong;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.link.AbstractLink;
+import org.interledger.connector.link.Link;
+import org.interledger.connector.link.LinkSettings;
+import org.interledger.connector.links.LinkManager;
+import org.interledger.connector.links.loopback.LoopbackLink;
+import org.interledger.connector.links.ping.PingLoopbackLink;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
+import org.interledger.connector.settings.ConnectorSettings;
+import org.interledger.connector.settings.GlobalRoutingSettings;
+import org.interledger.connector.settings.ImmutableConnectorSettings;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerPreparePacket;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Fixtures shared by the benchmarks in this package. Collaborators that are called on the hot path are real (or
+ * hand-written stubs), so that the stubs themselves don't show up in the allocation profile.
+ */
+final class BenchmarkFixtures {
+
+  static final InterledgerAddress OPERATOR_ADDRESS = InterledgerAddress.of("test.connector");
+  static final Supplier<Optional<InterledgerAddress>> OPERATOR_ADDRESS_SUPPLIER = () -> Optional.of(OPERATOR_ADDRESS);
+
+  static final ConnectorSettings CONNECTOR_SETTINGS = ImmutableConnectorSettings.builder()
+    .operatorAddress(OPERATOR_ADDRESS)
+    // Route broadcasting is never enabled in these benchmarks, so the secret is never used.
+    .globalRoutingSettings(GlobalRoutingSettings.builder().routingSecret("unused").build())
+    .build();
+  static final Supplier<ConnectorSettings> CONNECTOR_SETTINGS_SUPPLIER = () -> CONNECTOR_SETTINGS;
+
+  static final AccountId SOURCE_ACCOUNT_ID = AccountId.of("source-account");
+  static final AccountId DESTINATION_ACCOUNT_ID = AccountId.of("destination-account");
+
+  static final PacketRejector PACKET_REJECTOR = new PacketRejector(OPERATOR_ADDRESS_SUPPLIER);
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * Build an implementation of {@code collaborator} for a dependency that a benchmark never calls, which fails loudly if
+   * it ever is (so that a benchmark cannot silently measure a stub).
+   */
+  static <T> T unused(final Class<T> collaborator) {
+    return collaborator.cast(Proxy.newProxyInstance(
+      collaborator.getClassLoader(), new Class<?>[]{collaborator}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "equals":
+            return proxy == args[0];
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          case "toString":
+            return "unused " + collaborator.getSimpleName();
+          default:
+            break;
+        }
+        throw new UnsupportedOperationException(collaborator.getSimpleName() + "." + method.getName() + " is unused");
+      }
+    ));
+  }
+
+  static AccountSettings accountSettings(final AccountId accountId, final String assetCode) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .accountRelationship(AccountRelationship.PEER)
+      .assetCode(assetCode)
+      .assetScale(2)
+      .linkType(LoopbackLink.LINK_TYPE)
+      .build();
+  }
+
+  /**
+   * Build a prepare packet that will not expire for the duration of a benchmark run.
+   */
+  static InterledgerPreparePacket preparePacket(
+    final InterledgerAddress destination, final InterledgerCondition executionCondition
+  ) {
+    return InterledgerPreparePacket.builder()
+      .destination(destination)
+      .amount(UnsignedLong.valueOf(100L))
+      .expiresAt(Instant.now().plusSeconds(3600))
+      .executionCondition(executionCondition)
+      .build();
+  }
+
+  /**
+   * Build an {@link AccountSettingsLoadingCache} that has been pre-populated with {@code accounts}, so that the
+   * underlying (stubbed) {@link AccountSettingsRepository} is never consulted during a benchmark.
+   */
+  static AccountSettingsLoadingCache accountSettingsLoadingCache(final AccountSettings... accounts) {
+    final LoadingCache<AccountId, Optional<AccountSettings>> cache =
+      Caffeine.newBuilder().build(accountId -> Optional.empty());
+    for (AccountSettings accountSettings : accounts) {
+      cache.put(accountSettings.accountId(), Optional.of(accountSettings));
+    }
+    return new AccountSettingsLoadingCache(unused(AccountSettingsRepository.class), cache);
+  }
+
+  static LoopbackLink loopbackLink() {
+    return new LoopbackLink(
+      OPERATOR_ADDRESS_SUPPLIER,
+      LinkSettings.builder().linkType(LoopbackLink.LINK_TYPE).build(),
+      new AbstractLink.EventBusEventEmitter(new EventBus()),
+      PACKET_REJECTOR
+    );
+  }
+
+  static PingLoopbackLink pingLoopbackLink() {
+    return new PingLoopbackLink(
+      OPERATOR_ADDRESS_SUPPLIER,
+      LinkSettings.builder().linkType(PingLoopbackLink.LINK_TYPE).build(),
+      new AbstractLink.EventBusEventEmitter(new EventBus())
+    );
+  }
+
+  /**
+   * A {@link LinkManager} that always returns the same link.
+   */
+  static final class SingleLinkManager implements LinkManager {
+
+    private final Link<?> link;
+
+    SingleLinkManager(final Link<?> link) {
+      this.link = link;
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getOrCreateLink(AccountId accountId) {
+      return (Link) link;
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getOrCreateLink(AccountSettings accountSettings) {
+      return (Link) link;
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getOrCreateLink(AccountId accountId, LinkSettings linkSettings) {
+      return (Link) link;
+    }
+
+    @Override
+    public Set<Link<?>> getAllConnectedLinks() {
+      return Collections.singleton(link);
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getPingLink() {
+      return (Link) link;
+    }
+  }
+}
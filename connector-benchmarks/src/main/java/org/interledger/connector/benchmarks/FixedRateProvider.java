@@ -0,0 +1,48 @@
+package org.interledger.connector.benchmarks;
+
+import org.javamoney.moneta.convert.ExchangeRateBuilder;
+import org.javamoney.moneta.spi.AbstractRateProvider;
+import org.javamoney.moneta.spi.DefaultNumberValue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.money.convert.ConversionContext;
+import javax.money.convert.ConversionQuery;
+import javax.money.convert.ExchangeRate;
+import javax.money.convert.ExchangeRateProvider;
+import javax.money.convert.ProviderContext;
+import javax.money.convert.ProviderContextBuilder;
+import javax.money.convert.RateType;
+
+/**
+ * An {@link ExchangeRateProvider} that returns the same rate for every currency pair, so that FX benchmarks measure
+ * the Connector's own conversion logic rather than a remote rate source. Like {@code CryptoCompareRateProvider}, rates
+ * are cached per {@link ConversionQuery}.
+ */
+public class FixedRateProvider extends AbstractRateProvider {
+
+  private static final ProviderContext CONTEXT = ProviderContextBuilder.of("FIXED", RateType.DEFERRED)
+    .set("providerDescription", "Fixed rates for benchmarking").build();
+
+  private static final DefaultNumberValue FIXED_RATE = new DefaultNumberValue(new BigDecimal("0.9"));
+
+  private final Map<ConversionQuery, ExchangeRate> exchangeRateCache = new ConcurrentHashMap<>();
+
+  public FixedRateProvider() {
+    super(CONTEXT);
+  }
+
+  @Override
+  public ExchangeRate getExchangeRate(ConversionQuery conversionQuery) {
+    Objects.requireNonNull(conversionQuery);
+    return exchangeRateCache.computeIfAbsent(conversionQuery, query ->
+      new ExchangeRateBuilder(ConversionContext.of(CONTEXT.getProviderName(), RateType.DEFERRED))
+        .setBase(query.getBaseCurrency())
+        .setTerm(query.getCurrency())
+        .setFactor(FIXED_RATE)
+        .build()
+    );
+  }
+}
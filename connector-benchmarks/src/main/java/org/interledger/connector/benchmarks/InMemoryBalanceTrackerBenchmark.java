@@ -0,0 +1,83 @@
+package org.interledger.connector.benchmarks;
+
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.DESTINATION_ACCOUNT_ID;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.SOURCE_ACCOUNT_ID;
+
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.balances.AccountBalance;
+import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.InMemoryBalanceTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the balance updates that {@link InMemoryBalanceTracker} performs for every packet, both from a single
+ * thread and with several threads contending for the same pair of accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InMemoryBalanceTrackerBenchmark {
+
+  private static final long AMOUNT = 100L;
+
+  private BalanceTracker balanceTracker;
+  private AccountSettings destinationAccountSettings;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.balanceTracker = new InMemoryBalanceTracker();
+    this.destinationAccountSettings = BenchmarkFixtures.accountSettings(DESTINATION_ACCOUNT_ID, "USD");
+  }
+
+  @Benchmark
+  public BalanceTracker.UpdateBalanceForFulfillResponse prepareAndFulfill() {
+    balanceTracker.updateBalanceForPrepare(SOURCE_ACCOUNT_ID, AMOUNT, Optional.empty());
+    return balanceTracker.updateBalanceForFulfill(destinationAccountSettings, AMOUNT);
+  }
+
+  @Benchmark
+  public void prepareAndReject() {
+    balanceTracker.updateBalanceForPrepare(SOURCE_ACCOUNT_ID, AMOUNT, Optional.empty());
+    balanceTracker.updateBalanceForReject(SOURCE_ACCOUNT_ID, AMOUNT);
+  }
+
+  @Benchmark
+  public void prepareWithMinBalanceAndReject() {
+    balanceTracker.updateBalanceForPrepare(SOURCE_ACCOUNT_ID, AMOUNT, Optional.of(Long.MIN_VALUE / 2));
+    balanceTracker.updateBalanceForReject(SOURCE_ACCOUNT_ID, AMOUNT);
+  }
+
+  @Benchmark
+  public AccountBalance balance() {
+    return balanceTracker.balance(SOURCE_ACCOUNT_ID);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public BalanceTracker.UpdateBalanceForFulfillResponse prepareAndFulfillContended() {
+    return prepareAndFulfill();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void prepareWithMinBalanceAndRejectContended() {
+    prepareWithMinBalanceAndReject();
+  }
+}
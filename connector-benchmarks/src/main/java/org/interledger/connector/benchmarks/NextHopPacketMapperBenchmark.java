@@ -0,0 +1,89 @@
+package org.interledger.connector.benchmarks;
+
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.CONNECTOR_SETTINGS_SUPPLIER;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.DESTINATION_ACCOUNT_ID;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.SOURCE_ACCOUNT_ID;
+
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.core.Ilpv4Constants;
+import org.interledger.connector.fx.CachingFxConverter;
+import org.interledger.connector.links.DefaultNextHopPacketMapper;
+import org.interledger.connector.links.NextHopInfo;
+import org.interledger.connector.packetswitch.InterledgerAddressUtils;
+import org.interledger.connector.routing.PaymentRouter;
+import org.interledger.connector.routing.Route;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerAddressPrefix;
+import org.interledger.core.InterledgerPreparePacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link DefaultNextHopPacketMapper#getNextHopPacket(AccountSettings, InterledgerPreparePacket)}, both for
+ * a packet that stays within the Connector (no FX) and for one that is forwarded into an account denominated in a
+ * different currency (FX, using the rates from {@link FixedRateProvider}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NextHopPacketMapperBenchmark {
+
+  @Param({"false", "true"})
+  public boolean fx;
+
+  private DefaultNextHopPacketMapper nextHopPacketMapper;
+  private AccountSettings sourceAccountSettings;
+  private InterledgerPreparePacket preparePacket;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.sourceAccountSettings = BenchmarkFixtures.accountSettings(SOURCE_ACCOUNT_ID, "USD");
+
+    // Only packets addressed to a payment network (e.g., `test.`) are eligible for FX; anything addressed to the
+    // Connector itself keeps its amount and expiry.
+    final InterledgerAddress destination = fx ?
+      InterledgerAddress.of("test.bob.foo") : BenchmarkFixtures.OPERATOR_ADDRESS.with("foo");
+    this.preparePacket = BenchmarkFixtures.preparePacket(destination, Ilpv4Constants.ALL_ZEROS_CONDITION);
+
+    final Route route = Route.builder()
+      .routePrefix(InterledgerAddressPrefix.of("test"))
+      .nextHopAccountId(DESTINATION_ACCOUNT_ID)
+      .build();
+    final Optional<Route> bestNextHop = Optional.of(route);
+    final PaymentRouter<Route> paymentRouter = destinationAddress -> bestNextHop;
+
+    final AccountSettingsLoadingCache accountSettingsLoadingCache = BenchmarkFixtures.accountSettingsLoadingCache(
+      sourceAccountSettings,
+      BenchmarkFixtures.accountSettings(DESTINATION_ACCOUNT_ID, "EUR")
+    );
+    this.nextHopPacketMapper = new DefaultNextHopPacketMapper(
+      CONNECTOR_SETTINGS_SUPPLIER,
+      paymentRouter,
+      new InterledgerAddressUtils(CONNECTOR_SETTINGS_SUPPLIER, accountSettingsLoadingCache),
+      new CachingFxConverter(new FixedRateProvider()),
+      accountSettingsLoadingCache
+    );
+  }
+
+  @Benchmark
+  public NextHopInfo getNextHopPacket() {
+    return nextHopPacketMapper.getNextHopPacket(sourceAccountSettings, preparePacket);
+  }
+}
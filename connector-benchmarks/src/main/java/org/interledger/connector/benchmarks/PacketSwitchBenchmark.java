@@ -0,0 +1,151 @@
+package org.interledger.connector.benchmarks;
+
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.CONNECTOR_SETTINGS_SUPPLIER;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.DESTINATION_ACCOUNT_ID;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.OPERATOR_ADDRESS;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.PACKET_REJECTOR;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.SOURCE_ACCOUNT_ID;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.unused;
+
+import org.interledger.codecs.ildcp.IldcpCodecContextFactory;
+import org.interledger.connector.ConnectorExceptionHandler;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.InMemoryBalanceTracker;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.ccp.codecs.CcpCodecContextFactory;
+import org.interledger.connector.core.Ilpv4Constants;
+import org.interledger.connector.fx.CachingFxConverter;
+import org.interledger.connector.link.Link;
+import org.interledger.connector.links.DefaultNextHopPacketMapper;
+import org.interledger.connector.links.filters.OutgoingBalanceLinkFilter;
+import org.interledger.connector.links.ping.PingLoopbackLink;
+import org.interledger.connector.packetswitch.DefaultILPv4PacketSwitch;
+import org.interledger.connector.packetswitch.InterledgerAddressUtils;
+import org.interledger.connector.packetswitch.filters.AllowedDestinationPacketFilter;
+import org.interledger.connector.packetswitch.filters.BalanceIlpPacketFilter;
+import org.interledger.connector.packetswitch.filters.ExpiryPacketFilter;
+import org.interledger.connector.packetswitch.filters.MaxPacketAmountFilter;
+import org.interledger.connector.packetswitch.filters.PeerProtocolPacketFilter;
+import org.interledger.connector.packetswitch.filters.ValidateFulfillmentPacketFilter;
+import org.interledger.connector.routing.PaymentRouter;
+import org.interledger.connector.routing.Route;
+import org.interledger.connector.routing.RouteBroadcaster;
+import org.interledger.connector.settlement.SettlementService;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerAddressPrefix;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+import org.interledger.ildcp.IldcpRequestPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of {@link DefaultILPv4PacketSwitch#switchPacket(AccountId, InterledgerPreparePacket)}, using
+ * the same packet-switch and link filters that the Connector is configured with by default, and either a {@code
+ * LoopbackLink} or a {@link PingLoopbackLink} as the outgoing link. The {@code PEER_CONFIG} variant sends an IL-DCP
+ * request, which is answered by the {@link PeerProtocolPacketFilter} without reaching any outgoing link, and so
+ * measures the path taken by peer-protocol messages (e.g., CCP route updates and `peer.settle` messages).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PacketSwitchBenchmark {
+
+  @Param({"LOOPBACK", "PING", "PEER_CONFIG"})
+  public String linkType;
+
+  private DefaultILPv4PacketSwitch packetSwitch;
+  private InterledgerPreparePacket preparePacket;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Link<?> outgoingLink;
+    final AccountId outgoingAccountId;
+    if (PingLoopbackLink.LINK_TYPE_STRING.equals(linkType)) {
+      outgoingLink = BenchmarkFixtures.pingLoopbackLink();
+      outgoingAccountId = PaymentRouter.PING_ACCOUNT_ID;
+      preparePacket = BenchmarkFixtures.preparePacket(OPERATOR_ADDRESS, PingLoopbackLink.PING_PROTOCOL_CONDITION);
+    } else if ("PEER_CONFIG".equals(linkType)) {
+      outgoingLink = BenchmarkFixtures.loopbackLink();
+      outgoingAccountId = DESTINATION_ACCOUNT_ID;
+      preparePacket = BenchmarkFixtures.preparePacket(
+        IldcpRequestPacket.PEER_DOT_CONFIG, IldcpRequestPacket.EXECUTION_CONDITION
+      );
+    } else {
+      outgoingLink = BenchmarkFixtures.loopbackLink();
+      outgoingAccountId = DESTINATION_ACCOUNT_ID;
+      preparePacket = BenchmarkFixtures.preparePacket(
+        InterledgerAddress.of("test.bob.foo"), Ilpv4Constants.ALL_ZEROS_CONDITION
+      );
+    }
+
+    final AccountSettingsLoadingCache accountSettingsLoadingCache = BenchmarkFixtures.accountSettingsLoadingCache(
+      BenchmarkFixtures.accountSettings(SOURCE_ACCOUNT_ID, "USD"),
+      BenchmarkFixtures.accountSettings(outgoingAccountId, "USD")
+    );
+    final Route route = Route.builder()
+      .routePrefix(InterledgerAddressPrefix.of("test"))
+      .nextHopAccountId(outgoingAccountId)
+      .build();
+    final Optional<Route> bestNextHop = Optional.of(route);
+    final PaymentRouter<Route> paymentRouter = destinationAddress -> bestNextHop;
+
+    final InterledgerAddressUtils addressUtils =
+      new InterledgerAddressUtils(CONNECTOR_SETTINGS_SUPPLIER, accountSettingsLoadingCache);
+    final BalanceTracker balanceTracker = new InMemoryBalanceTracker();
+    final SettlementService settlementService = unused(SettlementService.class);
+
+    this.packetSwitch = new DefaultILPv4PacketSwitch(
+      Arrays.asList(
+        new ExpiryPacketFilter(PACKET_REJECTOR),
+        new AllowedDestinationPacketFilter(PACKET_REJECTOR, addressUtils),
+        new MaxPacketAmountFilter(PACKET_REJECTOR),
+        new BalanceIlpPacketFilter(PACKET_REJECTOR, balanceTracker),
+        new ValidateFulfillmentPacketFilter(PACKET_REJECTOR),
+        new PeerProtocolPacketFilter(
+          CONNECTOR_SETTINGS_SUPPLIER,
+          PACKET_REJECTOR,
+          unused(RouteBroadcaster.class),
+          CcpCodecContextFactory.oer(),
+          IldcpCodecContextFactory.oer(),
+          settlementService
+        )
+      ),
+      Collections.singletonList(
+        new OutgoingBalanceLinkFilter(() -> OPERATOR_ADDRESS, balanceTracker, settlementService)
+      ),
+      new BenchmarkFixtures.SingleLinkManager(outgoingLink),
+      new DefaultNextHopPacketMapper(
+        CONNECTOR_SETTINGS_SUPPLIER, paymentRouter, addressUtils, new CachingFxConverter(new FixedRateProvider()),
+        accountSettingsLoadingCache
+      ),
+      new ConnectorExceptionHandler(CONNECTOR_SETTINGS_SUPPLIER, PACKET_REJECTOR),
+      PACKET_REJECTOR,
+      accountSettingsLoadingCache
+    );
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket switchPacket() {
+    return packetSwitch.switchPacket(SOURCE_ACCOUNT_ID, preparePacket);
+  }
+}
@@ -0,0 +1,152 @@
+package org.interledger.connector.benchmarks;
+
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.CONNECTOR_SETTINGS_SUPPLIER;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.PACKET_REJECTOR;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.SOURCE_ACCOUNT_ID;
+import static org.interledger.connector.benchmarks.BenchmarkFixtures.unused;
+
+import org.interledger.codecs.ildcp.IldcpCodecContextFactory;
+import org.interledger.connector.accounts.AccountRateLimitSettings;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.balances.InMemoryBalanceTracker;
+import org.interledger.connector.ccp.codecs.CcpCodecContextFactory;
+import org.interledger.connector.core.Ilpv4Constants;
+import org.interledger.connector.packetswitch.InterledgerAddressUtils;
+import org.interledger.connector.packetswitch.filters.AllowedDestinationPacketFilter;
+import org.interledger.connector.packetswitch.filters.BalanceIlpPacketFilter;
+import org.interledger.connector.packetswitch.filters.ExpiryPacketFilter;
+import org.interledger.connector.packetswitch.filters.MaxPacketAmountFilter;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilterChain;
+import org.interledger.connector.packetswitch.filters.PeerProtocolPacketFilter;
+import org.interledger.connector.packetswitch.filters.RateLimitIlpPacketFilter;
+import org.interledger.connector.packetswitch.filters.ValidateFulfillmentPacketFilter;
+import org.interledger.connector.routing.RouteBroadcaster;
+import org.interledger.connector.settlement.SettlementService;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+import org.interledger.ildcp.IldcpRequestPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each {@link PacketSwitchFilter} on its own, in front of a filter chain that immediately returns a
+ * pre-built fulfill packet. Each packet takes the "happy path" through the filter under test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PacketSwitchFilterBenchmark {
+
+  private static final InterledgerFulfillPacket FULFILL_PACKET = InterledgerFulfillPacket.builder()
+    .fulfillment(Ilpv4Constants.ALL_ZEROS_FULFILLMENT)
+    .build();
+
+  private static final PacketSwitchFilterChain FULFILLING_FILTER_CHAIN =
+    (sourceAccountSettings, preparePacket) -> FULFILL_PACKET;
+
+  private AccountSettings sourceAccountSettings;
+  private InterledgerPreparePacket preparePacket;
+  // Addressed to `peer.config`, so only accepted from an external account.
+  private InterledgerPreparePacket peerPreparePacket;
+
+  private ExpiryPacketFilter expiryPacketFilter;
+  private AllowedDestinationPacketFilter allowedDestinationPacketFilter;
+  private MaxPacketAmountFilter maxPacketAmountFilter;
+  private RateLimitIlpPacketFilter rateLimitIlpPacketFilter;
+  private BalanceIlpPacketFilter balanceIlpPacketFilter;
+  private ValidateFulfillmentPacketFilter validateFulfillmentPacketFilter;
+  private PeerProtocolPacketFilter peerProtocolPacketFilter;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    // A rate-limit that is never reached, so that every packet passes through the RateLimitIlpPacketFilter.
+    this.sourceAccountSettings = AccountSettings.builder()
+      .from(BenchmarkFixtures.accountSettings(SOURCE_ACCOUNT_ID, "USD"))
+      .maximumPacketAmount(1_000_000L)
+      .rateLimitSettings(AccountRateLimitSettings.builder().maxPacketsPerSecond(Integer.MAX_VALUE).build())
+      .build();
+    this.preparePacket = BenchmarkFixtures.preparePacket(
+      InterledgerAddress.of("test.bob.foo"), Ilpv4Constants.ALL_ZEROS_CONDITION
+    );
+
+    this.peerPreparePacket = BenchmarkFixtures.preparePacket(
+      IldcpRequestPacket.PEER_DOT_CONFIG, IldcpRequestPacket.EXECUTION_CONDITION
+    );
+
+    final InterledgerAddressUtils addressUtils = new InterledgerAddressUtils(
+      CONNECTOR_SETTINGS_SUPPLIER, BenchmarkFixtures.accountSettingsLoadingCache(sourceAccountSettings)
+    );
+
+    this.expiryPacketFilter = new ExpiryPacketFilter(PACKET_REJECTOR);
+    this.allowedDestinationPacketFilter = new AllowedDestinationPacketFilter(PACKET_REJECTOR, addressUtils);
+    this.maxPacketAmountFilter = new MaxPacketAmountFilter(PACKET_REJECTOR);
+    this.rateLimitIlpPacketFilter = new RateLimitIlpPacketFilter(PACKET_REJECTOR);
+    this.balanceIlpPacketFilter = new BalanceIlpPacketFilter(PACKET_REJECTOR, new InMemoryBalanceTracker());
+    this.validateFulfillmentPacketFilter = new ValidateFulfillmentPacketFilter(PACKET_REJECTOR);
+    this.peerProtocolPacketFilter = new PeerProtocolPacketFilter(
+      CONNECTOR_SETTINGS_SUPPLIER,
+      PACKET_REJECTOR,
+      unused(RouteBroadcaster.class),
+      CcpCodecContextFactory.oer(),
+      IldcpCodecContextFactory.oer(),
+      unused(SettlementService.class)
+    );
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket expiryPacketFilter() {
+    return expiryPacketFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket allowedDestinationPacketFilter() {
+    return allowedDestinationPacketFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket allowedDestinationPacketFilterForPeerProtocol() {
+    return allowedDestinationPacketFilter.doFilter(sourceAccountSettings, peerPreparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket maxPacketAmountFilter() {
+    return maxPacketAmountFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket rateLimitIlpPacketFilter() {
+    return rateLimitIlpPacketFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket balanceIlpPacketFilter() {
+    return balanceIlpPacketFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket validateFulfillmentPacketFilter() {
+    return validateFulfillmentPacketFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+
+  @Benchmark
+  public InterledgerResponsePacket peerProtocolPacketFilter() {
+    return peerProtocolPacketFilter.doFilter(sourceAccountSettings, preparePacket, FULFILLING_FILTER_CHAIN);
+  }
+}
@@ -0,0 +1,67 @@
+package org.interledger.connector.core;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for composing {@link CompletableFuture}s along the asynchronous packet-switching path.
+ */
+public final class CompletableFutures {
+
+  private CompletableFutures() {
+  }
+
+  /**
+   * <p>Invokes a blocking call on the calling thread, and returns its outcome as an already-completed future.</p>
+   *
+   * <p>This is the default, blocking implementation of the asynchronous variants of the packet-switching interfaces
+   * (e.g., {@code sendPacketAsync} in terms of {@code sendPacket}), for implementations that cannot do better.</p>
+   *
+   * @param blockingCall The blocking call to make.
+   * @param <T>          The result type of {@code blockingCall}.
+   *
+   * @return A {@link CompletableFuture} that is completed with the result of {@code blockingCall}, or completed
+   * exceptionally with the {@link RuntimeException} that it threw.
+   */
+  public static <T> CompletableFuture<T> fromBlocking(final Supplier<T> blockingCall) {
+    Objects.requireNonNull(blockingCall);
+
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      future.complete(blockingCall.get());
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * <p>Cancels {@code source} whenever {@code dependent} is cancelled.</p>
+   *
+   * <p>Stages derived from a future (e.g., via {@link CompletableFuture#thenApply}) do not cancel the future they were
+   * derived from, so without this, cancelling a packet that has expired would leave the outbound request (e.g., an
+   * HTTP call to a peer) running until it completes on its own.</p>
+   *
+   * @param source    The upstream {@link CompletableFuture} that {@code dependent} was derived from.
+   * @param dependent The {@link CompletableFuture} that will be returned to callers.
+   * @param <T>       The result type of {@code dependent}.
+   *
+   * @return {@code dependent}, for chaining.
+   */
+  public static <T> CompletableFuture<T> propagateCancellation(
+    final CompletableFuture<?> source, final CompletableFuture<T> dependent
+  ) {
+    Objects.requireNonNull(source);
+    Objects.requireNonNull(dependent);
+
+    if (source != dependent) {
+      dependent.whenComplete((result, throwable) -> {
+        if (dependent.isCancelled()) {
+          source.cancel(true);
+        }
+      });
+    }
+    return dependent;
+  }
+}
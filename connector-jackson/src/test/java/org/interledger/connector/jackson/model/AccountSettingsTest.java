@@ -62,7 +62,8 @@ public class AccountSettingsTest {
       "\"settleTo\":\"0\"" +
       "}," +
       "\"rateLimitSettings\":{" +
-      "\"maxPacketsPerSecond\":null" +
+      "\"maxPacketsPerSecond\":null," +
+      "\"maxAmountPerSecond\":null" +
       "}," +
       "\"settlementEngineDetails\":null," +
       "\"customSettings\":{}" +
@@ -98,6 +99,7 @@ public class AccountSettingsTest {
         .build())
       .rateLimitSettings(AccountRateLimitSettings.builder()
         .maxPacketsPerSecond(9)
+        .maxAmountPerSecond(1000L)
         .build())
       .settlementEngineDetails(SettlementEngineDetails.builder()
         .settlementEngineAccountId(SettlementEngineAccountId.of("settle-id"))
@@ -128,7 +130,8 @@ public class AccountSettingsTest {
       "\"settleTo\":\"1\"" +
       "}," +
       "\"rateLimitSettings\":{" +
-      "\"maxPacketsPerSecond\":\"9\"" +
+      "\"maxPacketsPerSecond\":\"9\"," +
+      "\"maxAmountPerSecond\":\"1000\"" +
       "}," +
       "\"settlementEngineDetails\":{" +
       "\"settlementEngineAccountId\":\"settle-id\"," +
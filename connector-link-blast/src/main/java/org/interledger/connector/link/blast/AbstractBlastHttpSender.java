@@ -1,6 +1,12 @@
 package org.interledger.connector.link.blast;
 
 import com.google.common.collect.Lists;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.core.InterledgerErrorCode;
 import org.interledger.core.InterledgerPreparePacket;
@@ -9,16 +15,27 @@ import org.interledger.core.InterledgerResponsePacket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpMessageConverterExtractor;
 import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import static org.interledger.connector.link.blast.BlastHeaders.APPLICATION_ILP_HEADER_OCTET_STREAM;
@@ -36,6 +53,9 @@ public abstract class AbstractBlastHttpSender implements BlastHttpSender {
   // populated, and there are times when we expect this value to possibly be un-initialized.d
   private final Supplier<Optional<InterledgerAddress>> operatorAddressSupplier;
   private final RestTemplate restTemplate;
+  // Only present if the RestTemplate's requests are made using a BlastHttpRequestFactory, whose OkHttpClient can then
+  // also be used to make non-blocking requests.
+  private final Optional<OkHttpClient> okHttpClient;
   private final OutgoingLinkSettings outgoingLinkSettings;
 
   // Determined via testConnection when the Connection starts-up, if possible.
@@ -55,6 +75,9 @@ public abstract class AbstractBlastHttpSender implements BlastHttpSender {
   ) {
     this.operatorAddressSupplier = Objects.requireNonNull(operatorAddressSupplier);
     this.restTemplate = Objects.requireNonNull(restTemplate);
+    this.okHttpClient = Optional.ofNullable(restTemplate.getRequestFactory())
+      .filter(requestFactory -> requestFactory instanceof BlastHttpRequestFactory)
+      .map(requestFactory -> ((BlastHttpRequestFactory) requestFactory).getOkHttpClient());
     this.outgoingLinkSettings = Objects.requireNonNull(outgoingLinkSettings);
   }
 
@@ -74,6 +97,113 @@ public abstract class AbstractBlastHttpSender implements BlastHttpSender {
     final ResponseEntity<InterledgerResponsePacket> response = restTemplate
       .exchange(requestEntity, InterledgerResponsePacket.class);
 
+    return this.toResponsePacket(response);
+  }
+
+  /**
+   * Send an ILP prepare packet to the remote peer using non-blocking I/O, if the underlying HTTP client supports it
+   * (see {@link BlastHttpRequestFactory}). Otherwise, this method falls back to the blocking {@link
+   * #sendData(InterledgerPreparePacket)}. Either way, the packet is encoded and the response decoded and checked for
+   * errors by the {@link RestTemplate}'s message converters and error handler.
+   *
+   * @param preparePacket
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket}.
+   */
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> sendDataAsync(final InterledgerPreparePacket preparePacket) {
+    if (!okHttpClient.isPresent()) {
+      return BlastHttpSender.super.sendDataAsync(preparePacket);
+    }
+
+    final CompletableFuture<InterledgerResponsePacket> responseFuture = new CompletableFuture<>();
+    final Call call;
+    try {
+      call = okHttpClient.get().newCall(toRequest(preparePacket, constructBlastRequestHeaders()));
+    } catch (IOException | RuntimeException e) {
+      responseFuture.completeExceptionally(e);
+      return responseFuture;
+    }
+
+    // Cancelling the returned future (e.g., because the packet expired) cancels the underlying HTTP call.
+    responseFuture.whenComplete((result, error) -> {
+      if (responseFuture.isCancelled()) {
+        call.cancel();
+      }
+    });
+    call.enqueue(new Callback() {
+      @Override
+      public void onFailure(final Call call, final IOException e) {
+        responseFuture.completeExceptionally(new ResourceAccessException(e.getMessage(), e));
+      }
+
+      @Override
+      public void onResponse(final Call call, final Response response) {
+        try (ClientHttpResponse clientHttpResponse = new OkHttpClientHttpResponse(response)) {
+          responseFuture.complete(toResponsePacket(toResponseEntity(clientHttpResponse)));
+        } catch (IOException e) {
+          responseFuture.completeExceptionally(new ResourceAccessException(e.getMessage(), e));
+        } catch (RuntimeException e) {
+          responseFuture.completeExceptionally(e);
+        }
+      }
+    });
+    return responseFuture;
+  }
+
+  /**
+   * Encode {@code preparePacket} into an OkHttp {@link Request} using the {@link RestTemplate}'s message converters.
+   */
+  @SuppressWarnings("unchecked")
+  private Request toRequest(final InterledgerPreparePacket preparePacket, final HttpHeaders headers)
+    throws IOException {
+    final MediaType contentType = headers.getContentType();
+    for (HttpMessageConverter<?> converter : restTemplate.getMessageConverters()) {
+      if (converter.canWrite(preparePacket.getClass(), contentType)) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpHeaders bodyHeaders = new HttpHeaders();
+        ((HttpMessageConverter<Object>) converter).write(preparePacket, contentType, new HttpOutputMessage() {
+          @Override
+          public OutputStream getBody() {
+            return body;
+          }
+
+          @Override
+          public HttpHeaders getHeaders() {
+            return bodyHeaders;
+          }
+        });
+
+        final Request.Builder request = new Request.Builder()
+          .url(outgoingLinkSettings.url().uri().toString())
+          .post(RequestBody.create(body.toByteArray(), okhttp3.MediaType.parse(String.valueOf(contentType))));
+        headers.forEach((name, values) -> values.forEach(value -> request.addHeader(name, value)));
+        return request.build();
+      }
+    }
+    throw new RestClientException(
+      String.format("No HttpMessageConverter for %s and content type `%s`", preparePacket.getClass(), contentType)
+    );
+  }
+
+  /**
+   * Check {@code response} for errors, and decode its body, exactly as the {@link RestTemplate} would.
+   */
+  private ResponseEntity<InterledgerResponsePacket> toResponseEntity(final ClientHttpResponse response)
+    throws IOException {
+    if (restTemplate.getErrorHandler().hasError(response)) {
+      restTemplate.getErrorHandler().handleError(outgoingLinkSettings.url().uri(), POST, response);
+    }
+    final InterledgerResponsePacket body = new HttpMessageConverterExtractor<>(
+      InterledgerResponsePacket.class, restTemplate.getMessageConverters()
+    ).extractData(response);
+    return new ResponseEntity<>(body, response.getHeaders(), response.getStatusCode());
+  }
+
+  /**
+   * Map an HTTP response from the remote BLAST peer into an {@link InterledgerResponsePacket}.
+   */
+  private InterledgerResponsePacket toResponsePacket(final ResponseEntity<InterledgerResponsePacket> response) {
     if (response.getStatusCode().is2xxSuccessful()) {
       return response.getBody();
     } else if (response.getStatusCode().is4xxClientError()) {
@@ -206,6 +336,52 @@ public abstract class AbstractBlastHttpSender implements BlastHttpSender {
    */
   protected abstract String constructAuthToken();
 
+  /**
+   * Adapts an OkHttp {@link Response} to a {@link ClientHttpResponse}, so that it can be handled by a {@link
+   * RestTemplate}'s message converters and error handler.
+   */
+  private static final class OkHttpClientHttpResponse implements ClientHttpResponse {
+
+    private final Response response;
+    private final HttpHeaders headers;
+
+    private OkHttpClientHttpResponse(final Response response) {
+      this.response = Objects.requireNonNull(response);
+      this.headers = new HttpHeaders();
+      response.headers().names().forEach(name -> headers.put(name, response.headers(name)));
+    }
+
+    @Override
+    public HttpStatus getStatusCode() {
+      return HttpStatus.valueOf(response.code());
+    }
+
+    @Override
+    public int getRawStatusCode() {
+      return response.code();
+    }
+
+    @Override
+    public String getStatusText() {
+      return response.message();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    @Override
+    public InputStream getBody() {
+      return response.body() == null ? new ByteArrayInputStream(new byte[0]) : response.body().byteStream();
+    }
+
+    @Override
+    public void close() {
+      response.close();
+    }
+  }
+
   protected Supplier<Optional<InterledgerAddress>> getOperatorAddressSupplier() {
     return operatorAddressSupplier;
   }
@@ -0,0 +1,30 @@
+package org.interledger.connector.link.blast;
+
+import okhttp3.OkHttpClient;
+import org.springframework.http.client.OkHttp3ClientHttpRequestFactory;
+
+import java.util.Objects;
+
+/**
+ * An {@link OkHttp3ClientHttpRequestFactory} that exposes its {@link OkHttpClient}, so that a {@link
+ * AbstractBlastHttpSender} whose {@link org.springframework.web.client.RestTemplate} uses this factory can also send
+ * packets using OkHttp's non-blocking API.
+ */
+public class BlastHttpRequestFactory extends OkHttp3ClientHttpRequestFactory {
+
+  private final OkHttpClient okHttpClient;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param okHttpClient The {@link OkHttpClient} to make requests with.
+   */
+  public BlastHttpRequestFactory(final OkHttpClient okHttpClient) {
+    super(Objects.requireNonNull(okHttpClient));
+    this.okHttpClient = okHttpClient;
+  }
+
+  public OkHttpClient getOkHttpClient() {
+    return okHttpClient;
+  }
+}
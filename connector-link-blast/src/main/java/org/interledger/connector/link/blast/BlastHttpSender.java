@@ -1,11 +1,13 @@
 package org.interledger.connector.link.blast;
 
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerRejectPacket;
 import org.interledger.core.InterledgerResponsePacket;
 
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
 
 import static org.interledger.connector.link.PingableLink.PING_PROTOCOL_CONDITION;
 
@@ -32,6 +34,18 @@ public interface BlastHttpSender {
    */
   InterledgerResponsePacket sendData(final InterledgerPreparePacket preparePacket);
 
+  /**
+   * Send an ILP prepare packet to the remote BLAST peer without blocking the calling thread while waiting for the HTTP
+   * response. By default, this method simply delegates to {@link #sendData(InterledgerPreparePacket)}.
+   *
+   * @param preparePacket
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket}.
+   */
+  default CompletableFuture<InterledgerResponsePacket> sendDataAsync(final InterledgerPreparePacket preparePacket) {
+    return CompletableFutures.fromBlocking(() -> this.sendData(preparePacket));
+  }
+
   /**
    * <p>Check the `/ilp` endpoint for ping by making an HTTP Head request with a ping packet, and
    * asserting the values returned are one of the supported content-types required for BLAST.</p>
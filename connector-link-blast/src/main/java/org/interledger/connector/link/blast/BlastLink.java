@@ -79,6 +79,12 @@ public class BlastLink extends AbstractLink<BlastLinkSettings> implements Pingab
     return blastHttpSender.sendData(preparePacket);
   }
 
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> sendPacketAsync(final InterledgerPreparePacket preparePacket) {
+    Objects.requireNonNull(preparePacket);
+    return blastHttpSender.sendDataAsync(preparePacket);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
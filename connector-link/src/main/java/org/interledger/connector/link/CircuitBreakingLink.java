@@ -4,6 +4,7 @@ import com.google.common.annotations.VisibleForTesting;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.connector.link.events.LinkEventListener;
 import org.interledger.connector.link.exceptions.LinkHandlerAlreadyRegisteredException;
 import org.interledger.core.InterledgerAddress;
@@ -16,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 /**
@@ -81,6 +83,27 @@ public class CircuitBreakingLink implements Link<LinkSettings> {
     return CircuitBreaker.decorateFunction(circuitBreaker, linkDelegate::sendPacket).apply(preparePacket);
   }
 
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> sendPacketAsync(final InterledgerPreparePacket preparePacket) {
+    Objects.requireNonNull(preparePacket);
+
+    final CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(this.getLinkId().value());
+
+    // The outcome of the returned future (rather than the return from this method) is recorded by the circuitBreaker.
+    final AtomicReference<CompletableFuture<InterledgerResponsePacket>> delegateFuture = new AtomicReference<>();
+    final CompletableFuture<InterledgerResponsePacket> responseFuture = CircuitBreaker
+      .decorateCompletionStage(circuitBreaker, () -> {
+        delegateFuture.set(linkDelegate.sendPacketAsync(preparePacket));
+        return delegateFuture.get();
+      })
+      .get()
+      .toCompletableFuture();
+
+    // The delegate is only called if the circuitBreaker permits it.
+    return delegateFuture.get() == null ? responseFuture :
+      CompletableFutures.propagateCancellation(delegateFuture.get(), responseFuture);
+  }
+
   @Override
   public LinkId getLinkId() {
     return this.linkDelegate.getLinkId();
@@ -1,5 +1,6 @@
 package org.interledger.connector.link;
 
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.core.InterledgerFulfillPacket;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerRejectPacket;
@@ -45,4 +46,20 @@ public interface LinkSender {
    */
   InterledgerResponsePacket sendPacket(InterledgerPreparePacket preparePacket);
 
+  /**
+   * <p>Sends an ILPv4 request packet to a connected peer without blocking the calling thread until a response is
+   * received.</p>
+   *
+   * <p>The default implementation is a blocking adapter that simply calls {@link #sendPacket(InterledgerPreparePacket)}
+   * on the calling thread. Links that are able to perform non-blocking I/O should override this method.</p>
+   *
+   * @param preparePacket An {@link InterledgerPreparePacket} to send to the remote peer.
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket}, or that completes
+   * exceptionally if the packet could not be sent.
+   */
+  default CompletableFuture<InterledgerResponsePacket> sendPacketAsync(InterledgerPreparePacket preparePacket) {
+    return CompletableFutures.fromBlocking(() -> this.sendPacket(preparePacket));
+  }
+
 }
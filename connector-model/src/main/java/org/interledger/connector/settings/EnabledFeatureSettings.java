@@ -18,6 +18,14 @@ public interface EnabledFeatureSettings {
     return false;
   }
 
+  /**
+   * Whether this Connector adaptively limits the number of in-flight packets per account, shedding load once that
+   * limit is reached.
+   */
+  default boolean isConcurrencyLimitingEnabled() {
+    return false;
+  }
+
   @Value.Immutable(intern = true)
   abstract class AbstractEnabledFeatureSettings implements EnabledFeatureSettings {
 
@@ -27,6 +35,12 @@ public interface EnabledFeatureSettings {
       return true;
     }
 
+    @Override
+    @Value.Default
+    public boolean isConcurrencyLimitingEnabled() {
+      return false;
+    }
+
   }
 
 }
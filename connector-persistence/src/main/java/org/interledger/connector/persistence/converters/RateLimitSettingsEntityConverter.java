@@ -13,6 +13,7 @@ public class RateLimitSettingsEntityConverter implements Converter<AccountRateLi
   public AccountRateLimitSettings convert(final AccountRateLimitSettingsEntity entity) {
     return AccountRateLimitSettings.builder()
       .maxPacketsPerSecond(entity.getMaxPacketsPerSecond())
+      .maxAmountPerSecond(entity.getMaxAmountPerSecond())
       .build();
   }
 }
@@ -15,6 +15,9 @@ public class AccountRateLimitSettingsEntity {
   @Column(name = "MAX_PACKETS_PER_SEC")
   Integer maxPacketsPerSecond;
 
+  @Column(name = "MAX_AMOUNT_PER_SEC")
+  Long maxAmountPerSecond;
+
   /**
    * To satisfy Hibernate
    */
@@ -23,6 +26,7 @@ public class AccountRateLimitSettingsEntity {
 
   public AccountRateLimitSettingsEntity(AccountRateLimitSettings accountRateLimitSettings) {
     this.setMaxPacketsPerSecondlance(accountRateLimitSettings.maxPacketsPerSecond());
+    this.setMaxAmountPerSecond(accountRateLimitSettings.maxAmountPerSecond());
   }
 
   public Optional<Integer> getMaxPacketsPerSecond() {
@@ -32,4 +36,12 @@ public class AccountRateLimitSettingsEntity {
   public void setMaxPacketsPerSecondlance(Optional<Integer> maxPacketsPerSecond) {
     this.maxPacketsPerSecond = maxPacketsPerSecond.orElse(null);
   }
+
+  public Optional<Long> getMaxAmountPerSecond() {
+    return Optional.ofNullable(maxAmountPerSecond);
+  }
+
+  public void setMaxAmountPerSecond(Optional<Long> maxAmountPerSecond) {
+    this.maxAmountPerSecond = maxAmountPerSecond.orElse(null);
+  }
 }
@@ -6,6 +6,8 @@ import org.interledger.connector.accounts.AccountRelationship;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.accounts.SettlementEngineAccountId;
 import org.interledger.connector.persistence.entities.AccountSettingsEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
@@ -88,6 +90,16 @@ public interface AccountSettingsRepository
    */
   List<AccountSettingsEntity> findAccountSettingsEntitiesByConnectionInitiatorIsTrue();
 
+  /**
+   * Find one page of {@link AccountSettingsEntity} objects. Unlike a {@link org.springframework.data.domain.Page}, a
+   * {@link Slice} does not require counting every account, so this is suitable for iterating over all accounts.
+   *
+   * @param pageable A {@link Pageable} identifying the page (and ordering) to find.
+   *
+   * @return A {@link Slice} of {@link AccountSettingsEntity}.
+   */
+  Slice<AccountSettingsEntity> findAllBy(Pageable pageable);
+
   /**
    * Find the first {@link AccountSettingsEntity} that this connector has with a relationship of {@code relationship}.
    *
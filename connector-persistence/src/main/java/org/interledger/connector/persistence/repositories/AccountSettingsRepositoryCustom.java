@@ -5,6 +5,8 @@ import org.interledger.connector.accounts.AccountRelationship;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.accounts.SettlementEngineAccountId;
 import org.interledger.connector.persistence.entities.AccountSettingsEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.Collection;
 import java.util.List;
@@ -62,4 +64,13 @@ public interface AccountSettingsRepositoryCustom {
   Optional<AccountSettings> findBySettlementEngineAccountIdWithConversion(
     SettlementEngineAccountId settlementEngineAccountId
   );
+
+  /**
+   * Find one page of {@link AccountSettings}, converted from their entities.
+   *
+   * @param pageable A {@link Pageable} identifying the page (and ordering) to find.
+   *
+   * @return A {@link Slice} of {@link AccountSettings}.
+   */
+  Slice<AccountSettings> findAllWithConversion(Pageable pageable);
 }
@@ -6,6 +6,8 @@ import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.accounts.SettlementEngineAccountId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.Objects;
@@ -63,4 +65,11 @@ public class AccountSettingsRepositoryImpl implements AccountSettingsRepositoryC
       .findAccountSettingsEntityBySettlementEngineDetailsSettlementEngineAccountId(seAccountId.value())
       .map(accountSettingsEntity -> conversionService.convert(accountSettingsEntity, AccountSettings.class));
   }
+
+  @Override
+  public Slice<AccountSettings> findAllWithConversion(final Pageable pageable) {
+    Objects.requireNonNull(pageable);
+    return accountSettingsRepository.findAllBy(pageable)
+      .map(accountSettingsEntity -> conversionService.convert(accountSettingsEntity, AccountSettings.class));
+  }
 }
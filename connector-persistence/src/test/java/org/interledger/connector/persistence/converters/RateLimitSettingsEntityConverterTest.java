@@ -24,11 +24,13 @@ public class RateLimitSettingsEntityConverterTest {
   public void convert() {
     final AccountRateLimitSettings rateLimitSettings = AccountRateLimitSettings.builder()
       .maxPacketsPerSecond(2)
+      .maxAmountPerSecond(1000L)
       .build();
     final AccountRateLimitSettingsEntity entity = new AccountRateLimitSettingsEntity(rateLimitSettings);
 
     AccountRateLimitSettings actual = converter.convert(entity);
 
     assertThat(actual.maxPacketsPerSecond(), is(rateLimitSettings.maxPacketsPerSecond()));
+    assertThat(actual.maxAmountPerSecond(), is(rateLimitSettings.maxAmountPerSecond()));
   }
 }
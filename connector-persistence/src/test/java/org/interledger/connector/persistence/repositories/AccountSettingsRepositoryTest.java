@@ -1,6 +1,7 @@
 package org.interledger.connector.persistence.repositories;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import okhttp3.HttpUrl;
 import org.interledger.connector.accounts.AccountBalanceSettings;
@@ -27,6 +28,10 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.support.ConfigurableConversionService;
 import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -75,6 +80,7 @@ public class AccountSettingsRepositoryTest {
       .accountRelationship(AccountRelationship.PEER)
       .rateLimitSettings(AccountRateLimitSettings.builder()
         .maxPacketsPerSecond(10)
+        .maxAmountPerSecond(1000L)
         .build())
       .balanceSettings(AccountBalanceSettings.builder()
         .minBalance(0L)
@@ -429,6 +435,36 @@ public class AccountSettingsRepositoryTest {
     assertThat(loadedAccountSettings.get(), is(accountSettings1));
   }
 
+  @Test
+  public void findAllWithConversion() {
+    final List<AccountId> accountIds = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      final AccountSettings accountSettings = AccountSettings.builder()
+        .accountId(AccountId.of(UUID.randomUUID().toString()))
+        .assetCode("XRP")
+        .assetScale(9)
+        .linkType(LinkType.of("Loopback"))
+        .accountRelationship(AccountRelationship.PEER)
+        .build();
+      accountSettingsRepository.save(new AccountSettingsEntity(accountSettings));
+      accountIds.add(accountSettings.accountId());
+    }
+
+    final List<AccountId> loadedAccountIds = Lists.newArrayList();
+    int sliceCount = 0;
+    Pageable pageable = PageRequest.of(0, 2, Sort.by("id"));
+    Slice<AccountSettings> slice;
+    do {
+      slice = accountSettingsRepository.findAllWithConversion(pageable);
+      slice.forEach(accountSettings -> loadedAccountIds.add(accountSettings.accountId()));
+      pageable = slice.nextPageable();
+      sliceCount++;
+    } while (slice.hasNext());
+
+    assertThat(sliceCount, is(3));
+    assertThat(loadedAccountIds, is(accountIds));
+  }
+
   @Test
   public void findAccountSettingsEntitiesByConnectionInitiatorIsTrue() {
     final AccountSettings accountSettings1 = AccountSettings.builder()
@@ -767,6 +803,8 @@ public class AccountSettingsRepositoryTest {
     // RateLimitSettings
     assertThat(entity1.getRateLimitSettings().getMaxPacketsPerSecond(),
       is(entity2.getRateLimitSettings().getMaxPacketsPerSecond()));
+    assertThat(entity1.getRateLimitSettings().getMaxAmountPerSecond(),
+      is(entity2.getRateLimitSettings().getMaxAmountPerSecond()));
 
     // SettlementEngineSettings
     if (entity1.settlementEngineDetails().isPresent()) {
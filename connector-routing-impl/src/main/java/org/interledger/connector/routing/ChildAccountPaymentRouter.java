@@ -3,6 +3,8 @@ package org.interledger.connector.routing;
 import static org.interledger.connector.routing.Route.HMAC;
 
 import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
 import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
 import org.interledger.connector.settings.ConnectorSettings;
 import org.interledger.connector.settings.EnabledProtocolSettings;
@@ -14,6 +16,7 @@ import org.interledger.crypto.EncryptedSecret;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.eventbus.Subscribe;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +31,10 @@ import java.util.function.Supplier;
  * An implementation of {@link PaymentRouter} that finds the next best-hop account for an Interledger address that
  * begins with the operator address of this connector. These types of addresses include ping packets as well as,
  * optionally, hosted child accounts.
+ *
+ * <p>Routes to child accounts are cached, and the cached route (or absence of a route) for an account is evicted as
+ * soon as that account is created or changed, whether on this Connector or on any other Connector that shares its
+ * persistent store.</p>
  */
 public class ChildAccountPaymentRouter implements PaymentRouter<Route> {
 
@@ -53,8 +60,10 @@ public class ChildAccountPaymentRouter implements PaymentRouter<Route> {
 
     this.childAccountRoutes = Caffeine.newBuilder()
       .maximumSize(5000) // TODO: Make size configurable
-      // Expire after this duration, which will correspond to the last incoming request from the peer.
-      .expireAfterAccess(30, TimeUnit.SECONDS) // TODO: Make this configurable
+      // Expire after this duration, which will correspond to the last incoming request from the peer. Account changes
+      // evict entries immediately (see `invalidateChildAccountRoutes`), so this only bounds the staleness of changes
+      // that bypass the Connector entirely.
+      .expireAfterAccess(15, TimeUnit.MINUTES) // TODO: Make this configurable
       /**
        * Given a {@code finalDestinationAddress}, find the child account that should be used for routing, and
        * return it. Currently this implementation is very simple, as it assumes the last segment of the ILP
@@ -109,6 +118,33 @@ public class ChildAccountPaymentRouter implements PaymentRouter<Route> {
     return interledgerAddress.startsWith(connectorSettingsSupplier.get().operatorAddressSafe());
   }
 
+  /**
+   * Evict any cached routes to an account that was just created or changed by this Connector.
+   *
+   * @param event An {@link AccountSettingsChangedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsChanged(final AccountSettingsChangedEvent event) {
+    Objects.requireNonNull(event);
+    invalidateChildAccountRoutes(event.accountSettings().accountId());
+  }
+
+  /**
+   * Evict any cached routes to an account that was changed by another Connector.
+   *
+   * @param event An {@link AccountSettingsInvalidatedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsInvalidated(final AccountSettingsInvalidatedEvent event) {
+    Objects.requireNonNull(event);
+    invalidateChildAccountRoutes(event.accountId());
+  }
+
+  private void invalidateChildAccountRoutes(final AccountId accountId) {
+    this.childAccountRoutes.asMap().keySet()
+      .removeIf(finalDestinationAddress -> parseChildAccountId(finalDestinationAddress).equals(accountId));
+  }
+
   @Override
   public Optional<Route> findBestNexHop(final InterledgerAddress finalDestinationAddress) {
     Objects.requireNonNull(finalDestinationAddress, "finalDestinationAddress must not be null!");
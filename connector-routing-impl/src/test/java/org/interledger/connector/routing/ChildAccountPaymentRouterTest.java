@@ -2,6 +2,11 @@ package org.interledger.connector.routing;
 
 import org.interledger.connector.settings.ConnectorSettings;
 import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
+import org.interledger.connector.link.LinkType;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.connector.persistence.entities.AccountSettingsEntity;
 import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
@@ -17,6 +22,8 @@ import static org.interledger.connector.routing.PaymentRouter.PING_ACCOUNT_ID;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -171,4 +178,52 @@ public class ChildAccountPaymentRouterTest {
     assertThat(actual.get().path().isEmpty(), is(true));
   }
 
+  /////////////////
+  // Invalidation
+  /////////////////
+
+  @Test
+  public void accountSettingsChangedEventEvictsCachedRoute() {
+    final AccountId accountId = AccountId.of("foo");
+    assertThat(childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("foo")).isPresent(), is(false));
+
+    // The account is created, so the cached absence of a route must be evicted.
+    when(accountSettingsRepositoryMock.findByAccountId(accountId))
+      .thenReturn(Optional.of(mock(AccountSettingsEntity.class)));
+    assertThat(childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("foo")).isPresent(), is(false));
+
+    childAccountPaymentRouter.onAccountSettingsChanged(AccountSettingsChangedEvent.builder()
+      .accountSettings(AccountSettings.builder()
+        .accountId(accountId)
+        .assetCode("USD")
+        .assetScale(2)
+        .linkType(LinkType.of("Loopback"))
+        .accountRelationship(AccountRelationship.CHILD)
+        .build())
+      .build());
+
+    assertThat(childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("foo")).isPresent(), is(true));
+    verify(accountSettingsRepositoryMock, times(2)).findByAccountId(accountId);
+  }
+
+  @Test
+  public void accountSettingsInvalidatedEventEvictsOnlyThatAccount() {
+    final AccountId accountId = AccountId.of("foo");
+    when(accountSettingsRepositoryMock.findByAccountId(accountId))
+      .thenReturn(Optional.of(mock(AccountSettingsEntity.class)));
+    childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("foo"));
+    childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("bar"));
+
+    // e.g., the account was deleted on another Connector.
+    when(accountSettingsRepositoryMock.findByAccountId(accountId)).thenReturn(Optional.empty());
+    childAccountPaymentRouter.onAccountSettingsInvalidated(
+      AccountSettingsInvalidatedEvent.builder().accountId(accountId).build()
+    );
+
+    assertThat(childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("foo")).isPresent(), is(false));
+    childAccountPaymentRouter.findBestNexHop(OPERATOR_ADDRESS.with("bar"));
+    verify(accountSettingsRepositoryMock, times(2)).findByAccountId(accountId);
+    verify(accountSettingsRepositoryMock, times(1)).findByAccountId(AccountId.of("bar"));
+  }
+
 }
@@ -3,6 +3,8 @@ package org.interledger.connector.server.spring.auth.blast;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountNotFoundProblem;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
 import org.interledger.connector.link.blast.BlastLinkSettings;
 import org.interledger.connector.link.blast.IncomingLinkSettings;
 import org.interledger.connector.link.blast.tokenSettings.SharedSecretTokenSettings;
@@ -19,6 +21,7 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +55,9 @@ import java.util.function.Supplier;
  * <p>Note that the cache expiry of an authentication decision will be extended after every request that uses the same
  * token, so a cache expiry will not occur until after X minutes have elapsed with no requests using a given
  * token).</p>
+ *
+ * <p>Cached decisions for an account are discarded as soon as its settings change (e.g., its shared-secret is
+ * rotated), whether on this Connector or on any other Connector that shares its persistent store.</p>
  */
 public class IlpOverHttpAuthenticationProvider implements AuthenticationProvider {
 
@@ -184,6 +190,34 @@ public class IlpOverHttpAuthenticationProvider implements AuthenticationProvider
     }
   }
 
+  /**
+   * Discard any cached authentication decisions for an account that was just changed by this Connector.
+   *
+   * @param event An {@link AccountSettingsChangedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsChanged(final AccountSettingsChangedEvent event) {
+    Objects.requireNonNull(event);
+    invalidateAuthenticationDecisions(event.accountSettings().accountId());
+  }
+
+  /**
+   * Discard any cached authentication decisions for an account that was changed by another Connector.
+   *
+   * @param event An {@link AccountSettingsInvalidatedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsInvalidated(final AccountSettingsInvalidatedEvent event) {
+    Objects.requireNonNull(event);
+    invalidateAuthenticationDecisions(event.accountId());
+  }
+
+  private void invalidateAuthenticationDecisions(final AccountId accountId) {
+    ilpOverHttpAuthenticationDecisions.asMap().keySet().removeIf(authenticationRequest ->
+      accountId.equals(AccountId.of(authenticationRequest.incomingAuthentication().getPrincipal().toString()))
+    );
+  }
+
   @Override
   public boolean supports(Class<?> authentication) {
     return JwtAuthentication.class.isAssignableFrom(authentication);
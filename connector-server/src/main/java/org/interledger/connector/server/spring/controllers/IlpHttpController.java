@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.zalando.problem.spring.common.MediaTypes;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import static org.interledger.connector.core.ConfigConstants.BLAST_ENABLED;
 import static org.interledger.connector.core.ConfigConstants.ENABLED_PROTOCOLS;
@@ -49,19 +50,20 @@ public class IlpHttpController {
    * @return All ILP Packets MUST be returned with the HTTP status code 200: OK. An endpoint MAY return standard HTTP
    * errors, including but not limited to: a malformed or unauthenticated request, rate limiting, or an unresponsive
    * upstream service. Connectors SHOULD either retry the request, if applicable, or relay an ILP Reject packet back to
-   * the original sender with an appropriate Final or Temporary error code.
+   * the original sender with an appropriate Final or Temporary error code. The response is written asynchronously,
+   * so no servlet thread is held while the packet is in-flight to the `next-hop`.
    */
   @RequestMapping(
     value = ILP_PATH, method = {RequestMethod.POST},
     produces = {APPLICATION_ILP_OCTET_STREAM_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE, MediaTypes.PROBLEM_VALUE},
     consumes = {APPLICATION_ILP_OCTET_STREAM_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE}
   )
-  public InterledgerResponsePacket sendData(
+  public CompletableFuture<InterledgerResponsePacket> sendData(
     Authentication authentication, @RequestBody final InterledgerPreparePacket preparePacket
   ) {
     final AccountId accountId = this.accountIdResolver.resolveAccountId(authentication);
 
-    return this.ilPv4PacketSwitch.switchPacket(accountId, preparePacket);
+    return this.ilPv4PacketSwitch.switchPacketAsync(accountId, preparePacket);
   }
 
 }
@@ -0,0 +1,49 @@
+package org.interledger.connector.server.spring.controllers;
+
+import org.interledger.connector.metrics.BalanceTrackerMetrics;
+import org.interledger.connector.metrics.FilterMetricsRegistry;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Objects;
+
+/**
+ * A RESTful controller for exposing per-filter packet metrics and balance-tracker metrics in the Prometheus text
+ * exposition format.
+ */
+@RestController
+public class MetricsController {
+
+  public static final String SLASH_METRICS = "/metrics";
+
+  private static final String PROMETHEUS_TEXT_VALUE = "text/plain; version=0.0.4";
+
+  private final FilterMetricsRegistry filterMetricsRegistry;
+  private final BalanceTrackerMetrics balanceTrackerMetrics;
+
+  public MetricsController(
+    final FilterMetricsRegistry filterMetricsRegistry, final BalanceTrackerMetrics balanceTrackerMetrics
+  ) {
+    this.filterMetricsRegistry = Objects.requireNonNull(filterMetricsRegistry);
+    this.balanceTrackerMetrics = Objects.requireNonNull(balanceTrackerMetrics);
+  }
+
+  /**
+   * Return the latency, amount and outcome metrics of every packet-switch and link filter, followed by the command
+   * latency and queue depth of the balance tracker.
+   */
+  @RequestMapping(
+    value = SLASH_METRICS, method = {RequestMethod.GET},
+    produces = {PROMETHEUS_TEXT_VALUE}
+  )
+  public String getMetrics() throws IOException {
+    final StringWriter output = new StringWriter();
+    filterMetricsRegistry.writePrometheusText(output);
+    balanceTrackerMetrics.writePrometheusText(output);
+    return output.toString();
+  }
+
+}
@@ -4,8 +4,6 @@ import org.interledger.connector.accounts.AccountManager;
 import org.interledger.connector.server.spring.controllers.model.problems.AccountNotFoundProblem;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountSettings;
-import org.interledger.connector.persistence.entities.AccountBalanceSettingsEntity;
-import org.interledger.connector.persistence.entities.AccountRateLimitSettingsEntity;
 import org.interledger.connector.server.spring.controllers.PathConstants;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.hateoas.Link;
@@ -133,33 +131,7 @@ public class AccountsController {
     @RequestBody final AccountSettings.AbstractAccountSettings accountSettings
   ) {
 
-    return accountManager.getAccountSettingsRepository().findByAccountId(accountId)
-      .map(entity -> {
-
-        // Ignore update accountId
-
-        entity.setAssetCode(accountSettings.assetCode());
-        entity.setAssetScale(accountSettings.assetScale());
-        entity.setAccountRelationship(accountSettings.accountRelationship());
-        entity.setBalanceSettings(
-          new AccountBalanceSettingsEntity(accountSettings.balanceSettings())
-        );
-        entity.setConnectionInitiator(accountSettings.isConnectionInitiator());
-        entity.setDescription(accountSettings.description());
-        entity.setCustomSettings(accountSettings.customSettings());
-        entity.setIlpAddressSegment(accountSettings.ilpAddressSegment());
-        entity.setInternal(accountSettings.isInternal());
-        entity.setLinkType(accountSettings.linkType());
-        entity.setMaximumPacketAmount(accountSettings.maximumPacketAmount());
-        entity.setRateLimitSettings(
-          new AccountRateLimitSettingsEntity(accountSettings.rateLimitSettings())
-        );
-        entity.setReceiveRoutes(accountSettings.isReceiveRoutes());
-        entity.setSendRoutes(accountSettings.isSendRoutes());
-
-        return accountManager.getAccountSettingsRepository().save(entity);
-      })
-      .map(accountSettingsEntity -> conversionService.convert(accountSettingsEntity, AccountSettings.class))
+    return accountManager.updateAccount(accountId, accountSettings)
       .map(this::toResource)
       .orElseThrow(() -> new AccountNotFoundProblem(accountId));
   }
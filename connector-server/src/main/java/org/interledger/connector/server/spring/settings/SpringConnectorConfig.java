@@ -1,5 +1,6 @@
 package org.interledger.connector.server.spring.settings;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
@@ -18,12 +19,14 @@ import org.interledger.connector.accounts.DefaultAccountIdResolver;
 import org.interledger.connector.accounts.DefaultAccountManager;
 import org.interledger.connector.accounts.DefaultAccountSettingsResolver;
 import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.FulfillUpdateQueue;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.config.AccountInvalidationConfig;
 import org.interledger.connector.config.BalanceTrackerConfig;
 import org.interledger.connector.config.CaffeineCacheConfig;
 import org.interledger.connector.config.RedisConfig;
 import org.interledger.connector.config.SettlementConfig;
-import org.interledger.connector.fx.JavaMoneyUtils;
+import org.interledger.connector.fx.CachingFxConverter;
 import org.interledger.connector.link.AbstractLink;
 import org.interledger.connector.link.LinkFactoryProvider;
 import org.interledger.connector.link.events.LinkEventEmitter;
@@ -33,23 +36,27 @@ import org.interledger.connector.links.DefaultNextHopPacketMapper;
 import org.interledger.connector.links.LinkManager;
 import org.interledger.connector.links.LinkSettingsFactory;
 import org.interledger.connector.links.NextHopPacketMapper;
+import org.interledger.connector.links.filters.ConcurrencyLimitLinkFilter;
 import org.interledger.connector.links.filters.LinkFilter;
 import org.interledger.connector.links.filters.OutgoingBalanceLinkFilter;
 import org.interledger.connector.links.loopback.LoopbackLink;
 import org.interledger.connector.links.loopback.LoopbackLinkFactory;
 import org.interledger.connector.links.ping.PingLoopbackLink;
 import org.interledger.connector.links.ping.PingLoopbackLinkFactory;
+import org.interledger.connector.metrics.FilterMetricsRegistry;
 import org.interledger.connector.packetswitch.DefaultILPv4PacketSwitch;
 import org.interledger.connector.packetswitch.ILPv4PacketSwitch;
 import org.interledger.connector.packetswitch.InterledgerAddressUtils;
 import org.interledger.connector.packetswitch.PacketRejector;
 import org.interledger.connector.packetswitch.filters.AllowedDestinationPacketFilter;
 import org.interledger.connector.packetswitch.filters.BalanceIlpPacketFilter;
+import org.interledger.connector.packetswitch.filters.ConcurrencyLimitPacketFilter;
 import org.interledger.connector.packetswitch.filters.ExpiryPacketFilter;
 import org.interledger.connector.packetswitch.filters.MaxPacketAmountFilter;
 import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
 import org.interledger.connector.packetswitch.filters.PeerProtocolPacketFilter;
 import org.interledger.connector.packetswitch.filters.RateLimitIlpPacketFilter;
+import org.interledger.connector.packetswitch.filters.ThroughputLimitPacketFilter;
 import org.interledger.connector.packetswitch.filters.ValidateFulfillmentPacketFilter;
 import org.interledger.connector.persistence.config.ConnectorPersistenceConfig;
 import org.interledger.connector.persistence.entities.AccountSettingsEntity;
@@ -68,7 +75,9 @@ import org.interledger.connector.server.spring.settings.properties.ConnectorSett
 import org.interledger.connector.server.spring.settings.web.SpringConnectorWebMvc;
 import org.interledger.connector.settings.ConnectorSettings;
 import org.interledger.connector.settlement.SettlementEngineClient;
+import org.interledger.connector.settlement.SettlementScheduler;
 import org.interledger.connector.settlement.SettlementService;
+import org.interledger.connector.settlement.SettlementThresholdListener;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.crypto.Decryptor;
 import org.interledger.encoding.asn.framework.CodecContext;
@@ -76,6 +85,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
@@ -84,7 +95,10 @@ import org.springframework.context.annotation.Import;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import javax.money.convert.MonetaryConversions;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
@@ -105,7 +119,7 @@ import static org.interledger.connector.routing.PaymentRouter.PING_ACCOUNT_ID;
           CryptoConfig.class,
           ResiliencyConfig.class,
           CaffeineCacheConfig.class,
-          RedisConfig.class, SettlementConfig.class, BalanceTrackerConfig.class,
+          RedisConfig.class, SettlementConfig.class, BalanceTrackerConfig.class, AccountInvalidationConfig.class,
           SpringConnectorWebMvc.class
         })
 public class SpringConnectorConfig {
@@ -218,10 +232,12 @@ public class SpringConnectorConfig {
     AccountSettingsRepository accountSettingsRepository,
     LinkManager linkManager,
     ConversionService conversionService,
-    SettlementEngineClient settlementEngineClient
+    SettlementEngineClient settlementEngineClient,
+    EventBus eventBus
   ) {
     return new DefaultAccountManager(
-      connectorSettingsSupplier, conversionService, accountSettingsRepository, linkManager, settlementEngineClient
+      connectorSettingsSupplier, conversionService, accountSettingsRepository, linkManager, settlementEngineClient,
+      eventBus
     );
   }
 
@@ -241,7 +257,8 @@ public class SpringConnectorConfig {
   ChildAccountPaymentRouter childAccountPaymentRouter(
     final Supplier<ConnectorSettings> connectorSettingsSupplier,
     final AccountSettingsRepository accountSettingsRepository,
-    final Decryptor decryptor
+    final Decryptor decryptor,
+    final EventBus eventBus
   ) {
 
     // If the Ping Protocol is enabled, we need to ensure that there is a Ping account suitable to accept value for
@@ -268,7 +285,11 @@ public class SpringConnectorConfig {
       accountSettingsRepository.save(new AccountSettingsEntity(pingAccountSettings));
     }
 
-    return new ChildAccountPaymentRouter(connectorSettingsSupplier, accountSettingsRepository, decryptor);
+    final ChildAccountPaymentRouter childAccountPaymentRouter =
+      new ChildAccountPaymentRouter(connectorSettingsSupplier, accountSettingsRepository, decryptor);
+    // Evict cached routes whenever a child account is changed, on this or any other Connector.
+    eventBus.register(childAccountPaymentRouter);
+    return childAccountPaymentRouter;
   }
 
   @Bean
@@ -307,9 +328,9 @@ public class SpringConnectorConfig {
   @Bean
   InterledgerAddressUtils interledgerAddressUtils(
     final Supplier<ConnectorSettings> connectorSettingsSupplier,
-    final AccountSettingsRepository accountSettingsRepository
+    final AccountSettingsLoadingCache accountSettingsLoadingCache
   ) {
-    return new InterledgerAddressUtils(connectorSettingsSupplier, accountSettingsRepository);
+    return new InterledgerAddressUtils(connectorSettingsSupplier, accountSettingsLoadingCache);
   }
 
   @Bean
@@ -368,6 +389,12 @@ public class SpringConnectorConfig {
 
     if (connectorSettings.enabledFeatures().isRateLimitingEnabled()) {
       filterList.add(new RateLimitIlpPacketFilter(packetRejector));// Limits Data packets...
+      filterList.add(new ThroughputLimitPacketFilter(packetRejector));// Limits the value of Data packets...
+    }
+
+    if (connectorSettings.enabledFeatures().isConcurrencyLimitingEnabled()) {
+      // Sheds load before any balance is touched.
+      filterList.add(new ConcurrencyLimitPacketFilter(packetRejector));
     }
 
     filterList.add(
@@ -395,8 +422,6 @@ public class SpringConnectorConfig {
       )
     );
 
-    // TODO: Throughput for Money...
-
     /////////////////////////////////////
     // Non-routable destinations (self.*)
     /////////////////////////////////////
@@ -404,17 +429,77 @@ public class SpringConnectorConfig {
     return filterList.build();
   }
 
+  /**
+   * Initiates settlements off the packet path, merging those of each account. Only created when enabled.
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "interledger.connector.settlementEngines.scheduler", name = "enabled",
+    havingValue = "true")
+  SettlementScheduler settlementScheduler(
+    SettlementService settlementService,
+    @Value("${interledger.connector.settlementEngines.scheduler.numWorkers:4}") final int numWorkers,
+    @Value("${interledger.connector.settlementEngines.scheduler.maxAttempts:5}") final int maxAttempts,
+    @Value("${interledger.connector.settlementEngines.scheduler.initialBackoffMillis:500}")
+    final long initialBackoffMillis,
+    @Value("${interledger.connector.settlementEngines.scheduler.maxBackoffMillis:30000}") final long maxBackoffMillis,
+    @Value("${interledger.connector.settlementEngines.scheduler.closeTimeoutMillis:5000}") final long closeTimeoutMillis
+  ) {
+    return new SettlementScheduler(
+      settlementService, numWorkers, maxAttempts, initialBackoffMillis, maxBackoffMillis, closeTimeoutMillis
+    );
+  }
+
+  /**
+   * Applies the balance updates of fulfilled packets off the response path. Only created when enabled.
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "interledger.connector.balanceTracking.asyncFulfill", name = "enabled",
+    havingValue = "true")
+  FulfillUpdateQueue fulfillUpdateQueue(
+    BalanceTracker balanceTracker,
+    SettlementService settlementService,
+    Optional<SettlementScheduler> settlementScheduler,
+    AccountSettingsLoadingCache accountSettingsLoadingCache,
+    @Value("${interledger.connector.balanceTracking.asyncFulfill.numLanes:4}") final int numLanes,
+    @Value("${interledger.connector.balanceTracking.asyncFulfill.laneCapacity:10000}") final int laneCapacity,
+    @Value("${interledger.connector.balanceTracking.asyncFulfill.spillDirectory:}") final String spillDirectory,
+    @Value("${interledger.connector.balanceTracking.asyncFulfill.closeTimeoutMillis:5000}") final long closeTimeoutMillis
+  ) {
+    Preconditions.checkState(
+      !spillDirectory.trim().isEmpty(),
+      "interledger.connector.balanceTracking.asyncFulfill.spillDirectory must be set when asyncFulfill is enabled"
+    );
+    return new FulfillUpdateQueue(
+      balanceTracker,
+      new SettlementThresholdListener(settlementService, settlementScheduler),
+      accountSettingsLoadingCache::getAccount,
+      numLanes,
+      laneCapacity,
+      Paths.get(spillDirectory),
+      closeTimeoutMillis
+    );
+  }
+
   @Bean
   List<LinkFilter> linkFilters(
-    BalanceTracker balanceTracker, SettlementService settlementService
+    BalanceTracker balanceTracker,
+    SettlementService settlementService,
+    Optional<FulfillUpdateQueue> fulfillUpdateQueue,
+    Optional<SettlementScheduler> settlementScheduler
   ) {
     final Supplier<InterledgerAddress> operatorAddressSupplier =
       () -> connectorSettingsSupplier().get().operatorAddress().get();
 
-    return Lists.newArrayList(
-      //      // TODO: Throughput for Money...
-      new OutgoingBalanceLinkFilter(operatorAddressSupplier, balanceTracker, settlementService)
-    );
+    final List<LinkFilter> linkFilters = Lists.newArrayList();
+    if (connectorSettingsSupplier().get().enabledFeatures().isConcurrencyLimitingEnabled()) {
+      // Limits in-flight packets per next-hop, so a single slow peer cannot tie up every thread.
+      linkFilters.add(new ConcurrencyLimitLinkFilter(operatorAddressSupplier));
+    }
+    //      // TODO: Throughput for Money...
+    linkFilters.add(new OutgoingBalanceLinkFilter(
+      operatorAddressSupplier, balanceTracker, settlementService, fulfillUpdateQueue, settlementScheduler
+    ));
+    return linkFilters;
   }
 
   @Bean
@@ -422,14 +507,19 @@ public class SpringConnectorConfig {
     Supplier<ConnectorSettings> connectorSettingsSupplier,
     ExternalRoutingService externalRoutingService,
     InterledgerAddressUtils addressUtils,
-    JavaMoneyUtils javaMoneyUtils,
+    CachingFxConverter fxConverter,
     AccountSettingsLoadingCache accountSettingsLoadingCache
   ) {
     return new DefaultNextHopPacketMapper(
-      connectorSettingsSupplier, externalRoutingService, addressUtils, javaMoneyUtils, accountSettingsLoadingCache
+      connectorSettingsSupplier, externalRoutingService, addressUtils, fxConverter, accountSettingsLoadingCache
     );
   }
 
+  @Bean
+  CachingFxConverter fxConverter() {
+    return new CachingFxConverter(MonetaryConversions.getExchangeRateProvider());
+  }
+
   @Bean
   ConnectorExceptionHandler connectorExceptionHandler(
     Supplier<ConnectorSettings> connectorSettingsSupplier, PacketRejector packetRejector
@@ -437,6 +527,11 @@ public class SpringConnectorConfig {
     return new ConnectorExceptionHandler(connectorSettingsSupplier, packetRejector);
   }
 
+  @Bean
+  FilterMetricsRegistry filterMetricsRegistry() {
+    return new FilterMetricsRegistry();
+  }
+
   @Bean
   ILPv4PacketSwitch ilpPacketSwitch(
     List<PacketSwitchFilter> packetSwitchFilters,
@@ -445,11 +540,13 @@ public class SpringConnectorConfig {
     NextHopPacketMapper nextHopPacketMapper,
     ConnectorExceptionHandler connectorExceptionHandler,
     PacketRejector packetRejector,
-    AccountSettingsLoadingCache accountSettingsLoadingCache
+    AccountSettingsLoadingCache accountSettingsLoadingCache,
+    FilterMetricsRegistry filterMetricsRegistry
   ) {
     return new DefaultILPv4PacketSwitch(
-      packetSwitchFilters, linkFilters, linkManager, nextHopPacketMapper, connectorExceptionHandler,
-      packetRejector, accountSettingsLoadingCache
+      filterMetricsRegistry.instrumentPacketSwitchFilters(packetSwitchFilters),
+      filterMetricsRegistry.instrumentLinkFilters(linkFilters),
+      linkManager, nextHopPacketMapper, connectorExceptionHandler, packetRejector, accountSettingsLoadingCache
     );
   }
 
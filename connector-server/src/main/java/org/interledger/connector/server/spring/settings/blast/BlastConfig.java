@@ -7,9 +7,11 @@ import org.interledger.connector.accounts.DefaultAccountIdResolver;
 import org.interledger.connector.server.spring.controllers.converters.OerPreparePacketHttpMessageConverter;
 import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import org.interledger.connector.link.LinkFactoryProvider;
+import org.interledger.connector.link.blast.BlastHttpRequestFactory;
 import org.interledger.connector.link.blast.BlastLink;
 import org.interledger.connector.link.blast.BlastLinkFactory;
 import org.interledger.connector.link.events.LinkEventEmitter;
@@ -80,8 +82,27 @@ public class BlastConfig {
     );
   }
 
+  /**
+   * The {@link Dispatcher} that executes asynchronous BLAST requests. OkHttp's defaults only allow 5 concurrent requests
+   * per host, which would otherwise queue outgoing packets behind each other on a busy peering link.
+   */
+  @Bean
+  @Qualifier(BLAST)
+  public Dispatcher blastDispatcher(
+    @Value("${interledger.connector.ilpOverHttp.connectionDefaults.maxRequests:1024}")
+    final int defaultMaxRequests,
+    @Value("${interledger.connector.ilpOverHttp.connectionDefaults.maxRequestsPerHost:256}")
+    final int defaultMaxRequestsPerHost
+  ) {
+    final Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(defaultMaxRequests);
+    dispatcher.setMaxRequestsPerHost(defaultMaxRequestsPerHost);
+    return dispatcher;
+  }
+
   /**
    * @param ilpOverHttpConnectionPool   A {@link ConnectionPool} as configured above.
+   * @param ilpOverHttpDispatcher       A {@link Dispatcher} as configured above.
    * @param defaultConnectTimeoutMillis Applied when connecting a TCP socket to the target host. A value of 0 means no
    *                                    timeout, otherwise values must be between 1 and {@link Integer#MAX_VALUE} when
    *                                    converted to milliseconds. If unspecified, defaults to 10000.
@@ -100,6 +121,7 @@ public class BlastConfig {
   OkHttp3ClientHttpRequestFactory blastOkHttp3ClientHttpRequestFactory(
 
     @Qualifier(BLAST) final ConnectionPool ilpOverHttpConnectionPool,
+    @Qualifier(BLAST) final Dispatcher ilpOverHttpDispatcher,
 
     @Value("${interledger.connector.ilpOverHttp.connectionDefaults.connectTimeoutMillis:1000}")
     final long defaultConnectTimeoutMillis,
@@ -118,8 +140,12 @@ public class BlastConfig {
     builder.readTimeout(defaultReadTimeoutMillis, TimeUnit.MILLISECONDS);
     builder.writeTimeout(defaultWriteTimeoutMillis, TimeUnit.MILLISECONDS);
 
-    OkHttpClient client = builder.connectionPool(ilpOverHttpConnectionPool).build();
-    return new OkHttp3ClientHttpRequestFactory(client);
+    OkHttpClient client = builder
+      .connectionPool(ilpOverHttpConnectionPool)
+      .dispatcher(ilpOverHttpDispatcher)
+      .build();
+    // Exposes the client, so that packets can also be sent using OkHttp's non-blocking API.
+    return new BlastHttpRequestFactory(client);
   }
 
   @Bean
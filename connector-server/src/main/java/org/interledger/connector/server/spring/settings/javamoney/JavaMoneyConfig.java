@@ -6,6 +6,8 @@ import org.interledger.connector.fx.JavaMoneyUtils;
 import org.interledger.connector.javax.money.providers.CryptoCompareRateProvider;
 import org.interledger.connector.javax.money.providers.DropRoundingProvider;
 import org.interledger.connector.javax.money.providers.XrpCurrencyProvider;
+import org.interledger.connector.persistence.entities.AccountSettingsEntity;
+import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
 import org.javamoney.moneta.convert.internal.DefaultMonetaryConversionsSingletonSpi;
 import org.javamoney.moneta.convert.internal.IdentityRateProvider;
 import org.javamoney.moneta.internal.DefaultRoundingProvider;
@@ -21,7 +23,12 @@ import org.springframework.web.client.RestTemplate;
 
 import javax.money.convert.ExchangeRateProvider;
 import javax.money.spi.RoundingProviderSpi;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static org.interledger.connector.javax.money.providers.XrpCurrencyProvider.XRP;
 
@@ -79,9 +86,29 @@ public class JavaMoneyConfig {
   @Bean
   protected CryptoCompareRateProvider cryptoCompareRateProvider(
     @Qualifier(CRYPTO_COMPARE) Supplier<String> cryptoCompareApiKeySupplier,
-    @Qualifier(FX) RestTemplate restTemplate
+    @Qualifier(FX) RestTemplate restTemplate,
+    AccountSettingsRepository accountSettingsRepository
   ) {
-    return new CryptoCompareRateProvider(cryptoCompareApiKeySupplier, restTemplate);
+    final CryptoCompareRateProvider cryptoCompareRateProvider = new CryptoCompareRateProvider(
+      cryptoCompareApiKeySupplier,
+      restTemplate,
+      environment.getProperty(
+        "cryptocompare.rates.refreshInterval", Duration.class, CryptoCompareRateProvider.DEFAULT_REFRESH_INTERVAL
+      ),
+      environment.getProperty(
+        "cryptocompare.rates.maxStaleness", Duration.class, CryptoCompareRateProvider.DEFAULT_MAX_STALENESS
+      ),
+      Optional.ofNullable(environment.getProperty("cryptocompare.rates.snapshotFile")).map(Paths::get)
+    );
+
+    // Load the rates between all configured accounts in the background, so that the first packets don't have to.
+    cryptoCompareRateProvider.preloadRates(
+      StreamSupport.stream(accountSettingsRepository.findAll().spliterator(), false)
+        .map(AccountSettingsEntity::getAssetCode)
+        .collect(Collectors.toSet())
+    );
+
+    return cryptoCompareRateProvider;
   }
 
   @Bean
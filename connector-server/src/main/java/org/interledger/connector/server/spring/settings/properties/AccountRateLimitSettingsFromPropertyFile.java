@@ -10,6 +10,7 @@ import java.util.Optional;
 public class AccountRateLimitSettingsFromPropertyFile implements AccountRateLimitSettings {
 
   private Optional<Integer> maxPacketsPerSecond = Optional.empty();
+  private Optional<Long> maxAmountPerSecond = Optional.empty();
 
   @Override
   public Optional<Integer> maxPacketsPerSecond() {
@@ -19,4 +20,13 @@ public class AccountRateLimitSettingsFromPropertyFile implements AccountRateLimi
   public void setMaxPacketsPerSecond(Optional<Integer> packetsPerSecond) {
     this.maxPacketsPerSecond = packetsPerSecond;
   }
+
+  @Override
+  public Optional<Long> maxAmountPerSecond() {
+    return maxAmountPerSecond;
+  }
+
+  public void setMaxAmountPerSecond(Optional<Long> maxAmountPerSecond) {
+    this.maxAmountPerSecond = maxAmountPerSecond;
+  }
 }
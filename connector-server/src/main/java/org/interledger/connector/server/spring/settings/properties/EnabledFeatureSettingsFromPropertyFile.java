@@ -8,6 +8,7 @@ import org.interledger.connector.settings.EnabledFeatureSettings;
 public class EnabledFeatureSettingsFromPropertyFile implements EnabledFeatureSettings {
 
   private boolean rateLimitingEnabled;
+  private boolean concurrencyLimitingEnabled;
 
   @Override
   public boolean isRateLimitingEnabled() {
@@ -17,4 +18,13 @@ public class EnabledFeatureSettingsFromPropertyFile implements EnabledFeatureSet
   public void setRateLimitingEnabled(boolean rateLimitingEnabled) {
     this.rateLimitingEnabled = rateLimitingEnabled;
   }
+
+  @Override
+  public boolean isConcurrencyLimitingEnabled() {
+    return concurrencyLimitingEnabled;
+  }
+
+  public void setConcurrencyLimitingEnabled(boolean concurrencyLimitingEnabled) {
+    this.concurrencyLimitingEnabled = concurrencyLimitingEnabled;
+  }
 }
@@ -1,11 +1,13 @@
 package org.interledger.connector.server.spring.settings.web;
 
 import com.auth0.spring.security.api.JwtWebSecurityConfigurer;
+import com.google.common.eventbus.EventBus;
 import org.interledger.connector.core.ConfigConstants;
 import org.interledger.connector.links.LinkSettingsFactory;
 import org.interledger.connector.server.spring.auth.blast.IlpOverHttpAuthenticationProvider;
 import org.interledger.connector.server.spring.controllers.HealthController;
 import org.interledger.connector.server.spring.controllers.IlpHttpController;
+import org.interledger.connector.server.spring.controllers.MetricsController;
 import org.interledger.connector.server.spring.auth.blast.AuthConstants;
 import org.interledger.connector.server.spring.controllers.PathConstants;
 import org.interledger.connector.settings.ConnectorSettings;
@@ -56,6 +58,9 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
   @Autowired
   LinkSettingsFactory linkSettingsFactory;
 
+  @Autowired
+  EventBus eventBus;
+
   @Autowired
   Decryptor decryptor;
 
@@ -84,9 +89,12 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
   @Bean
   IlpOverHttpAuthenticationProvider ilpOverHttpAuthenticationProvider() {
-    return new IlpOverHttpAuthenticationProvider(
+    final IlpOverHttpAuthenticationProvider ilpOverHttpAuthenticationProvider = new IlpOverHttpAuthenticationProvider(
       connectorSettingsSupplier, encryptionService, accountSettingsRepository, linkSettingsFactory
     );
+    // Discard cached authentication decisions whenever an account is changed, on this or any other Connector.
+    eventBus.register(ilpOverHttpAuthenticationProvider);
+    return ilpOverHttpAuthenticationProvider;
   }
 
   /**
@@ -179,6 +187,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
       AuthConstants.Authorities.CONNECTOR_ADMIN)
       .antMatchers(HttpMethod.PUT, PathConstants.SLASH_ACCOUNTS + PathConstants.SLASH_ACCOUNT_ID).hasAuthority(
       AuthConstants.Authorities.CONNECTOR_ADMIN)
+      .antMatchers(HttpMethod.GET, MetricsController.SLASH_METRICS).hasAuthority(AuthConstants.Authorities.CONNECTOR_ADMIN)
       // Everything else...
       .anyRequest().denyAll()
 
@@ -48,6 +48,7 @@ public class ConnectorSettingsFromPropertyFileTest {
     // Enabled Features
     final EnabledFeatureSettings enabledFeatureSettings = connectorSettings.enabledFeatures();
     assertThat(enabledFeatureSettings.isRateLimitingEnabled(), is(true));
+    assertThat(enabledFeatureSettings.isConcurrencyLimitingEnabled(), is(true));
 
     // Global Routing Settings
     final GlobalRoutingSettings globalRoutingSettings = connectorSettings.globalRoutingSettings();
@@ -3,6 +3,8 @@ package org.interledger.connector.accounts;
 import org.interledger.connector.links.LinkManager;
 import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
 
+import java.util.Optional;
+
 /**
  * <p>This manager provider higher-order logic surrouding accounts in a Connector. Generally, internal Connector
  * services will utilize an instance of {@link AccountSettingsRepository} directly for normal access to Account
@@ -36,6 +38,17 @@ public interface AccountManager {
    */
   AccountSettings createAccount(AccountSettings accountSettings);
 
+  /**
+   * Update an existing account in this connector by replacing its settings in the persistent store. The {@link
+   * AccountId} of an account cannot be changed, so {@link AccountSettings#accountId()} is ignored.
+   *
+   * @param accountId       The {@link AccountId} of the account to update.
+   * @param accountSettings The new {@link AccountSettings} for this account.
+   *
+   * @return The updated settings, or {@link Optional#empty()} if no account exists for {@code accountId}.
+   */
+  Optional<AccountSettings> updateAccount(AccountId accountId, AccountSettings accountSettings);
+
   /**
    * Helper method to initialize the parent account using IL-DCP. If this Connector is starting in `child` mode, it will
    * not have an operator address when it starts up, so this method finds the first account of type `parent` and uses
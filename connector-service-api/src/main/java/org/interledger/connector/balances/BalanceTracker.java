@@ -3,8 +3,10 @@ package org.interledger.connector.balances;
 import org.immutables.value.Value;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>Tracks balances for accounts held at this connector.</p>
@@ -91,6 +93,63 @@ public interface BalanceTracker {
    */
   void updateBalanceForReject(AccountId sourceAccountId, long amount) throws BalanceTrackerException;
 
+  /**
+   * <p>Performs {@link #updateBalanceForPrepare(AccountId, long, Optional)} without blocking the calling thread while
+   * the balance is updated.</p>
+   *
+   * <p>The default implementation is a blocking adapter that performs the update on the calling thread. Trackers that
+   * wait on a remote store (or that wrap one) should override this method. Any failure (e.g., a prepare that would
+   * exceed the account's minimum balance) completes the returned future exceptionally with a {@link
+   * BalanceTrackerException}.</p>
+   *
+   * @param sourceAccountId The {@link AccountId} to adjust.
+   * @param amount          The positive amount of units to subtract from the account's balance.
+   * @param minBalance      An optionally-present minimum balance that the account is allowed to reduce to.
+   *
+   * @return A {@link CompletableFuture} that completes once the balance has been updated.
+   */
+  default CompletableFuture<Void> updateBalanceForPrepareAsync(
+    AccountId sourceAccountId, long amount, Optional<Long> minBalance
+  ) {
+    return CompletableFutures.fromBlocking(() -> {
+      this.updateBalanceForPrepare(sourceAccountId, amount, minBalance);
+      return null;
+    });
+  }
+
+  /**
+   * Performs {@link #updateBalanceForFulfill(AccountSettings, long)} without blocking the calling thread while the
+   * balance is updated. The default implementation is a blocking adapter, as described in {@link
+   * #updateBalanceForPrepareAsync(AccountId, long, Optional)}.
+   *
+   * @param destinationAccountSettings The {@link AccountSettings} of the account to adjust.
+   * @param amount                     The positive amount of units to add to the account's balance.
+   *
+   * @return A {@link CompletableFuture} that completes with the {@link UpdateBalanceForFulfillResponse}.
+   */
+  default CompletableFuture<UpdateBalanceForFulfillResponse> updateBalanceForFulfillAsync(
+    AccountSettings destinationAccountSettings, long amount
+  ) {
+    return CompletableFutures.fromBlocking(() -> this.updateBalanceForFulfill(destinationAccountSettings, amount));
+  }
+
+  /**
+   * Performs {@link #updateBalanceForReject(AccountId, long)} without blocking the calling thread while the balance is
+   * updated. The default implementation is a blocking adapter, as described in {@link
+   * #updateBalanceForPrepareAsync(AccountId, long, Optional)}.
+   *
+   * @param sourceAccountId The {@link AccountId} to adjust.
+   * @param amount          The positive amount of units to return to the account's balance.
+   *
+   * @return A {@link CompletableFuture} that completes once the balance has been updated.
+   */
+  default CompletableFuture<Void> updateBalanceForRejectAsync(AccountId sourceAccountId, long amount) {
+    return CompletableFutures.fromBlocking(() -> {
+      this.updateBalanceForReject(sourceAccountId, amount);
+      return null;
+    });
+  }
+
   /**
    * <p>Increase the balance for the account identified by {@code accountId} by {@code amount} in response to an
    * incoming settlement payment</p>.
@@ -105,13 +164,67 @@ public interface BalanceTracker {
    *                  should be in the proper scale for the ILP account as found in {@link
    *                  AccountSettings#assetScale()}.
    *
+   * @return {@code false} if an incoming settlement with the same {@code idempotencyKey} had already been applied (so
+   * the balance was not adjusted again); {@code true} otherwise.
+   *
    * @throws BalanceTrackerException If anything prevents the balance updates to succeed atomically.
    */
-  void updateBalanceForIncomingSettlement(String idempotencyKey, AccountId accountId, long amount);
+  boolean updateBalanceForIncomingSettlement(String idempotencyKey, AccountId accountId, long amount);
 
   // TODO: Add javadoc!
   void updateBalanceForOutgoingSettlementRefund(AccountId accountId, long amount) throws BalanceTrackerException;
 
+  /**
+   * <p>Performs {@link #updateBalanceForFulfill(AccountSettings, long)}, unless a change with the same {@code
+   * idempotencyKey} has already been applied to the account (within the last 24 hours), e.g. when a change whose
+   * outcome was lost is applied again.</p>
+   *
+   * <p>The default implementation cannot detect changes that were already applied, so it always applies the change.
+   * The same is true of the other keyed updates.</p>
+   *
+   * <p>An implementation that retries failed changes itself (e.g., {@code JournalingBalanceTracker}) may take over a
+   * change that fails, and return empty rather than throw, so that the caller does not retry it as well.</p>
+   *
+   * @return The response of the update, or empty if it had already been applied (or will be applied by this tracker).
+   *
+   * @throws BalanceTrackerException If anything prevents the balance updates to succeed atomically.
+   */
+  default Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+    String idempotencyKey, AccountSettings destinationAccountSettings, long amount
+  ) throws BalanceTrackerException {
+    return Optional.of(this.updateBalanceForFulfill(destinationAccountSettings, amount));
+  }
+
+  /**
+   * Performs {@link #updateBalanceForReject(AccountId, long)}, unless a change with the same {@code idempotencyKey} has
+   * already been applied to the account, as described in {@link #updateBalanceForFulfill(String, AccountSettings,
+   * long)}.
+   *
+   * @return {@code false} if the update had already been applied; {@code true} otherwise.
+   *
+   * @throws BalanceTrackerException If anything prevents the balance updates to succeed atomically.
+   */
+  default boolean updateBalanceForReject(String idempotencyKey, AccountId sourceAccountId, long amount)
+    throws BalanceTrackerException {
+    this.updateBalanceForReject(sourceAccountId, amount);
+    return true;
+  }
+
+  /**
+   * Performs {@link #updateBalanceForOutgoingSettlementRefund(AccountId, long)}, unless a change with the same {@code
+   * idempotencyKey} has already been applied to the account, as described in {@link #updateBalanceForFulfill(String,
+   * AccountSettings, long)}.
+   *
+   * @return {@code false} if the update had already been applied; {@code true} otherwise.
+   *
+   * @throws BalanceTrackerException If anything prevents the balance updates to succeed atomically.
+   */
+  default boolean updateBalanceForOutgoingSettlementRefund(String idempotencyKey, AccountId accountId, long amount)
+    throws BalanceTrackerException {
+    this.updateBalanceForOutgoingSettlementRefund(accountId, amount);
+    return true;
+  }
+
   /**
    * A wrapper object that holds the response from Redis after the updateBalanceForFulfill script has executed.
    */
@@ -0,0 +1,19 @@
+package org.interledger.connector.balances;
+
+/**
+ * A {@link BalanceTrackerException} that is thrown when a balance update is refused, without being applied, because
+ * the balance tracker has more updates waiting than it can accept. Callers should treat this as a temporary condition
+ * (e.g., by rejecting a packet with {@code T03_CONNECTOR_BUSY}) rather than as insufficient liquidity.
+ */
+public class BalanceTrackerBusyException extends BalanceTrackerException {
+
+  /**
+   * Constructs a new exception with the specified detail message.
+   *
+   * @param message the detail message. The detail message is saved for later retrieval by the {@link #getMessage()}
+   *                method.
+   */
+  public BalanceTrackerBusyException(String message) {
+    super(message);
+  }
+}
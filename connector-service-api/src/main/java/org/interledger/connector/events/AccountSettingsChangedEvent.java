@@ -0,0 +1,32 @@
+package org.interledger.connector.events;
+
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.events.ConnectorEvent;
+import org.interledger.core.Immutable;
+
+/**
+ * Indicates the settings of an account were created or updated in this Connector's persistent store, so that any
+ * cached copies of the prior settings should be replaced.
+ */
+@Immutable
+public interface AccountSettingsChangedEvent extends ConnectorEvent<AccountSettings> {
+
+  static AccountSettingsChangedEventBuilder builder() {
+    return new AccountSettingsChangedEventBuilder();
+  }
+
+  /**
+   * The settings of the account, as they were persisted.
+   */
+  AccountSettings accountSettings();
+
+  default AccountSettings object() {
+    return this.accountSettings();
+  }
+
+  @Override
+  default String message() {
+    return String.format("Account Settings Changed: accountId=%s", accountSettings().accountId());
+  }
+
+}
@@ -0,0 +1,32 @@
+package org.interledger.connector.events;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.core.events.ConnectorEvent;
+import org.interledger.core.Immutable;
+
+/**
+ * Indicates the settings of an account were changed by another Connector that shares this Connector's persistent
+ * store, so that any cached copies of the settings (or anything derived from them) should be reloaded or evicted.
+ */
+@Immutable
+public interface AccountSettingsInvalidatedEvent extends ConnectorEvent<AccountId> {
+
+  static AccountSettingsInvalidatedEventBuilder builder() {
+    return new AccountSettingsInvalidatedEventBuilder();
+  }
+
+  /**
+   * The {@link AccountId} of the account whose settings changed.
+   */
+  AccountId accountId();
+
+  default AccountId object() {
+    return this.accountId();
+  }
+
+  @Override
+  default String message() {
+    return String.format("Account Settings Invalidated: accountId=%s", accountId());
+  }
+
+}
@@ -1,9 +1,12 @@
 package org.interledger.connector.links.filters;
 
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A filter is an object that performs filtering tasks on either the request to send a packet, or on the response, or
  * both.
@@ -32,4 +35,30 @@ public interface LinkFilter {
     LinkFilterChain filterChain
   );
 
+  /**
+   * <p>Applies logic to an outgoing Prepare packet without blocking the calling thread while the packet is
+   * in-flight.</p>
+   *
+   * <p>The default implementation is a blocking adapter that calls {@link #doFilter(AccountSettings,
+   * InterledgerPreparePacket, LinkFilterChain)} on the calling thread. Filters should override this method (typically by
+   * invoking {@link LinkFilterChain#doFilterAsync(AccountSettings, InterledgerPreparePacket)}).</p>
+   *
+   * @param destinationAccountSettings The destination {@link AccountSettings} that this outgoing Prepare packet is
+   *                                   being processed on.
+   * @param destinationPreparePacket   The outgoing {@link InterledgerPreparePacket} that will be forwarded on this
+   *                                   link.
+   * @param filterChain                The {@link LinkFilterChain} that this filter is operating inside of.
+   *
+   * @return A {@link CompletableFuture} that resolves to the ILP response packet as returned by the outbound peer.
+   */
+  default CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    AccountSettings destinationAccountSettings,
+    InterledgerPreparePacket destinationPreparePacket,
+    LinkFilterChain filterChain
+  ) {
+    return CompletableFutures.fromBlocking(
+      () -> this.doFilter(destinationAccountSettings, destinationPreparePacket, filterChain)
+    );
+  }
+
 }
@@ -1,9 +1,12 @@
 package org.interledger.connector.links.filters;
 
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * This filter-chain provides the developer a view into the invocation chain of a filtered send-data request. Filters
  * use the this contract to invoke the next filter in the chain, or if the calling filter is the last filter in the
@@ -27,4 +30,20 @@ public interface LinkFilterChain {
     AccountSettings destinationAccountSettings, InterledgerPreparePacket destinationPreparePacket
   );
 
+  /**
+   * Applies logic to an outgoing Prepare packet without blocking the calling thread while the packet is in-flight. By
+   * default, this method simply calls {@link #doFilter(AccountSettings, InterledgerPreparePacket)}.
+   *
+   * @param destinationAccountSettings The source {@link AccountSettings} that this outgoing Prepare packet is being
+   *                                   processed for.
+   * @param destinationPreparePacket   The outgoing {@link InterledgerPreparePacket} about to be processed.
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket}.
+   */
+  default CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    AccountSettings destinationAccountSettings, InterledgerPreparePacket destinationPreparePacket
+  ) {
+    return CompletableFutures.fromBlocking(() -> this.doFilter(destinationAccountSettings, destinationPreparePacket));
+  }
+
 }
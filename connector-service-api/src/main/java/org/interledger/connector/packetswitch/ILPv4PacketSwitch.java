@@ -1,6 +1,7 @@
 package org.interledger.connector.packetswitch;
 
 import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.connector.link.Link;
 import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
 import org.interledger.core.InterledgerErrorCode;
@@ -118,4 +119,24 @@ public interface ILPv4PacketSwitch {
   InterledgerResponsePacket switchPacket(
     AccountId accountId, InterledgerPreparePacket incomingPreparePacket
   );
+
+  /**
+   * <p>Routes an incoming ILPv4 request packet to a connected peer without blocking the calling thread while the
+   * packet is in-flight. The returned future resolves to the same response that {@link #switchPacket(AccountId,
+   * InterledgerPreparePacket)} would have returned.</p>
+   *
+   * <p>The default implementation simply calls {@link #switchPacket(AccountId, InterledgerPreparePacket)}.</p>
+   *
+   * @param accountId             The {@link AccountId} to send this packet from.
+   * @param incomingPreparePacket An incoming {@link InterledgerPreparePacket} that should be routed to the most
+   *                              appropriate peer connected to this Connector.
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket}, which will be of concrete
+   * type {@link InterledgerFulfillPacket} or {@link InterledgerRejectPacket}.
+   */
+  default CompletableFuture<InterledgerResponsePacket> switchPacketAsync(
+    AccountId accountId, InterledgerPreparePacket incomingPreparePacket
+  ) {
+    return CompletableFutures.fromBlocking(() -> this.switchPacket(accountId, incomingPreparePacket));
+  }
 }
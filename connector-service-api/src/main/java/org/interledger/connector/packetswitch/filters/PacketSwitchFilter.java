@@ -1,9 +1,12 @@
 package org.interledger.connector.packetswitch.filters;
 
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>A PacketSwitch filter performs filtering tasks on a request to send data, or on the response from a target link,
  * or both.</p>
@@ -25,4 +28,29 @@ public interface PacketSwitchFilter {
     AccountSettings sourceAccountSettings, InterledgerPreparePacket sourcePreparePacket, PacketSwitchFilterChain filterChain
   );
 
+  /**
+   * <p>Applies logic to an incoming Prepare packet without blocking the calling thread while the remainder of the
+   * filter chain is processed.</p>
+   *
+   * <p>The default implementation is a blocking adapter that calls {@link #doFilter(AccountSettings,
+   * InterledgerPreparePacket, PacketSwitchFilterChain)} on the calling thread, so that existing filters continue to work
+   * unmodified. Filters should override this method (typically by invoking {@link
+   * PacketSwitchFilterChain#doFilterAsync(AccountSettings, InterledgerPreparePacket)}) so that no thread is held while a
+   * packet is in-flight.</p>
+   *
+   * @param sourceAccountSettings The source {@link AccountSettings} that this Prepare packet is being processed on
+   *                              behalf of.
+   * @param sourcePreparePacket   The {@link InterledgerPreparePacket} about to be processed.
+   * @param filterChain           The {@link PacketSwitchFilterChain} that this filter is operating inside of.
+   *
+   * @return A {@link CompletableFuture} that resolves to an ILP response packet.
+   */
+  default CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    AccountSettings sourceAccountSettings, InterledgerPreparePacket sourcePreparePacket, PacketSwitchFilterChain filterChain
+  ) {
+    return CompletableFutures.fromBlocking(
+      () -> this.doFilter(sourceAccountSettings, sourcePreparePacket, filterChain)
+    );
+  }
+
 }
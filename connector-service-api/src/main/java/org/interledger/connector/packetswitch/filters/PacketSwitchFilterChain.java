@@ -1,10 +1,13 @@
 package org.interledger.connector.packetswitch.filters;
 
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.connector.link.Link;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>Provides a view into the invocation chain of a filtered Interledger Prepare/Fulfill/Reject request/response
  * flow.</p>
@@ -63,4 +66,21 @@ public interface PacketSwitchFilterChain {
    * @return An optionally-present {@link InterledgerResponsePacket}.
    */
   InterledgerResponsePacket doFilter(AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket);
+
+  /**
+   * Applies logic to an incoming Prepare packet without blocking the calling thread while the packet is in-flight. By
+   * default, this method simply calls {@link #doFilter(AccountSettings, InterledgerPreparePacket)}.
+   *
+   * @param sourceAccountSettings The source {@link AccountSettings} that this incoming Prepare packet is being
+   *                              processed for.
+   * @param preparePacket         The incoming {@link InterledgerPreparePacket} that was accepted from an incoming
+   *                              account/link.
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket}.
+   */
+  default CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+  ) {
+    return CompletableFutures.fromBlocking(() -> this.doFilter(sourceAccountSettings, preparePacket));
+  }
 }
@@ -92,4 +92,26 @@ public interface SettlementService {
   SettlementQuantity initiateLocalSettlement(
     String idempotencyKey, AccountSettings accountSettings, SettlementQuantity settlementQuantityInClearingUnits
   ) throws SettlementServiceException;
+
+  /**
+   * Communicate with the appropriate settlement engine to initiate a settlement payment, optionally without refunding
+   * the clearing balance if the settlement cannot be initiated, so that the caller can retry the same request (using
+   * the same {@code idempotencyKey}) before giving up.
+   *
+   * @param idempotencyKey                    A {@link String} used for idempotency.
+   * @param accountSettings                   An {@link AccountSettings} that identifies the account to settle.
+   * @param settlementQuantityInClearingUnits A {@link SettlementQuantity} in clearing-layer units so that this service
+   *                                          can deal only with settlement-layer units.
+   * @param refundOnFailure                   {@code true} to refund {@code settlementQuantityInClearingUnits} to the
+   *                                          clearing balance if the settlement cannot be initiated; {@code false} if
+   *                                          the caller will retry (or refund) it instead.
+   *
+   * @return A {@link SettlementQuantity} in the units of the clearing system.
+   *
+   * @throws SettlementServiceException if the settlement cannot be initiated for any reason.
+   */
+  SettlementQuantity initiateLocalSettlement(
+    String idempotencyKey, AccountSettings accountSettings, SettlementQuantity settlementQuantityInClearingUnits,
+    boolean refundOnFailure
+  ) throws SettlementServiceException;
 }
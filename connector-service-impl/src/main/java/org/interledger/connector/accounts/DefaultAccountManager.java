@@ -1,9 +1,13 @@
 package org.interledger.connector.accounts;
 
+import com.google.common.eventbus.EventBus;
 import okhttp3.HttpUrl;
 import org.interledger.codecs.ildcp.IldcpUtils;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
 import org.interledger.connector.link.Link;
 import org.interledger.connector.links.LinkManager;
+import org.interledger.connector.persistence.entities.AccountBalanceSettingsEntity;
+import org.interledger.connector.persistence.entities.AccountRateLimitSettingsEntity;
 import org.interledger.connector.persistence.entities.AccountSettingsEntity;
 import org.interledger.connector.persistence.entities.SettlementEngineDetailsEntity;
 import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
@@ -22,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.core.convert.ConversionService;
 
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
@@ -36,6 +41,7 @@ public class DefaultAccountManager implements AccountManager {
   private final LinkManager linkManager;
   private final ConversionService conversionService;
   private final SettlementEngineClient settlementEngineClient;
+  private final EventBus eventBus;
 
   /**
    * Required-args Constructor.
@@ -45,13 +51,15 @@ public class DefaultAccountManager implements AccountManager {
     final ConversionService conversionService,
     final AccountSettingsRepository accountSettingsRepository,
     final LinkManager linkManager,
-    final SettlementEngineClient settlementEngineClient
+    final SettlementEngineClient settlementEngineClient,
+    final EventBus eventBus
   ) {
     this.connectorSettingsSupplier = Objects.requireNonNull(connectorSettingsSupplier);
     this.accountSettingsRepository = Objects.requireNonNull(accountSettingsRepository);
     this.linkManager = Objects.requireNonNull(linkManager);
     this.conversionService = Objects.requireNonNull(conversionService);
     this.settlementEngineClient = Objects.requireNonNull(settlementEngineClient);
+    this.eventBus = Objects.requireNonNull(eventBus);
   }
 
   @Override
@@ -101,6 +109,7 @@ public class DefaultAccountManager implements AccountManager {
     final AccountSettings returnableAccountSettings = this.conversionService.convert(
       this.accountSettingsRepository.save(accountSettingsEntity), AccountSettings.class
     );
+    this.publishAccountSettingsChanged(returnableAccountSettings);
 
     // It is _not_ a requirement that a Connector startup with any accounts configured. Thus, the first account added
     // to the connector with a relationship type `PARENT` should trigger IL-DCP, but only if the operator address has
@@ -186,6 +195,54 @@ public class DefaultAccountManager implements AccountManager {
       "IL-DCP Succeeded! Operator Address: `{}`", connectorSettingsSupplier.get().operatorAddress().get()
     );
 
-    return conversionService.convert(updatedAccountSettings, AccountSettings.class);
+    final AccountSettings returnableAccountSettings =
+      conversionService.convert(updatedAccountSettings, AccountSettings.class);
+    this.publishAccountSettingsChanged(returnableAccountSettings);
+    return returnableAccountSettings;
+  }
+
+  @Override
+  public Optional<AccountSettings> updateAccount(final AccountId accountId, final AccountSettings accountSettings) {
+    Objects.requireNonNull(accountId);
+    Objects.requireNonNull(accountSettings);
+
+    return accountSettingsRepository.findByAccountId(accountId)
+      .map(entity -> {
+
+        // Ignore update accountId
+
+        entity.setAssetCode(accountSettings.assetCode());
+        entity.setAssetScale(accountSettings.assetScale());
+        entity.setAccountRelationship(accountSettings.accountRelationship());
+        entity.setBalanceSettings(
+          new AccountBalanceSettingsEntity(accountSettings.balanceSettings())
+        );
+        entity.setConnectionInitiator(accountSettings.isConnectionInitiator());
+        entity.setDescription(accountSettings.description());
+        entity.setCustomSettings(accountSettings.customSettings());
+        entity.setIlpAddressSegment(accountSettings.ilpAddressSegment());
+        entity.setInternal(accountSettings.isInternal());
+        entity.setLinkType(accountSettings.linkType());
+        entity.setMaximumPacketAmount(accountSettings.maximumPacketAmount());
+        entity.setRateLimitSettings(
+          new AccountRateLimitSettingsEntity(accountSettings.rateLimitSettings())
+        );
+        entity.setReceiveRoutes(accountSettings.isReceiveRoutes());
+        entity.setSendRoutes(accountSettings.isSendRoutes());
+
+        return accountSettingsRepository.save(entity);
+      })
+      .map(accountSettingsEntity -> conversionService.convert(accountSettingsEntity, AccountSettings.class))
+      .map(updatedAccountSettings -> {
+        this.publishAccountSettingsChanged(updatedAccountSettings);
+        return updatedAccountSettings;
+      });
+  }
+
+  /**
+   * Notify any listeners (e.g., caches of account settings) that an account was just persisted.
+   */
+  private void publishAccountSettingsChanged(final AccountSettings accountSettings) {
+    eventBus.post(AccountSettingsChangedEvent.builder().accountSettings(accountSettings).build());
   }
 }
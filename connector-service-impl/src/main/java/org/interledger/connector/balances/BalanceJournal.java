@@ -0,0 +1,646 @@
+package org.interledger.connector.balances;
+
+import org.interledger.connector.accounts.AccountId;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>An append-only journal of balance changes, stored in a directory of memory-mapped segment files.</p>
+ *
+ * <p>Each change is appended, with the next sequence number, before it is applied, and its status is then updated in
+ * place once the outcome is known. A change whose status is {@link Status#FAILED} was not applied, and must be applied
+ * later (see {@link JournalingBalanceTracker}). Because the journal is memory-mapped, appending a change costs no more
+ * than a memory copy, and it survives a crash of the process (though not of the host until {@link #force()} has been
+ * called).</p>
+ *
+ * <p>Each record has the form `{ length, sequence, type, status, amount, timestamp, account_id, idempotency_key }`.
+ * Its length is written (negated) first, and then once more after the rest of the record, so a record that was torn
+ * by a crash is skipped. Once a segment is full, a new segment, named after its first sequence number, is started.
+ * Segments that no longer contain any unresolved change are deleted once more than {@code retainedSegments} of them
+ * exist.</p>
+ *
+ * <p>Appends do not lock the journal: each one reserves its space (and its sequence number) in the current segment
+ * with an atomic cursor, and only an append that finds the segment full takes the lock, to start the next segment.
+ * That segment is pre-allocated as soon as its predecessor is started, so starting it only swaps a reference. Because
+ * the next segment is named before it is known how many records its predecessor will hold, each segment has a block of
+ * sequence numbers (one for each record that could fit in it), so sequence numbers are ordered, but not contiguous.
+ * A crash between reserving the space of a record and writing its length leaves a gap, which hides any records after
+ * it in that segment.</p>
+ *
+ * <p>Each journal has a random {@link #id()}, stored alongside its segments, so that the sequence numbers of
+ * different journals (e.g., of several Connectors that share a balance store) can be told apart.</p>
+ */
+public class BalanceJournal implements AutoCloseable {
+
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String ID_FILE = "journal.id";
+  private static final int STATUS_OFFSET = Integer.BYTES + Long.BYTES + 1;
+  private static final int FIXED_RECORD_BYTES =
+    Integer.BYTES + Long.BYTES + 1 + 1 + Long.BYTES + Long.BYTES + Short.BYTES + Short.BYTES;
+  /**
+   * A {@link Segment#cursor} holds the number of records reserved in its upper half, and their bytes in its lower half.
+   */
+  private static final long RECORD_COUNT_INCREMENT = 1L << Integer.SIZE;
+
+  private static final Logger logger = LoggerFactory.getLogger(BalanceJournal.class);
+
+  private final Path directory;
+  private final String id;
+  private final int segmentBytes;
+  private final int retainedSegments;
+
+  /**
+   * Every open segment (apart from {@link #nextSegment}), keyed by its first sequence number. Guarded by {@code this}.
+   */
+  private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+  private final ConcurrentSkipListMap<Long, Entry> failedEntries = new ConcurrentSkipListMap<>();
+
+  private volatile Segment currentSegment;
+  /**
+   * The pre-allocated segment that follows {@link #currentSegment}, if it is ready. Guarded by {@code this}.
+   */
+  private Segment nextSegment;
+  /**
+   * Whether {@link #nextSegment} is being pre-allocated. Guarded by {@code this}.
+   */
+  private boolean preallocating;
+
+  /**
+   * Required-args Constructor. Any existing journal in {@code directory} is opened, and appended to. A change that
+   * was in flight when the journal was last closed is logged for reconciliation, and marked with {@link
+   * Status#UNKNOWN} so that it is only ever logged once.
+   *
+   * @param directory        The directory to keep segment files in.
+   * @param segmentBytes     The size of each segment file.
+   * @param retainedSegments The number of fully-resolved segments to retain (e.g., for {@link #fold(Path)}).
+   */
+  public BalanceJournal(final Path directory, final int segmentBytes, final int retainedSegments) {
+    this.directory = Objects.requireNonNull(directory);
+    Preconditions.checkArgument(segmentBytes > FIXED_RECORD_BYTES * 2, "segmentBytes is too small");
+    Preconditions.checkArgument(retainedSegments >= 0, "retainedSegments must not be negative");
+    this.segmentBytes = segmentBytes;
+    this.retainedSegments = retainedSegments;
+
+    try {
+      Files.createDirectories(directory);
+      this.id = readOrCreateId(directory);
+      for (Path path : segmentPaths(directory)) {
+        final Segment segment = Segment.open(path, false);
+        segment.scan(entry -> {
+          if (entry.status() == Status.FAILED) {
+            failedEntries.put(entry.sequence(), entry);
+          } else if (entry.status() == Status.IN_FLIGHT) {
+            logger.error(
+              "RECONCILIATION REQUIRED: Balance change was in flight when the Connector stopped, so it may or may not " +
+                "have been applied. {}", entry
+            );
+            // Resolved as far as this journal is concerned, so that its segment can eventually be deleted.
+            writeStatus(entry, Status.UNKNOWN);
+            segment.numUnresolved.decrementAndGet();
+          }
+        });
+        segments.put(segment.firstSequence, segment);
+      }
+      // A segment that was pre-allocated but never started is discarded, so that appends continue where they left off.
+      while (segments.size() > 1 && segments.lastEntry().getValue().cursor.get() == 0) {
+        Files.delete(segments.pollLastEntry().getValue().path);
+      }
+      if (segments.isEmpty()) {
+        final Segment segment = newSegment(0);
+        segments.put(segment.firstSequence, segment);
+      }
+      this.currentSegment = segments.lastEntry().getValue();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.preallocating = true;
+    preallocateNextSegment(currentSegment);
+  }
+
+  /**
+   * @return The random identifier of this journal, which is the same every time it is opened.
+   */
+  public String id() {
+    return id;
+  }
+
+  /**
+   * Append a balance change, with a status of {@link Status#IN_FLIGHT}.
+   *
+   * @param type           The {@link Type} of the change.
+   * @param accountId      The {@link AccountId} of the account to change.
+   * @param amount         The amount of the change.
+   * @param idempotencyKey An optionally-present idempotency key (for incoming settlements, and keyed fulfills).
+   *
+   * @return An {@link Entry} that can be used to record the outcome of the change.
+   */
+  public Entry append(
+    final Type type, final AccountId accountId, final long amount, final Optional<String> idempotencyKey
+  ) {
+    Objects.requireNonNull(type);
+    Objects.requireNonNull(accountId);
+    Objects.requireNonNull(idempotencyKey);
+
+    final byte[] accountIdBytes = accountId.value().getBytes(StandardCharsets.UTF_8);
+    final byte[] keyBytes = idempotencyKey.orElse("").getBytes(StandardCharsets.UTF_8);
+    final int recordBytes = FIXED_RECORD_BYTES + accountIdBytes.length + keyBytes.length;
+    Preconditions.checkArgument(recordBytes <= segmentBytes / 2, "balance change is too large to journal");
+
+    while (true) {
+      final Segment segment = currentSegment;
+      // Counted before the space is reserved, so that the segment is not deleted while the record is being written.
+      segment.numUnresolved.incrementAndGet();
+      final long reservation = segment.cursor.getAndAdd(RECORD_COUNT_INCREMENT + recordBytes);
+      final long offset = reservation & 0xFFFFFFFFL;
+      if (offset + recordBytes <= segment.buffer.capacity()) {
+        final Entry entry = new Entry(
+          segment, (int) offset, segment.firstSequence + (reservation >>> Integer.SIZE), type, accountId, amount,
+          idempotencyKey, System.currentTimeMillis(), Status.IN_FLIGHT
+        );
+        // Marks the record as incomplete (and how far to skip it) until it has been written.
+        segment.buffer.putInt(entry.offset, -(recordBytes - Integer.BYTES));
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(entry.offset + Integer.BYTES);
+        buffer.putLong(entry.sequence)
+          .put((byte) type.ordinal())
+          .put((byte) Status.IN_FLIGHT.ordinal())
+          .putLong(amount)
+          .putLong(entry.timestampMillis)
+          .putShort((short) accountIdBytes.length)
+          .put(accountIdBytes)
+          .putShort((short) keyBytes.length)
+          .put(keyBytes);
+        // The length is written last, so that a partially-written record is never read.
+        segment.buffer.putInt(entry.offset, recordBytes - Integer.BYTES);
+        return entry;
+      }
+      segment.numUnresolved.decrementAndGet();
+      startNextSegment(segment);
+    }
+  }
+
+  /**
+   * Record that {@code entry} has been applied.
+   */
+  public void markApplied(final Entry entry) {
+    resolve(entry, Status.APPLIED);
+  }
+
+  /**
+   * Record that {@code entry} was not applied, and should not be (e.g., a prepare that was rejected).
+   */
+  public void markDiscarded(final Entry entry) {
+    resolve(entry, Status.DISCARDED);
+  }
+
+  /**
+   * Record that {@code entry} was not applied, but must be applied later.
+   */
+  public void markFailed(final Entry entry) {
+    writeStatus(entry, Status.FAILED);
+    failedEntries.put(entry.sequence, entry);
+  }
+
+  /**
+   * Record that {@code entry}, which had failed, is being applied again. If the Connector stops before the outcome is
+   * recorded, it will not be applied again automatically.
+   */
+  public void markRetrying(final Entry entry) {
+    failedEntries.remove(entry.sequence);
+    writeStatus(entry, Status.IN_FLIGHT);
+  }
+
+  /**
+   * @return Every {@link Entry} whose status is {@link Status#FAILED}, in sequence order.
+   */
+  public Collection<Entry> failedEntries() {
+    return Collections.unmodifiableCollection(failedEntries.values());
+  }
+
+  /**
+   * Flush every segment to disk.
+   */
+  public synchronized void force() {
+    segments.values().forEach(segment -> segment.buffer.force());
+  }
+
+  @Override
+  public synchronized void close() {
+    force();
+  }
+
+  private void resolve(final Entry entry, final Status status) {
+    failedEntries.remove(entry.sequence);
+    writeStatus(entry, status);
+    entry.segment.numUnresolved.decrementAndGet();
+  }
+
+  private void writeStatus(final Entry entry, final Status status) {
+    entry.segment.buffer.put(entry.offset + STATUS_OFFSET, (byte) status.ordinal());
+  }
+
+  /**
+   * Replace {@code full} with the next segment, unless another append already has. The next segment is normally
+   * pre-allocated already; the one after it is then pre-allocated without holding the lock.
+   */
+  private void startNextSegment(final Segment full) {
+    final Segment started;
+    synchronized (this) {
+      if (currentSegment != full) {
+        return;
+      }
+      boolean interrupted = false;
+      while (nextSegment == null && preallocating) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      try {
+        started = nextSegment != null ? nextSegment : newSegment(full.nextSegmentSequence());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      nextSegment = null;
+      preallocating = true;
+      segments.put(started.firstSequence, started);
+      currentSegment = started;
+    }
+    preallocateNextSegment(started);
+  }
+
+  /**
+   * Create the segment that follows {@code segment} (which must be the current segment), and delete any segments that
+   * are no longer needed, without holding the lock while doing either. Only one thread does this at a time.
+   */
+  private void preallocateNextSegment(final Segment segment) {
+    Segment preallocated = null;
+    try {
+      preallocated = newSegment(segment.nextSegmentSequence());
+    } catch (IOException e) {
+      logger.warn("Unable to pre-allocate journal segment; it will be created once it is needed. {}", e.getMessage());
+    }
+    final List<Segment> deleted;
+    synchronized (this) {
+      nextSegment = preallocated;
+      preallocating = false;
+      notifyAll();
+      deleted = removeResolvedSegments();
+    }
+    for (Segment resolved : deleted) {
+      try {
+        Files.deleteIfExists(resolved.path);
+      } catch (IOException e) {
+        logger.warn("Unable to delete resolved journal segment. path={} error={}", resolved.path, e.getMessage());
+      }
+    }
+  }
+
+  private Segment newSegment(final long firstSequence) throws IOException {
+    final Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    try (FileChannel channel = FileChannel.open(
+      path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE
+    )) {
+      channel.write(ByteBuffer.allocate(1), segmentBytes - 1);
+    }
+    return Segment.open(path, false);
+  }
+
+  /**
+   * Forget the oldest segments that have no unresolved changes, beyond the {@code retainedSegments} most recent. Must
+   * be called while holding the lock.
+   *
+   * @return The segments that were forgotten, whose files should be deleted.
+   */
+  private List<Segment> removeResolvedSegments() {
+    final List<Segment> resolved = segments.values().stream()
+      .filter(segment -> segment != currentSegment && segment.numUnresolved.get() == 0)
+      .collect(Collectors.toList());
+    final List<Segment> removed = new ArrayList<>();
+    for (int i = 0; i < resolved.size() - retainedSegments; i++) {
+      final Segment segment = resolved.get(i);
+      segments.remove(segment.firstSequence);
+      removed.add(segment);
+    }
+    return removed;
+  }
+
+  @VisibleForTesting
+  synchronized int getNumSegments() {
+    return segments.size();
+  }
+
+  /**
+   * Fold every change in the journal in {@code directory} into per-account totals, without modifying it. This is meant
+   * to be used offline (see {@link BalanceJournalTool}) to reconcile the balances in the balance store.
+   *
+   * @param directory The directory of a journal.
+   *
+   * @return The {@link AccountTotals} of each account, keyed by account id.
+   *
+   * @throws IOException If the journal cannot be read.
+   */
+  public static Map<AccountId, AccountTotals> fold(final Path directory) throws IOException {
+    final Map<AccountId, AccountTotals> totals = new TreeMap<>(
+      (first, second) -> first.value().compareTo(second.value())
+    );
+    for (Path path : segmentPaths(directory)) {
+      Segment.open(path, true).scan(entry ->
+        totals.computeIfAbsent(entry.accountId(), accountId -> new AccountTotals()).add(entry)
+      );
+    }
+    return totals;
+  }
+
+  private static String readOrCreateId(final Path directory) throws IOException {
+    final Path path = directory.resolve(ID_FILE);
+    if (!Files.exists(path)) {
+      Files.write(
+        path, UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SYNC
+      );
+    }
+    return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+  }
+
+  private static List<Path> segmentPaths(final Path directory) throws IOException {
+    try (Stream<Path> paths = Files.list(directory)) {
+      return paths
+        .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+        .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+        .sorted()
+        .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * The type of a balance change.
+   */
+  public enum Type {
+    PREPARE,
+    FULFILL,
+    REJECT,
+    INCOMING_SETTLEMENT,
+    OUTGOING_SETTLEMENT_REFUND,
+    /**
+     * The amount that a fulfill deducted from the clearing balance in order to settle it, which is journaled (as
+     * already applied) after the fulfill itself.
+     */
+    OUTGOING_SETTLEMENT;
+
+    /**
+     * @return The sign of the change that this type makes to an account's balance.
+     */
+    long sign() {
+      return this == PREPARE || this == OUTGOING_SETTLEMENT ? -1 : 1;
+    }
+  }
+
+  /**
+   * The status of a balance change.
+   */
+  public enum Status {
+    /**
+     * The change is being applied, or the Connector stopped while it was being applied.
+     */
+    IN_FLIGHT,
+    APPLIED,
+    DISCARDED,
+    /**
+     * The change could not be applied, and must be applied later.
+     */
+    FAILED,
+    /**
+     * The Connector stopped while the change was in flight, so it may or may not have been applied. It has been logged
+     * for reconciliation, and is not applied again.
+     */
+    UNKNOWN
+  }
+
+  /**
+   * A single balance change in the journal.
+   */
+  public static class Entry {
+    private final Segment segment;
+    private final int offset;
+    private final long sequence;
+    private final Type type;
+    private final AccountId accountId;
+    private final long amount;
+    private final Optional<String> idempotencyKey;
+    private final long timestampMillis;
+    private final Status status;
+
+    private Entry(
+      final Segment segment, final int offset, final long sequence, final Type type, final AccountId accountId,
+      final long amount, final Optional<String> idempotencyKey, final long timestampMillis, final Status status
+    ) {
+      this.segment = segment;
+      this.offset = offset;
+      this.sequence = sequence;
+      this.type = type;
+      this.accountId = accountId;
+      this.amount = amount;
+      this.idempotencyKey = idempotencyKey;
+      this.timestampMillis = timestampMillis;
+      this.status = status;
+    }
+
+    public long sequence() {
+      return sequence;
+    }
+
+    public Type type() {
+      return type;
+    }
+
+    public AccountId accountId() {
+      return accountId;
+    }
+
+    public long amount() {
+      return amount;
+    }
+
+    public Optional<String> idempotencyKey() {
+      return idempotencyKey;
+    }
+
+    public long timestampMillis() {
+      return timestampMillis;
+    }
+
+    /**
+     * @return The status of this change when it was read from (or appended to) the journal.
+     */
+    Status status() {
+      return status;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "Entry{sequence=%s, type=%s, accountId=%s, amount=%s, idempotencyKey=%s, timestampMillis=%s}",
+        sequence, type, accountId, amount, idempotencyKey, timestampMillis
+      );
+    }
+  }
+
+  /**
+   * The net balance changes of a single account.
+   */
+  public static class AccountTotals {
+    private long applied;
+    private long unresolved;
+    private long discarded;
+
+    private void add(final Entry entry) {
+      final long change = entry.type().sign() * entry.amount();
+      if (entry.status() == Status.APPLIED) {
+        applied += change;
+      } else if (entry.status() == Status.DISCARDED) {
+        discarded += change;
+      } else {
+        unresolved += change;
+      }
+    }
+
+    /**
+     * @return The net amount of every change that has been applied.
+     */
+    public long applied() {
+      return applied;
+    }
+
+    /**
+     * @return The net amount of every change that has failed, or whose outcome is unknown (including every change
+     * whose status is {@link Status#UNKNOWN}).
+     */
+    public long unresolved() {
+      return unresolved;
+    }
+
+    /**
+     * @return The net amount of every change that was deliberately not applied.
+     */
+    public long discarded() {
+      return discarded;
+    }
+  }
+
+  private static class Segment {
+    private final Path path;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    private final AtomicInteger numUnresolved = new AtomicInteger();
+    /**
+     * The number of records reserved in this segment (in the upper half), and the bytes they take up (in the lower).
+     */
+    private final AtomicLong cursor = new AtomicLong();
+
+    private Segment(final Path path, final MappedByteBuffer buffer) {
+      this.path = path;
+      final String fileName = path.getFileName().toString();
+      this.firstSequence = Long.parseLong(
+        fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length())
+      );
+      this.buffer = buffer;
+    }
+
+    private static Segment open(final Path path, final boolean readOnly) throws IOException {
+      final StandardOpenOption[] options = readOnly
+        ? new StandardOpenOption[] {StandardOpenOption.READ}
+        : new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE};
+      // The mapping remains valid after the channel has been closed.
+      try (FileChannel channel = FileChannel.open(path, options)) {
+        return new Segment(path, channel.map(
+          readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, channel.size()
+        ));
+      }
+    }
+
+    /**
+     * @return The first sequence number of the segment that follows this one, which is beyond any sequence number that
+     * a record of this segment can have.
+     */
+    private long nextSegmentSequence() {
+      return firstSequence + buffer.capacity() / FIXED_RECORD_BYTES;
+    }
+
+    /**
+     * Read every complete record in this segment, and leave {@code cursor} after the last record (complete or not).
+     */
+    private void scan(final Consumer<Entry> consumer) {
+      final ByteBuffer reader = buffer.duplicate();
+      int position = 0;
+      long numRecords = 0;
+      while (position + FIXED_RECORD_BYTES <= reader.limit()) {
+        final int length = reader.getInt(position);
+        if (length == 0 || position + Integer.BYTES + Math.abs(length) > reader.limit()) {
+          break;
+        }
+        numRecords++;
+        if (length < 0) {
+          // Torn by a crash, so it was never used.
+          position += Integer.BYTES - length;
+          continue;
+        }
+        reader.position(position + Integer.BYTES);
+        final long sequence = reader.getLong();
+        final Type type = Type.values()[reader.get()];
+        final Status status = Status.values()[reader.get()];
+        final long amount = reader.getLong();
+        final long timestampMillis = reader.getLong();
+        final byte[] accountId = new byte[reader.getShort()];
+        reader.get(accountId);
+        final byte[] key = new byte[reader.getShort()];
+        reader.get(key);
+
+        if (status == Status.IN_FLIGHT || status == Status.FAILED) {
+          numUnresolved.incrementAndGet();
+        }
+        consumer.accept(new Entry(
+          this, position, sequence, type, AccountId.of(new String(accountId, StandardCharsets.UTF_8)), amount,
+          key.length == 0 ? Optional.empty() : Optional.of(new String(key, StandardCharsets.UTF_8)),
+          timestampMillis, status
+        ));
+        position += Integer.BYTES + length;
+      }
+      cursor.set(numRecords * RECORD_COUNT_INCREMENT + position);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package org.interledger.connector.balances;
+
+import org.interledger.connector.accounts.AccountId;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * <p>An offline tool that folds a {@link BalanceJournal} into per-account totals, for reconciling the balances in the
+ * balance store after an outage. It only reads the journal, so it may be run against a copy of the journal of a live
+ * Connector.</p>
+ *
+ * <p>Usage: {@code java -cp <classpath> org.interledger.connector.balances.BalanceJournalTool <journal-directory>}</p>
+ */
+public class BalanceJournalTool {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: BalanceJournalTool <journal-directory>");
+      System.exit(1);
+    }
+    print(BalanceJournal.fold(Paths.get(args[0])), System.out);
+  }
+
+  /**
+   * Print {@code totals}, one account per line, as tab-separated values.
+   */
+  static void print(final Map<AccountId, BalanceJournal.AccountTotals> totals, final PrintStream output) {
+    output.println("account_id\tapplied\tunresolved\tdiscarded");
+    totals.forEach((accountId, accountTotals) -> output.printf(
+      "%s\t%d\t%d\t%d%n",
+      accountId.value(), accountTotals.applied(), accountTotals.unresolved(), accountTotals.discarded()
+    ));
+  }
+
+  private BalanceJournalTool() {
+  }
+}
@@ -0,0 +1,28 @@
+package org.interledger.connector.balances;
+
+/**
+ * Helpers shared by the {@link BalanceTracker}s that wrap another {@link BalanceTracker}.
+ */
+final class BalanceTrackers {
+
+  /**
+   * Close {@code delegate}, if it holds any resources. Only the outermost tracker is a Spring bean (and is closed on
+   * shutdown), so each wrapping tracker must close its delegate, e.g. so that a {@link MappedBalanceTracker} is flushed.
+   *
+   * @param delegate The {@link BalanceTracker} wrapped by the tracker that is being closed.
+   */
+  static void closeDelegate(final BalanceTracker delegate) {
+    if (delegate instanceof AutoCloseable) {
+      try {
+        ((AutoCloseable) delegate).close();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException("Unable to close " + delegate.getClass().getSimpleName(), e);
+      }
+    }
+  }
+
+  private BalanceTrackers() {
+  }
+}
@@ -0,0 +1,544 @@
+package org.interledger.connector.balances;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.metrics.BalanceTrackerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.ClusterStateFailureException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.ClusterTopology;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.interledger.connector.balances.LongRedisSerializer.serializeLong;
+
+/**
+ * <p>A {@link RedisBalanceTracker} that group-commits the balance updates made on the packet path (i.e., for
+ * prepare, fulfill and reject packets).</p>
+ *
+ * <p>Rather than invoking one Lua script per update, each update is placed onto a queue, and the calling thread waits
+ * for its result. A single background thread drains the queue and applies every waiting update using one invocation of
+ * a batch script, which applies the updates in order and returns a separate result for each (so, for example, a
+ * prepare that would exceed its account's minimum balance fails on its own without affecting the rest of the batch).
+ * While one batch is in flight, subsequent updates accumulate into the next batch, so the number of Redis round trips
+ * adapts to the load instead of growing linearly with it.</p>
+ *
+ * <p>A batch is sent once it holds {@code maxBatchSize} updates, or once {@code maxWait} has elapsed since its first
+ * update was queued, whichever is sooner. A {@code maxWait} of zero sends whatever has accumulated immediately.
+ * Settlement-related updates are infrequent, and are therefore not batched.</p>
+ *
+ * <p>With {@link RedisKeyLayout#CLUSTER}, a batch may contain accounts owned by different shards, so it is split into
+ * one script invocation per hash slot. The slots of each master are applied in turn, while different masters are sent
+ * their slots in parallel, so a batch takes about as long as its busiest master rather than the sum of all of them.</p>
+ *
+ * <p>At most {@code maxQueueSize} updates wait in the queue. Once it is full, further prepares are refused with a
+ * {@link BalanceTrackerBusyException} (so that their packets are rejected as busy rather than waiting), whereas
+ * fulfills and rejects wait for room, because they settle packets whose prepares have already been applied.</p>
+ *
+ * <p>Because every update is funnelled through the batching thread, the asynchronous updates of this tracker (e.g.,
+ * {@link #updateBalanceForPrepareAsync(AccountId, long, Optional)}) simply return their place in the queue instead of
+ * waiting for it. Callers therefore never block on (or contend for) a pooled Redis connection, and only the batching
+ * thread holds one. The depth of the queue is recorded in a {@link BalanceTrackerMetrics}, along with the latency of
+ * every batch and of every update (including the time it spent queued).</p>
+ *
+ * <p>The results of the asynchronous updates are delivered on a separate pool of threads, because the stages that
+ * callers chain onto them may do whatever a packet does next (e.g., send it over a blocking link, or make a blocking
+ * balance update, which would wait for the batching thread itself), and so must never run on the batching thread.</p>
+ */
+public class BatchingRedisBalanceTracker extends RedisBalanceTracker implements AutoCloseable {
+
+  private static final byte[] PREPARE = "P".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] REJECT = "R".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] FULFILL = "F".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NO_ARG = new byte[0];
+
+  // The number of arguments that the batch script expects for each update.
+  private static final int ARGS_PER_UPDATE = 4;
+  private static final long SUCCESS = 1L;
+  // How long the topology of a Redis Cluster is used for before it is read again. A stale topology only affects how
+  // slots are grouped, because every command is still routed to the master that currently serves its slot.
+  private static final long CLUSTER_TOPOLOGY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final LuaScript updateBalancesBatchScript;
+  private final int maxBatchSize;
+  private final long maxWaitNanos;
+  private final int maxQueueSize;
+  private final BalanceTrackerMetrics metrics;
+
+  private final BlockingQueue<PendingUpdate> pendingUpdates;
+  private final Thread batchingThread;
+  private final ExecutorService nodeBatchExecutor;
+  // Not shut down on close, because it completes updates that fail as the tracker closes. Its threads are daemons, and
+  // exit once idle.
+  private final ExecutorService callbackExecutor;
+  private final AtomicLong numBatches = new AtomicLong();
+
+  // Only accessed by the batching thread. Null until the topology is first read.
+  private Optional<ClusterTopology> clusterTopology;
+  private long clusterTopologyReadNanos;
+
+  private volatile boolean closed;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param updateBalancesBatchScript The script that applies a batch of prepare, fulfill and reject updates.
+   * @param keyLayout                 The {@link RedisKeyLayout} to name keys with.
+   * @param maxBatchSize              The maximum number of updates to send to Redis in a single batch.
+   * @param maxWait                   The maximum amount of time to wait for a batch to fill up before sending it.
+   * @param maxWaitUnit               The {@link TimeUnit} of {@code maxWait}.
+   * @param maxQueueSize              The maximum number of updates that may wait to be sent to Redis.
+   * @param metrics                   The {@link BalanceTrackerMetrics} to record Redis commands, updates and the depth
+   *                                  of the queue in.
+   */
+  public BatchingRedisBalanceTracker(
+    final RedisScript<Long> updateBalanceForPrepareScript,
+    final RedisScript<List> updateBalanceForFulfillScript,
+    final RedisScript<Long> updateBalanceForRejectScript,
+    final RedisScript<Long> updateBalanceForIncomingSettlementScript,
+    final RedisScript<Long> updateBalanceForSettlementRefundScript,
+    final RedisScript<List> updateBalancesBatchScript,
+    final RedisTemplate<String, String> stringRedisTemplate,
+    final RedisKeyLayout keyLayout,
+    final int maxBatchSize,
+    final long maxWait,
+    final TimeUnit maxWaitUnit,
+    final int maxQueueSize,
+    final BalanceTrackerMetrics metrics
+  ) {
+    super(
+      updateBalanceForPrepareScript, updateBalanceForFulfillScript, updateBalanceForRejectScript,
+      updateBalanceForIncomingSettlementScript, updateBalanceForSettlementRefundScript, stringRedisTemplate, keyLayout,
+      metrics
+    );
+    this.updateBalancesBatchScript = new LuaScript(updateBalancesBatchScript);
+
+    Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+    Preconditions.checkArgument(maxWait >= 0, "maxWait must not be negative");
+    Preconditions.checkArgument(maxQueueSize > 0, "maxQueueSize must be positive");
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitNanos = Objects.requireNonNull(maxWaitUnit).toNanos(maxWait);
+    this.maxQueueSize = maxQueueSize;
+    this.pendingUpdates = new LinkedBlockingQueue<>(maxQueueSize);
+    this.metrics = Objects.requireNonNull(metrics);
+    this.metrics.registerTracker("redis-batching", pendingUpdates::size);
+
+    this.nodeBatchExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("balance-tracker-batching-node-%d").setDaemon(true).build()
+    );
+    this.callbackExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("balance-tracker-callback-%d").setDaemon(true).build()
+    );
+    this.batchingThread = new Thread(this::processBatches, "balance-tracker-batching");
+    this.batchingThread.setDaemon(true);
+    this.batchingThread.start();
+  }
+
+  @Override
+  protected long executePrepare(final AccountId accountId, final long amount, final Optional<Long> minBalance) {
+    final List<Object> result = await(enqueue(prepareUpdate(accountId, amount, minBalance)));
+    return (Long) result.get(1);
+  }
+
+  @Override
+  protected List<Long> executeFulfill(
+    final AccountId accountId, final long amount, final Optional<Long> settleThreshold, final long settleTo
+  ) {
+    return toFulfillResult(await(enqueue(fulfillUpdate(accountId, amount, settleThreshold, settleTo))));
+  }
+
+  @Override
+  protected long executeReject(final AccountId accountId, final long amount) {
+    final List<Object> result = await(enqueue(new PendingUpdate(accountId, REJECT, amount, NO_ARG, NO_ARG)));
+    return (Long) result.get(1);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBalanceForPrepareAsync(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Objects.requireNonNull(minBalance, "minBalance must not be null");
+    // See RedisBalanceTracker#updateBalanceForPrepare for why this is not using unsigned longs
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    return enqueue(prepareUpdate(sourceAccountId, amount, minBalance)).handleAsync((result, error) -> {
+      if (error != null) {
+        if (unwrap(error) instanceof BalanceTrackerBusyException) {
+          throw new CompletionException(unwrap(error));
+        }
+        throw new CompletionException(new BalanceTrackerException(String.format(
+          "Error handling prepare with sourceAmount `%s` from accountId `%s`", amount, sourceAccountId
+        ), unwrap(error)));
+      }
+      return null;
+    }, callbackExecutor);
+  }
+
+  @Override
+  public CompletableFuture<UpdateBalanceForFulfillResponse> updateBalanceForFulfillAsync(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) {
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+    // This is here so that we don't hit the balance tracker for any 0-value packets.
+    Preconditions.checkArgument(amount > 0, "destinationAmount must be positive, but was " + amount);
+
+    final AccountId accountId = destinationAccountSettings.accountId();
+    return enqueue(fulfillUpdate(
+      accountId, amount,
+      destinationAccountSettings.balanceSettings().settleThreshold(),
+      destinationAccountSettings.balanceSettings().settleTo()
+    )).handleAsync((result, error) -> {
+      if (error != null) {
+        throw new CompletionException(new BalanceTrackerException(String.format(
+          "Error in updateBalanceForFulfill with amount `%s` for accountId `%s`", amount, accountId
+        ), unwrap(error)));
+      }
+      return toFulfillResponse(accountId, toFulfillResult(result));
+    }, callbackExecutor);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBalanceForRejectAsync(final AccountId sourceAccountId, final long amount) {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    return enqueue(new PendingUpdate(sourceAccountId, REJECT, amount, NO_ARG, NO_ARG)).handleAsync((result, error) -> {
+      if (error != null) {
+        throw new CompletionException(new BalanceTrackerException(String.format(
+          "Error in updateBalanceForReject with amount `%s` for accountId `%s`", amount, sourceAccountId
+        ), unwrap(error)));
+      }
+      return null;
+    }, callbackExecutor);
+  }
+
+  /**
+   * Stop batching. Any update that has not yet been sent to Redis fails with a {@link BalanceTrackerException}.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.batchingThread.interrupt();
+  }
+
+  /**
+   * @return The number of batches that have been sent to Redis.
+   */
+  @VisibleForTesting
+  long getNumBatches() {
+    return numBatches.get();
+  }
+
+  private PendingUpdate prepareUpdate(final AccountId accountId, final long amount, final Optional<Long> minBalance) {
+    return new PendingUpdate(
+      accountId, PREPARE, amount, minBalance.isPresent() ? serializeLong(minBalance.get()) : NO_ARG, NO_ARG
+    );
+  }
+
+  private PendingUpdate fulfillUpdate(
+    final AccountId accountId, final long amount, final Optional<Long> settleThreshold, final long settleTo
+  ) {
+    return new PendingUpdate(
+      accountId, FULFILL, amount,
+      settleThreshold.isPresent() ? serializeLong(settleThreshold.get()) : NO_ARG,
+      serializeLong(settleTo)
+    );
+  }
+
+  /**
+   * Convert the result of a fulfill, in the form `{ 1, clearing_balance, prepaid_amount, settle_amount }`, into the
+   * form returned by {@link #executeFulfill}.
+   */
+  private static List<Long> toFulfillResult(final List<Object> result) {
+    final List<Long> response = new ArrayList<>(3);
+    for (int i = 1; i < result.size(); i++) {
+      response.add((Long) result.get(i));
+    }
+    return response;
+  }
+
+  /**
+   * Queue {@code update} for the next batch.
+   *
+   * @return A {@link CompletableFuture} that completes with the result of the update, in the form `{ 1, ...values }`.
+   */
+  private CompletableFuture<List<Object>> enqueue(final PendingUpdate update) {
+    if (closed) {
+      update.result.completeExceptionally(new BalanceTrackerException("Balance tracker has been closed"));
+      return update.result;
+    }
+
+    if (update.type == PREPARE) {
+      if (!pendingUpdates.offer(update)) {
+        update.result.completeExceptionally(new BalanceTrackerBusyException(String.format(
+          "Balance tracker already has %s updates waiting", maxQueueSize
+        )));
+        return update.result;
+      }
+    } else {
+      try {
+        pendingUpdates.put(update);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        update.result.completeExceptionally(new BalanceTrackerException("Interrupted while queueing update", e));
+        return update.result;
+      }
+    }
+
+    // The batching thread may have drained the queue for the last time after the check above. If so, nothing will
+    // process this update, so fail it here (unless the batching thread took it first, in which case it completes it).
+    if (closed && pendingUpdates.remove(update)) {
+      update.result.completeExceptionally(new BalanceTrackerException("Balance tracker has been closed"));
+    }
+    return update.result;
+  }
+
+
+  /**
+   * Wait for {@code result}, rethrowing any failure as it was raised.
+   */
+  private static List<Object> await(final CompletableFuture<List<Object>> result) {
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      final Throwable cause = unwrap(e);
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static Throwable unwrap(final Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+  }
+
+  /**
+   * The body of the batching thread.
+   */
+  private void processBatches() {
+    final List<PendingUpdate> batch = new ArrayList<>(maxBatchSize);
+    try {
+      while (!closed) {
+        collectBatch(batch);
+        executeBatch(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // Nothing will process these anymore.
+      pendingUpdates.drainTo(batch);
+      final BalanceTrackerException closedException = new BalanceTrackerException("Balance tracker has been closed");
+      batch.forEach(update -> complete(update, null, closedException));
+      nodeBatchExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Block until at least one update is pending, and then collect updates into {@code batch} until it is full or until
+   * {@code maxWaitNanos} has elapsed.
+   */
+  private void collectBatch(final List<PendingUpdate> batch) throws InterruptedException {
+    batch.add(pendingUpdates.take());
+    pendingUpdates.drainTo(batch, maxBatchSize - batch.size());
+
+    final long deadline = System.nanoTime() + maxWaitNanos;
+    while (batch.size() < maxBatchSize) {
+      final long remainingNanos = deadline - System.nanoTime();
+      if (remainingNanos <= 0) {
+        return;
+      }
+      final PendingUpdate update = pendingUpdates.poll(remainingNanos, TimeUnit.NANOSECONDS);
+      if (update == null) {
+        return;
+      }
+      batch.add(update);
+      pendingUpdates.drainTo(batch, maxBatchSize - batch.size());
+    }
+  }
+
+  /**
+   * Apply every update in {@code batch}, using a single invocation of the batch script per hash slot.
+   */
+  private void executeBatch(final List<PendingUpdate> batch) {
+    if (getKeyLayout() != RedisKeyLayout.CLUSTER) {
+      executeSingleSlotBatch(batch);
+      return;
+    }
+
+    // Preserve the order of the updates within each slot (and therefore within each account).
+    final Map<Integer, List<PendingUpdate>> batchesBySlot = new LinkedHashMap<>();
+    for (PendingUpdate update : batch) {
+      batchesBySlot.computeIfAbsent(
+        ClusterSlotHashUtil.calculateSlot(toRedisAccountsKey(update.accountId)), $ -> new ArrayList<>()
+      ).add(update);
+    }
+    if (batchesBySlot.size() == 1) {
+      batchesBySlot.values().forEach(this::executeSingleSlotBatch);
+      return;
+    }
+
+    // Send each master its own slots from a separate thread (applying this thread's share itself), and wait for all of
+    // them, so that the next batch never overtakes this one for any account.
+    final Iterator<List<List<PendingUpdate>>> batchesByNode = groupByNode(batchesBySlot.values()).iterator();
+    final List<List<PendingUpdate>> localBatches = batchesByNode.next();
+    final List<CompletableFuture<Void>> nodeFutures = new ArrayList<>();
+    while (batchesByNode.hasNext()) {
+      final List<List<PendingUpdate>> nodeBatches = batchesByNode.next();
+      nodeFutures.add(CompletableFuture.runAsync(
+        () -> nodeBatches.forEach(this::executeSingleSlotBatch), nodeBatchExecutor
+      ));
+    }
+    localBatches.forEach(this::executeSingleSlotBatch);
+    CompletableFuture.allOf(nodeFutures.toArray(new CompletableFuture[0])).join();
+  }
+
+  /**
+   * Group the per-slot batches of a batch by the master that serves their slot, keeping their order within each master.
+   * If the topology of the cluster cannot be read, every slot is placed in the same group, and so is applied in turn.
+   */
+  private Collection<List<List<PendingUpdate>>> groupByNode(final Collection<List<PendingUpdate>> batchesBySlot) {
+    final Optional<ClusterTopology> topology;
+    try {
+      topology = getClusterTopology();
+    } catch (RuntimeException e) {
+      logger.warn("Unable to read the topology of the Redis Cluster, so applying its slots one at a time", e);
+      return Collections.singletonList(new ArrayList<>(batchesBySlot));
+    }
+    if (!topology.isPresent()) {
+      return Collections.singletonList(new ArrayList<>(batchesBySlot));
+    }
+
+    // A slot that is not served by any known master (e.g., during a failover) is grouped under null.
+    final Map<RedisClusterNode, List<List<PendingUpdate>>> batchesByNode = new LinkedHashMap<>();
+    for (List<PendingUpdate> slotBatch : batchesBySlot) {
+      RedisClusterNode node;
+      try {
+        node = topology.get().getKeyServingMasterNode(toRedisAccountsKey(slotBatch.get(0).accountId));
+      } catch (ClusterStateFailureException e) {
+        node = null;
+      }
+      batchesByNode.computeIfAbsent(node, $ -> new ArrayList<>()).add(slotBatch);
+    }
+    return batchesByNode.values();
+  }
+
+  /**
+   * @return The topology of the Redis Cluster, read at most once every {@link #CLUSTER_TOPOLOGY_REFRESH_NANOS}.
+   */
+  private Optional<ClusterTopology> getClusterTopology() {
+    final long nowNanos = System.nanoTime();
+    if (clusterTopology == null || nowNanos - clusterTopologyReadNanos >= CLUSTER_TOPOLOGY_REFRESH_NANOS) {
+      clusterTopology = readClusterTopology();
+      clusterTopologyReadNanos = nowNanos;
+    }
+    return clusterTopology;
+  }
+
+  /**
+   * Apply every update in {@code batch} using a single invocation of the batch script, and complete each update with
+   * its own result.
+   */
+  private void executeSingleSlotBatch(final List<PendingUpdate> batch) {
+    final int numUpdates = batch.size();
+    final byte[][] keysAndArgs = new byte[numUpdates * (ARGS_PER_UPDATE + 1)][];
+    for (int i = 0; i < numUpdates; i++) {
+      final PendingUpdate update = batch.get(i);
+      keysAndArgs[i] = toRedisAccountsKey(update.accountId);
+
+      final int argsOffset = numUpdates + i * ARGS_PER_UPDATE;
+      keysAndArgs[argsOffset] = update.type;
+      keysAndArgs[argsOffset + 1] = serializeLong(update.amount);
+      keysAndArgs[argsOffset + 2] = update.arg1;
+      keysAndArgs[argsOffset + 3] = update.arg2;
+    }
+
+    final List<Object> results;
+    try {
+      results = evalSha(updateBalancesBatchScript, ReturnType.MULTI, numUpdates, keysAndArgs, numUpdates);
+      numBatches.incrementAndGet();
+    } catch (RuntimeException e) {
+      logger.error("Unable to apply batch of {} balance updates", numUpdates, e);
+      batch.forEach(update -> complete(update, null, e));
+      return;
+    }
+
+    for (int i = 0; i < numUpdates; i++) {
+      final PendingUpdate update = batch.get(i);
+      @SuppressWarnings("unchecked") final List<Object> result = (List<Object>) results.get(i);
+      if (SUCCESS == (Long) result.get(0)) {
+        complete(update, result, null);
+      } else {
+        complete(update, null,
+          new BalanceTrackerException(new String((byte[]) result.get(1), StandardCharsets.UTF_8))
+        );
+      }
+    }
+  }
+
+  /**
+   * Complete {@code update} with either {@code result} or {@code error}. This only wakes a caller that is waiting for
+   * the update, or hands its asynchronous stages to the callback executor, so it never blocks the batching thread.
+   */
+  private void complete(final PendingUpdate update, final List<Object> result, final Throwable error) {
+    metrics.recordUpdate(System.nanoTime() - update.enqueuedNanos);
+    if (error == null) {
+      update.result.complete(result);
+    } else {
+      update.result.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * A balance update that is waiting to be sent to Redis, in the form expected by the batch script.
+   */
+  private static final class PendingUpdate {
+
+    private final AccountId accountId;
+    private final byte[] type;
+    private final long amount;
+    private final byte[] arg1;
+    private final byte[] arg2;
+    private final CompletableFuture<List<Object>> result = new CompletableFuture<>();
+    private final long enqueuedNanos = System.nanoTime();
+
+    private PendingUpdate(
+      final AccountId accountId, final byte[] type, final long amount, final byte[] arg1, final byte[] arg2
+    ) {
+      this.accountId = Objects.requireNonNull(accountId);
+      this.type = Objects.requireNonNull(type);
+      this.amount = amount;
+      this.arg1 = Objects.requireNonNull(arg1);
+      this.arg2 = Objects.requireNonNull(arg2);
+    }
+  }
+}
@@ -0,0 +1,457 @@
+package org.interledger.connector.balances;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>Applies the balance updates of fulfilled packets asynchronously, so that a Fulfill packet can be returned
+ * upstream without waiting for the {@link BalanceTracker} (or for any settlement that the update triggers).</p>
+ *
+ * <p>Updates are partitioned into lanes by account, and each lane is applied in order by a single thread, so the
+ * updates of any one account are applied in the order that they were submitted. Each lane holds a bounded number of
+ * updates in memory. When a lane is full, updates are appended to a spill file for that lane instead, and every later
+ * update of the lane is spilled too until the file has been drained, which preserves their order. The lane's thread
+ * drains the spill file as soon as its in-memory updates have been applied, and {@code fsync}s it first, so a Fulfill
+ * packet never waits for the disk (at the cost of losing updates spilled within that window if the host crashes).
+ * Spill files are also drained when the queue is next started, so overflowing updates survive a restart.</p>
+ *
+ * <p>An update that the {@link BalanceTracker} fails to apply is spilled too, and a spilled update that fails is
+ * retried (without advancing past it) every {@link #POLL_MILLIS} until it is applied, so no update is dropped while
+ * the balance tracker is unavailable.</p>
+ *
+ * <p>Every update is given an idempotency key when it is submitted, which is spilled with it and used for every attempt
+ * to apply it (see {@link BalanceTracker#updateBalanceForFulfill(String, AccountSettings, long)}). An attempt whose
+ * outcome was lost (e.g., a timeout after the balance tracker applied it) can therefore be retried without crediting
+ * the account twice.</p>
+ *
+ * <p>A spilled update only records its idempotency key, account id and amount, so the {@link AccountSettings} of the
+ * account are resolved again when it is applied. Each spill file records how much of it has been applied, which is
+ * advanced after each update, but only {@code fsync}ed along with the next spilled updates (or on close), so that the
+ * lane does not wait for the disk for every update. A crash may therefore re-apply spilled updates, which their
+ * idempotency keys turn into no-ops. A spill directory must not be shared by two queues.</p>
+ */
+public class FulfillUpdateQueue implements AutoCloseable {
+
+  private static final long POLL_MILLIS = 100;
+  private static final int HEADER_BYTES = Long.BYTES;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final BalanceTracker balanceTracker;
+  private final Listener listener;
+  private final Function<AccountId, Optional<AccountSettings>> accountSettingsResolver;
+  private final long closeTimeoutMillis;
+  private final Lane[] lanes;
+  // Distinguishes the idempotency keys of this queue from those of any other queue (or of a previous run).
+  private final String idempotencyKeyPrefix = "fulfill:" + UUID.randomUUID() + ":";
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  private volatile boolean closed;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param balanceTracker          The {@link BalanceTracker} to apply updates to.
+   * @param listener                A {@link Listener} to notify after each update has been applied.
+   * @param accountSettingsResolver Resolves the {@link AccountSettings} of a spilled update.
+   * @param numLanes                The number of lanes (and threads) to apply updates with.
+   * @param laneCapacity            The number of updates that each lane holds in memory before spilling.
+   * @param spillDirectory          The directory to keep the spill file of each lane in.
+   * @param closeTimeoutMillis      How long {@link #close()} waits for in-memory updates to be applied, after which
+   *                                any that remain are spilled.
+   */
+  public FulfillUpdateQueue(
+    final BalanceTracker balanceTracker,
+    final Listener listener,
+    final Function<AccountId, Optional<AccountSettings>> accountSettingsResolver,
+    final int numLanes,
+    final int laneCapacity,
+    final Path spillDirectory,
+    final long closeTimeoutMillis
+  ) {
+    this.balanceTracker = Objects.requireNonNull(balanceTracker);
+    this.listener = Objects.requireNonNull(listener);
+    this.accountSettingsResolver = Objects.requireNonNull(accountSettingsResolver);
+    Preconditions.checkArgument(numLanes > 0, "numLanes must be positive");
+    Preconditions.checkArgument(laneCapacity > 0, "laneCapacity must be positive");
+    Objects.requireNonNull(spillDirectory);
+    this.closeTimeoutMillis = closeTimeoutMillis;
+
+    final ThreadFactory threadFactory =
+      new ThreadFactoryBuilder().setNameFormat("fulfill-update-queue-%d").setDaemon(true).build();
+    try {
+      Files.createDirectories(spillDirectory);
+      this.lanes = new Lane[numLanes];
+      for (int i = 0; i < numLanes; i++) {
+        lanes[i] = new Lane(laneCapacity, spillDirectory.resolve("lane-" + i + ".spill"));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    for (Lane lane : lanes) {
+      lane.thread = threadFactory.newThread(lane::run);
+      lane.thread.start();
+    }
+  }
+
+  /**
+   * Queue the balance update of a fulfilled packet. This never blocks on the {@link BalanceTracker} (nor waits for a
+   * spilled update to be {@code fsync}ed), and never throws: an update that can be neither queued nor spilled is
+   * logged as requiring reconciliation.
+   *
+   * @param destinationAccountSettings The {@link AccountSettings} of the account that the packet was fulfilled by.
+   * @param amount                     The positive amount of units to add to the account's balance.
+   */
+  public void submit(final AccountSettings destinationAccountSettings, final long amount) {
+    Objects.requireNonNull(destinationAccountSettings);
+    final FulfillUpdate update =
+      new FulfillUpdate(destinationAccountSettings, amount, idempotencyKeyPrefix, nextSequence.getAndIncrement());
+    final Lane lane = lanes[Math.floorMod(destinationAccountSettings.accountId().hashCode(), lanes.length)];
+    synchronized (lane) {
+      if (!closed && !lane.spilling && lane.updates.offer(update)) {
+        return;
+      }
+      lane.spill(update);
+    }
+  }
+
+  /**
+   * Whether any lane is currently spilling updates to disk.
+   */
+  @VisibleForTesting
+  boolean isSpilling() {
+    for (Lane lane : lanes) {
+      synchronized (lane) {
+        if (lane.spilling) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Stop applying updates. In-memory updates are applied for up to {@code closeTimeoutMillis}, and any that remain
+   * are spilled, so that they will be applied when the queue is next started.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(closeTimeoutMillis);
+    for (Lane lane : lanes) {
+      try {
+        lane.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    for (Lane lane : lanes) {
+      synchronized (lane) {
+        final List<FulfillUpdate> remaining = new ArrayList<>();
+        lane.updates.drainTo(remaining);
+        remaining.forEach(lane::spill);
+        try {
+          lane.spillFile.force(false);
+          lane.spillFile.close();
+        } catch (IOException e) {
+          logger.warn("Unable to close fulfill spill file", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Apply a single update, and notify {@link #listener}, unless the update had already been applied (or the balance
+   * tracker has taken it over, and notifies its own listener once it applies it).
+   *
+   * @return {@code false} if the {@link BalanceTracker} could not apply the update, but might once it recovers.
+   */
+  private boolean apply(final String idempotencyKey, final AccountSettings accountSettings, final long amount) {
+    final BalanceTracker.UpdateBalanceForFulfillResponse response;
+    try {
+      final Optional<BalanceTracker.UpdateBalanceForFulfillResponse> applied =
+        balanceTracker.updateBalanceForFulfill(idempotencyKey, accountSettings, amount);
+      if (!applied.isPresent()) {
+        logger.debug(
+          "Fulfill update had already been applied, or will be by the balance tracker. accountId={} amount={} " +
+            "idempotencyKey={}",
+          accountSettings.accountId(), amount, idempotencyKey
+        );
+        return true;
+      }
+      response = applied.get();
+    } catch (BalanceTrackerException e) {
+      logger.warn(
+        "Unable to update balance after receiving a valid Fulfillment; will retry. accountId={} amount={} error={}",
+        accountSettings.accountId(), amount, e.getMessage()
+      );
+      return false;
+    } catch (Exception e) {
+      logger.error(String.format(
+        "RECONCILIATION REQUIRED: Unable to update balance after receiving a valid Fulfillment. " +
+          "accountId=%s amount=%s. error==%s",
+        accountSettings.accountId(), amount, e.getMessage()
+        ), e
+      );
+      return true;
+    }
+    try {
+      listener.onBalanceUpdated(accountSettings, amount, response);
+    } catch (Exception e) {
+      logger.error("Fulfill listener failed. accountId={} amount={}", accountSettings.accountId(), amount, e);
+    }
+    return true;
+  }
+
+  /**
+   * Notified after the balance update of each fulfilled packet has been applied (e.g., to initiate a settlement).
+   */
+  @FunctionalInterface
+  public interface Listener {
+
+    /**
+     * @param destinationAccountSettings The {@link AccountSettings} of the account whose balance was updated.
+     * @param amount                     The amount that was added to the account's balance.
+     * @param response                   The result of {@link BalanceTracker#updateBalanceForFulfill}.
+     */
+    void onBalanceUpdated(
+      AccountSettings destinationAccountSettings, long amount, BalanceTracker.UpdateBalanceForFulfillResponse response
+    );
+  }
+
+  private static class FulfillUpdate {
+    private final AccountSettings accountSettings;
+    private final long amount;
+    private final String idempotencyKeyPrefix;
+    private final long sequence;
+
+    private FulfillUpdate(
+      final AccountSettings accountSettings, final long amount, final String idempotencyKeyPrefix, final long sequence
+    ) {
+      this.accountSettings = accountSettings;
+      this.amount = amount;
+      this.idempotencyKeyPrefix = idempotencyKeyPrefix;
+      this.sequence = sequence;
+    }
+
+    /**
+     * The key is only built when the update is applied or spilled, off the response path.
+     */
+    private String idempotencyKey() {
+      return idempotencyKeyPrefix + sequence;
+    }
+  }
+
+  /**
+   * A partition of the updates, with its own in-memory queue, spill file and thread. Spilling and the {@code
+   * spilling} flag are guarded by the lane's monitor.
+   */
+  private class Lane {
+    private final BlockingQueue<FulfillUpdate> updates;
+    private final FileChannel spillFile;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    private Thread thread;
+
+    private boolean spilling;
+    // Whether anything has been spilled since the spill file was last fsynced.
+    private boolean unforced;
+    /**
+     * The offset of the first spilled update that has not been applied yet. Only the lane's thread advances this.
+     */
+    private long readOffset;
+
+    private Lane(final int capacity, final Path spillPath) throws IOException {
+      this.updates = new ArrayBlockingQueue<>(capacity);
+      this.spillFile = FileChannel.open(
+        spillPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+      );
+      if (spillFile.size() < HEADER_BYTES) {
+        writeReadOffset(HEADER_BYTES);
+        spillFile.force(false);
+      }
+      header.clear();
+      spillFile.read(header, 0);
+      header.flip();
+      this.readOffset = header.getLong();
+      // Updates left over from a previous run are older than any new update, so new updates must follow them.
+      this.spilling = readOffset < spillFile.size();
+    }
+
+    private void run() {
+      try {
+        while (!closed || !updates.isEmpty()) {
+          FulfillUpdate update = updates.poll();
+          if (update == null) {
+            if (!closed && drainSpillFile()) {
+              continue;
+            }
+            // Nothing is spilled, or a spilled update must be retried later.
+            update = updates.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          }
+          if (update != null && !apply(update.idempotencyKey(), update.accountSettings, update.amount)) {
+            synchronized (this) {
+              // Applied after the rest of the lane, once the balance tracker recovers.
+              spill(update);
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        logger.error("Unable to read fulfill spill file; spilled updates will be applied on restart", e);
+      }
+    }
+
+    /**
+     * Apply every spilled update, and then resume queueing in memory. Because a spilling lane never queues in memory,
+     * this only runs once every in-memory update of the lane has been applied.
+     *
+     * @return {@code true} if any spilled updates were drained; {@code false} if nothing was spilled, or if a spilled
+     * update could not be applied (in which case it is retried by the next call).
+     */
+    private boolean drainSpillFile() throws IOException {
+      while (!closed) {
+        final boolean force;
+        synchronized (this) {
+          if (!spilling) {
+            return false;
+          }
+          if (readOffset >= spillFile.size()) {
+            // Rare (once per spill), and the offset must be durable before anything is spilled after it.
+            spillFile.truncate(HEADER_BYTES);
+            writeReadOffset(HEADER_BYTES);
+            spillFile.force(false);
+            spilling = false;
+            unforced = false;
+            return true;
+          }
+          force = unforced;
+          unforced = false;
+        }
+        if (force) {
+          // Updates keep being spilled while this runs, so they are fsynced together.
+          spillFile.force(false);
+        }
+        final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, readOffset);
+        final ByteBuffer record = ByteBuffer.allocate(length.getInt());
+        readFully(record, readOffset + Integer.BYTES);
+
+        final byte[] idempotencyKey = new byte[record.getInt()];
+        record.get(idempotencyKey);
+        final byte[] accountId = new byte[record.remaining() - Long.BYTES];
+        record.get(accountId);
+        final long amount = record.getLong();
+        if (!applySpilled(
+          new String(idempotencyKey, StandardCharsets.UTF_8),
+          AccountId.of(new String(accountId, StandardCharsets.UTF_8)),
+          amount
+        )) {
+          return false;
+        }
+
+        final long nextReadOffset;
+        synchronized (this) {
+          readOffset += Integer.BYTES + record.capacity();
+          nextReadOffset = readOffset;
+        }
+        // Only this thread writes the offset, and it does not overlap with spilled records, so it is written without
+        // holding the monitor (which submit() needs), and is fsynced along with the next spilled updates.
+        writeReadOffset(nextReadOffset);
+      }
+      return false;
+    }
+
+    /**
+     * @return {@code false} if the update could not be applied, but might be once the balance tracker recovers.
+     */
+    private boolean applySpilled(final String idempotencyKey, final AccountId accountId, final long amount) {
+      final Optional<AccountSettings> accountSettings = accountSettingsResolver.apply(accountId);
+      if (accountSettings.isPresent()) {
+        return apply(idempotencyKey, accountSettings.get(), amount);
+      }
+      logger.error(
+        "RECONCILIATION REQUIRED: Unable to apply spilled fulfill update of unknown account. accountId={} amount={}",
+        accountId, amount
+      );
+      return true;
+    }
+
+    /**
+     * Append {@code update} to the spill file, which is fsynced by the lane's thread before it drains the file (see
+     * {@link #drainSpillFile()}). Must be called while holding this lane's monitor.
+     */
+    private void spill(final FulfillUpdate update) {
+      final byte[] idempotencyKey = update.idempotencyKey().getBytes(StandardCharsets.UTF_8);
+      final byte[] accountId = update.accountSettings.accountId().value().getBytes(StandardCharsets.UTF_8);
+      final int recordBytes = Integer.BYTES + idempotencyKey.length + accountId.length + Long.BYTES;
+      final ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + recordBytes);
+      record.putInt(recordBytes)
+        .putInt(idempotencyKey.length).put(idempotencyKey)
+        .put(accountId)
+        .putLong(update.amount)
+        .flip();
+      try {
+        long position = spillFile.size();
+        while (record.hasRemaining()) {
+          position += spillFile.write(record, position);
+        }
+        spilling = true;
+        unforced = true;
+      } catch (IOException e) {
+        logger.error(String.format(
+          "RECONCILIATION REQUIRED: Unable to spill fulfill update. accountId=%s amount=%s. error==%s",
+          update.accountSettings.accountId(), update.amount, e.getMessage()
+          ), e
+        );
+      }
+    }
+
+    /**
+     * Write {@code offset} to the header of the spill file, without waiting for it to be {@code fsync}ed.
+     */
+    private void writeReadOffset(final long offset) throws IOException {
+      header.clear();
+      header.putLong(offset).flip();
+      while (header.hasRemaining()) {
+        spillFile.write(header, header.position());
+      }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+      while (buffer.hasRemaining()) {
+        if (spillFile.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("Truncated fulfill spill file");
+        }
+      }
+      buffer.flip();
+    }
+  }
+}
@@ -1,99 +1,119 @@
 package org.interledger.connector.balances;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Maps;
 import org.interledger.connector.accounts.AccountBalanceSettings;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.core.settlement.SettlementQuantity;
 
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Tracks balances in-memory in a thread-safe manner.
  *
+ * Each account's clearing balance and prepaid amount are held together in a single immutable {@link Balance} cell,
+ * which is replaced using a compare-and-set loop. This means that every update (including its minimum-balance check)
+ * is applied atomically without taking any locks, and that updates to different accounts never contend.
+ *
  * Note that this implementation is not meant for production usage because the values it tracks are not durable.
  * Instead, consider using {@link RedisBalanceTracker} or another persistent implementation of {@link BalanceTracker}.
  */
 public class InMemoryBalanceTracker implements BalanceTracker {
 
-  private final Map<AccountId, AtomicLong> clearingBalances;
-  private final Map<AccountId, AtomicLong> prepaidBalances;
+  private final ConcurrentMap<AccountId, AtomicReference<Balance>> balances;
 
   public InMemoryBalanceTracker() {
-    this.clearingBalances = Maps.newConcurrentMap();
-    this.prepaidBalances = Maps.newConcurrentMap();
+    this.balances = new ConcurrentHashMap<>();
   }
 
   @Override
   public AccountBalance balance(AccountId accountId) {
-    return AccountBalance.builder()
-      .accountId(accountId)
-      .clearingBalance(getOrCreateBalance(this.clearingBalances, accountId).longValue())
-      .prepaidAmount(getOrCreateBalance(this.prepaidBalances, accountId).longValue())
-      .build();
+    Objects.requireNonNull(accountId);
+
+    final AtomicReference<Balance> cell = this.balances.get(accountId);
+    final Balance balance = cell == null ? Balance.ZERO : cell.get();
+    return toAccountBalance(accountId, balance);
   }
 
   @Override
   public void updateBalanceForPrepare(
     AccountId sourceAccountId, long amount, Optional<Long> minBalance
   ) throws BalanceTrackerException {
-    final AccountBalance accountBalance = this.balance(sourceAccountId);
+    final AtomicReference<Balance> cell = getOrCreateBalance(sourceAccountId);
+
+    Balance current;
+    Balance updated;
+    do {
+      current = cell.get();
 
-    // Throw an exception if minBalance is violated....
-    minBalance.ifPresent(mb -> {
-      if (accountBalance.netBalance().longValue() - amount < mb) {
+      // Throw an exception if minBalance is violated....
+      if (minBalance.isPresent() && current.netBalance() - amount < minBalance.get()) {
         throw new BalanceTrackerException(String.format(
           "Incoming prepare of %s would bring account %s under its minimum balance. Current balance: %s, min balance: %s",
-          amount, sourceAccountId, accountBalance.netBalance(), mb)
+          amount, sourceAccountId, current.netBalance(), minBalance.get())
         );
       }
-    });
-
-    if (accountBalance.prepaidAmount() >= amount) {
-      // Reduce prepaid_amount by 1
-      this.decrement(prepaidBalances, sourceAccountId, amount);
-    } else if (accountBalance.prepaidAmount() >= 0L) {
-      final long subFromBalance = amount - accountBalance.prepaidAmount();
-      this.prepaidBalances.put(sourceAccountId, new AtomicLong());
-      this.decrement(clearingBalances, sourceAccountId, subFromBalance);
-    } else {
-      // Decrement the clearingBalance by `sourceAmount`
-      this.decrement(this.clearingBalances, sourceAccountId, amount);
-    }
+
+      if (current.prepaidAmount >= amount) {
+        // Reduce prepaid_amount by `amount`
+        updated = new Balance(current.clearingBalance, current.prepaidAmount - amount);
+      } else if (current.prepaidAmount >= 0L) {
+        final long subFromBalance = amount - current.prepaidAmount;
+        updated = new Balance(current.clearingBalance - subFromBalance, 0L);
+      } else {
+        // Decrement the clearingBalance by `sourceAmount`
+        updated = new Balance(current.clearingBalance - amount, current.prepaidAmount);
+      }
+    } while (!cell.compareAndSet(current, updated));
   }
 
   @Override
   public UpdateBalanceForFulfillResponse updateBalanceForFulfill(
     final AccountSettings destinationAccountSettings, final long amount
   ) throws BalanceTrackerException {
-    this.increment(this.clearingBalances, destinationAccountSettings.accountId(), amount);
-
-    final AccountBalance currentBalance = this.balance(destinationAccountSettings.accountId());
-    final long amountToSettle = this.computeSettlementQuantity(destinationAccountSettings, currentBalance);
+    final AccountId accountId = destinationAccountSettings.accountId();
+    final AccountBalanceSettings balanceSettings = destinationAccountSettings.balanceSettings();
+    final AtomicReference<Balance> cell = getOrCreateBalance(accountId);
+
+    // As in `updateBalanceForFulfill.lua`, the settlement amount is computed, and the clearing balance is reset to
+    // `settleTo`, in the same atomic update as the credit, so that concurrent fulfills never settle the same balance
+    // twice.
+    Balance current;
+    Balance credited;
+    long amountToSettle;
+    Balance updated;
+    do {
+      current = cell.get();
+      credited = new Balance(current.clearingBalance + amount, current.prepaidAmount);
+      amountToSettle = this.computeSettlementQuantity(balanceSettings, credited.clearingBalance);
+      updated = amountToSettle > 0 ? new Balance(balanceSettings.settleTo(), credited.prepaidAmount) : credited;
+    } while (!cell.compareAndSet(current, updated));
 
     return UpdateBalanceForFulfillResponse.builder()
-      .accountBalance(currentBalance)
+      // Like the Lua script, report the balance as credited, before any reset to `settleTo`.
+      .accountBalance(toAccountBalance(accountId, credited))
       .clearingAmountToSettle(amountToSettle)
       .build();
   }
 
   @Override
   public void updateBalanceForReject(AccountId sourceAccountId, long amount) throws BalanceTrackerException {
-    this.increment(this.clearingBalances, sourceAccountId, amount);
+    this.incrementClearingBalance(sourceAccountId, amount);
   }
 
   @Override
-  public void updateBalanceForIncomingSettlement(String idempotencyKey, AccountId accountId, long amount) throws BalanceTrackerException {
-    this.increment(this.clearingBalances, accountId, amount);
+  public boolean updateBalanceForIncomingSettlement(String idempotencyKey, AccountId accountId, long amount) throws BalanceTrackerException {
+    this.incrementClearingBalance(accountId, amount);
+    return true;
   }
 
   @Override
   public void updateBalanceForOutgoingSettlementRefund(AccountId accountId, long amount) throws BalanceTrackerException {
-    this.increment(this.clearingBalances, accountId, amount);
+    this.incrementClearingBalance(accountId, amount);
   }
 
   /**
@@ -101,72 +121,79 @@ public class InMemoryBalanceTracker implements BalanceTracker {
    */
   @VisibleForTesting
   public void resetAllBalances() {
-    this.clearingBalances.clear();
-    this.prepaidBalances.clear();
+    this.balances.clear();
   }
 
-  private void increment(
-    final Map<AccountId, AtomicLong> balanceTracker, final AccountId accountId, final long amount
-  ) {
-    final AtomicLong balance = getOrCreateBalance(balanceTracker, accountId);
-    balance.getAndAdd(amount);
-  }
+  private Balance incrementClearingBalance(final AccountId accountId, final long amount) {
+    final AtomicReference<Balance> cell = getOrCreateBalance(accountId);
 
-  private void decrement(
-    final Map<AccountId, AtomicLong> balanceTracker, final AccountId accountId, final long amount
-  ) {
-    final AtomicLong balance = getOrCreateBalance(balanceTracker, accountId);
-    balance.getAndAdd(0 - amount);
+    Balance current;
+    Balance updated;
+    do {
+      current = cell.get();
+      updated = new Balance(current.clearingBalance + amount, current.prepaidAmount);
+    } while (!cell.compareAndSet(current, updated));
+    return updated;
   }
 
-  private synchronized AtomicLong getOrCreateBalance(
-    final Map<AccountId, AtomicLong> balanceTracker, final AccountId accountId
-  ) {
-    Objects.requireNonNull(balanceTracker);
+  private AtomicReference<Balance> getOrCreateBalance(final AccountId accountId) {
     Objects.requireNonNull(accountId);
 
-    return Optional.ofNullable(balanceTracker.get(accountId))
-      .orElseGet(() -> {
-        balanceTracker.put(accountId, new AtomicLong());
-        return balanceTracker.get(accountId);
-      });
+    // Avoid computeIfAbsent on the common path, because it locks the bin even when the account already exists.
+    final AtomicReference<Balance> cell = this.balances.get(accountId);
+    return cell != null ? cell : this.balances.computeIfAbsent(accountId, id -> new AtomicReference<>(Balance.ZERO));
+  }
+
+  private AccountBalance toAccountBalance(final AccountId accountId, final Balance balance) {
+    return AccountBalance.builder()
+      .accountId(accountId)
+      .clearingBalance(balance.clearingBalance)
+      .prepaidAmount(balance.prepaidAmount)
+      .build();
   }
 
   /**
-   * <p>Compute a {@link SettlementQuantity} based upon the current balance of an account. Using the {@link
+   * <p>Compute a {@link SettlementQuantity} based upon the clearing balance of an account. Using the {@link
    * AccountBalanceSettings#settleThreshold()} and {@link AccountBalanceSettings#settleTo()}, this method can
-   * compute the amount of a settlement payment by determining if the current balance exceeds the settlement threshold,
-   * and if so, by how much.</p>
+   * compute the amount of a settlement payment by determining if the clearing balance has reached the settlement
+   * threshold, and if so, by how much it exceeds {@code settleTo}. This matches {@code updateBalanceForFulfill.lua}.</p>
    *
    * <p>Note that this method returns a {@link SettlementQuantity} with the scale of the ILP clearing layer, and NOT
    * with the scale of the settlement layer, if these two values diverge.</p>
    *
-   * @param accountSettings A {@link AccountSettings} for the account to compute a settlement payment amount for.
-   * @param accountBalance  A {@link AccountBalance} containing a snapshot in time of the account's balance (note this
-   *                        value may be stale).
+   * @param balanceSettings A {@link AccountBalanceSettings} for the account to compute a settlement payment amount for.
+   * @param clearingBalance The clearing balance of the account.
    *
-   * @return An optionally-present {@link SettlementQuantity} with the scale of the ILP clearing layer.
+   * @return The amount to settle with the scale of the ILP clearing layer, or 0 if no settlement is due.
    */
-  private long computeSettlementQuantity(
-    final AccountSettings accountSettings, final AccountBalance accountBalance
-  ) {
-    Objects.requireNonNull(accountSettings, "accountSettings must not be null");
-    Objects.requireNonNull(accountBalance, "accountBalance must not be null");
-
-    final long settleTo = accountSettings.balanceSettings().settleTo();
-    final long clearingBalance = accountBalance.clearingBalance();
-
-    return accountSettings.balanceSettings().settleThreshold()
-      // If there is a settle_threshold, we need to return the propert settlement quantity, if any.
-      .map(settleThreshold -> {
-        final long settlementAmount;
-        if (clearingBalance > settleThreshold && clearingBalance > settleTo) {
-          settlementAmount = clearingBalance - settleTo;
-        } else {
-          settlementAmount = 0;
-        }
-        return settlementAmount;
-      })
+  private long computeSettlementQuantity(final AccountBalanceSettings balanceSettings, final long clearingBalance) {
+    Objects.requireNonNull(balanceSettings, "balanceSettings must not be null");
+
+    final long settleTo = balanceSettings.settleTo();
+    return balanceSettings.settleThreshold()
+      // If there is a settle_threshold, we need to return the proper settlement quantity, if any.
+      .filter(settleThreshold -> clearingBalance >= settleThreshold && clearingBalance >= settleTo)
+      .map(settleThreshold -> clearingBalance - settleTo)
       .orElse(0L);
   }
+
+  /**
+   * An immutable snapshot of the clearing balance and prepaid amount of a single account.
+   */
+  private static final class Balance {
+
+    private static final Balance ZERO = new Balance(0L, 0L);
+
+    private final long clearingBalance;
+    private final long prepaidAmount;
+
+    private Balance(final long clearingBalance, final long prepaidAmount) {
+      this.clearingBalance = clearingBalance;
+      this.prepaidAmount = prepaidAmount;
+    }
+
+    private long netBalance() {
+      return clearingBalance + prepaidAmount;
+    }
+  }
 }
@@ -0,0 +1,368 @@
+package org.interledger.connector.balances;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.balances.BalanceJournal.Entry;
+import org.interledger.connector.balances.BalanceJournal.Status;
+import org.interledger.connector.balances.BalanceJournal.Type;
+import org.interledger.connector.core.CompletableFutures;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>A {@link BalanceTracker} that records every balance change in a {@link BalanceJournal} before applying it to a
+ * delegate, so that changes which cannot be applied (e.g., because Redis is unreachable) are not lost.</p>
+ *
+ * <p>A prepare that fails is simply discarded, because its packet is rejected. Any other change that fails (a reject,
+ * fulfill, incoming settlement or settlement refund) must still be applied, so it is marked as failed, and a background
+ * replayer applies failed changes to the delegate, in sequence order, once it recovers. A replayed fulfill is passed
+ * to a {@link FulfillUpdateQueue.Listener}, so that any settlement it triggers is still initiated.</p>
+ *
+ * <p>The sequence number of each change serves as its idempotency key: a change is marked as in flight before it is
+ * replayed, and one that was in flight when the Connector stopped is logged for reconciliation rather than replayed.
+ * Each replay also passes {@code journal:<journal id>:<sequence>} to the keyed updates of the delegate (see {@link
+ * BalanceTracker#updateBalanceForFulfill(String, AccountSettings, long)}), so a replay that the delegate applied while
+ * reporting a failure (e.g., a timeout after Redis executed the update) is not applied again by the next replay.
+ * Incoming settlements are replayed with their own idempotency key, so they are never applied twice at all. The
+ * first attempt of a change is not keyed (to keep idempotency keys off the packet path), so a first attempt that the
+ * delegate applied while reporting a failure is still applied again when it is replayed.</p>
+ *
+ * <p>A fulfill that the caller gives its own idempotency key (e.g., from a {@link FulfillUpdateQueue}) is journaled,
+ * applied and replayed with that key instead. If it fails, the journal alone owns its retry: the failure is not
+ * thrown back to the caller, which would otherwise apply it again alongside the replay.</p>
+ *
+ * <p>The amount that a fulfill deducts from the clearing balance in order to settle it is journaled as an
+ * {@link Type#OUTGOING_SETTLEMENT}, and an incoming settlement that the delegate ignored as a duplicate is marked as
+ * discarded, so that the journal folds to the balance changes that were actually applied (see {@link
+ * BalanceJournal#fold}).</p>
+ *
+ * <p>The asynchronous updates of the packet path are journaled in the same way, and are applied using the
+ * asynchronous updates of the delegate, so this tracker never blocks on a delegate that does not.</p>
+ */
+public class JournalingBalanceTracker implements BalanceTracker, AutoCloseable {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final BalanceTracker delegate;
+  private final BalanceJournal journal;
+  private final Function<AccountId, Optional<AccountSettings>> accountSettingsResolver;
+  private final FulfillUpdateQueue.Listener fulfillListener;
+  private final ScheduledExecutorService replayExecutor;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param delegate                The {@link BalanceTracker} to apply changes to.
+   * @param journal                 The {@link BalanceJournal} to record changes in.
+   * @param accountSettingsResolver Resolves the {@link AccountSettings} of a replayed fulfill.
+   * @param fulfillListener         A {@link FulfillUpdateQueue.Listener} to notify after a fulfill has been replayed.
+   * @param replayInterval          How often to replay failed changes (and to flush the journal to disk).
+   * @param replayUnit              The {@link TimeUnit} of {@code replayInterval}.
+   */
+  public JournalingBalanceTracker(
+    final BalanceTracker delegate,
+    final BalanceJournal journal,
+    final Function<AccountId, Optional<AccountSettings>> accountSettingsResolver,
+    final FulfillUpdateQueue.Listener fulfillListener,
+    final long replayInterval,
+    final TimeUnit replayUnit
+  ) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.journal = Objects.requireNonNull(journal);
+    this.accountSettingsResolver = Objects.requireNonNull(accountSettingsResolver);
+    this.fulfillListener = Objects.requireNonNull(fulfillListener);
+    Preconditions.checkArgument(replayInterval > 0, "replayInterval must be positive");
+
+    this.replayExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("balance-journal-replay").setDaemon(true).build()
+    );
+    this.replayExecutor.scheduleWithFixedDelay(this::replayQuietly, replayInterval, replayInterval, replayUnit);
+  }
+
+  @Override
+  public AccountBalance balance(final AccountId accountId) {
+    return delegate.balance(accountId);
+  }
+
+  @Override
+  public void updateBalanceForPrepare(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) throws BalanceTrackerException {
+    final Entry entry = journal.append(Type.PREPARE, sourceAccountId, amount, Optional.empty());
+    try {
+      delegate.updateBalanceForPrepare(sourceAccountId, amount, minBalance);
+    } catch (RuntimeException e) {
+      journal.markDiscarded(entry);
+      throw e;
+    }
+    journal.markApplied(entry);
+  }
+
+  @Override
+  public UpdateBalanceForFulfillResponse updateBalanceForFulfill(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    final UpdateBalanceForFulfillResponse response = apply(
+      journal.append(Type.FULFILL, destinationAccountSettings.accountId(), amount, Optional.empty()),
+      () -> delegate.updateBalanceForFulfill(destinationAccountSettings, amount)
+    );
+    appendSettlement(destinationAccountSettings.accountId(), response);
+    return response;
+  }
+
+  /**
+   * As {@link #updateBalanceForFulfill(AccountSettings, long)}, except that the change is applied (and replayed) with
+   * {@code idempotencyKey}, and a change that fails is replayed by this tracker rather than thrown, so that the caller
+   * does not apply it too.
+   *
+   * @return The response of the update, or empty if it had already been applied, or has failed and will be replayed
+   * (in which case {@link #fulfillListener} is notified once it is).
+   */
+  @Override
+  public Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+    final String idempotencyKey, final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    final Entry entry =
+      journal.append(Type.FULFILL, destinationAccountSettings.accountId(), amount, Optional.of(idempotencyKey));
+    final Optional<UpdateBalanceForFulfillResponse> response;
+    try {
+      response = delegate.updateBalanceForFulfill(idempotencyKey, destinationAccountSettings, amount);
+    } catch (RuntimeException e) {
+      journal.markFailed(entry);
+      logger.warn("Balance change could not be applied, and will be replayed. {}", entry);
+      return Optional.empty();
+    }
+    if (response.isPresent()) {
+      journal.markApplied(entry);
+      appendSettlement(destinationAccountSettings.accountId(), response.get());
+    } else {
+      // A duplicate of a change that has already been applied (and journaled).
+      journal.markDiscarded(entry);
+    }
+    return response;
+  }
+
+  @Override
+  public void updateBalanceForReject(final AccountId sourceAccountId, final long amount)
+    throws BalanceTrackerException {
+    apply(journal.append(Type.REJECT, sourceAccountId, amount, Optional.empty()), () -> {
+      delegate.updateBalanceForReject(sourceAccountId, amount);
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBalanceForPrepareAsync(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) {
+    final Entry entry = journal.append(Type.PREPARE, sourceAccountId, amount, Optional.empty());
+    return CompletableFutures.fromBlocking(
+      () -> delegate.updateBalanceForPrepareAsync(sourceAccountId, amount, minBalance)
+    ).thenCompose(Function.identity()).whenComplete((result, error) -> {
+      if (error != null) {
+        journal.markDiscarded(entry);
+      } else {
+        journal.markApplied(entry);
+      }
+    });
+  }
+
+  @Override
+  public CompletableFuture<UpdateBalanceForFulfillResponse> updateBalanceForFulfillAsync(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) {
+    return applyAsync(
+      journal.append(Type.FULFILL, destinationAccountSettings.accountId(), amount, Optional.empty()),
+      () -> delegate.updateBalanceForFulfillAsync(destinationAccountSettings, amount)
+    ).thenApply(response -> {
+      appendSettlement(destinationAccountSettings.accountId(), response);
+      return response;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBalanceForRejectAsync(final AccountId sourceAccountId, final long amount) {
+    return applyAsync(
+      journal.append(Type.REJECT, sourceAccountId, amount, Optional.empty()),
+      () -> delegate.updateBalanceForRejectAsync(sourceAccountId, amount)
+    );
+  }
+
+  @Override
+  public boolean updateBalanceForIncomingSettlement(
+    final String idempotencyKey, final AccountId accountId, final long amount
+  ) {
+    final Entry entry = journal.append(Type.INCOMING_SETTLEMENT, accountId, amount, Optional.of(idempotencyKey));
+    final boolean applied;
+    try {
+      applied = delegate.updateBalanceForIncomingSettlement(idempotencyKey, accountId, amount);
+    } catch (RuntimeException e) {
+      journal.markFailed(entry);
+      logger.warn("Balance change could not be applied, and will be replayed. {}", entry);
+      throw e;
+    }
+    if (applied) {
+      journal.markApplied(entry);
+    } else {
+      // A duplicate of a settlement that has already been applied (and journaled).
+      journal.markDiscarded(entry);
+    }
+    return applied;
+  }
+
+  @Override
+  public void updateBalanceForOutgoingSettlementRefund(final AccountId accountId, final long amount)
+    throws BalanceTrackerException {
+    apply(journal.append(Type.OUTGOING_SETTLEMENT_REFUND, accountId, amount, Optional.empty()), () -> {
+      delegate.updateBalanceForOutgoingSettlementRefund(accountId, amount);
+      return null;
+    });
+  }
+
+  /**
+   * Apply every failed change to the delegate, in sequence order, stopping at the first one that fails again.
+   */
+  @VisibleForTesting
+  void replay() {
+    for (Entry entry : journal.failedEntries()) {
+      journal.markRetrying(entry);
+      final Status status;
+      try {
+        status = replay(entry);
+      } catch (RuntimeException e) {
+        journal.markFailed(entry);
+        logger.warn("Unable to replay balance change; will retry. {}", entry, e);
+        return;
+      }
+      if (status == Status.APPLIED) {
+        journal.markApplied(entry);
+        logger.info("Replayed balance change. {}", entry);
+      } else {
+        journal.markDiscarded(entry);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    replayExecutor.shutdownNow();
+    // The delegate may still complete (and so resolve) journaled changes while it is closed.
+    BalanceTrackers.closeDelegate(delegate);
+    journal.close();
+  }
+
+  private <T> T apply(final Entry entry, final Supplier<T> update) {
+    final T result;
+    try {
+      result = update.get();
+    } catch (RuntimeException e) {
+      journal.markFailed(entry);
+      logger.warn("Balance change could not be applied, and will be replayed. {}", entry);
+      throw e;
+    }
+    journal.markApplied(entry);
+    return result;
+  }
+
+  /**
+   * Asynchronously apply {@code entry} using {@code update}, as in {@link #apply(Entry, Supplier)}.
+   */
+  private <T> CompletableFuture<T> applyAsync(final Entry entry, final Supplier<CompletableFuture<T>> update) {
+    return CompletableFutures.fromBlocking(update).thenCompose(Function.identity()).whenComplete((result, error) -> {
+      if (error != null) {
+        journal.markFailed(entry);
+        logger.warn("Balance change could not be applied, and will be replayed. {}", entry);
+      } else {
+        journal.markApplied(entry);
+      }
+    });
+  }
+
+  /**
+   * Record that the fulfill that returned {@code response} deducted an amount from the clearing balance of {@code
+   * accountId} in order to settle it, if it did.
+   */
+  private void appendSettlement(final AccountId accountId, final UpdateBalanceForFulfillResponse response) {
+    if (response.clearingAmountToSettle() > 0) {
+      // Applied atomically with the fulfill.
+      journal.markApplied(
+        journal.append(Type.OUTGOING_SETTLEMENT, accountId, response.clearingAmountToSettle(), Optional.empty())
+      );
+    }
+  }
+
+  /**
+   * Apply {@code entry} to the delegate, unless a previous replay of it has already been applied.
+   *
+   * @return {@link Status#APPLIED} if the change has been applied (by this replay or a previous one), or {@link
+   * Status#DISCARDED} if it cannot ever be applied, or is a duplicate of an incoming settlement that was applied.
+   */
+  private Status replay(final Entry entry) {
+    final String idempotencyKey = "journal:" + journal.id() + ":" + entry.sequence();
+    switch (entry.type()) {
+      case FULFILL: {
+        // A fulfill that was journaled with its caller's key is replayed with that key.
+        final String fulfillKey = entry.idempotencyKey().orElse(idempotencyKey);
+        final Optional<AccountSettings> accountSettings = accountSettingsResolver.apply(entry.accountId());
+        if (!accountSettings.isPresent()) {
+          logger.error("RECONCILIATION REQUIRED: Unable to replay fulfill of unknown account. {}", entry);
+          return Status.DISCARDED;
+        }
+        final Optional<UpdateBalanceForFulfillResponse> response =
+          delegate.updateBalanceForFulfill(fulfillKey, accountSettings.get(), entry.amount());
+        if (!response.isPresent()) {
+          // A previous replay was applied, and its listener notified.
+          return Status.APPLIED;
+        }
+        appendSettlement(entry.accountId(), response.get());
+        try {
+          fulfillListener.onBalanceUpdated(accountSettings.get(), entry.amount(), response.get());
+        } catch (Exception e) {
+          // The balance has been updated, so the change must not be replayed again.
+          logger.error("Fulfill listener failed. {}", entry, e);
+        }
+        return Status.APPLIED;
+      }
+      case REJECT: {
+        delegate.updateBalanceForReject(idempotencyKey, entry.accountId(), entry.amount());
+        return Status.APPLIED;
+      }
+      case INCOMING_SETTLEMENT: {
+        final boolean applied = delegate.updateBalanceForIncomingSettlement(
+          entry.idempotencyKey().orElseThrow(IllegalStateException::new), entry.accountId(), entry.amount()
+        );
+        return applied ? Status.APPLIED : Status.DISCARDED;
+      }
+      case OUTGOING_SETTLEMENT_REFUND: {
+        delegate.updateBalanceForOutgoingSettlementRefund(idempotencyKey, entry.accountId(), entry.amount());
+        return Status.APPLIED;
+      }
+      default: {
+        throw new IllegalStateException("Unable to replay balance change of type " + entry.type());
+      }
+    }
+  }
+
+  private void replayQuietly() {
+    try {
+      replay();
+      journal.force();
+    } catch (Exception e) {
+      logger.error("Unable to replay balance journal", e);
+    }
+  }
+}
@@ -0,0 +1,487 @@
+package org.interledger.connector.balances;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * <p>A write-behind {@link BalanceTracker} that keeps the shared balance tracker (typically {@link
+ * RedisBalanceTracker}) off the critical path of most packets, while keeping the balance of every account bounded
+ * across all Connectors in a cluster.</p>
+ *
+ * <p>For an account with a minimum balance, this node leases a slice of the account's headroom by debiting the
+ * shared tracker up front (which enforces the minimum balance across the whole cluster), and then applies prepares
+ * against that lease in memory. A lease is sized to cover {@code packetsPerLease} packets like the one that caused it
+ * to be taken. If the shared tracker cannot grant a full lease (i.e., the account is close to its minimum balance),
+ * the prepare is instead applied directly to the shared tracker, exactly as if this class were not in use. Leases that
+ * go unused for a whole flush interval are returned.</p>
+ *
+ * <p>Prepares for accounts without a minimum balance, as well as rejects and fulfills, are accumulated in memory as
+ * net deltas, which are flushed to the shared tracker every {@code flushInterval}. A fulfill is only applied
+ * synchronously if its account has a settlement threshold that this node's projection of the balance could reach, so
+ * that settlements are still triggered by the shared tracker as soon as they are due. Deferred fulfills are flushed as
+ * fulfills too, so a settlement that becomes due because of other nodes' fulfills is handed to a {@link
+ * FulfillUpdateQueue.Listener}.</p>
+ *
+ * <p>Consequently, the balance held by the shared tracker is always lower than the true balance by, at most, the
+ * unused leases held by each node plus any credits that have not yet been flushed. Balances returned by {@link
+ * #balance(AccountId)} include this node's outstanding leases and deltas, but not those of other nodes.</p>
+ *
+ * <p>Most updates only touch memory, so the asynchronous updates of the packet path rely on the blocking defaults of
+ * {@link BalanceTracker}, except for fulfills that must be applied to the shared tracker, which use its asynchronous
+ * fulfill. A prepare still waits for the shared tracker whenever it renews a lease (i.e., once every {@code
+ * packetsPerLease} packets) or cannot be covered by one.</p>
+ */
+public class LeasingBalanceTracker implements BalanceTracker, AutoCloseable {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final BalanceTracker delegate;
+  private final long packetsPerLease;
+  private final FulfillUpdateQueue.Listener fulfillListener;
+
+  private final ConcurrentMap<AccountId, AccountState> accountStates = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService flushExecutor;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param delegate        The shared {@link BalanceTracker} that leases are taken from and deltas are flushed to.
+   * @param packetsPerLease The number of packets that a lease should cover.
+   * @param flushInterval   How often to flush deltas to, and return unused leases to, {@code delegate}.
+   * @param flushUnit       The {@link TimeUnit} of {@code flushInterval}.
+   * @param fulfillListener A {@link FulfillUpdateQueue.Listener} to notify after deferred fulfills have been flushed,
+   *                        which is expected to initiate any settlement.
+   */
+  public LeasingBalanceTracker(
+    final BalanceTracker delegate,
+    final long packetsPerLease,
+    final long flushInterval,
+    final TimeUnit flushUnit,
+    final FulfillUpdateQueue.Listener fulfillListener
+  ) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.fulfillListener = Objects.requireNonNull(fulfillListener);
+    Preconditions.checkArgument(packetsPerLease > 0, "packetsPerLease must be positive");
+    Preconditions.checkArgument(flushInterval > 0, "flushInterval must be positive");
+    this.packetsPerLease = packetsPerLease;
+
+    this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("balance-tracker-flush").setDaemon(true).build()
+    );
+    this.flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, flushUnit);
+  }
+
+  @Override
+  public AccountBalance balance(final AccountId accountId) {
+    Objects.requireNonNull(accountId);
+
+    final AccountBalance sharedBalance = delegate.balance(accountId);
+    final AccountState state = accountStates.get(accountId);
+    if (state == null) {
+      return sharedBalance;
+    }
+    return AccountBalance.builder()
+      .from(sharedBalance)
+      .clearingBalance(
+        sharedBalance.clearingBalance() + state.leased.get() + state.pendingDelta.get() + state.pendingCredit.get()
+      )
+      .build();
+  }
+
+  @Override
+  public void updateBalanceForPrepare(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Objects.requireNonNull(minBalance, "minBalance must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    final AccountState state = getAccountState(sourceAccountId);
+    state.active = true;
+
+    if (!minBalance.isPresent()) {
+      // Nothing to enforce, so this can simply be flushed later.
+      state.pendingDelta.addAndGet(-amount);
+      return;
+    }
+
+    while (true) {
+      final long leased = state.leased.get();
+      if (leased >= amount) {
+        if (state.leased.compareAndSet(leased, leased - amount)) {
+          return;
+        }
+      } else if (renewLease(state, amount, minBalance.get())) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public UpdateBalanceForFulfillResponse updateBalanceForFulfill(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    final AccountState state = fulfillState(destinationAccountSettings, amount);
+    final long credit = creditFulfill(destinationAccountSettings, amount, state);
+    if (credit <= 0) {
+      return projectedResponse(destinationAccountSettings.accountId(), state);
+    }
+    try {
+      final UpdateBalanceForFulfillResponse response = delegate.updateBalanceForFulfill(
+        destinationAccountSettings, credit
+      );
+      onCreditApplied(state, response);
+      return response;
+    } catch (RuntimeException e) {
+      // Keep the credit, so that it is applied by a later flush.
+      state.pendingCredit.addAndGet(credit);
+      throw e;
+    }
+  }
+
+  /**
+   * As {@link #updateBalanceForFulfill(AccountSettings, long)}, except that a credit the shared tracker fails to apply
+   * is not thrown back to the caller. Credits are merged before they reach the shared tracker, so {@code
+   * idempotencyKey} cannot be passed on; instead this tracker owns the retry, applying the credit on a later flush, so
+   * that a caller retrying under the same key does not credit it a second time.
+   */
+  @Override
+  public Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+    final String idempotencyKey, final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    final AccountState state = fulfillState(destinationAccountSettings, amount);
+    final long credit = creditFulfill(destinationAccountSettings, amount, state);
+    if (credit <= 0) {
+      return Optional.of(projectedResponse(destinationAccountSettings.accountId(), state));
+    }
+    try {
+      final UpdateBalanceForFulfillResponse response = delegate.updateBalanceForFulfill(
+        destinationAccountSettings, credit
+      );
+      onCreditApplied(state, response);
+      return Optional.of(response);
+    } catch (RuntimeException e) {
+      // Keep the credit, so that it is applied by a later flush.
+      state.pendingCredit.addAndGet(credit);
+      logger.warn(
+        "Unable to apply fulfill credit; it will be applied by the next flush. accountId={} credit={} error={}",
+        destinationAccountSettings.accountId(), credit, e.getMessage()
+      );
+      return Optional.of(projectedResponse(destinationAccountSettings.accountId(), state));
+    }
+  }
+
+  @Override
+  public CompletableFuture<UpdateBalanceForFulfillResponse> updateBalanceForFulfillAsync(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) {
+    final AccountState state = fulfillState(destinationAccountSettings, amount);
+    final long credit = creditFulfill(destinationAccountSettings, amount, state);
+    if (credit <= 0) {
+      return CompletableFuture.completedFuture(projectedResponse(destinationAccountSettings.accountId(), state));
+    }
+    return CompletableFutures.fromBlocking(
+      () -> delegate.updateBalanceForFulfillAsync(destinationAccountSettings, credit)
+    ).thenCompose(Function.identity()).whenComplete((response, error) -> {
+      if (error != null) {
+        // Keep the credit, so that it is applied by a later flush.
+        state.pendingCredit.addAndGet(credit);
+      } else {
+        onCreditApplied(state, response);
+      }
+    });
+  }
+
+  @Override
+  public void updateBalanceForReject(final AccountId sourceAccountId, final long amount)
+    throws BalanceTrackerException {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    final AccountState state = getAccountState(sourceAccountId);
+    if (state.leasing) {
+      // The prepare was most likely applied to this node's lease, so return the funds to it.
+      state.leased.addAndGet(amount);
+    } else {
+      state.pendingDelta.addAndGet(amount);
+    }
+  }
+
+  @Override
+  public boolean updateBalanceForIncomingSettlement(
+    final String idempotencyKey, final AccountId accountId, final long amount
+  ) throws BalanceTrackerException {
+    return delegate.updateBalanceForIncomingSettlement(idempotencyKey, accountId, amount);
+  }
+
+  @Override
+  public void updateBalanceForOutgoingSettlementRefund(final AccountId accountId, final long amount)
+    throws BalanceTrackerException {
+    delegate.updateBalanceForOutgoingSettlementRefund(accountId, amount);
+  }
+
+  /**
+   * Flush all outstanding deltas, return all leases, stop flushing in the background, and close the delegate.
+   */
+  @Override
+  public void close() {
+    flushExecutor.shutdown();
+    try {
+      flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    accountStates.forEach((accountId, state) -> {
+      state.active = false;
+      flush(accountId, state);
+    });
+    BalanceTrackers.closeDelegate(delegate);
+  }
+
+  /**
+   * Apply all outstanding deltas to the shared tracker, and return any lease that was not used since the previous
+   * flush.
+   */
+  @VisibleForTesting
+  void flush() {
+    accountStates.forEach(this::flush);
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      // Never let an exception cancel the scheduled flush.
+      logger.error("Unable to flush balance updates: {}", e.getMessage(), e);
+    }
+  }
+
+  private void flush(final AccountId accountId, final AccountState state) {
+    final boolean wasActive = state.active;
+    state.active = false;
+
+    long delta = state.pendingDelta.getAndSet(0);
+    if (!wasActive) {
+      delta += returnLease(state);
+    }
+    try {
+      if (delta < 0) {
+        delegate.updateBalanceForPrepare(accountId, -delta, Optional.empty());
+      } else if (delta > 0) {
+        // The reject operation credits the clearing balance without any other side effects.
+        delegate.updateBalanceForReject(accountId, delta);
+      }
+    } catch (RuntimeException e) {
+      // Retain the delta so that it is applied by the next flush.
+      state.pendingDelta.addAndGet(delta);
+      logger.warn(
+        "Unable to flush balance delta. accountId={} delta={} error={}", accountId, delta, e.getMessage()
+      );
+    }
+
+    flushCredit(accountId, state);
+
+    if (state.sharedClearingBalanceKnown) {
+      try {
+        state.sharedClearingBalance = delegate.balance(accountId).clearingBalance();
+      } catch (RuntimeException e) {
+        // Every delta has already been applied, so only the projection is stale until the next flush.
+        logger.warn("Unable to refresh shared balance. accountId={} error={}", accountId, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Apply deferred fulfills as a fulfill, so that the shared tracker checks the settle threshold against the
+   * cluster-wide balance, and notify {@link #fulfillListener} of the result.
+   */
+  private void flushCredit(final AccountId accountId, final AccountState state) {
+    final long credit = state.pendingCredit.getAndSet(0);
+    if (credit <= 0) {
+      return;
+    }
+    final AccountSettings accountSettings = state.accountSettings;
+    final UpdateBalanceForFulfillResponse response;
+    try {
+      response = delegate.updateBalanceForFulfill(accountSettings, credit);
+    } catch (RuntimeException e) {
+      // Retain the credit so that it is applied by the next flush.
+      state.pendingCredit.addAndGet(credit);
+      logger.warn(
+        "Unable to flush fulfill credit. accountId={} credit={} error={}", accountId, credit, e.getMessage()
+      );
+      return;
+    }
+    onCreditApplied(state, response);
+    fulfillListener.onBalanceUpdated(accountSettings, credit, response);
+  }
+
+  private AccountState fulfillState(final AccountSettings destinationAccountSettings, final long amount) {
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+    Preconditions.checkArgument(amount > 0, "destinationAmount must be positive, but was " + amount);
+    return getAccountState(destinationAccountSettings.accountId());
+  }
+
+  /**
+   * Defer a fulfill of {@code amount}, unless the shared tracker must decide whether to settle, based upon the
+   * cluster-wide balance (i.e., if this node's projection of the balance could reach the settle threshold).
+   *
+   * @return The deferred credit that must now be applied to the shared tracker, or zero if it remains deferred.
+   */
+  private long creditFulfill(
+    final AccountSettings destinationAccountSettings, final long amount, final AccountState state
+  ) {
+    state.active = true;
+    state.accountSettings = destinationAccountSettings;
+
+    final long pendingCredit = state.pendingCredit.addAndGet(amount);
+    final long projectedClearingBalance = state.sharedClearingBalance + pendingCredit;
+    final Optional<Long> settleThreshold = destinationAccountSettings.balanceSettings().settleThreshold();
+
+    if (!state.sharedClearingBalanceKnown ||
+      (settleThreshold.isPresent() && projectedClearingBalance >= settleThreshold.get())) {
+      // A credit of zero means that another thread already applied this fulfill's credit.
+      return Math.max(0, state.pendingCredit.getAndSet(0));
+    }
+    return 0;
+  }
+
+  private void onCreditApplied(final AccountState state, final UpdateBalanceForFulfillResponse response) {
+    state.sharedClearingBalance = response.accountBalance().clearingBalance();
+    state.sharedClearingBalanceKnown = true;
+  }
+
+  /**
+   * Take a new lease for {@code state}, large enough to cover {@code amount}.
+   *
+   * @return {@code true} if {@code amount} was applied to the shared tracker directly; {@code false} if a new lease
+   * was taken (in which case the caller should retry against the lease).
+   */
+  private boolean renewLease(final AccountState state, final long amount, final long minBalance) {
+    synchronized (state) {
+      if (state.leased.get() >= amount) {
+        // Another thread renewed the lease while this one was waiting.
+        return false;
+      }
+
+      final long leaseAmount = leaseAmountFor(amount);
+      if (leaseAmount > amount) {
+        try {
+          delegate.updateBalanceForPrepare(state.accountId, leaseAmount, Optional.of(minBalance));
+          state.leasing = true;
+          state.leased.addAndGet(leaseAmount);
+          return false;
+        } catch (BalanceTrackerException e) {
+          logger.debug(
+            "Unable to lease {} from accountId={}; applying prepare directly. error={}",
+            leaseAmount, state.accountId, e.getMessage()
+          );
+        }
+      }
+
+      // Not enough headroom for a whole lease (or leasing would not help), so apply this packet on its own. This
+      // throws if it would take the account below its minimum balance.
+      delegate.updateBalanceForPrepare(state.accountId, amount, Optional.of(minBalance));
+      return true;
+    }
+  }
+
+  private long leaseAmountFor(final long amount) {
+    try {
+      return Math.multiplyExact(amount, packetsPerLease);
+    } catch (ArithmeticException e) {
+      return amount;
+    }
+  }
+
+  /**
+   * Remove the entire unused lease from {@code state}.
+   *
+   * @return The amount to credit back to the shared tracker.
+   */
+  private long returnLease(final AccountState state) {
+    synchronized (state) {
+      state.leasing = false;
+      return state.leased.getAndSet(0);
+    }
+  }
+
+  private UpdateBalanceForFulfillResponse projectedResponse(final AccountId accountId, final AccountState state) {
+    return UpdateBalanceForFulfillResponse.builder()
+      .accountBalance(AccountBalance.builder()
+        .accountId(accountId)
+        .clearingBalance(state.sharedClearingBalance + state.pendingCredit.get())
+        .prepaidAmount(0L)
+        .build())
+      .clearingAmountToSettle(0L)
+      .build();
+  }
+
+  private AccountState getAccountState(final AccountId accountId) {
+    final AccountState state = accountStates.get(accountId);
+    return state != null ? state : accountStates.computeIfAbsent(accountId, AccountState::new);
+  }
+
+  /**
+   * @return A snapshot of the unused lease held by this node for each account.
+   */
+  @VisibleForTesting
+  Map<AccountId, Long> getLeases() {
+    final Map<AccountId, Long> leases = new ConcurrentHashMap<>();
+    accountStates.forEach((accountId, state) -> leases.put(accountId, state.leased.get()));
+    return leases;
+  }
+
+  /**
+   * The balance state that this node holds for a single account.
+   */
+  private static final class AccountState {
+
+    private final AccountId accountId;
+
+    // The unused portion of this node's lease, which has already been debited from the shared tracker.
+    private final AtomicLong leased = new AtomicLong();
+
+    // Net prepares and rejects that have not yet been applied to the shared tracker.
+    private final AtomicLong pendingDelta = new AtomicLong();
+
+    // Fulfills that have not yet been applied to the shared tracker.
+    private final AtomicLong pendingCredit = new AtomicLong();
+
+    // The settings of this account as of its most recent fulfill, which deferred fulfills are flushed with.
+    private volatile AccountSettings accountSettings;
+
+    // Whether prepares for this account are currently applied against a lease. Guarded by `this` for writes.
+    private volatile boolean leasing;
+
+    // Whether any prepare or fulfill was processed since the previous flush.
+    private volatile boolean active;
+
+    // The clearing balance most recently reported by the shared tracker, used to project when a settlement is due.
+    private volatile long sharedClearingBalance;
+    private volatile boolean sharedClearingBalanceKnown;
+
+    private AccountState(final AccountId accountId) {
+      this.accountId = Objects.requireNonNull(accountId);
+    }
+  }
+}
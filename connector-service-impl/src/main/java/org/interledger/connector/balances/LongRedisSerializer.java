@@ -0,0 +1,106 @@
+package org.interledger.connector.balances;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>A {@link RedisSerializer} for signed longs, in the decimal form that Redis itself uses for integers (e.g., the
+ * values operated on by `HINCRBY` and the arguments of the balance-tracking Lua scripts).</p>
+ *
+ * <p>Balances are updated on every packet, so the static {@link #serializeLong(long)} and {@link
+ * #deserializeLong(byte[])} variants of this serializer operate on primitives, and convert directly between a {@code
+ * long} and its ASCII digits without creating any intermediate {@link String} or boxed {@link Long}.</p>
+ */
+public class LongRedisSerializer implements RedisSerializer<Long> {
+
+  private static final byte[] MIN_VALUE_BYTES = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+  // Any number with fewer digits than this cannot overflow a long.
+  private static final int MAX_SAFE_DIGITS = 18;
+
+  /**
+   * Encode {@code value} as the ASCII bytes of its decimal representation.
+   *
+   * @param value A signed long.
+   *
+   * @return A new byte array, e.g. `-12` for {@code -12L}.
+   */
+  public static byte[] serializeLong(final long value) {
+    if (value == Long.MIN_VALUE) {
+      // Cannot be negated, so is special-cased.
+      return MIN_VALUE_BYTES.clone();
+    }
+
+    final boolean negative = value < 0;
+    long remaining = negative ? -value : value;
+
+    int numDigits = 1;
+    for (long threshold = 10; numDigits < 19 && remaining >= threshold; threshold *= 10) {
+      numDigits++;
+    }
+
+    final byte[] bytes = new byte[negative ? numDigits + 1 : numDigits];
+    for (int i = bytes.length - 1; i >= bytes.length - numDigits; i--) {
+      bytes[i] = (byte) ('0' + (remaining % 10));
+      remaining /= 10;
+    }
+    if (negative) {
+      bytes[0] = '-';
+    }
+    return bytes;
+  }
+
+  /**
+   * Decode the ASCII bytes of a decimal number, as returned by Redis, into a long.
+   *
+   * @param bytes The bytes of a number, or {@code null} or empty if a value is not present in Redis.
+   *
+   * @return The decoded number, or {@code 0} if {@code bytes} is {@code null} or empty.
+   *
+   * @throws SerializationException if {@code bytes} is not a valid signed long.
+   */
+  public static long deserializeLong(final byte[] bytes) {
+    if (bytes == null || bytes.length == 0) {
+      return 0L;
+    }
+
+    final boolean negative = bytes[0] == '-';
+    final int firstDigit = negative ? 1 : 0;
+    final int numDigits = bytes.length - firstDigit;
+    if (numDigits == 0) {
+      throw new SerializationException("Cannot deserialize `-` as a long");
+    }
+    if (numDigits > MAX_SAFE_DIGITS) {
+      // Rare enough that the overflow checks are simply delegated to the JDK.
+      try {
+        return Long.parseLong(new String(bytes, StandardCharsets.US_ASCII));
+      } catch (NumberFormatException e) {
+        throw new SerializationException("Cannot deserialize value as a long", e);
+      }
+    }
+
+    long value = 0;
+    for (int i = firstDigit; i < bytes.length; i++) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new SerializationException(
+          String.format("Cannot deserialize `%s` as a long", new String(bytes, StandardCharsets.US_ASCII))
+        );
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  @Override
+  public byte[] serialize(final Long value) throws SerializationException {
+    return value == null ? new byte[0] : serializeLong(value);
+  }
+
+  @Override
+  public Long deserialize(final byte[] bytes) throws SerializationException {
+    return bytes == null ? null : deserializeLong(bytes);
+  }
+}
@@ -0,0 +1,449 @@
+package org.interledger.connector.balances;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A durable {@link BalanceTracker} for single-node deployments, which keeps balances in a memory-mapped file rather
+ * than in Redis.</p>
+ *
+ * <p>The file is a table of fixed-size slots, one per account, each holding the account's id, clearing balance and
+ * prepaid amount. The slot of each account is found using an on-heap index, which is rebuilt by scanning the table
+ * when the tracker is opened. The index is keyed by {@link AccountId} rather than by the handle that {@link
+ * org.interledger.connector.caching.AccountRegistry} assigns: handles are only stable within a process, whereas a slot
+ * must be found again after a restart, and every {@link BalanceTracker} update identifies its account by {@link
+ * AccountId}, so looking up a handle would cost the same hash lookup as looking up the slot. Each update is applied in-process, with the same semantics as the corresponding Redis
+ * script, while holding a lock that covers the account's slot, so it is atomic (including its minimum-balance check)
+ * without any network round trip. The table is written to disk by the operating system, and is also flushed
+ * ({@code fsync}ed) periodically and when the tracker is closed, so at most one flush interval of updates can be lost
+ * if the host (rather than just the process) fails.</p>
+ *
+ * <p>Like the Redis script, incoming settlements are de-duplicated using their idempotency key for 24 hours. The keys
+ * (hashed, with the time they were applied) are kept in a second memory-mapped file alongside the table, which is a
+ * ring of {@link #NUM_SETTLEMENT_KEYS} records, so they are still de-duplicated after a restart. Should more settlements
+ * than that arrive within 24 hours, the oldest keys are forgotten early (and this is logged).</p>
+ */
+public class MappedBalanceTracker implements BalanceTracker, AutoCloseable {
+
+  private static final int MAGIC = 0x494c5042; // "ILPB"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 64;
+  private static final int SLOT_BYTES = 128;
+  private static final int CLEARING_BALANCE_OFFSET = 0;
+  private static final int PREPAID_AMOUNT_OFFSET = Long.BYTES;
+  private static final int ACCOUNT_ID_LENGTH_OFFSET = 2 * Long.BYTES;
+  private static final int ACCOUNT_ID_OFFSET = ACCOUNT_ID_LENGTH_OFFSET + Short.BYTES;
+  private static final int MAX_ACCOUNT_ID_BYTES = SLOT_BYTES - ACCOUNT_ID_OFFSET;
+  private static final int NUM_LOCKS = 1024;
+  private static final String SETTLEMENT_KEYS_SUFFIX = ".settlements";
+  private static final int NUM_SETTLEMENT_KEYS = 65536;
+  private static final int SETTLEMENT_KEY_RECORD_BYTES = Long.BYTES + Hashing.sha256().bits() / Byte.SIZE;
+  private static final long SETTLEMENT_KEY_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final MappedByteBuffer table;
+  private final int numSlots;
+  private final ConcurrentMap<AccountId, Integer> slots = new ConcurrentHashMap<>();
+  private final Object[] locks = new Object[NUM_LOCKS];
+  private final MappedByteBuffer settlementKeys;
+  // When each settlement idempotency key in `settlementKeys` was applied. Guarded by itself.
+  private final Map<HashCode, Long> settlementKeyTimestamps = new HashMap<>();
+  private final ScheduledExecutorService flushExecutor;
+
+  // Guarded by `slots`.
+  private int nextSlot;
+  // Guarded by `settlementKeyTimestamps`.
+  private int nextSettlementKey;
+
+  /**
+   * Required-args Constructor. If {@code path} already exists, the balances in it are loaded, along with the
+   * idempotency keys of recent incoming settlements (kept in {@code path} suffixed with {@code .settlements}).
+   *
+   * @param path          The file to keep balances in.
+   * @param numSlots      The maximum number of accounts that a new file can hold. Ignored if the file already exists.
+   * @param flushInterval How often to flush the file to disk.
+   * @param flushUnit     The {@link TimeUnit} of {@code flushInterval}.
+   */
+  public MappedBalanceTracker(
+    final Path path, final int numSlots, final long flushInterval, final TimeUnit flushUnit
+  ) {
+    Objects.requireNonNull(path);
+    Preconditions.checkArgument(
+      numSlots > 0 && numSlots <= (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES, "numSlots is out of range"
+    );
+    Preconditions.checkArgument(flushInterval > 0, "flushInterval must be positive");
+    for (int i = 0; i < NUM_LOCKS; i++) {
+      locks[i] = new Object();
+    }
+
+    try {
+      final boolean exists = Files.exists(path) && Files.size(path) >= HEADER_BYTES;
+      // The mapping remains valid after the channel has been closed.
+      try (FileChannel channel = FileChannel.open(
+        path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+      )) {
+        if (exists) {
+          final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+          channel.read(header, 0);
+          header.flip();
+          Preconditions.checkState(header.getInt() == MAGIC, "%s is not a balance table", path);
+          Preconditions.checkState(header.getInt() == VERSION, "%s has an unsupported version", path);
+          Preconditions.checkState(header.getInt() == SLOT_BYTES, "%s has an unsupported slot size", path);
+          this.numSlots = header.getInt();
+        } else {
+          this.numSlots = numSlots;
+        }
+        this.table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) this.numSlots * SLOT_BYTES);
+      }
+      try (FileChannel channel = FileChannel.open(
+        path.resolveSibling(path.getFileName() + SETTLEMENT_KEYS_SUFFIX),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+      )) {
+        this.settlementKeys = channel.map(
+          FileChannel.MapMode.READ_WRITE, 0, (long) NUM_SETTLEMENT_KEYS * SETTLEMENT_KEY_RECORD_BYTES
+        );
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    table.putInt(0, MAGIC).putInt(Integer.BYTES, VERSION).putInt(2 * Integer.BYTES, SLOT_BYTES)
+      .putInt(3 * Integer.BYTES, this.numSlots);
+
+    final long startNanos = System.nanoTime();
+    loadSlots();
+    loadSettlementKeys();
+    logger.info("Loaded {} balances from {} in {}ms",
+      slots.size(), path, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+
+    this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("balance-table-flush").setDaemon(true).build()
+    );
+    this.flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, flushUnit);
+  }
+
+  @Override
+  public AccountBalance balance(final AccountId accountId) {
+    Objects.requireNonNull(accountId);
+
+    final Integer slot = slots.get(accountId);
+    if (slot == null) {
+      return toAccountBalance(accountId, 0L, 0L);
+    }
+    final int offset = offset(slot);
+    synchronized (lock(slot)) {
+      return toAccountBalance(accountId, clearingBalance(offset), prepaidAmount(offset));
+    }
+  }
+
+  @Override
+  public void updateBalanceForPrepare(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Objects.requireNonNull(minBalance, "minBalance must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    final int slot = getOrCreateSlot(sourceAccountId);
+    final int offset = offset(slot);
+    synchronized (lock(slot)) {
+      final long clearingBalance = clearingBalance(offset);
+      final long prepaidAmount = prepaidAmount(offset);
+
+      if (minBalance.isPresent() && clearingBalance + prepaidAmount - amount < minBalance.get()) {
+        throw new BalanceTrackerException(String.format(
+          "Incoming prepare of %s would bring account %s under its minimum clearing_balance. " +
+            "Current clearing_balance: %s, min balance: %s",
+          amount, sourceAccountId, clearingBalance + prepaidAmount, minBalance.get()
+        ));
+      }
+
+      if (prepaidAmount >= amount) {
+        setPrepaidAmount(offset, prepaidAmount - amount);
+      } else if (prepaidAmount > 0) {
+        setPrepaidAmount(offset, 0L);
+        setClearingBalance(offset, clearingBalance - (amount - prepaidAmount));
+      } else {
+        setClearingBalance(offset, clearingBalance - amount);
+      }
+    }
+  }
+
+  @Override
+  public UpdateBalanceForFulfillResponse updateBalanceForFulfill(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+    Preconditions.checkArgument(amount > 0, "destinationAmount must be positive, but was " + amount);
+
+    final AccountId accountId = destinationAccountSettings.accountId();
+    final Optional<Long> settleThreshold = destinationAccountSettings.balanceSettings().settleThreshold();
+    final long settleTo = destinationAccountSettings.balanceSettings().settleTo();
+
+    final int slot = getOrCreateSlot(accountId);
+    final int offset = offset(slot);
+    synchronized (lock(slot)) {
+      final long clearingBalance = clearingBalance(offset) + amount;
+      final long prepaidAmount = prepaidAmount(offset);
+
+      long settleAmount = 0;
+      if (settleThreshold.isPresent() && clearingBalance >= settleThreshold.get() && clearingBalance >= settleTo) {
+        settleAmount = clearingBalance - settleTo;
+        setClearingBalance(offset, settleTo);
+      } else {
+        setClearingBalance(offset, clearingBalance);
+      }
+
+      // Like the Redis script, this reports the clearing balance from before any settlement was deducted.
+      return UpdateBalanceForFulfillResponse.builder()
+        .accountBalance(toAccountBalance(accountId, clearingBalance, prepaidAmount))
+        .clearingAmountToSettle(settleAmount)
+        .build();
+    }
+  }
+
+  @Override
+  public void updateBalanceForReject(final AccountId sourceAccountId, final long amount)
+    throws BalanceTrackerException {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    incrementClearingBalance(sourceAccountId, amount);
+  }
+
+  @Override
+  public boolean updateBalanceForIncomingSettlement(
+    final String idempotencyKey, final AccountId accountId, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    Objects.requireNonNull(accountId, "accountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    final int slot = getOrCreateSlot(accountId);
+    final int offset = offset(slot);
+    synchronized (lock(slot)) {
+      // Checked while holding the account's lock, so that concurrent duplicates are not both applied.
+      if (!recordSettlementKey(accountId, idempotencyKey)) {
+        return false;
+      }
+
+      // Credit the incoming settlement to the clearing balance and/or prepaid amount, depending on whether the
+      // account currently owes money or not.
+      final long clearingBalance = clearingBalance(offset);
+      final long prepaidAmount = prepaidAmount(offset);
+      if (clearingBalance >= 0) {
+        setPrepaidAmount(offset, prepaidAmount + amount);
+      } else if (Math.abs(clearingBalance) >= amount) {
+        setClearingBalance(offset, clearingBalance + amount);
+      } else {
+        setPrepaidAmount(offset, prepaidAmount + amount + clearingBalance);
+        setClearingBalance(offset, 0L);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void updateBalanceForOutgoingSettlementRefund(final AccountId accountId, final long amount)
+    throws BalanceTrackerException {
+    Objects.requireNonNull(accountId, "accountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    incrementClearingBalance(accountId, amount);
+  }
+
+  /**
+   * Flush the table (and the idempotency keys of incoming settlements) to disk.
+   */
+  public void flush() {
+    table.force();
+    settlementKeys.force();
+  }
+
+  @Override
+  public void close() {
+    flushExecutor.shutdownNow();
+    flush();
+  }
+
+  private void incrementClearingBalance(final AccountId accountId, final long amount) {
+    final int slot = getOrCreateSlot(accountId);
+    final int offset = offset(slot);
+    synchronized (lock(slot)) {
+      setClearingBalance(offset, clearingBalance(offset) + amount);
+    }
+  }
+
+  private void loadSlots() {
+    for (int slot = 0; slot < numSlots; slot++) {
+      final int offset = offset(slot);
+      final short length = table.getShort(offset + ACCOUNT_ID_LENGTH_OFFSET);
+      if (length <= 0) {
+        // Slots are allocated in order, so every later slot is free too.
+        break;
+      }
+      final byte[] accountId = new byte[length];
+      final ByteBuffer reader = table.duplicate();
+      reader.position(offset + ACCOUNT_ID_OFFSET);
+      reader.get(accountId);
+      slots.put(AccountId.of(new String(accountId, StandardCharsets.UTF_8)), slot);
+      nextSlot = slot + 1;
+    }
+  }
+
+  private void loadSettlementKeys() {
+    final long nowMillis = System.currentTimeMillis();
+    long newestMillis = 0;
+    for (int record = 0; record < NUM_SETTLEMENT_KEYS; record++) {
+      final ByteBuffer reader = settlementKeys.duplicate();
+      reader.position(record * SETTLEMENT_KEY_RECORD_BYTES);
+      final long timestampMillis = reader.getLong();
+      if (timestampMillis == 0) {
+        continue;
+      }
+      if (timestampMillis >= newestMillis) {
+        newestMillis = timestampMillis;
+        nextSettlementKey = (record + 1) % NUM_SETTLEMENT_KEYS;
+      }
+      if (nowMillis - timestampMillis < SETTLEMENT_KEY_TTL_MILLIS) {
+        final byte[] hash = new byte[SETTLEMENT_KEY_RECORD_BYTES - Long.BYTES];
+        reader.get(hash);
+        settlementKeyTimestamps.put(HashCode.fromBytes(hash), timestampMillis);
+      }
+    }
+  }
+
+  /**
+   * Record that the incoming settlement identified by {@code idempotencyKey} has been applied to {@code accountId}.
+   *
+   * @return {@code false} if it had already been applied within the last 24 hours.
+   */
+  private boolean recordSettlementKey(final AccountId accountId, final String idempotencyKey) {
+    final HashCode hash = Hashing.sha256().hashString(accountId.value() + ":" + idempotencyKey, StandardCharsets.UTF_8);
+    final long nowMillis = System.currentTimeMillis();
+    synchronized (settlementKeyTimestamps) {
+      final Long appliedMillis = settlementKeyTimestamps.get(hash);
+      if (appliedMillis != null && nowMillis - appliedMillis < SETTLEMENT_KEY_TTL_MILLIS) {
+        return false;
+      }
+
+      final int offset = nextSettlementKey * SETTLEMENT_KEY_RECORD_BYTES;
+      final ByteBuffer record = settlementKeys.duplicate();
+      record.position(offset);
+      final long evictedMillis = record.getLong();
+      if (evictedMillis != 0) {
+        final byte[] evictedHash = new byte[SETTLEMENT_KEY_RECORD_BYTES - Long.BYTES];
+        record.get(evictedHash);
+        if (settlementKeyTimestamps.remove(HashCode.fromBytes(evictedHash), evictedMillis)
+          && nowMillis - evictedMillis < SETTLEMENT_KEY_TTL_MILLIS) {
+          logger.warn("Forgetting the idempotency key of an incoming settlement before it has expired, because more " +
+            "than {} incoming settlements were received within 24 hours", NUM_SETTLEMENT_KEYS);
+        }
+      }
+
+      record.position(offset);
+      record.putLong(nowMillis).put(hash.asBytes());
+      settlementKeyTimestamps.put(hash, nowMillis);
+      nextSettlementKey = (nextSettlementKey + 1) % NUM_SETTLEMENT_KEYS;
+      return true;
+    }
+  }
+
+  private int getOrCreateSlot(final AccountId accountId) {
+    final Integer slot = slots.get(accountId);
+    if (slot != null) {
+      return slot;
+    }
+    synchronized (slots) {
+      final Integer existingSlot = slots.get(accountId);
+      if (existingSlot != null) {
+        return existingSlot;
+      }
+      final byte[] accountIdBytes = accountId.value().getBytes(StandardCharsets.UTF_8);
+      if (accountIdBytes.length > MAX_ACCOUNT_ID_BYTES) {
+        throw new BalanceTrackerException(String.format("AccountId `%s` is too long to track", accountId));
+      }
+      if (nextSlot >= numSlots) {
+        throw new BalanceTrackerException(String.format(
+          "Unable to track balance of accountId `%s`: all %s balance slots are in use", accountId, numSlots
+        ));
+      }
+
+      final int newSlot = nextSlot++;
+      final int offset = offset(newSlot);
+      final ByteBuffer writer = table.duplicate();
+      writer.position(offset + ACCOUNT_ID_OFFSET);
+      writer.put(accountIdBytes);
+      // The length is written last, so that a partially-written slot is never loaded.
+      table.putShort(offset + ACCOUNT_ID_LENGTH_OFFSET, (short) accountIdBytes.length);
+      slots.put(accountId, newSlot);
+      return newSlot;
+    }
+  }
+
+  private Object lock(final int slot) {
+    return locks[slot & (NUM_LOCKS - 1)];
+  }
+
+  private static int offset(final int slot) {
+    return HEADER_BYTES + slot * SLOT_BYTES;
+  }
+
+  private long clearingBalance(final int offset) {
+    return table.getLong(offset + CLEARING_BALANCE_OFFSET);
+  }
+
+  private long prepaidAmount(final int offset) {
+    return table.getLong(offset + PREPAID_AMOUNT_OFFSET);
+  }
+
+  private void setClearingBalance(final int offset, final long clearingBalance) {
+    table.putLong(offset + CLEARING_BALANCE_OFFSET, clearingBalance);
+  }
+
+  private void setPrepaidAmount(final int offset, final long prepaidAmount) {
+    table.putLong(offset + PREPAID_AMOUNT_OFFSET, prepaidAmount);
+  }
+
+  private AccountBalance toAccountBalance(final AccountId accountId, final long clearingBalance, final long prepaid) {
+    return AccountBalance.builder()
+      .accountId(accountId)
+      .clearingBalance(clearingBalance)
+      .prepaidAmount(prepaid)
+      .build();
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      logger.error("Unable to flush balance table", e);
+    }
+  }
+}
@@ -4,46 +4,110 @@ import com.google.common.base.Preconditions;
 
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.metrics.BalanceTrackerMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.connection.ClusterTopology;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
+import redis.clients.jedis.JedisCluster;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 
-import static java.util.Collections.singletonList;
+import static org.interledger.connector.balances.LongRedisSerializer.deserializeLong;
+import static org.interledger.connector.balances.LongRedisSerializer.serializeLong;
 
 /**
  * An implementation of {@link BalanceTracker} that uses Redis to track all balances. Note that Redis does not support
  * INCR/DECR operations on unsigned longs, but is instead limited to sign-longs. This is an implementation detail of
  * this particular balance tracker, which will throw an exception if any negative amounts are supplied.
+ *
+ * <p>Each balance update is a Redis round trip on the packet path, so this implementation talks to Redis at the
+ * byte level: amounts are encoded by {@link LongRedisSerializer}, the key of each account is encoded once and then
+ * cached, and integer replies are returned by the driver as longs rather than being parsed from Strings.</p>
+ *
+ * <p>Every script only touches the keys of a single account, named according to a {@link RedisKeyLayout}. With
+ * {@link RedisKeyLayout#CLUSTER}, those keys share a hash tag, so this tracker can be used with Redis Cluster: each
+ * script is routed to the shard that owns its account.</p>
+ *
+ * <p>The latency of every script invocation, and of every packet balance update, is recorded in a {@link
+ * BalanceTrackerMetrics}.</p>
  */
 public class RedisBalanceTracker implements BalanceTracker {
 
-  // TODO: Stop sending Strings into Redis and instead send longs!
-  // See https://github.com/sappenin/java-ilpv4-connector/issues/153
-
   public static final String CLEARING_BALANCE = "clearing_balance";
   public static final String PREPAID_AMOUNT = "prepaid_amount";
 
+  private static final byte[] CLEARING_BALANCE_BYTES = CLEARING_BALANCE.getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PREPAID_AMOUNT_BYTES = PREPAID_AMOUNT.getBytes(StandardCharsets.UTF_8);
+  private static final byte[] NO_SETTLE_THRESHOLD = new byte[0];
+
+  private static final String NO_SCRIPT_ERROR = "NOSCRIPT";
+
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
   // The following are Lua scripts that are used to atomically execute the given logic inside Redis. This allows for
   // more complex logic without needing multiple round trips for messages to be sent to and from Redis, as well as
-  // locks to ensure no other process is accessing Redis at the same time. Note that all scripts are injected so that
-  // the SHA checksum is not recalculated on every execution.
+  // locks to ensure no other process is accessing Redis at the same time. Scripts are only ever invoked via EVALSHA,
+  // so the body of a script is sent to Redis only when Redis doesn't have it cached (see #evalSha).
   // For more information on scripting in Redis, see https://redis.io/commands/eval
-  private final RedisScript<Long> updateBalanceForPrepareScript;
-  private final RedisScript<List> updateBalanceForFulfillScript;
-  private final RedisScript<Long> updateBalanceForRejectScript;
-  private final RedisScript<Long> updateBalanceForIncomingSettlementScript;
-  private final RedisScript<Long> updateBalanceForSettlementRefundScript;
+  private final LuaScript updateBalanceForPrepareScript;
+  private final LuaScript updateBalanceForFulfillScript;
+  private final LuaScript updateBalanceForRejectScript;
+  private final LuaScript updateBalanceForIncomingSettlementScript;
+  private final LuaScript updateBalanceForSettlementRefundScript;
+  private final LuaScript[] allScripts;
 
   private final RedisTemplate<String, String> stringRedisTemplate;
-  private final RedisTemplate<String, ?> jacksonRedisTemplate;
+  private final RedisKeyLayout keyLayout;
+  private final BalanceTrackerMetrics metrics;
+
+  // The encoded Redis key of each account, so that it isn't re-encoded on every balance update.
+  private final ConcurrentMap<AccountId, byte[]> redisAccountKeys = new ConcurrentHashMap<>();
+
+  public RedisBalanceTracker(
+    final RedisScript<Long> updateBalanceForPrepareScript,
+    final RedisScript<List> updateBalanceForFulfillScript,
+    final RedisScript<Long> updateBalanceForRejectScript,
+    final RedisScript<Long> updateBalanceForIncomingSettlementScript,
+    final RedisScript<Long> updateBalanceForSettlementRefundScript,
+    final RedisTemplate<String, String> stringRedisTemplate
+  ) {
+    this(
+      updateBalanceForPrepareScript, updateBalanceForFulfillScript, updateBalanceForRejectScript,
+      updateBalanceForIncomingSettlementScript, updateBalanceForSettlementRefundScript, stringRedisTemplate,
+      RedisKeyLayout.STANDALONE
+    );
+  }
+
+  public RedisBalanceTracker(
+    final RedisScript<Long> updateBalanceForPrepareScript,
+    final RedisScript<List> updateBalanceForFulfillScript,
+    final RedisScript<Long> updateBalanceForRejectScript,
+    final RedisScript<Long> updateBalanceForIncomingSettlementScript,
+    final RedisScript<Long> updateBalanceForSettlementRefundScript,
+    final RedisTemplate<String, String> stringRedisTemplate,
+    final RedisKeyLayout keyLayout
+  ) {
+    this(
+      updateBalanceForPrepareScript, updateBalanceForFulfillScript, updateBalanceForRejectScript,
+      updateBalanceForIncomingSettlementScript, updateBalanceForSettlementRefundScript, stringRedisTemplate,
+      keyLayout, new BalanceTrackerMetrics()
+    );
+  }
 
   public RedisBalanceTracker(
     final RedisScript<Long> updateBalanceForPrepareScript,
@@ -52,29 +116,42 @@ public class RedisBalanceTracker implements BalanceTracker {
     final RedisScript<Long> updateBalanceForIncomingSettlementScript,
     final RedisScript<Long> updateBalanceForSettlementRefundScript,
     final RedisTemplate<String, String> stringRedisTemplate,
-    final RedisTemplate<String, ?> jacksonRedisTemplate
+    final RedisKeyLayout keyLayout,
+    final BalanceTrackerMetrics metrics
   ) {
-    this.updateBalanceForPrepareScript = Objects.requireNonNull(updateBalanceForPrepareScript);
-    this.updateBalanceForFulfillScript = Objects.requireNonNull(updateBalanceForFulfillScript);
-    this.updateBalanceForRejectScript = Objects.requireNonNull(updateBalanceForRejectScript);
-    this.updateBalanceForIncomingSettlementScript = Objects.requireNonNull(updateBalanceForIncomingSettlementScript);
-    this.updateBalanceForSettlementRefundScript = Objects.requireNonNull(updateBalanceForSettlementRefundScript);
+    this.updateBalanceForPrepareScript = new LuaScript(updateBalanceForPrepareScript);
+    this.updateBalanceForFulfillScript = new LuaScript(updateBalanceForFulfillScript);
+    this.updateBalanceForRejectScript = new LuaScript(updateBalanceForRejectScript);
+    this.updateBalanceForIncomingSettlementScript = new LuaScript(updateBalanceForIncomingSettlementScript);
+    this.updateBalanceForSettlementRefundScript = new LuaScript(updateBalanceForSettlementRefundScript);
+    this.allScripts = new LuaScript[] {
+      this.updateBalanceForPrepareScript,
+      this.updateBalanceForFulfillScript,
+      this.updateBalanceForRejectScript,
+      this.updateBalanceForIncomingSettlementScript,
+      this.updateBalanceForSettlementRefundScript
+    };
 
     this.stringRedisTemplate = Objects.requireNonNull(stringRedisTemplate);
-    this.jacksonRedisTemplate = Objects.requireNonNull(jacksonRedisTemplate);
+    this.keyLayout = Objects.requireNonNull(keyLayout);
+    this.metrics = Objects.requireNonNull(metrics);
+    this.metrics.registerTracker("redis");
   }
 
   @Override
   public AccountBalance balance(final AccountId accountId) {
     Objects.requireNonNull(accountId);
 
-    final BoundHashOperations<String, String, String> result =
-      stringRedisTemplate.boundHashOps(toRedisAccountsKey(accountId));
+    final byte[] redisAccountKey = toRedisAccountsKey(accountId);
+    final List<byte[]> result = stringRedisTemplate.execute(
+      (RedisCallback<List<byte[]>>) connection ->
+        connection.hMGet(redisAccountKey, CLEARING_BALANCE_BYTES, PREPAID_AMOUNT_BYTES)
+    );
 
     return AccountBalance.builder()
       .accountId(accountId)
-      .clearingBalance(toLong(result.get(CLEARING_BALANCE)))
-      .prepaidAmount(toLong(result.get(PREPAID_AMOUNT)))
+      .clearingBalance(deserializeLong(result.get(0)))
+      .prepaidAmount(deserializeLong(result.get(1)))
       .build();
   }
 
@@ -97,29 +174,15 @@ public class RedisBalanceTracker implements BalanceTracker {
     ));
 
     try {
-      long result;
-      if (minBalance.isPresent()) {
-        result = stringRedisTemplate.execute(
-          updateBalanceForPrepareScript,
-          singletonList(toRedisAccountsKey(sourceAccountId)),
-          // Arg1: from_amount
-          amount + "",
-          // Arg2: min_balance (optional)
-          minBalance.map($ -> $ + "").orElse("0")
-        );
-      } else {
-        result = stringRedisTemplate.execute(
-          updateBalanceForPrepareScript,
-          singletonList(toRedisAccountsKey(sourceAccountId)),
-          // Arg1: from_amount
-          amount + ""
-        );
-      }
+      final long result = executePrepare(sourceAccountId, amount, minBalance);
 
       logger.debug(
         "Processed prepare with incoming amount: {}. Account {} has clearingBalance (including prepaid amount): {} ",
         amount, sourceAccountId, result
       );
+    } catch (BalanceTrackerBusyException e) {
+      // Not applied, and not a failure of the account either, so let the caller tell the two apart.
+      throw e;
     } catch (Exception e) {
       final String errorMessage = String.format(
         "Error handling prepare with sourceAmount `%s` from accountId `%s`", amount, sourceAccountId
@@ -145,37 +208,15 @@ public class RedisBalanceTracker implements BalanceTracker {
 
     try {
       // Response Format: `{ clearing_balance, prepaid_amount, settle_amount }`
-      final List<Long> response = jacksonRedisTemplate.execute(
-        updateBalanceForFulfillScript,
-        // Key1: accountId.
-        singletonList(toRedisAccountsKey(destinationAccountSettings.accountId())),
-        // Arg1: amount
-        amount + "",
-        // Arg2: settleThreshold
-        destinationAccountSettings.balanceSettings().settleThreshold().map($ -> $ + "").orElse(""),
-        // Arg3: settleTo
-        destinationAccountSettings.balanceSettings().settleTo() + ""
-      );
-
-      Preconditions.checkArgument(
-        response.size() == 3,
-        String.format("Lua script returned invalid array values: %s", response)
+      final List<Long> response = executeFulfill(
+        destinationAccountSettings.accountId(),
+        amount,
+        destinationAccountSettings.balanceSettings().settleThreshold(),
+        destinationAccountSettings.balanceSettings().settleTo()
       );
 
-      // { clearing_balance, prepaid_amount, settle_amount }
-      // Idx0: clearing_balance
-      // Idx1: prepaid_balance
-      // Idx2: settlement_amount
       final UpdateBalanceForFulfillResponse typedResponse =
-        UpdateBalanceForFulfillResponse.builder()
-          .accountBalance(AccountBalance.builder()
-            .accountId(destinationAccountSettings.accountId())
-            .clearingBalance(response.get(0))
-            .prepaidAmount(response.get(1))
-            .build()
-          )
-          .clearingAmountToSettle(response.get(2))
-          .build();
+        toFulfillResponse(destinationAccountSettings.accountId(), response);
 
       logger.trace(
         "Processed balance update for Fulfillment (requested_amount=`{}`) on outgoing account (`{}`). " +
@@ -201,12 +242,7 @@ public class RedisBalanceTracker implements BalanceTracker {
     );
 
     try {
-      long clearingBalance = stringRedisTemplate.execute(
-        updateBalanceForRejectScript,
-        singletonList(toRedisAccountsKey(sourceAccountId)),
-        // Arg1: from_amount
-        amount + ""
-      );
+      final long clearingBalance = executeReject(sourceAccountId, amount);
 
       logger.debug(
         "Processed reject for incoming amount: `{}`. Account `{}` has clearingBalance (including prepaid amount): `{}`",
@@ -221,7 +257,7 @@ public class RedisBalanceTracker implements BalanceTracker {
   }
 
   @Override
-  public void updateBalanceForIncomingSettlement(
+  public boolean updateBalanceForIncomingSettlement(
     final String idempotencyKey, final AccountId accountId, final long amount
   ) throws BalanceTrackerException {
     Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
@@ -234,19 +270,32 @@ public class RedisBalanceTracker implements BalanceTracker {
     );
 
     try {
-      long result = stringRedisTemplate.execute(
+      // Null if the settlement had already been applied.
+      final Long result = this.<Long>evalSha(
         updateBalanceForIncomingSettlementScript,
-        singletonList(toRedisAccountsKey(accountId)),
-        // Arg1: amount
-        amount + "",
-        // Arg2: idempotency_key
-        idempotencyKey
+        ReturnType.INTEGER,
+        2,
+        new byte[][] {
+          toRedisAccountsKey(accountId),
+          // Key2: idempotency_key, which is co-located with the account
+          keyLayout.settlementIdempotenceKeyBytes(accountId, idempotencyKey),
+          // Arg1: amount
+          serializeLong(amount)
+        },
+        1
       );
 
+      if (result == null) {
+        logger.debug(
+          "Ignored duplicate Incoming Settlement. AccountId `{}` idempotencyKey `{}`", accountId, idempotencyKey
+        );
+        return false;
+      }
       logger.debug(
         "Processed Incoming Settlement Amount: `{}`. AccountId `{}` has new clearing_balance " +
           "(including prepaid amount): `{}`", amount, accountId, result
       );
+      return true;
     } catch (Exception e) {
       final String errorMessage = String.format(
         "Error handling Incoming Settlement from Settlement Engine with amount `%s` for accountId `%s`",
@@ -267,11 +316,12 @@ public class RedisBalanceTracker implements BalanceTracker {
     );
 
     try {
-      long newClearingBalance = stringRedisTemplate.execute(
+      final long newClearingBalance = this.<Long>evalSha(
         updateBalanceForSettlementRefundScript,
-        singletonList(toRedisAccountsKey(accountId)),
+        ReturnType.INTEGER,
+        toRedisAccountsKey(accountId),
         // Arg1: amount
-        amount + ""
+        serializeLong(amount)
       );
 
       logger.debug(
@@ -288,32 +338,400 @@ public class RedisBalanceTracker implements BalanceTracker {
     }
   }
 
+  @Override
+  public Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+    final String idempotencyKey, final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+    Preconditions.checkArgument(amount > 0, "destinationAmount must be positive, but was " + amount);
+
+    final AccountId accountId = destinationAccountSettings.accountId();
+    final Optional<Long> settleThreshold = destinationAccountSettings.balanceSettings().settleThreshold();
+    try {
+      // Empty if the change had already been applied.
+      final List<Long> response = evalSha(
+        updateBalanceForFulfillScript,
+        ReturnType.MULTI,
+        2,
+        new byte[][] {
+          toRedisAccountsKey(accountId),
+          // Key2: idempotency_key, which is co-located with the account
+          keyLayout.changeIdempotenceKeyBytes(accountId, idempotencyKey),
+          // Arg1: amount
+          serializeLong(amount),
+          // Arg2: settleThreshold
+          settleThreshold.isPresent() ? serializeLong(settleThreshold.get()) : NO_SETTLE_THRESHOLD,
+          // Arg3: settleTo
+          serializeLong(destinationAccountSettings.balanceSettings().settleTo())
+        },
+        1
+      );
+      if (response.isEmpty()) {
+        return Optional.empty();
+      }
+      return Optional.of(toFulfillResponse(accountId, response));
+    } catch (Exception e) {
+      final String errorMessage = String.format(
+        "Error in updateBalanceForFulfill with amount `%s` for accountId `%s` and idempotencyKey `%s`",
+        amount, accountId, idempotencyKey
+      );
+      throw new BalanceTrackerException(errorMessage, e);
+    }
+  }
+
+  @Override
+  public boolean updateBalanceForReject(final String idempotencyKey, final AccountId sourceAccountId, final long amount)
+    throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    try {
+      return evalShaOnce(updateBalanceForRejectScript, idempotencyKey, sourceAccountId, amount);
+    } catch (Exception e) {
+      final String errorMessage = String.format(
+        "Error handling reject packet with sourceAmount `%s` from accountId `%s` and idempotencyKey `%s`",
+        amount, sourceAccountId, idempotencyKey
+      );
+      throw new BalanceTrackerException(errorMessage, e);
+    }
+  }
+
+  @Override
+  public boolean updateBalanceForOutgoingSettlementRefund(
+    final String idempotencyKey, final AccountId accountId, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    Objects.requireNonNull(accountId, "accountId must not be null");
+    Preconditions.checkArgument(amount >= 0, String.format("amount `%s` must be a positive signed long!", amount));
+
+    try {
+      return evalShaOnce(updateBalanceForSettlementRefundScript, idempotencyKey, accountId, amount);
+    } catch (Exception e) {
+      final String errorMessage = String.format(
+        "Error attempting to refund settlement payment in Redis for accountId `%s`, amount `%s` and " +
+          "idempotencyKey `%s`", accountId, amount, idempotencyKey
+      );
+      throw new BalanceTrackerException(errorMessage, e);
+    }
+  }
+
+  /**
+   * Atomically deduct {@code amount} from the balance of {@code accountId} in Redis, subject to {@code minBalance}.
+   * Arguments have already been validated by {@link #updateBalanceForPrepare(AccountId, long, Optional)}.
+   *
+   * @return The new net balance of the account (i.e., its clearing balance plus its prepaid amount).
+   */
+  protected long executePrepare(final AccountId accountId, final long amount, final Optional<Long> minBalance) {
+    return recordUpdate(() -> {
+      if (minBalance.isPresent()) {
+        return this.<Long>evalSha(
+          updateBalanceForPrepareScript,
+          ReturnType.INTEGER,
+          toRedisAccountsKey(accountId),
+          // Arg1: from_amount
+          serializeLong(amount),
+          // Arg2: min_balance (optional)
+          serializeLong(minBalance.get())
+        );
+      } else {
+        return this.<Long>evalSha(
+          updateBalanceForPrepareScript,
+          ReturnType.INTEGER,
+          toRedisAccountsKey(accountId),
+          // Arg1: from_amount
+          serializeLong(amount)
+        );
+      }
+    });
+  }
+
+  /**
+   * Atomically add {@code amount} to the clearing balance of {@code accountId} in Redis, and determine whether a
+   * settlement should be triggered. Arguments have already been validated by {@link
+   * #updateBalanceForFulfill(AccountSettings, long)}.
+   *
+   * @return The response of the fulfill script, in the form `{ clearing_balance, prepaid_amount, settle_amount }`.
+   */
+  protected List<Long> executeFulfill(
+    final AccountId accountId, final long amount, final Optional<Long> settleThreshold, final long settleTo
+  ) {
+    return recordUpdate(() -> evalSha(
+      updateBalanceForFulfillScript,
+      ReturnType.MULTI,
+      // Key1: accountId.
+      toRedisAccountsKey(accountId),
+      // Arg1: amount
+      serializeLong(amount),
+      // Arg2: settleThreshold
+      settleThreshold.isPresent() ? serializeLong(settleThreshold.get()) : NO_SETTLE_THRESHOLD,
+      // Arg3: settleTo
+      serializeLong(settleTo)
+    ));
+  }
+
+  /**
+   * Convert the response of the fulfill script into an {@link UpdateBalanceForFulfillResponse}.
+   *
+   * @param accountId The {@link AccountId} of the account that was fulfilled.
+   * @param response  The response of the fulfill script, as returned by {@link #executeFulfill}.
+   */
+  static UpdateBalanceForFulfillResponse toFulfillResponse(final AccountId accountId, final List<Long> response) {
+    Preconditions.checkArgument(
+      response.size() == 3,
+      String.format("Lua script returned invalid array values: %s", response)
+    );
+
+    // { clearing_balance, prepaid_amount, settle_amount }
+    // Idx0: clearing_balance
+    // Idx1: prepaid_balance
+    // Idx2: settlement_amount
+    return UpdateBalanceForFulfillResponse.builder()
+      .accountBalance(AccountBalance.builder()
+        .accountId(accountId)
+        .clearingBalance(response.get(0))
+        .prepaidAmount(response.get(1))
+        .build()
+      )
+      .clearingAmountToSettle(response.get(2))
+      .build();
+  }
+
+  /**
+   * Atomically return {@code amount} to the clearing balance of {@code accountId} in Redis. Arguments have already
+   * been validated by {@link #updateBalanceForReject(AccountId, long)}.
+   *
+   * @return The new clearing balance of the account.
+   */
+  protected long executeReject(final AccountId accountId, final long amount) {
+    return recordUpdate(() -> this.<Long>evalSha(
+      updateBalanceForRejectScript,
+      ReturnType.INTEGER,
+      toRedisAccountsKey(accountId),
+      // Arg1: from_amount
+      serializeLong(amount)
+    ));
+  }
+
+  /**
+   * Execute {@code script}, which credits {@code amount} to the clearing balance of {@code accountId}, unless a change
+   * with {@code idempotencyKey} has already been applied to the account.
+   *
+   * @return {@code false} if the change had already been applied.
+   */
+  private boolean evalShaOnce(
+    final LuaScript script, final String idempotencyKey, final AccountId accountId, final long amount
+  ) {
+    final Long clearingBalance = evalSha(
+      script,
+      ReturnType.INTEGER,
+      2,
+      new byte[][] {
+        toRedisAccountsKey(accountId),
+        // Key2: idempotency_key, which is co-located with the account
+        keyLayout.changeIdempotenceKeyBytes(accountId, idempotencyKey),
+        // Arg1: amount
+        serializeLong(amount)
+      },
+      1
+    );
+    logger.debug(
+      "Processed balance update with amount: `{}` and idempotencyKey: `{}`. AccountId `{}` has clearing_balance: `{}`",
+      amount, idempotencyKey, accountId, clearingBalance
+    );
+    return clearingBalance != null;
+  }
+
+  /**
+   * Perform a single packet balance update, and record how long it took.
+   */
+  private <T> T recordUpdate(final Supplier<T> update) {
+    final long startNanos = System.nanoTime();
+    try {
+      return update.get();
+    } finally {
+      metrics.recordUpdate(System.nanoTime() - startNanos);
+    }
+  }
+
   /**
-   * Helper method to convert an {@link AccountId} into a {@link String} for usage by Redis.
+   * Execute {@code script} via EVALSHA against a single account key.
+   *
+   * <p>Redis forgets every loaded script whenever it restarts, fails over to a replica that never loaded them, or has
+   * its script cache flushed. If Redis reports that the script is unknown, all of this tracker's scripts are re-loaded
+   * (so that the remaining scripts don't each incur a failed round trip), and the command is retried once.</p>
+   *
+   * <p>When connected to Redis Cluster, the script is sent to the shard that owns the slot of its first key (Spring
+   * Data Redis does not support scripting on a Jedis cluster connection, so this uses {@link JedisCluster}
+   * directly). Every key of a script must therefore hash to the same slot.</p>
    *
-   * @param accountId
+   * @param script     The {@link LuaScript} to execute.
+   * @param returnType  The {@link ReturnType} of the script.
+   * @param redisKey   The encoded Redis key of the account the script operates on.
+   * @param args       The encoded arguments of the script.
    *
-   * @return
+   * @return The reply of the script.
    */
-  private String toRedisAccountsKey(final AccountId accountId) {
-    return "accounts:" + accountId.value();
+  private <T> T evalSha(
+    final LuaScript script, final ReturnType returnType, final byte[] redisKey, final byte[]... args
+  ) {
+    final byte[][] keysAndArgs = new byte[args.length + 1][];
+    keysAndArgs[0] = redisKey;
+    System.arraycopy(args, 0, keysAndArgs, 1, args.length);
+    return evalSha(script, returnType, 1, keysAndArgs, 1);
   }
 
   /**
-   * Helper method to convert a {@link String} into a long number.
+   * Execute {@code script} via EVALSHA, as described in {@link #evalSha(LuaScript, ReturnType, byte[], byte[]...)}.
    *
-   * @param numAsString a {@code String} containing the {@code long} representation to be parsed
+   * @param script      The {@link LuaScript} to execute.
+   * @param returnType  The {@link ReturnType} of the script.
+   * @param numKeys     The number of leading elements of {@code keysAndArgs} that are keys.
+   * @param keysAndArgs The encoded keys, followed by the encoded arguments, of the script.
+   * @param numUpdates  The number of balance updates that the script applies.
    *
-   * @return the {@code long} represented by the argument in decimal.
+   * @return The reply of the script.
+   */
+  <T> T evalSha(
+    final LuaScript script, final ReturnType returnType, final int numKeys, final byte[][] keysAndArgs,
+    final int numUpdates
+  ) {
+    final long startNanos = System.nanoTime();
+    final T result;
+    try {
+      result = executeEvalSha(script, returnType, numKeys, keysAndArgs);
+    } catch (RuntimeException e) {
+      metrics.recordFailedCommand(System.nanoTime() - startNanos);
+      throw e;
+    }
+    metrics.recordCommand(numUpdates, System.nanoTime() - startNanos);
+    return result;
+  }
+
+  private <T> T executeEvalSha(
+    final LuaScript script, final ReturnType returnType, final int numKeys, final byte[][] keysAndArgs
+  ) {
+    return stringRedisTemplate.execute((RedisCallback<T>) connection -> {
+      if (connection instanceof RedisClusterConnection) {
+        return evalShaOnCluster((JedisCluster) connection.getNativeConnection(), script, numKeys, keysAndArgs);
+      }
+      try {
+        return connection.evalSha(script.sha1, returnType, numKeys, keysAndArgs);
+      } catch (RuntimeException e) {
+        if (!isNoScriptError(e)) {
+          throw e;
+        }
+        logger.info("Redis script cache is missing balance-tracking scripts. Re-loading all scripts.");
+        loadScripts(connection, script);
+        return connection.evalSha(script.sha1, returnType, numKeys, keysAndArgs);
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T evalShaOnCluster(
+    final JedisCluster cluster, final LuaScript script, final int numKeys, final byte[][] keysAndArgs
+  ) {
+    try {
+      return (T) cluster.evalsha(script.sha1, numKeys, keysAndArgs);
+    } catch (RuntimeException e) {
+      if (!isNoScriptError(e)) {
+        throw e;
+      }
+      logger.info("Redis cluster node is missing balance-tracking scripts. Re-loading all scripts.");
+      // Scripts are cached per node, so load them onto the node that owns the slot of the first key.
+      final byte[] slotKey = keysAndArgs[0];
+      cluster.scriptLoad(script.body, slotKey);
+      for (LuaScript otherScript : allScripts) {
+        if (otherScript != script) {
+          cluster.scriptLoad(otherScript.body, slotKey);
+        }
+      }
+      return (T) cluster.evalsha(script.sha1, numKeys, keysAndArgs);
+    }
+  }
+
+  /**
+   * Load {@code missingScript}, followed by every other script used by this tracker, into the Redis script cache. Note
+   * that the Jedis driver does not support SCRIPT LOAD inside a pipeline, so each script is loaded with its own round
+   * trip.
+   */
+  private void loadScripts(final RedisConnection connection, final LuaScript missingScript) {
+    connection.scriptLoad(missingScript.body);
+    for (LuaScript script : allScripts) {
+      if (script != missingScript) {
+        connection.scriptLoad(script.body);
+      }
+    }
+  }
+
+  /**
+   * Determines if {@code exception} (or any of its causes) was caused by a `NOSCRIPT` error reply from Redis.
+   */
+  private boolean isNoScriptError(final Throwable exception) {
+    for (Throwable t = exception; t != null; t = t.getCause()) {
+      if (t.getMessage() != null && t.getMessage().contains(NO_SCRIPT_ERROR)) {
+        return true;
+      }
+      if (t.getCause() == t) {
+        break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Read the current topology of the Redis Cluster (i.e., which master serves each hash slot).
+   *
+   * @return The {@link ClusterTopology}, or {@link Optional#empty()} if Redis is not a cluster.
+   */
+  Optional<ClusterTopology> readClusterTopology() {
+    return stringRedisTemplate.execute((RedisCallback<Optional<ClusterTopology>>) connection -> {
+      if (!(connection instanceof RedisClusterConnection)) {
+        return Optional.empty();
+      }
+      final Set<RedisClusterNode> nodes = new HashSet<>();
+      ((RedisClusterConnection) connection).clusterGetNodes().forEach(nodes::add);
+      return Optional.of(new ClusterTopology(nodes));
+    });
+  }
+
+  /**
+   * @return The {@link RedisKeyLayout} that this tracker names its keys with.
+   */
+  RedisKeyLayout getKeyLayout() {
+    return keyLayout;
+  }
+
+  /**
+   * Helper method to convert an {@link AccountId} into the bytes of its Redis key, as defined by this tracker's {@link
+   * RedisKeyLayout}. Keys are cached per account, so each is only encoded once.
+   *
+   * @param accountId The {@link AccountId} of an account.
    *
-   * @throws NumberFormatException if the string does not contain a parsable {@code long}.
+   * @return The encoded Redis key of the account.
+   */
+  byte[] toRedisAccountsKey(final AccountId accountId) {
+    final byte[] redisAccountKey = redisAccountKeys.get(accountId);
+    if (redisAccountKey != null) {
+      return redisAccountKey;
+    }
+    return redisAccountKeys.computeIfAbsent(accountId, keyLayout::accountKeyBytes);
+  }
+
+  /**
+   * The identity of a Lua script, pre-encoded for use with EVALSHA and SCRIPT LOAD.
    */
-  private long toLong(final String numAsString) {
-    if (numAsString == null || numAsString.length() == 0) {
-      return 0L;
-    } else {
-      // See note in updateBalanceForPrepare for why this is not Long.parseUnsignedLong
-      return Long.parseLong(numAsString);
+  static final class LuaScript {
+
+    private final byte[] sha1;
+    private final byte[] body;
+
+    LuaScript(final RedisScript<?> redisScript) {
+      Objects.requireNonNull(redisScript);
+      this.sha1 = redisScript.getSha1().getBytes(StandardCharsets.US_ASCII);
+      this.body = redisScript.getScriptAsString().getBytes(StandardCharsets.UTF_8);
     }
   }
 }
@@ -0,0 +1,85 @@
+package org.interledger.connector.balances;
+
+import org.interledger.connector.accounts.AccountId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * The names of the Redis keys that {@link RedisBalanceTracker} stores balances under.
+ */
+public enum RedisKeyLayout {
+
+  /**
+   * Keys of the form `accounts:{account_id}`, with idempotency keys stored exactly as supplied. This is the original
+   * layout, and is suitable for a single Redis primary.
+   */
+  STANDALONE {
+    @Override
+    public String accountKey(final AccountId accountId) {
+      return ACCOUNTS_KEY_PREFIX + Objects.requireNonNull(accountId).value();
+    }
+
+    @Override
+    public String settlementIdempotenceKey(final AccountId accountId, final String idempotencyKey) {
+      return Objects.requireNonNull(idempotencyKey);
+    }
+  },
+
+  /**
+   * Keys whose account id is a Redis Cluster hash tag, so that every key of an account (including the idempotency keys
+   * of its incoming settlements) hashes to the same slot. This allows each balance script to be routed to, and executed
+   * atomically on, the single shard that owns the account.
+   */
+  CLUSTER {
+    @Override
+    public String accountKey(final AccountId accountId) {
+      return ACCOUNTS_KEY_PREFIX + "{" + Objects.requireNonNull(accountId).value() + "}";
+    }
+
+    @Override
+    public String settlementIdempotenceKey(final AccountId accountId, final String idempotencyKey) {
+      return accountKey(accountId) + ":settlement_idempotence:" + Objects.requireNonNull(idempotencyKey);
+    }
+  };
+
+  private static final String ACCOUNTS_KEY_PREFIX = "accounts:";
+
+  /**
+   * @param accountId The {@link AccountId} of an account.
+   *
+   * @return The key of the Redis hash that holds the balance of the account.
+   */
+  public abstract String accountKey(AccountId accountId);
+
+  /**
+   * @param accountId      The {@link AccountId} of the account that an incoming settlement was received for.
+   * @param idempotencyKey The idempotency key supplied by the settlement engine.
+   *
+   * @return The key that records that the incoming settlement has already been applied.
+   */
+  public abstract String settlementIdempotenceKey(AccountId accountId, String idempotencyKey);
+
+  /**
+   * @param accountId      The {@link AccountId} of the account that a balance change was applied to.
+   * @param idempotencyKey The idempotency key of the change (e.g., that of a replayed {@link BalanceJournal} entry).
+   *
+   * @return The key that records that the change has already been applied. Under either layout, it is co-located with
+   * the account.
+   */
+  public String changeIdempotenceKey(final AccountId accountId, final String idempotencyKey) {
+    return accountKey(accountId) + ":change_idempotence:" + Objects.requireNonNull(idempotencyKey);
+  }
+
+  byte[] accountKeyBytes(final AccountId accountId) {
+    return accountKey(accountId).getBytes(StandardCharsets.UTF_8);
+  }
+
+  byte[] settlementIdempotenceKeyBytes(final AccountId accountId, final String idempotencyKey) {
+    return settlementIdempotenceKey(accountId, idempotencyKey).getBytes(StandardCharsets.UTF_8);
+  }
+
+  byte[] changeIdempotenceKeyBytes(final AccountId accountId, final String idempotencyKey) {
+    return changeIdempotenceKey(accountId, idempotencyKey).getBytes(StandardCharsets.UTF_8);
+  }
+}
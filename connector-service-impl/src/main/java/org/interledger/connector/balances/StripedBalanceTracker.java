@@ -0,0 +1,507 @@
+package org.interledger.connector.balances;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <p>A {@link BalanceTracker} that spreads the balance updates of a few designated, very busy accounts across several
+ * stripes, so that those accounts are not limited by the throughput of a single balance (e.g., a single Redis key or a
+ * single in-memory cell). All other accounts are passed straight through to the delegate.</p>
+ *
+ * <p>Each stripe is tracked by the delegate as a separate account, whose {@link AccountId} is that of the striped
+ * account followed by {@link #STRIPE_SEPARATOR} and the stripe number. The account's own balance in the delegate (its
+ * "home" balance) remains the authoritative one: incoming settlements, settlement refunds and settlements all apply to
+ * it, and a background task periodically moves the net balance of every stripe into it. The balance of a striped
+ * account is the sum of its home balance and all of its stripes.</p>
+ *
+ * <p>Prepares and rejects are applied to a random stripe. So are fulfills, unless the account has a settlement
+ * threshold, in which case they are applied to the home balance so that settlements are still triggered by the
+ * delegate.</p>
+ *
+ * <p>A minimum balance is enforced by allocating the account's headroom (i.e., how far it is above its minimum
+ * balance) evenly between its stripes whenever it is rebalanced, and by then enforcing each stripe's share of the
+ * headroom as that stripe's own minimum balance. A prepare that exceeds its stripe's share is retried on the other
+ * stripes before it is rejected. Because of this, a prepare may be rejected slightly before the account as a whole
+ * reaches its minimum balance, until the next rebalance redistributes the remaining headroom. Conversely, a prepare
+ * that races with a rebalance may be checked against its stripe's previous share, so the minimum balance is only
+ * enforced to within the prepares that are in flight while an account is being rebalanced.</p>
+ *
+ * <p>The asynchronous updates of the packet path are applied using the asynchronous updates of the delegate, so they
+ * only wait for the delegate when the headroom of a striped account must be reallocated because its minimum balance
+ * changed. A settlement that is triggered by an asynchronous fulfill rebalances the account in the background.</p>
+ */
+public class StripedBalanceTracker implements BalanceTracker, AutoCloseable {
+
+  public static final String STRIPE_SEPARATOR = "~";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final BalanceTracker delegate;
+  private final int numStripes;
+  private final Map<AccountId, StripedAccount> stripedAccounts;
+  private final ScheduledExecutorService rebalanceExecutor;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param delegate          The {@link BalanceTracker} that tracks the home balance and stripes of each account.
+   * @param stripedAccountIds The accounts whose balances should be striped.
+   * @param numStripes        The number of stripes to split each striped account into.
+   * @param rebalanceInterval How often to move the balance of each stripe into its account's home balance, and to
+   *                          reallocate headroom between stripes.
+   * @param rebalanceUnit     The {@link TimeUnit} of {@code rebalanceInterval}.
+   */
+  public StripedBalanceTracker(
+    final BalanceTracker delegate,
+    final Collection<AccountId> stripedAccountIds,
+    final int numStripes,
+    final long rebalanceInterval,
+    final TimeUnit rebalanceUnit
+  ) {
+    this.delegate = Objects.requireNonNull(delegate);
+    Preconditions.checkArgument(numStripes > 0, "numStripes must be positive");
+    Preconditions.checkArgument(rebalanceInterval > 0, "rebalanceInterval must be positive");
+    this.numStripes = numStripes;
+
+    final ImmutableMap.Builder<AccountId, StripedAccount> builder = ImmutableMap.builder();
+    Objects.requireNonNull(stripedAccountIds).forEach(
+      accountId -> builder.put(accountId, new StripedAccount(accountId, numStripes))
+    );
+    this.stripedAccounts = builder.build();
+
+    this.rebalanceExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("balance-tracker-rebalance").setDaemon(true).build()
+    );
+    if (!stripedAccounts.isEmpty()) {
+      this.rebalanceExecutor.scheduleWithFixedDelay(
+        this::rebalanceQuietly, rebalanceInterval, rebalanceInterval, rebalanceUnit
+      );
+    }
+  }
+
+  /**
+   * The {@link AccountId} under which the delegate tracks stripe {@code stripe} of {@code accountId}.
+   */
+  static AccountId toStripeAccountId(final AccountId accountId, final int stripe) {
+    return AccountId.of(accountId.value() + STRIPE_SEPARATOR + stripe);
+  }
+
+  @Override
+  public AccountBalance balance(final AccountId accountId) {
+    Objects.requireNonNull(accountId);
+
+    final StripedAccount stripedAccount = stripedAccounts.get(accountId);
+    final AccountBalance homeBalance = delegate.balance(accountId);
+    if (stripedAccount == null) {
+      return homeBalance;
+    }
+
+    long clearingBalance = homeBalance.clearingBalance();
+    long prepaidAmount = homeBalance.prepaidAmount();
+    for (AccountId stripeAccountId : stripedAccount.stripeAccountIds) {
+      final AccountBalance stripeBalance = delegate.balance(stripeAccountId);
+      clearingBalance += stripeBalance.clearingBalance();
+      prepaidAmount += stripeBalance.prepaidAmount();
+    }
+    return AccountBalance.builder()
+      .accountId(accountId)
+      .clearingBalance(clearingBalance)
+      .prepaidAmount(prepaidAmount)
+      .build();
+  }
+
+  @Override
+  public void updateBalanceForPrepare(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Objects.requireNonNull(minBalance, "minBalance must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(sourceAccountId);
+    if (stripedAccount == null) {
+      delegate.updateBalanceForPrepare(sourceAccountId, amount, minBalance);
+      return;
+    }
+
+    final int firstStripe = randomStripe();
+    if (!minBalance.isPresent()) {
+      delegate.updateBalanceForPrepare(stripedAccount.stripeAccountIds[firstStripe], amount, minBalance);
+      return;
+    }
+
+    if (!minBalance.equals(stripedAccount.minBalance)) {
+      // Allocate headroom for this min balance before enforcing it.
+      stripedAccount.minBalance = minBalance;
+      rebalance(stripedAccount);
+    }
+
+    BalanceTrackerException lastException = null;
+    for (int i = 0; i < numStripes; i++) {
+      final int stripe = (firstStripe + i) % numStripes;
+      try {
+        delegate.updateBalanceForPrepare(
+          stripedAccount.stripeAccountIds[stripe], amount, Optional.of(stripedAccount.stripeMinBalances[stripe])
+        );
+        return;
+      } catch (BalanceTrackerException e) {
+        lastException = e;
+      }
+    }
+    throw new BalanceTrackerException(String.format(
+      "Incoming prepare of %s would bring account %s under its minimum balance. min balance: %s",
+      amount, sourceAccountId, minBalance.get()
+    ), lastException);
+  }
+
+  @Override
+  public UpdateBalanceForFulfillResponse updateBalanceForFulfill(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(destinationAccountSettings.accountId());
+    if (stripedAccount == null) {
+      return delegate.updateBalanceForFulfill(destinationAccountSettings, amount);
+    }
+
+    final Optional<Long> settleThreshold = destinationAccountSettings.balanceSettings().settleThreshold();
+    stripedAccount.settleTo = settleThreshold.map(threshold -> destinationAccountSettings.balanceSettings().settleTo());
+    if (settleThreshold.isPresent()) {
+      final UpdateBalanceForFulfillResponse response =
+        delegate.updateBalanceForFulfill(destinationAccountSettings, amount);
+      if (response.clearingAmountToSettle() > 0) {
+        // The settlement reduced the home balance, so the headroom of each stripe must shrink too.
+        rebalance(stripedAccount);
+      }
+      return response;
+    }
+
+    final UpdateBalanceForFulfillResponse stripeResponse = delegate.updateBalanceForFulfill(
+      stripedAccount.stripeSettings(destinationAccountSettings, randomStripe()), amount
+    );
+    return homeResponse(stripedAccount, stripeResponse);
+  }
+
+  /**
+   * As {@link #updateBalanceForFulfill(AccountSettings, long)}, except that a striped account is credited on the stripe
+   * chosen by {@code idempotencyKey} (rather than at random), so that every attempt of the same change is applied to,
+   * and deduplicated by, the same stripe.
+   */
+  @Override
+  public Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+    final String idempotencyKey, final AccountSettings destinationAccountSettings, final long amount
+  ) throws BalanceTrackerException {
+    Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(destinationAccountSettings.accountId());
+    if (stripedAccount == null) {
+      return delegate.updateBalanceForFulfill(idempotencyKey, destinationAccountSettings, amount);
+    }
+
+    final Optional<Long> settleThreshold = destinationAccountSettings.balanceSettings().settleThreshold();
+    stripedAccount.settleTo = settleThreshold.map(threshold -> destinationAccountSettings.balanceSettings().settleTo());
+    if (settleThreshold.isPresent()) {
+      final Optional<UpdateBalanceForFulfillResponse> response =
+        delegate.updateBalanceForFulfill(idempotencyKey, destinationAccountSettings, amount);
+      if (response.isPresent() && response.get().clearingAmountToSettle() > 0) {
+        // The settlement reduced the home balance, so the headroom of each stripe must shrink too.
+        rebalance(stripedAccount);
+      }
+      return response;
+    }
+
+    final int stripe = Math.floorMod(idempotencyKey.hashCode(), numStripes);
+    return delegate.updateBalanceForFulfill(
+      idempotencyKey, stripedAccount.stripeSettings(destinationAccountSettings, stripe), amount
+    ).map(stripeResponse -> homeResponse(stripedAccount, stripeResponse));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBalanceForPrepareAsync(
+    final AccountId sourceAccountId, final long amount, final Optional<Long> minBalance
+  ) {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+    Objects.requireNonNull(minBalance, "minBalance must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(sourceAccountId);
+    if (stripedAccount == null) {
+      return delegate.updateBalanceForPrepareAsync(sourceAccountId, amount, minBalance);
+    }
+
+    final int firstStripe = randomStripe();
+    if (!minBalance.isPresent()) {
+      return delegate.updateBalanceForPrepareAsync(stripedAccount.stripeAccountIds[firstStripe], amount, minBalance);
+    }
+
+    if (!minBalance.equals(stripedAccount.minBalance)) {
+      // Allocate headroom for this min balance before enforcing it.
+      stripedAccount.minBalance = minBalance;
+      rebalance(stripedAccount);
+    }
+    return prepareOnStripeAsync(stripedAccount, amount, minBalance.get(), firstStripe, 0);
+  }
+
+  @Override
+  public CompletableFuture<UpdateBalanceForFulfillResponse> updateBalanceForFulfillAsync(
+    final AccountSettings destinationAccountSettings, final long amount
+  ) {
+    Objects.requireNonNull(destinationAccountSettings, "destinationAccountSettings must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(destinationAccountSettings.accountId());
+    if (stripedAccount == null) {
+      return delegate.updateBalanceForFulfillAsync(destinationAccountSettings, amount);
+    }
+
+    final Optional<Long> settleThreshold = destinationAccountSettings.balanceSettings().settleThreshold();
+    stripedAccount.settleTo = settleThreshold.map(threshold -> destinationAccountSettings.balanceSettings().settleTo());
+    if (settleThreshold.isPresent()) {
+      return delegate.updateBalanceForFulfillAsync(destinationAccountSettings, amount).thenApply(response -> {
+        if (response.clearingAmountToSettle() > 0) {
+          // The settlement reduced the home balance, so the headroom of each stripe must shrink too. This may run on
+          // a thread that the delegate completes its updates on, so it must not wait for the delegate here.
+          try {
+            rebalanceExecutor.execute(() -> rebalanceQuietly(stripedAccount));
+          } catch (RejectedExecutionException e) {
+            // Closed, so there are no stripes left to rebalance.
+          }
+        }
+        return response;
+      });
+    }
+
+    return delegate.updateBalanceForFulfillAsync(
+      stripedAccount.stripeSettings(destinationAccountSettings, randomStripe()), amount
+    ).thenApply(stripeResponse -> homeResponse(stripedAccount, stripeResponse));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateBalanceForRejectAsync(final AccountId sourceAccountId, final long amount) {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(sourceAccountId);
+    if (stripedAccount == null) {
+      return delegate.updateBalanceForRejectAsync(sourceAccountId, amount);
+    }
+    return delegate.updateBalanceForRejectAsync(stripedAccount.stripeAccountIds[randomStripe()], amount);
+  }
+
+  @Override
+  public void updateBalanceForReject(final AccountId sourceAccountId, final long amount)
+    throws BalanceTrackerException {
+    Objects.requireNonNull(sourceAccountId, "sourceAccountId must not be null");
+
+    final StripedAccount stripedAccount = stripedAccounts.get(sourceAccountId);
+    if (stripedAccount == null) {
+      delegate.updateBalanceForReject(sourceAccountId, amount);
+    } else {
+      delegate.updateBalanceForReject(stripedAccount.stripeAccountIds[randomStripe()], amount);
+    }
+  }
+
+  @Override
+  public boolean updateBalanceForIncomingSettlement(
+    final String idempotencyKey, final AccountId accountId, final long amount
+  ) throws BalanceTrackerException {
+    return delegate.updateBalanceForIncomingSettlement(idempotencyKey, accountId, amount);
+  }
+
+  @Override
+  public void updateBalanceForOutgoingSettlementRefund(final AccountId accountId, final long amount)
+    throws BalanceTrackerException {
+    delegate.updateBalanceForOutgoingSettlementRefund(accountId, amount);
+  }
+
+  @Override
+  public void close() {
+    rebalanceExecutor.shutdownNow();
+    BalanceTrackers.closeDelegate(delegate);
+  }
+
+  /**
+   * Rebalance every striped account.
+   */
+  @VisibleForTesting
+  void rebalance() {
+    stripedAccounts.values().forEach(this::rebalance);
+  }
+
+  private void rebalanceQuietly() {
+    try {
+      rebalance();
+    } catch (RuntimeException e) {
+      // Never let an exception cancel the scheduled rebalance.
+      logger.error("Unable to rebalance striped balances: {}", e.getMessage(), e);
+    }
+  }
+
+  private void rebalanceQuietly(final StripedAccount stripedAccount) {
+    try {
+      rebalance(stripedAccount);
+    } catch (RuntimeException e) {
+      logger.error(
+        "Unable to rebalance striped balance. accountId={} error={}", stripedAccount.accountId, e.getMessage(), e
+      );
+    }
+  }
+
+  /**
+   * Asynchronously apply a prepare to stripe {@code firstStripe + attempt} of {@code stripedAccount}, and then to each
+   * of the remaining stripes in turn until one of them has enough headroom, as in {@link
+   * #updateBalanceForPrepare(AccountId, long, Optional)}.
+   */
+  private CompletableFuture<Void> prepareOnStripeAsync(
+    final StripedAccount stripedAccount, final long amount, final long minBalance, final int firstStripe,
+    final int attempt
+  ) {
+    final int stripe = (firstStripe + attempt) % numStripes;
+    return delegate.updateBalanceForPrepareAsync(
+      stripedAccount.stripeAccountIds[stripe], amount, Optional.of(stripedAccount.stripeMinBalances[stripe])
+    ).handle((result, error) -> {
+      if (error == null) {
+        return CompletableFuture.<Void>completedFuture(null);
+      }
+      final Throwable cause = error instanceof CompletionException && error.getCause() != null ?
+        error.getCause() : error;
+      if (!(cause instanceof BalanceTrackerException)) {
+        return failedFuture(cause);
+      }
+      if (attempt + 1 < numStripes) {
+        return prepareOnStripeAsync(stripedAccount, amount, minBalance, firstStripe, attempt + 1);
+      }
+      return failedFuture(new BalanceTrackerException(String.format(
+        "Incoming prepare of %s would bring account %s under its minimum balance. min balance: %s",
+        amount, stripedAccount.accountId, minBalance
+      ), cause));
+    }).thenCompose(Function.identity());
+  }
+
+  private static CompletableFuture<Void> failedFuture(final Throwable error) {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    future.completeExceptionally(error);
+    return future;
+  }
+
+  /**
+   * Move the net balance of each stripe of {@code stripedAccount} into its home balance, and then allocate the
+   * account's headroom evenly between its stripes.
+   */
+  private void rebalance(final StripedAccount stripedAccount) {
+    synchronized (stripedAccount) {
+      for (AccountId stripeAccountId : stripedAccount.stripeAccountIds) {
+        final long stripeBalance = delegate.balance(stripeAccountId).netBalance().longValue();
+        // Always debit before crediting, so that the total balance is never overstated.
+        if (stripeBalance > 0) {
+          delegate.updateBalanceForPrepare(stripeAccountId, stripeBalance, Optional.empty());
+          delegate.updateBalanceForReject(stripedAccount.accountId, stripeBalance);
+        } else if (stripeBalance < 0) {
+          delegate.updateBalanceForPrepare(stripedAccount.accountId, -stripeBalance, Optional.empty());
+          delegate.updateBalanceForReject(stripeAccountId, -stripeBalance);
+        }
+      }
+
+      final Optional<Long> minBalance = stripedAccount.minBalance;
+      if (!minBalance.isPresent()) {
+        return;
+      }
+
+      // A settlement can bring the home balance down to settleTo, so don't lend out any headroom above that.
+      final long homeBalance = delegate.balance(stripedAccount.accountId).netBalance().longValue();
+      final long securedBalance = stripedAccount.settleTo
+        .map(settleTo -> Math.min(homeBalance, settleTo))
+        .orElse(homeBalance);
+      final long headroom = Math.max(0, securedBalance - minBalance.get());
+      final long[] stripeMinBalances = new long[numStripes];
+      for (int i = 0; i < numStripes; i++) {
+        // Hand out the remainder too, so that the whole headroom can be used.
+        stripeMinBalances[i] = -(headroom / numStripes + (i < headroom % numStripes ? 1 : 0));
+      }
+      stripedAccount.stripeMinBalances = stripeMinBalances;
+    }
+  }
+
+  /**
+   * Report the result of a fulfill that was applied to a stripe as a result for {@code stripedAccount} itself.
+   */
+  private UpdateBalanceForFulfillResponse homeResponse(
+    final StripedAccount stripedAccount, final UpdateBalanceForFulfillResponse stripeResponse
+  ) {
+    return UpdateBalanceForFulfillResponse.builder()
+      .from(stripeResponse)
+      .accountBalance(AccountBalance.builder()
+        .from(stripeResponse.accountBalance())
+        .accountId(stripedAccount.accountId)
+        .build())
+      .build();
+  }
+
+  private int randomStripe() {
+    return ThreadLocalRandom.current().nextInt(numStripes);
+  }
+
+  @VisibleForTesting
+  long getStripeMinBalance(final AccountId accountId, final int stripe) {
+    return stripedAccounts.get(accountId).stripeMinBalances[stripe];
+  }
+
+  /**
+   * The stripes of a single striped account, and the state used to allocate its headroom between them.
+   */
+  private static final class StripedAccount {
+
+    private final AccountId accountId;
+    private final AccountId[] stripeAccountIds;
+
+    // The most recent min balance and settleTo of this account, which bound the headroom available to its stripes.
+    private volatile Optional<Long> minBalance = Optional.empty();
+    private volatile Optional<Long> settleTo = Optional.empty();
+
+    // Each stripe's share of the headroom, enforced as the minimum balance of that stripe.
+    private volatile long[] stripeMinBalances;
+
+    // The destination settings of each stripe, derived from the most recently seen settings of this account.
+    private volatile AccountSettings lastSettings;
+    private volatile AccountSettings[] stripeSettings;
+
+    private StripedAccount(final AccountId accountId, final int numStripes) {
+      this.accountId = Objects.requireNonNull(accountId);
+      this.stripeAccountIds = new AccountId[numStripes];
+      this.stripeMinBalances = new long[numStripes];
+      for (int i = 0; i < numStripes; i++) {
+        stripeAccountIds[i] = toStripeAccountId(accountId, i);
+      }
+    }
+
+    private AccountSettings stripeSettings(final AccountSettings accountSettings, final int stripe) {
+      AccountSettings[] settings = this.stripeSettings;
+      if (accountSettings != lastSettings || settings == null) {
+        settings = new AccountSettings[stripeAccountIds.length];
+        for (int i = 0; i < settings.length; i++) {
+          settings[i] = AccountSettings.builder().from(accountSettings).accountId(stripeAccountIds[i]).build();
+        }
+        this.stripeSettings = settings;
+        this.lastSettings = accountSettings;
+      }
+      return settings[stripe];
+    }
+  }
+}
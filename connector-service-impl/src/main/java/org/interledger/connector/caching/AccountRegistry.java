@@ -0,0 +1,329 @@
+package org.interledger.connector.caching;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.links.filters.DefaultLinkFilterChain;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>A registry of the hot-path state that the packet-switch needs for an account (i.e., its {@link AccountSettings},
+ * and its compiled outbound filter-chain, which holds the account's {@link org.interledger.connector.link.Link}), so
+ * that a single lookup resolves all of it for a packet.</p>
+ *
+ * <p>The {@link AccountSettingsLoadingCache} remains the authority on an account's settings. Settings that are
+ * changed through it are published here immediately, and {@link #resolve(AccountId, Function)} re-reads the settings
+ * of an account through the cache once they are older than {@link #ACCOUNT_SETTINGS_RECHECK_INTERVAL}, so that the
+ * cache's refresh and invalidation still reach the packet-switch, at the cost of one cache read per account per
+ * interval rather than one per packet.</p>
+ *
+ * <p>The first time an {@link AccountId} is registered, it is given a dense {@code int} handle, which never changes.
+ * The {@link Entry} for each handle is immutable, and entries are stored in fixed-size chunks of an array that is
+ * replaced (copy-on-write) whenever an entry changes. Readers therefore never lock: resolving a handle is a volatile
+ * read followed by two array indexes, and resolving an {@link AccountId} adds only a single hash lookup. Writes are
+ * rare (an account is first used, its settings are re-read, or its link is replaced or removed), and only copy the
+ * affected chunk.</p>
+ */
+public class AccountRegistry {
+
+  /**
+   * Returned by {@link #getHandle(AccountId)} for an account that has never been registered.
+   */
+  public static final int NO_HANDLE = -1;
+
+  /**
+   * How long the settings of an account are served from this registry before they are re-read through the {@link
+   * AccountSettingsLoadingCache}.
+   */
+  public static final Duration ACCOUNT_SETTINGS_RECHECK_INTERVAL = Duration.ofSeconds(1);
+
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final ConcurrentMap<AccountId, Integer> handles = new ConcurrentHashMap<>();
+
+  private final Ticker ticker;
+  private final long accountSettingsRecheckNanos;
+
+  // The current snapshot. Neither this array nor any chunk within it is modified once published.
+  private volatile Entry[][] chunks = new Entry[0][];
+
+  // Guarded by `this`.
+  private int nextHandle;
+
+  /**
+   * No-args Constructor.
+   */
+  public AccountRegistry() {
+    this(Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  AccountRegistry(final Ticker ticker) {
+    this.ticker = Objects.requireNonNull(ticker);
+    this.accountSettingsRecheckNanos = ACCOUNT_SETTINGS_RECHECK_INTERVAL.toNanos();
+  }
+
+  /**
+   * Obtain the handle of the account identified by {@code accountId}.
+   *
+   * @param accountId The {@link AccountId} of an account.
+   *
+   * @return The account's handle, or {@link #NO_HANDLE} if it has not been registered.
+   */
+  public int getHandle(final AccountId accountId) {
+    final Integer handle = handles.get(accountId);
+    return handle == null ? NO_HANDLE : handle;
+  }
+
+  /**
+   * Obtain the handle of the account identified by {@code accountId}, registering it if necessary.
+   *
+   * @param accountId The {@link AccountId} of an account.
+   *
+   * @return The account's handle.
+   */
+  public int register(final AccountId accountId) {
+    Objects.requireNonNull(accountId);
+    final int handle = getHandle(accountId);
+    if (handle != NO_HANDLE) {
+      return handle;
+    }
+    synchronized (this) {
+      final Integer existingHandle = handles.get(accountId);
+      if (existingHandle != null) {
+        return existingHandle;
+      }
+      final int newHandle = nextHandle++;
+      // Publish the entry before the handle, so that anyone who can see the handle can also see its entry.
+      publish(newHandle, new Entry(newHandle, accountId, Optional.empty(), 0, Optional.empty()));
+      handles.put(accountId, newHandle);
+      return newHandle;
+    }
+  }
+
+  /**
+   * Obtain the current {@link Entry} for {@code handle}.
+   *
+   * @param handle A handle obtained from {@link #register(AccountId)}.
+   *
+   * @return The {@link Entry}, or {@code null} if {@code handle} has not been assigned.
+   */
+  public Entry getEntry(final int handle) {
+    final Entry[][] currentChunks = this.chunks;
+    final int chunkIndex = handle >>> CHUNK_BITS;
+    if (handle < 0 || chunkIndex >= currentChunks.length) {
+      return null;
+    }
+    return currentChunks[chunkIndex][handle & CHUNK_MASK];
+  }
+
+  /**
+   * Obtain the current {@link Entry} for the account identified by {@code accountId}.
+   *
+   * @param accountId The {@link AccountId} of an account.
+   *
+   * @return The {@link Entry}, or {@code null} if the account has not been registered.
+   */
+  public Entry getEntry(final AccountId accountId) {
+    final int handle = getHandle(accountId);
+    return handle == NO_HANDLE ? null : getEntry(handle);
+  }
+
+  /**
+   * Obtain the current {@link Entry} for the account identified by {@code accountId}, with its settings. The settings
+   * are read through {@code accountSettingsLoader} only if this registry has none for the account, or if they are due
+   * to be re-checked; otherwise, this method does not lock, allocate, or call {@code accountSettingsLoader}.
+   *
+   * @param accountId             The {@link AccountId} of an account.
+   * @param accountSettingsLoader A function that reads the current settings of an account (e.g., {@link
+   *                              AccountSettingsLoadingCache#getAccount(AccountId)}).
+   *
+   * @return The {@link Entry}, whose {@link Entry#accountSettings()} is present, or {@code null} if {@code
+   *   accountSettingsLoader} did not find the account (in which case it is evicted).
+   */
+  public Entry resolve(
+    final AccountId accountId, final Function<AccountId, Optional<AccountSettings>> accountSettingsLoader
+  ) {
+    final Entry entry = getEntry(accountId);
+    if (entry != null && entry.accountSettings().isPresent()
+      && ticker.read() - entry.accountSettingsReadNanos < accountSettingsRecheckNanos) {
+      return entry;
+    }
+
+    final Optional<AccountSettings> accountSettings = accountSettingsLoader.apply(accountId);
+    if (accountSettings.isPresent()) {
+      return publishAccountSettings(accountSettings.get());
+    } else {
+      evict(accountId);
+      return null;
+    }
+  }
+
+  /**
+   * Publish the current settings of an account, registering the account if necessary.
+   *
+   * @param accountSettings The {@link AccountSettings} of an account, as just read from its source.
+   *
+   * @return The new {@link Entry}.
+   */
+  public Entry publishAccountSettings(final AccountSettings accountSettings) {
+    Objects.requireNonNull(accountSettings);
+    final long readNanos = ticker.read();
+    return update(
+      accountSettings.accountId(),
+      entry -> new Entry(entry.handle, entry.accountId, Optional.of(accountSettings), readNanos, entry.linkFilterChain)
+    );
+  }
+
+  /**
+   * Replace the {@link Entry} of the account identified by {@code accountId}, registering the account if necessary.
+   *
+   * @param accountId The {@link AccountId} of an account.
+   * @param updater   A function that computes the new {@link Entry} from the current one.
+   *
+   * @return The new {@link Entry}.
+   */
+  public Entry update(final AccountId accountId, final UnaryOperator<Entry> updater) {
+    Objects.requireNonNull(updater);
+    final int handle = register(accountId);
+    synchronized (this) {
+      final Entry newEntry = Objects.requireNonNull(updater.apply(getEntry(handle)));
+      publish(handle, newEntry);
+      return newEntry;
+    }
+  }
+
+  /**
+   * Discard the compiled link filter-chain of the account identified by {@code accountId} (e.g., because its link
+   * disconnected), so that the chain, and the link it holds, can be garbage-collected. A new chain is compiled if the
+   * account is used again. The account keeps its handle.
+   *
+   * @param accountId The {@link AccountId} of an account.
+   */
+  public void evictLinkFilterChain(final AccountId accountId) {
+    final int handle = getHandle(accountId);
+    if (handle == NO_HANDLE) {
+      return;
+    }
+    synchronized (this) {
+      final Entry entry = getEntry(handle);
+      if (entry.linkFilterChain().isPresent()) {
+        publish(handle, entry.withoutLinkFilterChain());
+      }
+    }
+  }
+
+  /**
+   * Discard everything held for the account identified by {@code accountId} (e.g., because the account no longer
+   * exists). The account keeps its handle.
+   *
+   * @param accountId The {@link AccountId} of an account.
+   */
+  public void evict(final AccountId accountId) {
+    final int handle = getHandle(accountId);
+    if (handle == NO_HANDLE) {
+      return;
+    }
+    synchronized (this) {
+      final Entry entry = getEntry(handle);
+      if (entry.accountSettings().isPresent() || entry.linkFilterChain().isPresent()) {
+        publish(handle, new Entry(handle, entry.accountId, Optional.empty(), 0, Optional.empty()));
+      }
+    }
+  }
+
+  /**
+   * @return The number of registered accounts.
+   */
+  public int size() {
+    return handles.size();
+  }
+
+  /**
+   * Publish a new snapshot in which {@code handle} maps to {@code entry}. Must be called while holding the lock on
+   * `this`.
+   */
+  private void publish(final int handle, final Entry entry) {
+    final Entry[][] currentChunks = this.chunks;
+    final int chunkIndex = handle >>> CHUNK_BITS;
+
+    final Entry[][] newChunks = Arrays.copyOf(currentChunks, Math.max(currentChunks.length, chunkIndex + 1));
+    final Entry[] newChunk = chunkIndex < currentChunks.length
+      ? currentChunks[chunkIndex].clone()
+      : new Entry[CHUNK_SIZE];
+    newChunk[handle & CHUNK_MASK] = entry;
+    newChunks[chunkIndex] = newChunk;
+
+    this.chunks = newChunks;
+  }
+
+  /**
+   * An immutable snapshot of the hot-path state of a single account.
+   */
+  public static final class Entry {
+
+    private final int handle;
+    private final AccountId accountId;
+    private final Optional<AccountSettings> accountSettings;
+    // The ticker reading at which `accountSettings` was read from its source.
+    private final long accountSettingsReadNanos;
+    private final Optional<DefaultLinkFilterChain> linkFilterChain;
+
+    private Entry(
+      final int handle,
+      final AccountId accountId,
+      final Optional<AccountSettings> accountSettings,
+      final long accountSettingsReadNanos,
+      final Optional<DefaultLinkFilterChain> linkFilterChain
+    ) {
+      this.handle = handle;
+      this.accountId = Objects.requireNonNull(accountId);
+      this.accountSettings = Objects.requireNonNull(accountSettings);
+      this.accountSettingsReadNanos = accountSettingsReadNanos;
+      this.linkFilterChain = Objects.requireNonNull(linkFilterChain);
+    }
+
+    public int handle() {
+      return handle;
+    }
+
+    public AccountId accountId() {
+      return accountId;
+    }
+
+    /**
+     * The settings of this account, if they have been published.
+     */
+    public Optional<AccountSettings> accountSettings() {
+      return accountSettings;
+    }
+
+    /**
+     * The compiled outbound filter-chain (and thus the {@link org.interledger.connector.link.Link}) used to send
+     * packets to this account, if one has been created.
+     */
+    public Optional<DefaultLinkFilterChain> linkFilterChain() {
+      return linkFilterChain;
+    }
+
+    public Entry withLinkFilterChain(final DefaultLinkFilterChain linkFilterChain) {
+      return new Entry(handle, accountId, accountSettings, accountSettingsReadNanos, Optional.of(linkFilterChain));
+    }
+
+    public Entry withoutLinkFilterChain() {
+      return new Entry(handle, accountId, accountSettings, accountSettingsReadNanos, Optional.empty());
+    }
+  }
+}
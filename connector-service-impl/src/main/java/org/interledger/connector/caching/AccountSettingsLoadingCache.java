@@ -1,60 +1,124 @@
 package org.interledger.connector.caching;
 
-import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.eventbus.Subscribe;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountNotFoundProblem;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
+import org.interledger.connector.link.LinkId;
+import org.interledger.connector.link.events.LinkDisconnectedEvent;
 import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiFunction;
 
 /**
- * A loading cache for instances of {@link AccountSettings} that uses a {@link AccountSettingsRepository} to source its
- * data.
+ * <p>A loading cache for instances of {@link AccountSettings} that uses a {@link AccountSettingsRepository} to source
+ * its data.</p>
+ *
+ * <p>So that a database round-trip never blocks a packet, this cache is meant to be populated in bulk using {@link
+ * #preload()} when the Connector starts, and thereafter kept current by {@link AccountSettingsChangedEvent}s (see
+ * {@link #onAccountSettingsChanged(AccountSettingsChangedEvent)}) and, for changes made by other Connectors that share
+ * the same store, by {@link AccountSettingsInvalidatedEvent}s. As a safety net for changes that are not announced in
+ * either way, each entry is also reloaded in the background once it is older than the refresh interval, and the
+ * previous settings continue to be served while that reload is in progress.</p>
+ *
+ * <p>Every account that is loaded is also registered with an {@link AccountRegistry}, which the packet-switch uses to
+ * resolve an account's settings and compiled filter-chain with a single lookup. Preloaded and changed settings are
+ * published to the registry immediately, and the registry re-reads the settings of an account through this cache
+ * periodically (see {@link AccountRegistry#resolve}). An account is evicted from the registry once it is no longer
+ * found (e.g., because it was deleted), and its filter-chain is evicted once its link disconnects.</p>
  */
 public class AccountSettingsLoadingCache {
 
-  /**
-   * A function that accepts inputs required to load Account settings from a data store and return them as an instance
-   * of {@link AccountSettings}. This function is used so the AccountEntity doesn't have to be converted on every cache
-   * hit.
-   */
-  private static final BiFunction<AccountId, AccountSettingsRepository, Optional<AccountSettings>>
-    ACCOUNT_SETTINGS_CACHE_POPULATOR =
-    (accountId, accountSettingsRepository) -> accountSettingsRepository.findByAccountIdWithConversion(accountId);
+  public static final long DEFAULT_MAXIMUM_SIZE = 100_000;
+  public static final long DEFAULT_REFRESH_INTERVAL_MINUTES = 15;
+
+  private static final int PRELOAD_PAGE_SIZE = 1_000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AccountSettingsLoadingCache.class);
 
   private final AccountSettingsRepository accountSettingsRepository;
 
   // Loading from the Database is somewhat expensive, so we don't want to do this on every packet processed for a
   // given account. Instead, for higher performance, we only load account settings once per period, and otherwise
   // rely upon AccountSettings found in this cache.
-  private final Cache<AccountId, Optional<AccountSettings>> accountSettingsCache;
+  private final LoadingCache<AccountId, Optional<AccountSettings>> accountSettingsCache;
+
+  private final AccountRegistry accountRegistry;
 
   /**
-   * For testing purposes.
+   * Required-args Constructor.
+   *
+   * @param accountSettingsRepository The {@link AccountSettingsRepository} to load account settings from.
    */
-  @VisibleForTesting
   public AccountSettingsLoadingCache(final AccountSettingsRepository accountSettingsRepository) {
+    this(accountSettingsRepository, new AccountRegistry());
+  }
+
+  private AccountSettingsLoadingCache(
+    final AccountSettingsRepository accountSettingsRepository, final AccountRegistry accountRegistry
+  ) {
     this(accountSettingsRepository, Caffeine.newBuilder()
-      .expireAfterAccess(15, TimeUnit.MINUTES) // Set very high just for testing...
-      .maximumSize(5000)
-      // The value stored in the Cache is the AccountSettings converted from the entity so we don't have to convert
-      // on every ILPv4 packet switch.
-      .build((accountId) -> accountSettingsRepository.findByAccountIdWithConversion(accountId))
+        .refreshAfterWrite(DEFAULT_REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES)
+        .maximumSize(DEFAULT_MAXIMUM_SIZE)
+        // The value stored in the Cache is the AccountSettings converted from the entity so we don't have to convert
+        // on every ILPv4 packet switch.
+        .build(accountId -> {
+          final Optional<AccountSettings> accountSettings =
+            accountSettingsRepository.findByAccountIdWithConversion(accountId);
+          if (accountSettings.isPresent()) {
+            accountRegistry.register(accountId);
+          } else {
+            accountRegistry.evict(accountId);
+          }
+          return accountSettings;
+        }),
+      accountRegistry
     );
   }
 
+  /**
+   * Required-args Constructor.
+   *
+   * @param accountSettingsRepository The {@link AccountSettingsRepository} to load account settings from.
+   * @param accountSettingsCache      The {@link LoadingCache} to hold account settings in, which should load using
+   *                                  {@code accountSettingsRepository}.
+   */
   public AccountSettingsLoadingCache(
     final AccountSettingsRepository accountSettingsRepository,
-    final Cache<AccountId, Optional<AccountSettings>> accountSettingsCache
+    final LoadingCache<AccountId, Optional<AccountSettings>> accountSettingsCache
+  ) {
+    this(accountSettingsRepository, accountSettingsCache, new AccountRegistry());
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param accountSettingsRepository The {@link AccountSettingsRepository} to load account settings from.
+   * @param accountSettingsCache      The {@link LoadingCache} to hold account settings in, which should load using
+   *                                  {@code accountSettingsRepository}.
+   * @param accountRegistry           The {@link AccountRegistry} to register loaded accounts with.
+   */
+  public AccountSettingsLoadingCache(
+    final AccountSettingsRepository accountSettingsRepository,
+    final LoadingCache<AccountId, Optional<AccountSettings>> accountSettingsCache,
+    final AccountRegistry accountRegistry
   ) {
     this.accountSettingsRepository = Objects.requireNonNull(accountSettingsRepository);
     this.accountSettingsCache = Objects.requireNonNull(accountSettingsCache);
+    this.accountRegistry = Objects.requireNonNull(accountRegistry);
   }
 
   /**
@@ -67,11 +131,7 @@ public class AccountSettingsLoadingCache {
    * methods returns {@link Optional#empty()} .
    */
   public Optional<AccountSettings> getAccount(final AccountId accountId) {
-    return this.accountSettingsCache.get(
-      accountId,
-      // Populate the cache if necessary...
-      $ -> ACCOUNT_SETTINGS_CACHE_POPULATOR.apply(accountId, accountSettingsRepository)
-    );
+    return this.accountSettingsCache.get(accountId);
   }
 
   /**
@@ -84,4 +144,82 @@ public class AccountSettingsLoadingCache {
   public AccountSettings safeGetAccountId(final AccountId accountId) {
     return this.getAccount(accountId).orElseThrow(() -> new AccountNotFoundProblem(accountId));
   }
+
+  /**
+   * @return The {@link AccountRegistry} that this cache registers accounts with.
+   */
+  public AccountRegistry getAccountRegistry() {
+    return this.accountRegistry;
+  }
+
+  /**
+   * Load every account in the {@link AccountSettingsRepository} into this cache, one page at a time, so that no packet
+   * has to wait for its account to be loaded.
+   *
+   * @return The number of accounts that were loaded.
+   */
+  public int preload() {
+    return preload(PRELOAD_PAGE_SIZE);
+  }
+
+  @VisibleForTesting
+  int preload(final int pageSize) {
+    int numAccounts = 0;
+    Pageable pageable = PageRequest.of(0, pageSize, Sort.by("id"));
+    Slice<AccountSettings> slice;
+    do {
+      slice = accountSettingsRepository.findAllWithConversion(pageable);
+      for (AccountSettings accountSettings : slice) {
+        accountSettingsCache.put(accountSettings.accountId(), Optional.of(accountSettings));
+        accountRegistry.publishAccountSettings(accountSettings);
+        numAccounts++;
+      }
+      pageable = slice.nextPageable();
+    } while (slice.hasNext());
+
+    LOGGER.info("Preloaded {} accounts into the AccountSettings cache", numAccounts);
+    return numAccounts;
+  }
+
+  /**
+   * Replace any cached settings for an account that was just created or updated, so that the change is visible to the
+   * very next packet.
+   *
+   * @param event An {@link AccountSettingsChangedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsChanged(final AccountSettingsChangedEvent event) {
+    Objects.requireNonNull(event);
+    final AccountSettings accountSettings = event.accountSettings();
+    accountSettingsCache.put(accountSettings.accountId(), Optional.of(accountSettings));
+    accountRegistry.publishAccountSettings(accountSettings);
+  }
+
+  /**
+   * Reload the settings of an account that was changed by another Connector. The previous settings continue to be
+   * served until the reload completes, so that no packet waits on the database.
+   *
+   * @param event An {@link AccountSettingsInvalidatedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsInvalidated(final AccountSettingsInvalidatedEvent event) {
+    Objects.requireNonNull(event);
+    accountSettingsCache.refresh(event.accountId());
+  }
+
+  /**
+   * Discard the compiled filter-chain of an account whose link disconnected, so that it does not outlive the link. A
+   * new chain (and link) is obtained from the LinkManager if the account is used again.
+   *
+   * @param event A {@link LinkDisconnectedEvent}.
+   */
+  @Subscribe
+  public void onLinkDisconnected(final LinkDisconnectedEvent event) {
+    Objects.requireNonNull(event);
+    // The LinkManager gives each link the id of the account it belongs to.
+    final LinkId linkId = event.link().getLinkId();
+    if (linkId != null) {
+      accountRegistry.evictLinkFilterChain(AccountId.of(linkId.value()));
+    }
+  }
 }
@@ -0,0 +1,108 @@
+package org.interledger.connector.caching;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Objects;
+
+/**
+ * <p>Propagates account changes between all Connectors that share a persistent store, using a Redis pub/sub
+ * channel.</p>
+ *
+ * <p>Whenever an {@link AccountSettingsChangedEvent} is posted to this Connector's {@link EventBus}, this bus
+ * publishes a compact message (the id of this node, followed by the {@link AccountId}) to {@link #CHANNEL}. Every other
+ * Connector receives that message (see {@link #onMessage(Message, byte[])}) and posts an {@link
+ * AccountSettingsInvalidatedEvent} to its own {@link EventBus}, so that each of its caches can reload or evict the
+ * affected entries. Messages published by this node are ignored, because its caches were already updated by the
+ * original event.</p>
+ *
+ * <p>Redis pub/sub does not store messages, so a Connector that is disconnected when a message is published will not
+ * receive it. The caches that rely on this bus should therefore still expire or refresh their entries
+ * eventually.</p>
+ */
+public class RedisAccountSettingsInvalidationBus implements MessageListener {
+
+  public static final String CHANNEL = "ilpv4:accounts:invalidations";
+
+  private static final char SEPARATOR = ' ';
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final StringRedisTemplate redisTemplate;
+  private final EventBus eventBus;
+
+  // Identifies messages that were published by this node.
+  private final String nodeId;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param redisTemplate A {@link StringRedisTemplate} for publishing invalidation messages.
+   * @param eventBus      The {@link EventBus} of this Connector.
+   */
+  public RedisAccountSettingsInvalidationBus(final StringRedisTemplate redisTemplate, final EventBus eventBus) {
+    this(redisTemplate, eventBus, Long.toHexString(new SecureRandom().nextLong()));
+  }
+
+  @VisibleForTesting
+  RedisAccountSettingsInvalidationBus(
+    final StringRedisTemplate redisTemplate, final EventBus eventBus, final String nodeId
+  ) {
+    this.redisTemplate = Objects.requireNonNull(redisTemplate);
+    this.eventBus = Objects.requireNonNull(eventBus);
+    this.nodeId = Objects.requireNonNull(nodeId);
+  }
+
+  /**
+   * Announce an account change made by this Connector to all other Connectors.
+   *
+   * @param event An {@link AccountSettingsChangedEvent}.
+   */
+  @Subscribe
+  public void onAccountSettingsChanged(final AccountSettingsChangedEvent event) {
+    Objects.requireNonNull(event);
+    final AccountId accountId = event.accountSettings().accountId();
+    try {
+      redisTemplate.convertAndSend(CHANNEL, nodeId + SEPARATOR + accountId.value());
+    } catch (RuntimeException e) {
+      // The change itself has already been persisted, so it must not fail just because other nodes can't be told.
+      logger.warn("Unable to publish account invalidation to Redis. accountId={} error={}", accountId, e.getMessage());
+      if (logger.isDebugEnabled()) {
+        logger.debug(e.getMessage(), e);
+      }
+    }
+  }
+
+  /**
+   * Handle an invalidation message published by any Connector (including this one).
+   */
+  @Override
+  public void onMessage(final Message message, final byte[] pattern) {
+    Objects.requireNonNull(message);
+
+    final String body = new String(message.getBody(), StandardCharsets.UTF_8);
+    final int separatorIndex = body.indexOf(SEPARATOR);
+    if (separatorIndex <= 0 || separatorIndex == body.length() - 1) {
+      logger.warn("Ignoring malformed account invalidation message: `{}`", body);
+      return;
+    }
+    if (separatorIndex == nodeId.length() && body.startsWith(nodeId)) {
+      return;
+    }
+
+    final AccountId accountId = AccountId.of(body.substring(separatorIndex + 1));
+    logger.debug("Received account invalidation from Redis. accountId={}", accountId);
+    eventBus.post(AccountSettingsInvalidatedEvent.builder().accountId(accountId).build());
+  }
+}
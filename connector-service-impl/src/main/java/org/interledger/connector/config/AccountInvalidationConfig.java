@@ -0,0 +1,70 @@
+package org.interledger.connector.config;
+
+import com.google.common.eventbus.EventBus;
+import org.interledger.connector.caching.RedisAccountSettingsInvalidationBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Configuration for propagating account changes to every Connector in a cluster, via Redis pub/sub.
+ */
+@Configuration
+public class AccountInvalidationConfig {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  @Autowired
+  protected JedisConnectionFactory jedisConnectionFactory;
+
+  @Bean
+  protected RedisAccountSettingsInvalidationBus redisAccountSettingsInvalidationBus(EventBus eventBus) {
+    final RedisAccountSettingsInvalidationBus invalidationBus =
+      new RedisAccountSettingsInvalidationBus(new StringRedisTemplate(jedisConnectionFactory), eventBus);
+    eventBus.register(invalidationBus);
+    return invalidationBus;
+  }
+
+  @Bean
+  protected RedisMessageListenerContainer accountInvalidationListenerContainer(
+    RedisAccountSettingsInvalidationBus invalidationBus
+  ) {
+    final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(jedisConnectionFactory);
+
+    try {
+      // Only subscribe if there's a Redis, otherwise the container will endlessly try to reconnect.
+      if (isRedisAvailable()) {
+        container.addMessageListener(invalidationBus, new ChannelTopic(RedisAccountSettingsInvalidationBus.CHANNEL));
+      }
+    } catch (RedisConnectionFailureException e) {
+      logger.warn(
+        "WARNING: Account changes will not be propagated to other Connectors because Redis is unavailable. " +
+          "HINT: is Redis running on its configured port, by default 6379?"
+      );
+      // If debug-output is enabled, then emit the stack-trace.
+      if (logger.isDebugEnabled()) {
+        logger.debug(e.getMessage(), e);
+      }
+    }
+    return container;
+  }
+
+  private boolean isRedisAvailable() {
+    // RedisConnection is not AutoCloseable in this version of Spring Data Redis, so it must be closed explicitly.
+    final RedisConnection connection = jedisConnectionFactory.getConnection();
+    try {
+      return connection.ping().equalsIgnoreCase("PONG");
+    } finally {
+      connection.close();
+    }
+  }
+}
@@ -1,12 +1,29 @@
 package org.interledger.connector.config;
 
+import com.google.common.base.Preconditions;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.balances.BalanceJournal;
 import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.BatchingRedisBalanceTracker;
+import org.interledger.connector.balances.FulfillUpdateQueue;
 import org.interledger.connector.balances.InMemoryBalanceTracker;
+import org.interledger.connector.balances.JournalingBalanceTracker;
+import org.interledger.connector.balances.LeasingBalanceTracker;
+import org.interledger.connector.balances.MappedBalanceTracker;
 import org.interledger.connector.balances.RedisBalanceTracker;
+import org.interledger.connector.balances.RedisKeyLayout;
+import org.interledger.connector.balances.StripedBalanceTracker;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.metrics.BalanceTrackerMetrics;
+import org.interledger.connector.settlement.SettlementScheduler;
+import org.interledger.connector.settlement.SettlementService;
+import org.interledger.connector.settlement.SettlementThresholdListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
@@ -18,7 +35,12 @@ import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Configuration
 public class BalanceTrackerConfig {
@@ -46,20 +68,101 @@ public class BalanceTrackerConfig {
     return template;
   }
 
+  @Bean
+  protected BalanceTrackerMetrics balanceTrackerMetrics() {
+    return new BalanceTrackerMetrics();
+  }
+
   @Bean
   protected BalanceTracker redisBalanceTracker(
     @Qualifier(BALANCE_TRACKING) RedisTemplate<String, String> stringRedisTemplate,
-    @Qualifier(BALANCE_TRACKING) RedisTemplate<String, ?> jacksonRedisTemplate
+    final BalanceTrackerMetrics balanceTrackerMetrics,
+    @Value("${interledger.connector.balanceTracking.batching.enabled:false}") final boolean batchingEnabled,
+    @Value("${interledger.connector.balanceTracking.batching.maxBatchSize:64}") final int maxBatchSize,
+    @Value("${interledger.connector.balanceTracking.batching.maxWaitMicros:100}") final long maxWaitMicros,
+    @Value("${interledger.connector.balanceTracking.batching.maxQueueSize:10000}") final int maxQueueSize,
+    @Value("${interledger.connector.balanceTracking.leasing.enabled:false}") final boolean leasingEnabled,
+    @Value("${interledger.connector.balanceTracking.leasing.packetsPerLease:100}") final long packetsPerLease,
+    @Value("${interledger.connector.balanceTracking.leasing.flushIntervalMillis:100}") final long flushIntervalMillis,
+    @Value("${interledger.connector.balanceTracking.striping.accountIds:}") final String[] stripedAccountIds,
+    @Value("${interledger.connector.balanceTracking.striping.numStripes:8}") final int numStripes,
+    @Value("${interledger.connector.balanceTracking.striping.rebalanceIntervalMillis:100}") final long rebalanceIntervalMillis,
+    @Value("${interledger.connector.balanceTracking.journal.enabled:false}") final boolean journalEnabled,
+    @Value("${interledger.connector.balanceTracking.journal.directory:}") final String journalDirectory,
+    @Value("${interledger.connector.balanceTracking.journal.segmentBytes:67108864}") final int journalSegmentBytes,
+    @Value("${interledger.connector.balanceTracking.journal.retainedSegments:16}") final int journalRetainedSegments,
+    @Value("${interledger.connector.balanceTracking.journal.replayIntervalMillis:1000}") final long replayIntervalMillis,
+    @Value("${interledger.connector.balanceTracking.mapped.enabled:false}") final boolean mappedEnabled,
+    @Value("${interledger.connector.balanceTracking.mapped.path:}") final String mappedPath,
+    @Value("${interledger.connector.balanceTracking.mapped.numSlots:65536}") final int mappedNumSlots,
+    @Value("${interledger.connector.balanceTracking.mapped.flushIntervalMillis:1000}") final long mappedFlushIntervalMillis,
+    // These depend on the BalanceTracker, so they are only resolved once a change is replayed.
+    final ObjectProvider<SettlementService> settlementService,
+    final ObjectProvider<SettlementScheduler> settlementScheduler,
+    final ObjectProvider<AccountSettingsLoadingCache> accountSettingsLoadingCache
   ) {
+    if (mappedEnabled) {
+      // There is no default, because balances that are lost on reboot (e.g., in /tmp) are not durable.
+      Preconditions.checkState(!mappedPath.trim().isEmpty(),
+        "interledger.connector.balanceTracking.mapped.path must be set when the mapped balance tracker is enabled");
+      // A durable, single-node store, so Redis is neither needed nor consulted. It is closed by whichever tracker
+      // wraps it (see StripedBalanceTracker#close), or by Spring if it is not wrapped.
+      return striped(
+        new MappedBalanceTracker(
+          Paths.get(mappedPath), mappedNumSlots, mappedFlushIntervalMillis, TimeUnit.MILLISECONDS
+        ),
+        stripedAccountIds, numStripes, rebalanceIntervalMillis
+      );
+    }
+
     try {
 
       // Try to connect to Redis, but default to InMemoryBalanceTracker if there's no Redis...
       if (stringRedisTemplate.getConnectionFactory().getConnection().ping().equalsIgnoreCase("PONG")) {
-        return new RedisBalanceTracker(
-          updateBalanceForPrepareScript(), updateBalanceForFulfillScript(), updateBalanceForRejectScript(),
-          updateBalanceForIncomingSettlment(), updateBalanceForSettlementRefund(),
-          stringRedisTemplate, jacksonRedisTemplate
-        );
+        // Under Redis Cluster, every key of an account must hash to the same slot.
+        final RedisKeyLayout keyLayout = jedisConnectionFactory.isRedisClusterAware()
+          ? RedisKeyLayout.CLUSTER : RedisKeyLayout.STANDALONE;
+        final RedisBalanceTracker redisBalanceTracker;
+        if (batchingEnabled) {
+          redisBalanceTracker = new BatchingRedisBalanceTracker(
+            updateBalanceForPrepareScript(), updateBalanceForFulfillScript(), updateBalanceForRejectScript(),
+            updateBalanceForIncomingSettlment(), updateBalanceForSettlementRefund(), updateBalancesBatchScript(),
+            stringRedisTemplate, keyLayout, maxBatchSize, maxWaitMicros, TimeUnit.MICROSECONDS, maxQueueSize,
+            balanceTrackerMetrics
+          );
+        } else {
+          redisBalanceTracker = new RedisBalanceTracker(
+            updateBalanceForPrepareScript(), updateBalanceForFulfillScript(), updateBalanceForRejectScript(),
+            updateBalanceForIncomingSettlment(), updateBalanceForSettlementRefund(),
+            stringRedisTemplate, keyLayout, balanceTrackerMetrics
+          );
+        }
+        // Initiates any settlement that becomes due while a fulfill is applied off the packet path.
+        final FulfillUpdateQueue.Listener settlementListener =
+          (accountSettings, amount, response) -> new SettlementThresholdListener(
+            settlementService.getObject(), Optional.ofNullable(settlementScheduler.getIfAvailable())
+          ).onBalanceUpdated(accountSettings, amount, response);
+        BalanceTracker balanceTracker = redisBalanceTracker;
+        if (journalEnabled) {
+          // There is no default, because a journal that is lost on reboot (e.g., in /tmp) defeats its purpose.
+          Preconditions.checkState(!journalDirectory.trim().isEmpty(),
+            "interledger.connector.balanceTracking.journal.directory must be set when the journal is enabled");
+          // Records every change before it is sent to Redis, and replays any that could not be applied.
+          balanceTracker = new JournalingBalanceTracker(
+            balanceTracker,
+            new BalanceJournal(Paths.get(journalDirectory), journalSegmentBytes, journalRetainedSegments),
+            accountId -> accountSettingsLoadingCache.getObject().getAccount(accountId),
+            settlementListener,
+            replayIntervalMillis, TimeUnit.MILLISECONDS
+          );
+        }
+        balanceTracker = striped(balanceTracker, stripedAccountIds, numStripes, rebalanceIntervalMillis);
+        if (leasingEnabled) {
+          return new LeasingBalanceTracker(
+            balanceTracker, packetsPerLease, flushIntervalMillis, TimeUnit.MILLISECONDS, settlementListener
+          );
+        }
+        return balanceTracker;
       }
     } catch (RedisConnectionFailureException e) {
       logger.warn(
@@ -73,7 +176,29 @@ public class BalanceTrackerConfig {
       }
     }
     // Fallback to this always...
-    return new InMemoryBalanceTracker();
+    return striped(new InMemoryBalanceTracker(), stripedAccountIds, numStripes, rebalanceIntervalMillis);
+  }
+
+  /**
+   * Stripe the balances of {@code stripedAccountIds}, if there are any.
+   */
+  private BalanceTracker striped(
+    final BalanceTracker balanceTracker,
+    final String[] stripedAccountIds,
+    final int numStripes,
+    final long rebalanceIntervalMillis
+  ) {
+    final List<AccountId> accountIds = Arrays.stream(stripedAccountIds)
+      .map(String::trim)
+      .filter(accountId -> !accountId.isEmpty())
+      .map(AccountId::of)
+      .collect(Collectors.toList());
+    if (accountIds.isEmpty()) {
+      return balanceTracker;
+    }
+    return new StripedBalanceTracker(
+      balanceTracker, accountIds, numStripes, rebalanceIntervalMillis, TimeUnit.MILLISECONDS
+    );
   }
 
   @Bean
@@ -108,6 +233,14 @@ public class BalanceTrackerConfig {
     return script;
   }
 
+  @Bean
+  protected RedisScript<List> updateBalancesBatchScript() {
+    DefaultRedisScript<List> script = new DefaultRedisScript();
+    script.setLocation(new ClassPathResource("META-INF/scripts/updateBalancesBatch.lua"));
+    script.setResultType(List.class);
+    return script;
+  }
+
   @Bean
   protected RedisScript<Long> updateBalanceForIncomingSettlment() {
     DefaultRedisScript<Long> script = new DefaultRedisScript();
@@ -2,6 +2,7 @@ package org.interledger.connector.config;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.eventbus.EventBus;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
@@ -27,8 +28,15 @@ public class CaffeineCacheConfig {
   }
 
   @Bean
-  AccountSettingsLoadingCache accountSettingsLoadingCache(AccountSettingsRepository accountSettingsRepository) {
-    return new AccountSettingsLoadingCache(accountSettingsRepository);
+  AccountSettingsLoadingCache accountSettingsLoadingCache(
+    AccountSettingsRepository accountSettingsRepository, EventBus eventBus
+  ) {
+    final AccountSettingsLoadingCache accountSettingsLoadingCache =
+      new AccountSettingsLoadingCache(accountSettingsRepository);
+    // Warm the cache before any packets arrive, and keep it current as accounts are created or updated.
+    accountSettingsLoadingCache.preload();
+    eventBus.register(accountSettingsLoadingCache);
+    return accountSettingsLoadingCache;
   }
 
 }
@@ -9,10 +9,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisPassword;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Configuration
 public class RedisConfig {
@@ -30,31 +36,56 @@ public class RedisConfig {
   @Value("${redis.password")
   protected String redisPassword;
 
+  // A comma-separated list of `host:port` seed nodes. If present, Redis is accessed as a Redis Cluster (and `redis.host`
+  // and `redis.port` are ignored).
+  @Value("${redis.cluster.nodes:}")
+  protected String redisClusterNodes;
+
+  @Value("${redis.cluster.maxRedirects:5}")
+  protected int redisClusterMaxRedirects;
+
+  @Value("${redis.pool.maxTotal:25}")
+  protected int redisPoolMaxTotal = 25;
+
+  @Value("${redis.pool.minIdle:1}")
+  protected int redisPoolMinIdle = 1;
+
+  @Value("${redis.pool.maxIdle:2}")
+  protected int redisPoolMaxIdle = 2;
+
   @Autowired
   protected Decryptor decryptor;
 
   @Bean
   protected JedisConnectionFactory jedisConnectionFactory() {
+    final Optional<RedisPassword> password = decryptedRedisPassword();
 
-    int actualRedisPort;
-    try {
-      actualRedisPort = Integer.parseInt(redisPort);
-    } catch (Exception e) {
-      actualRedisPort = 6379;
-    }
-    RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, actualRedisPort);
-
-    if (redisPassword != null && redisPassword.startsWith(EncryptedSecret.ENCODING_PREFIX)) {
-      EncryptedSecret encryptedRedisPassword = EncryptedSecret.fromEncodedValue(redisPassword);
-      byte[] decryptedBytes = decryptor.decrypt(encryptedRedisPassword);
-      // Use new String for GC.
-      config.setPassword(new String(decryptedBytes, Charset.defaultCharset()));
+    final JedisConnectionFactory jedisConnectionFactory;
+    final List<String> clusterNodes = Arrays.stream(Optional.ofNullable(redisClusterNodes).orElse("").split(","))
+      .map(String::trim)
+      .filter(node -> !node.isEmpty())
+      .collect(Collectors.toList());
+    if (clusterNodes.isEmpty()) {
+      int actualRedisPort;
+      try {
+        actualRedisPort = Integer.parseInt(redisPort);
+      } catch (Exception e) {
+        actualRedisPort = 6379;
+      }
+      RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(redisHost, actualRedisPort);
+      password.ifPresent(config::setPassword);
+      jedisConnectionFactory = new JedisConnectionFactory(config);
+    } else {
+      RedisClusterConfiguration config = new RedisClusterConfiguration(clusterNodes);
+      config.setMaxRedirects(redisClusterMaxRedirects);
+      password.ifPresent(config::setPassword);
+      jedisConnectionFactory = new JedisConnectionFactory(config);
     }
 
-    final JedisConnectionFactory jedisConnectionFactory = new JedisConnectionFactory(config);
-    jedisConnectionFactory.getPoolConfig().setMaxTotal(25); // TODO: Make this configurable
-    jedisConnectionFactory.getPoolConfig().setMinIdle(1); // TODO: Make this configurable
-    jedisConnectionFactory.getPoolConfig().setMaxIdle(2); // TODO: Make this configurable
+    // With Redis Cluster, this pool is maintained per node.
+    jedisConnectionFactory.getPoolConfig().setMaxTotal(redisPoolMaxTotal);
+    jedisConnectionFactory.getPoolConfig().setMinIdle(redisPoolMinIdle);
+    jedisConnectionFactory.getPoolConfig().setMaxIdle(redisPoolMaxIdle);
 
     try {
       // Try to connect to Redis, but default to InMemoryBalanceTracker if there's no Redis...
@@ -72,4 +103,14 @@ public class RedisConfig {
     // condition and fallback to in-memory implementations.
     return jedisConnectionFactory;
   }
+
+  private Optional<RedisPassword> decryptedRedisPassword() {
+    if (redisPassword != null && redisPassword.startsWith(EncryptedSecret.ENCODING_PREFIX)) {
+      EncryptedSecret encryptedRedisPassword = EncryptedSecret.fromEncodedValue(redisPassword);
+      byte[] decryptedBytes = decryptor.decrypt(encryptedRedisPassword);
+      // Use new String for GC.
+      return Optional.of(RedisPassword.of(new String(decryptedBytes, Charset.defaultCharset())));
+    }
+    return Optional.empty();
+  }
 }
@@ -0,0 +1,133 @@
+package org.interledger.connector.fx;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.primitives.UnsignedLong;
+
+import javax.money.CurrencyUnit;
+import javax.money.Monetary;
+import javax.money.convert.ExchangeRate;
+import javax.money.convert.ExchangeRateProvider;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Converts Interledger amounts between assets, using rates from an {@link ExchangeRateProvider}.</p>
+ *
+ * <p>Looking up currencies and exchange rates, and converting via {@link javax.money.MonetaryAmount}, is far too
+ * expensive to do for every packet. Instead, this class caches one {@link FixedPointRate} per pair of (asset code,
+ * asset scale), so that converting an amount is just a multiplication and a division of {@code long}s. Cached rates
+ * are refreshed in the background once they are older than {@code refreshInterval}, and the previous rate continues to
+ * be used until the refresh completes. Pairs that go unused for ten refresh intervals are evicted.</p>
+ */
+public class CachingFxConverter {
+
+  public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+  private final ExchangeRateProvider exchangeRateProvider;
+  private final LoadingCache<AssetPair, FixedPointRate> rates;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param exchangeRateProvider The {@link ExchangeRateProvider} to obtain rates from.
+   */
+  public CachingFxConverter(final ExchangeRateProvider exchangeRateProvider) {
+    this(exchangeRateProvider, DEFAULT_REFRESH_INTERVAL);
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param exchangeRateProvider The {@link ExchangeRateProvider} to obtain rates from.
+   * @param refreshInterval      How old a cached rate may become before it is refreshed.
+   */
+  public CachingFxConverter(final ExchangeRateProvider exchangeRateProvider, final Duration refreshInterval) {
+    this.exchangeRateProvider = Objects.requireNonNull(exchangeRateProvider);
+    Objects.requireNonNull(refreshInterval);
+    this.rates = Caffeine.newBuilder()
+      .refreshAfterWrite(refreshInterval.toNanos(), TimeUnit.NANOSECONDS)
+      .expireAfterAccess(refreshInterval.toNanos() * 10, TimeUnit.NANOSECONDS)
+      .build(this::loadRate);
+  }
+
+  /**
+   * Convert {@code sourceAmount} into the destination asset, rounding down.
+   *
+   * @param sourceAssetCode       The asset code of the source account.
+   * @param sourceAssetScale      The asset scale of the source account.
+   * @param destinationAssetCode  The asset code of the destination account.
+   * @param destinationAssetScale The asset scale of the destination account.
+   * @param sourceAmount          An amount, in the source account's units.
+   *
+   * @return The equivalent amount, in the destination account's units.
+   *
+   * @throws ArithmeticException If the converted amount is larger than the largest Interledger amount.
+   */
+  public UnsignedLong convert(
+    final String sourceAssetCode, final int sourceAssetScale,
+    final String destinationAssetCode, final int destinationAssetScale,
+    final UnsignedLong sourceAmount
+  ) {
+    final AssetPair assetPair =
+      new AssetPair(sourceAssetCode, sourceAssetScale, destinationAssetCode, destinationAssetScale);
+    return rates.get(assetPair).convert(sourceAmount);
+  }
+
+  private FixedPointRate loadRate(final AssetPair assetPair) {
+    final BigDecimal exchangeRate;
+    if (assetPair.sourceAssetCode.equals(assetPair.destinationAssetCode)) {
+      exchangeRate = BigDecimal.ONE;
+    } else {
+      final CurrencyUnit sourceCurrencyUnit = Monetary.getCurrency(assetPair.sourceAssetCode);
+      final CurrencyUnit destinationCurrencyUnit = Monetary.getCurrency(assetPair.destinationAssetCode);
+      final ExchangeRate rate = exchangeRateProvider.getExchangeRate(sourceCurrencyUnit, destinationCurrencyUnit);
+      exchangeRate = rate.getFactor().numberValue(BigDecimal.class);
+    }
+    return FixedPointRate.of(exchangeRate, assetPair.sourceAssetScale, assetPair.destinationAssetScale);
+  }
+
+  private static final class AssetPair {
+
+    private final String sourceAssetCode;
+    private final int sourceAssetScale;
+    private final String destinationAssetCode;
+    private final int destinationAssetScale;
+
+    private AssetPair(
+      final String sourceAssetCode, final int sourceAssetScale,
+      final String destinationAssetCode, final int destinationAssetScale
+    ) {
+      this.sourceAssetCode = Objects.requireNonNull(sourceAssetCode);
+      this.sourceAssetScale = sourceAssetScale;
+      this.destinationAssetCode = Objects.requireNonNull(destinationAssetCode);
+      this.destinationAssetScale = destinationAssetScale;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final AssetPair that = (AssetPair) o;
+      return sourceAssetScale == that.sourceAssetScale
+        && destinationAssetScale == that.destinationAssetScale
+        && sourceAssetCode.equals(that.sourceAssetCode)
+        && destinationAssetCode.equals(that.destinationAssetCode);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = sourceAssetCode.hashCode();
+      result = 31 * result + sourceAssetScale;
+      result = 31 * result + destinationAssetCode.hashCode();
+      result = 31 * result + destinationAssetScale;
+      return result;
+    }
+  }
+}
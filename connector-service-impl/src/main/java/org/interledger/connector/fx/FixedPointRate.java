@@ -0,0 +1,169 @@
+package org.interledger.connector.fx;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.UnsignedLong;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * <p>An exchange rate between two Interledger assets (i.e., including the difference in their asset scales), stored
+ * in decimal fixed-point so that an amount can be converted without allocating.</p>
+ *
+ * <p>The rate is held as {@code multiplier / 10^decimals}, where {@code multiplier} has at most 18 significant digits
+ * (far more than any rate source provides). Converting an amount multiplies it by {@code multiplier} into a 128-bit
+ * product, and then divides that product by {@code 10^decimals}, so the result is exactly the floor of {@code amount *
+ * rate}. Rounding down means this Connector never forwards more value than it received. Rates that cannot be
+ * represented this way (e.g., extremely large or small rates) fall back to {@link BigDecimal} arithmetic.</p>
+ */
+class FixedPointRate {
+
+  private static final int MAX_DECIMALS = 18;
+  private static final MathContext MAX_PRECISION = new MathContext(MAX_DECIMALS, RoundingMode.DOWN);
+  private static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+  private static final long MASK_32 = 0xFFFFFFFFL;
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private final long multiplier;
+  private final long divisor;
+  // Only used if the rate cannot be represented as `multiplier / divisor`.
+  private final BigDecimal fallbackRate;
+
+  private FixedPointRate(final long multiplier, final long divisor, final BigDecimal fallbackRate) {
+    this.multiplier = multiplier;
+    this.divisor = divisor;
+    this.fallbackRate = fallbackRate;
+  }
+
+  /**
+   * Construct a rate that converts amounts in the source asset's units into the destination asset's units.
+   *
+   * @param exchangeRate     The number of destination currency units per source currency unit.
+   * @param sourceScale      The asset scale of the source account.
+   * @param destinationScale The asset scale of the destination account.
+   *
+   * @return A new {@link FixedPointRate}.
+   */
+  static FixedPointRate of(final BigDecimal exchangeRate, final int sourceScale, final int destinationScale) {
+    Objects.requireNonNull(exchangeRate);
+    if (exchangeRate.signum() < 0) {
+      throw new IllegalArgumentException("exchangeRate must not be negative: " + exchangeRate);
+    }
+
+    final BigDecimal rate = exchangeRate.scaleByPowerOfTen(destinationScale - sourceScale);
+    final BigDecimal roundedRate = rate.round(MAX_PRECISION);
+    if (roundedRate.scale() >= 0 && roundedRate.scale() <= MAX_DECIMALS) {
+      return new FixedPointRate(
+        roundedRate.unscaledValue().longValueExact(), POWERS_OF_TEN[roundedRate.scale()], null
+      );
+    } else if (roundedRate.scale() < 0 && roundedRate.precision() - roundedRate.scale() <= MAX_DECIMALS) {
+      // A whole-number rate with trailing zeros, such as 1E+3.
+      return new FixedPointRate(roundedRate.setScale(0).unscaledValue().longValueExact(), 1, null);
+    } else {
+      return new FixedPointRate(0, 0, rate);
+    }
+  }
+
+  /**
+   * Convert {@code amount} using this rate, rounding down.
+   *
+   * @param amount An amount, in the source asset's units.
+   *
+   * @return The equivalent amount in the destination asset's units, rounded down.
+   *
+   * @throws ArithmeticException If the converted amount is larger than the largest Interledger amount.
+   */
+  UnsignedLong convert(final UnsignedLong amount) {
+    Objects.requireNonNull(amount);
+    if (fallbackRate != null) {
+      return UnsignedLong.valueOf(checkedBigInteger(
+        new BigDecimal(amount.bigIntegerValue()).multiply(fallbackRate).setScale(0, RoundingMode.DOWN)
+      ));
+    }
+
+    final long amountBits = amount.longValue();
+    final long productHigh = multiplyHighUnsigned(amountBits, multiplier);
+    final long productLow = amountBits * multiplier;
+    if (Long.compareUnsigned(productHigh, divisor) >= 0) {
+      throw new ArithmeticException("Converted amount exceeds the maximum Interledger amount");
+    }
+    return UnsignedLong.fromLongBits(divideUnsigned(productHigh, productLow, divisor));
+  }
+
+  private static BigInteger checkedBigInteger(final BigDecimal value) {
+    final BigInteger integer = value.toBigIntegerExact();
+    if (integer.bitLength() > Long.SIZE) {
+      throw new ArithmeticException("Converted amount exceeds the maximum Interledger amount");
+    }
+    return integer;
+  }
+
+  /**
+   * Returns the high 64 bits of the unsigned 128-bit product of {@code x} and {@code y}.
+   */
+  @VisibleForTesting
+  static long multiplyHighUnsigned(final long x, final long y) {
+    final long x0 = x & MASK_32;
+    final long x1 = x >>> 32;
+    final long y0 = y & MASK_32;
+    final long y1 = y >>> 32;
+
+    final long t = x1 * y0 + ((x0 * y0) >>> 32);
+    final long w1 = x0 * y1 + (t & MASK_32);
+    return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+  }
+
+  /**
+   * Returns the unsigned quotient of the unsigned 128-bit value {@code high:low} divided by {@code divisor}. The caller
+   * must ensure that {@code high < divisor} (unsigned), so that the quotient fits in 64 bits. This is the two-digit
+   * long division of Hacker's Delight (divlu), using 32-bit digits.
+   */
+  @VisibleForTesting
+  static long divideUnsigned(final long high, final long low, final long divisor) {
+    final long base = 1L << 32;
+
+    // Normalize so that the top bit of the divisor is set.
+    final int shift = Long.numberOfLeadingZeros(divisor);
+    final long normalizedDivisor = divisor << shift;
+    final long divisorHigh = normalizedDivisor >>> 32;
+    final long divisorLow = normalizedDivisor & MASK_32;
+
+    final long numerator32 = shift == 0 ? high : (high << shift) | (low >>> (64 - shift));
+    final long numerator10 = low << shift;
+    final long numerator1 = numerator10 >>> 32;
+    final long numerator0 = numerator10 & MASK_32;
+
+    long quotient1 = Long.divideUnsigned(numerator32, divisorHigh);
+    long remainder = numerator32 - quotient1 * divisorHigh;
+    while (quotient1 >= base || Long.compareUnsigned(quotient1 * divisorLow, (remainder << 32) + numerator1) > 0) {
+      quotient1--;
+      remainder += divisorHigh;
+      if (remainder >= base) {
+        break;
+      }
+    }
+
+    final long numerator21 = (numerator32 << 32) + numerator1 - quotient1 * normalizedDivisor;
+
+    long quotient0 = Long.divideUnsigned(numerator21, divisorHigh);
+    remainder = numerator21 - quotient0 * divisorHigh;
+    while (quotient0 >= base || Long.compareUnsigned(quotient0 * divisorLow, (remainder << 32) + numerator0) > 0) {
+      quotient0--;
+      remainder += divisorHigh;
+      if (remainder >= base) {
+        break;
+      }
+    }
+
+    return (quotient1 << 32) + quotient0;
+  }
+}
@@ -4,8 +4,11 @@ import static org.javamoney.moneta.spi.AbstractCurrencyConversion.KEY_SCALE;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import org.javamoney.moneta.convert.ExchangeRateBuilder;
 import org.javamoney.moneta.spi.AbstractRateProvider;
 import org.javamoney.moneta.spi.DefaultNumberValue;
@@ -17,12 +20,30 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import javax.money.MonetaryException;
 import javax.money.convert.ConversionContext;
 import javax.money.convert.ConversionQuery;
@@ -33,8 +54,18 @@ import javax.money.convert.ProviderContextBuilder;
 import javax.money.convert.RateType;
 
 /**
- * A {@link ExchangeRateProvider} that loads FX data from CryptoCompare. This provider loads all available rates,
- * purging from its cache any older rates with each re-load.
+ * <p>A {@link ExchangeRateProvider} that loads FX data from CryptoCompare.</p>
+ *
+ * <p>Rates are cached per currency pair and refreshed in the background once they are older than {@code
+ * refreshInterval}, so that a slow or unavailable rate API does not add latency to packets that need a rate. While a
+ * refresh is in progress (or if it fails), the last known rate continues to be served until it is older than {@code
+ * maxStaleness}, after which the next caller must wait for a fresh rate.</p>
+ *
+ * <p>Rates for known asset codes can be loaded ahead of time using {@link #preloadRates(Collection)}. If a snapshot
+ * file is configured, every rate that is loaded is also written to it (in the background, so a burst of loads results
+ * in a single write), and rates that are still within {@code
+ * maxStaleness} are read back (and immediately revalidated) on startup, so that a restarted Connector does not begin
+ * with an empty cache.</p>
  *
  * @see "https://min-api.cryptocompare.com/documentation"
  * @see "https://github.com/JavaMoney/javamoney-lib/blob/master/exchange/exchange-rate-frb/src/main/java/org/javamoney/
@@ -42,15 +73,26 @@ import javax.money.convert.RateType;
  */
 public class CryptoCompareRateProvider extends AbstractRateProvider {
 
+  public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(30);
+  public static final Duration DEFAULT_MAX_STALENESS = Duration.ofMinutes(10);
+
   private static final Logger LOGGER = LoggerFactory.getLogger(CryptoCompareRateProvider.class.getName());
 
   private static final ProviderContext CONTEXT = ProviderContextBuilder.of("CC", RateType.DEFERRED)
     .set("providerDescription", "CryptoCompare API Rate (https://min-api.cryptocompare.com)").build();
 
-  private final LoadingCache<ConversionQuery, ExchangeRate> exchangeRateCache;
+  private final LoadingCache<CurrencyPair, TimestampedRate> exchangeRateCache;
 
   private final Supplier<String> apiKeySupplier;
   private final RestTemplate restTemplate;
+  private final Duration maxStaleness;
+  private final Optional<Path> snapshotFile;
+  private final Clock clock;
+  // The most recently loaded rate for every pair, which is what gets written to the snapshot file.
+  private final Map<CurrencyPair, TimestampedRate> latestRates = new ConcurrentHashMap<>();
+  private final Executor executor;
+  // Whether a snapshot write has been requested but has not yet started.
+  private final AtomicBoolean snapshotWritePending = new AtomicBoolean();
   private String apiUrlTemplate;
 
   // TODO: Add spread.
@@ -69,57 +111,139 @@ public class CryptoCompareRateProvider extends AbstractRateProvider {
 
 
   public CryptoCompareRateProvider(final Supplier<String> apiKeySupplier, final RestTemplate restTemplate) {
+    this(apiKeySupplier, restTemplate, DEFAULT_REFRESH_INTERVAL, DEFAULT_MAX_STALENESS, Optional.empty());
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param apiKeySupplier  A {@link Supplier} of the CryptoCompare API key.
+   * @param restTemplate    The {@link RestTemplate} used to query CryptoCompare.
+   * @param refreshInterval How old a rate may become before it is refreshed in the background.
+   * @param maxStaleness    How old a rate may become before it is no longer served at all. Must be greater than {@code
+   *                        refreshInterval}.
+   * @param snapshotFile    An optionally-present file to persist rates into, so that they survive a restart.
+   */
+  public CryptoCompareRateProvider(
+    final Supplier<String> apiKeySupplier,
+    final RestTemplate restTemplate,
+    final Duration refreshInterval,
+    final Duration maxStaleness,
+    final Optional<Path> snapshotFile
+  ) {
+    this(
+      apiKeySupplier, restTemplate, refreshInterval, maxStaleness, snapshotFile,
+      Ticker.systemTicker(), Clock.systemUTC(), ForkJoinPool.commonPool()
+    );
+  }
+
+  /**
+   * Required-args Constructor; exists only for testing.
+   */
+  @VisibleForTesting
+  CryptoCompareRateProvider(
+    final Supplier<String> apiKeySupplier,
+    final RestTemplate restTemplate,
+    final Duration refreshInterval,
+    final Duration maxStaleness,
+    final Optional<Path> snapshotFile,
+    final Ticker ticker,
+    final Clock clock,
+    final Executor executor
+  ) {
     super(CONTEXT);
     this.apiKeySupplier = Objects.requireNonNull(apiKeySupplier);
-
     this.restTemplate = Objects.requireNonNull(restTemplate);
+    Objects.requireNonNull(refreshInterval);
+    this.maxStaleness = Objects.requireNonNull(maxStaleness);
+    Preconditions.checkArgument(
+      maxStaleness.compareTo(refreshInterval) > 0, "maxStaleness must be greater than refreshInterval"
+    );
+    this.snapshotFile = Objects.requireNonNull(snapshotFile);
+    this.clock = Objects.requireNonNull(clock);
+    this.executor = Objects.requireNonNull(executor);
 
     // Sensible defaults (override with setter-injection)
     this.apiUrlTemplate =
       "https://min-api.cryptocompare.com/data/price?fsym={fsym}&tsyms={tsyms}&extraParams=java.ilpv4.connector";
-    this.exchangeRateCache = this.fxLoader();
+    this.exchangeRateCache = this.fxLoader(refreshInterval, Objects.requireNonNull(ticker), executor);
+
+    this.snapshotFile.ifPresent(this::loadSnapshot);
   }
 
-  private LoadingCache<ConversionQuery, ExchangeRate> fxLoader() {
+  private LoadingCache<CurrencyPair, TimestampedRate> fxLoader(
+    final Duration refreshInterval, final Ticker ticker, final Executor executor
+  ) {
     return Caffeine.newBuilder()
       //.maximumSize(100) // Not enabled for now in order to support many accounts.
-      .expireAfterAccess(30, TimeUnit.SECONDS)
-      .build(conversionQuery -> {
-        // Computes or retrieves the value corresponding to {@code conversionQuery}.
-        Objects.requireNonNull(conversionQuery);
-
-        final ExchangeRateBuilder builder = exchangeRateBuilder(conversionQuery);
-        // WARNING: CryptoCompare will fail if the currency codes aren't upper-cased!
-        final String baseCurrencyCode = conversionQuery.getBaseCurrency().getCurrencyCode().toUpperCase();
-        final String terminatingCurrencyCode = conversionQuery.getCurrency().getCurrencyCode().toUpperCase();
-
-        if (baseCurrencyCode.equals(terminatingCurrencyCode)) {
-          builder.setFactor(DefaultNumberValue.ONE);
-        } else {
-
-          // In JavaMoney, the Base currency is the currency being dealt with, and the terminating currency is
-          // the currency that the base is converted into. E.g., `XRP, in USD, is $0.3133`, then XRP would be the
-          // base currency, and USD would be the terminating currency. In CryptoCompare, the `fsym` and `tsym`
-          // map this relationship. We ask the API, convert `XRP` (fsym) into `USD` (tsym). We get a response
-          // containing a map of values keyed by each `tsym`. So, we can map the `tsym` to the terminating currency.
-
-          // Call Remote API to load the rate.
-          final Map<String, String> ratesResponse = restTemplate.exchange(
-            apiUrlTemplate, HttpMethod.GET, httpEntityWithCustomHeaders(),
-            new ParameterizedTypeReference<Map<String, String>>() {
-            },
-            baseCurrencyCode, terminatingCurrencyCode
-          ).getBody();
-
-          Optional.ofNullable(ratesResponse.get(terminatingCurrencyCode))
-            .map(value -> builder.setFactor(new DefaultNumberValue(new BigDecimal(value))))
-            .orElseThrow(
-              () -> new RuntimeException(String.format("No Rate found for ConversionQuery: %s", conversionQuery))
-            );
+      .ticker(ticker)
+      .executor(Objects.requireNonNull(executor))
+      // After this, the next read triggers a background reload, and continues to see the old rate until it completes.
+      .refreshAfterWrite(refreshInterval.toNanos(), TimeUnit.NANOSECONDS)
+      // Only serve a rate until it is older than maxStaleness, however long ago it was put into the cache.
+      .expireAfter(new Expiry<CurrencyPair, TimestampedRate>() {
+        @Override
+        public long expireAfterCreate(CurrencyPair currencyPair, TimestampedRate rate, long currentTime) {
+          return remainingFreshnessNanos(rate);
+        }
+
+        @Override
+        public long expireAfterUpdate(
+          CurrencyPair currencyPair, TimestampedRate rate, long currentTime, long currentDuration
+        ) {
+          return remainingFreshnessNanos(rate);
         }
 
-        return builder.build();
-      });
+        @Override
+        public long expireAfterRead(
+          CurrencyPair currencyPair, TimestampedRate rate, long currentTime, long currentDuration
+        ) {
+          return currentDuration;
+        }
+      })
+      .build(this::loadRate);
+  }
+
+  private long remainingFreshnessNanos(final TimestampedRate rate) {
+    return Math.max(0, maxStaleness.minus(Duration.between(rate.fetchedAt, clock.instant())).toNanos());
+  }
+
+  /**
+   * Computes the rate corresponding to {@code currencyPair} by calling the CryptoCompare API.
+   */
+  private TimestampedRate loadRate(final CurrencyPair currencyPair) {
+    Objects.requireNonNull(currencyPair);
+
+    final TimestampedRate rate;
+    if (currencyPair.baseCurrencyCode.equals(currencyPair.terminatingCurrencyCode)) {
+      rate = new TimestampedRate(BigDecimal.ONE, clock.instant());
+    } else {
+
+      // In JavaMoney, the Base currency is the currency being dealt with, and the terminating currency is
+      // the currency that the base is converted into. E.g., `XRP, in USD, is $0.3133`, then XRP would be the
+      // base currency, and USD would be the terminating currency. In CryptoCompare, the `fsym` and `tsym`
+      // map this relationship. We ask the API, convert `XRP` (fsym) into `USD` (tsym). We get a response
+      // containing a map of values keyed by each `tsym`. So, we can map the `tsym` to the terminating currency.
+
+      // Call Remote API to load the rate.
+      final Map<String, String> ratesResponse = restTemplate.exchange(
+        apiUrlTemplate, HttpMethod.GET, httpEntityWithCustomHeaders(),
+        new ParameterizedTypeReference<Map<String, String>>() {
+        },
+        currencyPair.baseCurrencyCode, currencyPair.terminatingCurrencyCode
+      ).getBody();
+
+      rate = Optional.ofNullable(ratesResponse)
+        .map(response -> response.get(currencyPair.terminatingCurrencyCode))
+        .map(value -> new TimestampedRate(new BigDecimal(value), clock.instant()))
+        .orElseThrow(
+          () -> new RuntimeException(String.format("No Rate found for CurrencyPair: %s", currencyPair))
+        );
+    }
+
+    latestRates.put(currencyPair, rate);
+    snapshotFile.ifPresent(this::requestSnapshotWrite);
+    return rate;
   }
 
   // Access a {@link ExchangeRate} using the given currencies.
@@ -127,13 +251,36 @@ public class CryptoCompareRateProvider extends AbstractRateProvider {
   public ExchangeRate getExchangeRate(ConversionQuery conversionQuery) {
     Objects.requireNonNull(conversionQuery);
     try {
+      final TimestampedRate rate = this.exchangeRateCache.get(CurrencyPair.of(conversionQuery));
       // TODO: Interface contract says "never-null" but all implementations return null. :(
-      return this.exchangeRateCache.get(conversionQuery);
+      return exchangeRateBuilder(conversionQuery)
+        .setFactor(new DefaultNumberValue(rate.factor))
+        .build();
     } catch (Exception e) {
       throw new MonetaryException("Failed to load currency conversion data", e);
     }
   }
 
+  /**
+   * Load (in the background) the rates between every pair of {@code assetCodes}, so that the first packets between
+   * those assets do not have to wait for the rate API.
+   *
+   * @param assetCodes The asset codes of this Connector's accounts.
+   */
+  public void preloadRates(final Collection<String> assetCodes) {
+    Objects.requireNonNull(assetCodes);
+    final Set<String> distinctAssetCodes = assetCodes.stream()
+      .map(String::toUpperCase)
+      .collect(Collectors.toSet());
+    for (String baseCurrencyCode : distinctAssetCodes) {
+      for (String terminatingCurrencyCode : distinctAssetCodes) {
+        if (!baseCurrencyCode.equals(terminatingCurrencyCode)) {
+          exchangeRateCache.refresh(new CurrencyPair(baseCurrencyCode, terminatingCurrencyCode));
+        }
+      }
+    }
+  }
+
   private ExchangeRateBuilder exchangeRateBuilder(ConversionQuery query) {
     // TODO: This maps to scale, but shouldn't be hard-coded to "6" in javamoney.properties.
     ExchangeRateBuilder builder = new ExchangeRateBuilder(getExchangeContext("cc.digit.fraction"));
@@ -164,4 +311,129 @@ public class CryptoCompareRateProvider extends AbstractRateProvider {
   public void setApiUrlTemplate(String apiUrlTemplate) {
     this.apiUrlTemplate = apiUrlTemplate;
   }
+
+  ////////////////////////
+  // Snapshot File
+  ////////////////////////
+
+  /**
+   * Each line of the snapshot file is `{base} {terminating} {factor} {fetchedAt}`.
+   */
+  private void loadSnapshot(final Path path) {
+    if (!Files.exists(path)) {
+      return;
+    }
+    final List<String> lines;
+    try {
+      lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read FX rate snapshot. path={}", path, e);
+      return;
+    }
+
+    for (String line : lines) {
+      final String[] fields = line.trim().split(" ");
+      if (fields.length != 4) {
+        continue;
+      }
+      try {
+        final CurrencyPair currencyPair = new CurrencyPair(fields[0], fields[1]);
+        final TimestampedRate rate = new TimestampedRate(new BigDecimal(fields[2]), Instant.parse(fields[3]));
+        if (remainingFreshnessNanos(rate) > 0) {
+          latestRates.put(currencyPair, rate);
+          exchangeRateCache.put(currencyPair, rate);
+          // Serve the snapshot rate for now, but revalidate it straight away.
+          exchangeRateCache.refresh(currencyPair);
+        }
+      } catch (RuntimeException e) {
+        LOGGER.warn("Ignoring invalid line in FX rate snapshot. path={} line={}", path, line, e);
+      }
+    }
+  }
+
+  /**
+   * Write the snapshot file off the loading thread. Requests made before a pending write starts are served by that
+   * write, and requests made while a write is in progress schedule one more, so the latest rates are always written.
+   */
+  private void requestSnapshotWrite(final Path path) {
+    if (snapshotWritePending.compareAndSet(false, true)) {
+      try {
+        executor.execute(() -> writeSnapshot(path));
+      } catch (RejectedExecutionException e) {
+        snapshotWritePending.set(false);
+        LOGGER.warn("Unable to schedule FX rate snapshot write. path={}", path, e);
+      }
+    }
+  }
+
+  private synchronized void writeSnapshot(final Path path) {
+    snapshotWritePending.set(false);
+    try {
+      final Path tempFile = Files.createTempFile(path.toAbsolutePath().getParent(), "fx-rates", ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+        for (Map.Entry<CurrencyPair, TimestampedRate> entry : latestRates.entrySet()) {
+          writer.write(String.format("%s %s %s %s",
+            entry.getKey().baseCurrencyCode, entry.getKey().terminatingCurrencyCode,
+            entry.getValue().factor.toPlainString(), entry.getValue().fetchedAt
+          ));
+          writer.newLine();
+        }
+      }
+      Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write FX rate snapshot. path={}", path, e);
+    }
+  }
+
+  private static final class CurrencyPair {
+
+    private final String baseCurrencyCode;
+    private final String terminatingCurrencyCode;
+
+    private CurrencyPair(final String baseCurrencyCode, final String terminatingCurrencyCode) {
+      // WARNING: CryptoCompare will fail if the currency codes aren't upper-cased!
+      this.baseCurrencyCode = baseCurrencyCode.toUpperCase();
+      this.terminatingCurrencyCode = terminatingCurrencyCode.toUpperCase();
+    }
+
+    private static CurrencyPair of(final ConversionQuery conversionQuery) {
+      return new CurrencyPair(
+        conversionQuery.getBaseCurrency().getCurrencyCode(), conversionQuery.getCurrency().getCurrencyCode()
+      );
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      final CurrencyPair that = (CurrencyPair) o;
+      return baseCurrencyCode.equals(that.baseCurrencyCode)
+        && terminatingCurrencyCode.equals(that.terminatingCurrencyCode);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * baseCurrencyCode.hashCode() + terminatingCurrencyCode.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return baseCurrencyCode + "/" + terminatingCurrencyCode;
+    }
+  }
+
+  private static final class TimestampedRate {
+
+    private final BigDecimal factor;
+    private final Instant fetchedAt;
+
+    private TimestampedRate(final BigDecimal factor, final Instant fetchedAt) {
+      this.factor = Objects.requireNonNull(factor);
+      this.fetchedAt = Objects.requireNonNull(fetchedAt);
+    }
+  }
 }
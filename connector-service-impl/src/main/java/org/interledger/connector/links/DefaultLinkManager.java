@@ -94,14 +94,17 @@ public class DefaultLinkManager implements LinkManager, LinkEventListener {
   @Override
   public Link<? extends LinkSettings> getOrCreateLink(final AccountId accountId) {
     Objects.requireNonNull(accountId);
-    return Optional.ofNullable(this.connectedLinks.get(accountId))
-      .orElseGet(() -> {
-        // Convert to LinkSettings...
-        final AccountSettings accountSettings = accountSettingsRepository.findByAccountIdWithConversion(accountId)
-          .orElseThrow(() -> new AccountNotFoundProblem(accountId));
+    // Called on every packet, so avoid the Optional and lambda allocations used by the other variants.
+    final Link<? extends LinkSettings> connectedLink = this.connectedLinks.get(accountId);
+    if (connectedLink != null) {
+      return connectedLink;
+    }
 
-        return (Link) getOrCreateLink(accountSettings);
-      });
+    // Convert to LinkSettings...
+    final AccountSettings accountSettings = accountSettingsRepository.findByAccountIdWithConversion(accountId)
+      .orElseThrow(() -> new AccountNotFoundProblem(accountId));
+
+    return (Link) getOrCreateLink(accountSettings);
   }
 
   @Override
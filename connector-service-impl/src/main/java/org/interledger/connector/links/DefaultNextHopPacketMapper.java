@@ -3,7 +3,7 @@ package org.interledger.connector.links;
 import com.google.common.annotations.VisibleForTesting;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
-import org.interledger.connector.fx.JavaMoneyUtils;
+import org.interledger.connector.fx.CachingFxConverter;
 import org.interledger.connector.packetswitch.InterledgerAddressUtils;
 import org.interledger.connector.routing.PaymentRouter;
 import org.interledger.connector.routing.Route;
@@ -18,11 +18,6 @@ import com.google.common.primitives.UnsignedLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.money.CurrencyUnit;
-import javax.money.Monetary;
-import javax.money.MonetaryAmount;
-import javax.money.convert.CurrencyConversion;
-import javax.money.convert.MonetaryConversions;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -38,20 +33,20 @@ public class DefaultNextHopPacketMapper implements NextHopPacketMapper {
   private final Supplier<ConnectorSettings> connectorSettingsSupplier;
   private final PaymentRouter<Route> externalRoutingService;
   private final InterledgerAddressUtils addressUtils;
-  private final JavaMoneyUtils javaMoneyUtils;
+  private final CachingFxConverter fxConverter;
   private final AccountSettingsLoadingCache accountSettingsLoadingCache;
 
   public DefaultNextHopPacketMapper(
     final Supplier<ConnectorSettings> connectorSettingsSupplier,
     final PaymentRouter<Route> externalRoutingService,
     final InterledgerAddressUtils addressUtils,
-    final JavaMoneyUtils javaMoneyUtils,
+    final CachingFxConverter fxConverter,
     final AccountSettingsLoadingCache accountSettingsLoadingCache
   ) {
     this.connectorSettingsSupplier = Objects.requireNonNull(connectorSettingsSupplier);
     this.externalRoutingService = Objects.requireNonNull(externalRoutingService);
     this.addressUtils = Objects.requireNonNull(addressUtils);
-    this.javaMoneyUtils = Objects.requireNonNull(javaMoneyUtils);
+    this.fxConverter = Objects.requireNonNull(fxConverter);
     this.accountSettingsLoadingCache = Objects.requireNonNull(accountSettingsLoadingCache);
   }
 
@@ -140,7 +135,7 @@ public class DefaultNextHopPacketMapper implements NextHopPacketMapper {
    * @param destinationAccountSettings
    * @param sourcePacket
    *
-   * @return A BigInteger is the correct units for the source account.
+   * @return An {@link UnsignedLong} in the correct units for the destination account, rounded down.
    */
   @VisibleForTesting
   protected UnsignedLong determineNextAmount(
@@ -154,19 +149,12 @@ public class DefaultNextHopPacketMapper implements NextHopPacketMapper {
     if (!this.addressUtils.isExternalForwardingAllowed(sourcePacket.getDestination())) {
       return sourcePacket.getAmount();
     } else {
-      // TODO: Consider a cache here for the source/dest conversion or perhaps an injected instance of
-      //  ExchangeRateProvider here (See https://github.com/sappenin/java-ilpv4-connector/issues/223)
-      final CurrencyUnit sourceCurrencyUnit = Monetary.getCurrency(sourceAccountSettings.assetCode());
-      final int sourceScale = sourceAccountSettings.assetScale();
-      final MonetaryAmount sourceAmount =
-        javaMoneyUtils.toMonetaryAmount(sourceCurrencyUnit, sourcePacket.getAmount().bigIntegerValue(), sourceScale);
-
-      final CurrencyUnit destinationCurrencyUnit = Monetary.getCurrency(destinationAccountSettings.assetCode());
-      final int destinationScale = destinationAccountSettings.assetScale();
-      final CurrencyConversion destCurrencyConversion = MonetaryConversions.getConversion(destinationCurrencyUnit);
-
-      return UnsignedLong.valueOf(
-          javaMoneyUtils.toInterledgerAmount(sourceAmount.with(destCurrencyConversion), destinationScale));
+      // Rates are cached per asset pair, so this is just fixed-point arithmetic (rounding down) for most packets.
+      return fxConverter.convert(
+        sourceAccountSettings.assetCode(), sourceAccountSettings.assetScale(),
+        destinationAccountSettings.assetCode(), destinationAccountSettings.assetScale(),
+        sourcePacket.getAmount()
+      );
     }
   }
 
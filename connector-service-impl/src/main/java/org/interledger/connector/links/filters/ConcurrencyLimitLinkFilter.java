@@ -0,0 +1,120 @@
+package org.interledger.connector.links.filters;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.packetswitch.AimdConcurrencyLimiter;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>An implementation of {@link LinkFilter} that sheds load by limiting the number of packets that may be in-flight
+ * to each next-hop account at once.</p>
+ *
+ * <p>The limit for each next-hop is adjusted from observed response latency by an {@link AimdConcurrencyLimiter}, so
+ * that a single slow peer cannot accumulate an unbounded number of waiting packets. Packets over the limit are
+ * rejected with {@link InterledgerErrorCode#T03_CONNECTOR_BUSY} without being sent to the Link.</p>
+ */
+public class ConcurrencyLimitLinkFilter extends AbstractLinkFilter implements LinkFilter {
+
+  private final Supplier<AimdConcurrencyLimiter> limiterSupplier;
+
+  // Next-hop account-based concurrency-limiters.
+  private final Cache<AccountId, AimdConcurrencyLimiter> limiters;
+
+  /**
+   * Required-args Constructor; uses the default limits.
+   */
+  public ConcurrencyLimitLinkFilter(final Supplier<InterledgerAddress> operatorAddressSupplier) {
+    this(operatorAddressSupplier, AimdConcurrencyLimiter::new);
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param operatorAddressSupplier A {@link Supplier} of this Connector's operator {@link InterledgerAddress}.
+   * @param limiterSupplier         Supplies a new {@link AimdConcurrencyLimiter} the first time a packet is sent to
+   *                                each next-hop account.
+   */
+  public ConcurrencyLimitLinkFilter(
+    final Supplier<InterledgerAddress> operatorAddressSupplier,
+    final Supplier<AimdConcurrencyLimiter> limiterSupplier
+  ) {
+    super(operatorAddressSupplier);
+    this.limiterSupplier = Objects.requireNonNull(limiterSupplier);
+    this.limiters = Caffeine.newBuilder()
+      .expireAfterAccess(30, TimeUnit.SECONDS)
+      .build();
+  }
+
+  @Override
+  public InterledgerResponsePacket doFilter(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket outgoingPreparePacket,
+    final LinkFilterChain filterChain
+  ) {
+    final AimdConcurrencyLimiter limiter = getLimiter(destinationAccountSettings);
+    if (!limiter.tryAcquire()) {
+      return rejectBusy(destinationAccountSettings, outgoingPreparePacket);
+    }
+
+    final long startNanos = System.nanoTime();
+    boolean congested = true;
+    try {
+      final InterledgerResponsePacket responsePacket =
+        filterChain.doFilter(destinationAccountSettings, outgoingPreparePacket);
+      congested = AimdConcurrencyLimiter.isCongestionSignal(responsePacket);
+      return responsePacket;
+    } finally {
+      limiter.release(System.nanoTime() - startNanos, congested);
+    }
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket outgoingPreparePacket,
+    final LinkFilterChain filterChain
+  ) {
+    final AimdConcurrencyLimiter limiter = getLimiter(destinationAccountSettings);
+    if (!limiter.tryAcquire()) {
+      return CompletableFuture.completedFuture(rejectBusy(destinationAccountSettings, outgoingPreparePacket));
+    }
+
+    final long startNanos = System.nanoTime();
+    final CompletableFuture<InterledgerResponsePacket> responseFuture;
+    try {
+      responseFuture = filterChain.doFilterAsync(destinationAccountSettings, outgoingPreparePacket);
+    } catch (RuntimeException e) {
+      limiter.release(System.nanoTime() - startNanos, true);
+      throw e;
+    }
+    // The downstream future is returned (rather than the dependent stage) so that cancellation still reaches it.
+    responseFuture.whenComplete((responsePacket, throwable) -> limiter.release(
+      System.nanoTime() - startNanos, throwable != null || AimdConcurrencyLimiter.isCongestionSignal(responsePacket)
+    ));
+    return responseFuture;
+  }
+
+  private AimdConcurrencyLimiter getLimiter(final AccountSettings destinationAccountSettings) {
+    return limiters.get(destinationAccountSettings.accountId(), $ -> limiterSupplier.get());
+  }
+
+  private InterledgerResponsePacket rejectBusy(
+    final AccountSettings destinationAccountSettings, final InterledgerPreparePacket outgoingPreparePacket
+  ) {
+    return reject(
+      destinationAccountSettings.accountId(), outgoingPreparePacket, InterledgerErrorCode.T03_CONNECTOR_BUSY,
+      "Concurrency limit exceeded"
+    );
+  }
+}
@@ -9,44 +9,129 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * A default implementation of {@link LinkFilterChain}. The supplied filters are compiled once into an immutable chain
+ * that ends in {@link Link#sendPacket(InterledgerPreparePacket)}, so a single instance may be reused for every packet
+ * sent on {@code outboundLink}, from any thread.
+ */
 public class DefaultLinkFilterChain implements LinkFilterChain {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultLinkFilterChain.class);
 
-  private final List<LinkFilter> linkFilters;
   private final Link link;
-  // The index of the filter to call next...
-  private int _filterIndex;
+
+  // The first element of the compiled chain. If no filters are configured, this is the packet-sending step.
+  private final LinkFilterChain head;
 
   /**
    * A chain of filters that are applied to a packet request before sending the packet onto an outbound {@link Link}.
    *
-   * @param linkFilters
+   * @param linkFilters  The {@link LinkFilter}s to apply, in order.
    * @param outboundLink The {@link Link} that a Packet Switch will forward a packet onto (this link is the `next-hop`
    *                     as determined by the routing table inside of the Packet Switch).
    */
   public DefaultLinkFilterChain(final List<LinkFilter> linkFilters, final Link outboundLink) {
-    this.linkFilters = Objects.requireNonNull(linkFilters);
+    Objects.requireNonNull(linkFilters);
     this.link = Objects.requireNonNull(outboundLink);
+
+    // Compile the chain back-to-front so that each filter holds a reference to its successor.
+    LinkFilterChain next = new SendPacketStep();
+    for (int i = linkFilters.size() - 1; i >= 0; i--) {
+      next = new FilterChainLink(linkFilters.get(i), next);
+    }
+    this.head = next;
+  }
+
+  /**
+   * Accessor for the {@link Link} at the end of this chain.
+   *
+   * @return The outbound {@link Link}.
+   */
+  public Link getOutboundLink() {
+    return link;
   }
 
   @Override
   public InterledgerResponsePacket doFilter(
     final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
   ) {
+    Objects.requireNonNull(destinationAccountSettings);
+    Objects.requireNonNull(preparePacket);
+
+    return head.doFilter(destinationAccountSettings, preparePacket);
+  }
 
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
+  ) {
     Objects.requireNonNull(destinationAccountSettings);
     Objects.requireNonNull(preparePacket);
 
-    if (this._filterIndex < this.linkFilters.size()) {
-      return linkFilters.get(_filterIndex++).doFilter(destinationAccountSettings, preparePacket, this);
-    } else {
-      LOGGER.debug(
-        "Sending outbound ILP Prepare. destinationAccountSettings: {}; link={}; packet={};",
-        destinationAccountSettings, link, preparePacket
-      );
+    return head.doFilterAsync(destinationAccountSettings, preparePacket);
+  }
+
+  /**
+   * The final step in the chain, which forwards the packet onto the outbound {@link Link}.
+   */
+  private final class SendPacketStep implements LinkFilterChain {
+
+    @Override
+    public InterledgerResponsePacket doFilter(
+      final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      logSend(destinationAccountSettings, preparePacket);
       return link.sendPacket(preparePacket);
     }
+
+    @Override
+    public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+      final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      logSend(destinationAccountSettings, preparePacket);
+      return link.sendPacketAsync(preparePacket);
+    }
+
+    private void logSend(
+      final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(
+          "Sending outbound ILP Prepare. destinationAccountSettings: {}; link={}; packet={};",
+          destinationAccountSettings, link, preparePacket
+        );
+      }
+    }
+  }
+
+  /**
+   * An immutable element of the compiled chain that applies a single {@link LinkFilter}, supplying the next element of
+   * the chain as the filter's {@link LinkFilterChain}.
+   */
+  private static final class FilterChainLink implements LinkFilterChain {
+
+    private final LinkFilter filter;
+    private final LinkFilterChain next;
+
+    private FilterChainLink(final LinkFilter filter, final LinkFilterChain next) {
+      this.filter = Objects.requireNonNull(filter);
+      this.next = Objects.requireNonNull(next);
+    }
+
+    @Override
+    public InterledgerResponsePacket doFilter(
+      final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      return filter.doFilter(destinationAccountSettings, preparePacket, next);
+    }
+
+    @Override
+    public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+      final AccountSettings destinationAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      return filter.doFilterAsync(destinationAccountSettings, preparePacket, next);
+    }
   }
 }
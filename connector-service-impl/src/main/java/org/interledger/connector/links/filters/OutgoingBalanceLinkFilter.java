@@ -2,8 +2,11 @@ package org.interledger.connector.links.filters;
 
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.balances.BalanceTracker;
-import org.interledger.connector.core.settlement.SettlementQuantity;
+import org.interledger.connector.balances.FulfillUpdateQueue;
+import org.interledger.connector.core.CompletableFutures;
+import org.interledger.connector.settlement.SettlementScheduler;
 import org.interledger.connector.settlement.SettlementService;
+import org.interledger.connector.settlement.SettlementThresholdListener;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.core.InterledgerFulfillPacket;
 import org.interledger.core.InterledgerPreparePacket;
@@ -13,27 +16,72 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.Objects;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 /**
- * An implementation of {@link LinkFilter} for updating balances of the account associated to the Link being filtered.
+ * <p>An implementation of {@link LinkFilter} for updating balances of the account associated to the Link being
+ * filtered.</p>
+ *
+ * <p>If a {@link FulfillUpdateQueue} is supplied, the balance update (and any settlement) of a fulfilled packet is
+ * handed to it, so the Fulfill packet is returned upstream without waiting for either. Otherwise, both are performed
+ * before the Fulfill packet is returned. If a {@link SettlementScheduler} is supplied, settlements are initiated by it
+ * rather than before the Fulfill packet is returned.</p>
+ *
+ * <p>On the asynchronous path, a fulfill that is not handed to a {@link FulfillUpdateQueue} is applied using the
+ * asynchronous fulfill of the {@link BalanceTracker}, provided that a {@link SettlementScheduler} is supplied. Without
+ * one, a settlement would be initiated on the thread that completes the balance update, so the fulfill is instead
+ * applied before the Fulfill packet is returned.</p>
  */
 public class OutgoingBalanceLinkFilter extends AbstractLinkFilter implements LinkFilter {
 
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
   private final BalanceTracker balanceTracker;
-  private final SettlementService settlementService;
+  private final SettlementThresholdListener settlementThresholdListener;
+  private final Optional<FulfillUpdateQueue> fulfillUpdateQueue;
+  private final boolean asyncFulfill;
 
   public OutgoingBalanceLinkFilter(
     final Supplier<InterledgerAddress> operatorAddressSupplier,
     final BalanceTracker balanceTracker,
     final SettlementService settlementService
+  ) {
+    this(operatorAddressSupplier, balanceTracker, settlementService, Optional.empty());
+  }
+
+  public OutgoingBalanceLinkFilter(
+    final Supplier<InterledgerAddress> operatorAddressSupplier,
+    final BalanceTracker balanceTracker,
+    final SettlementService settlementService,
+    final Optional<FulfillUpdateQueue> fulfillUpdateQueue
+  ) {
+    this(operatorAddressSupplier, balanceTracker, settlementService, fulfillUpdateQueue, Optional.empty());
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param operatorAddressSupplier A {@link Supplier} of this Connector's operator address.
+   * @param balanceTracker          The {@link BalanceTracker} to update.
+   * @param settlementService       The {@link SettlementService} to initiate settlements with.
+   * @param fulfillUpdateQueue      An optionally-present {@link FulfillUpdateQueue} to apply fulfill balance updates
+   *                                asynchronously with. Its listener is expected to initiate any settlement.
+   * @param settlementScheduler     An optionally-present {@link SettlementScheduler} to initiate settlements with.
+   */
+  public OutgoingBalanceLinkFilter(
+    final Supplier<InterledgerAddress> operatorAddressSupplier,
+    final BalanceTracker balanceTracker,
+    final SettlementService settlementService,
+    final Optional<FulfillUpdateQueue> fulfillUpdateQueue,
+    final Optional<SettlementScheduler> settlementScheduler
   ) {
     super(operatorAddressSupplier);
     this.balanceTracker = Objects.requireNonNull(balanceTracker);
-    this.settlementService = Objects.requireNonNull(settlementService);
+    this.settlementThresholdListener = new SettlementThresholdListener(settlementService, settlementScheduler);
+    this.fulfillUpdateQueue = Objects.requireNonNull(fulfillUpdateQueue);
+    this.asyncFulfill = !fulfillUpdateQueue.isPresent() && settlementScheduler.isPresent();
   }
 
   @Override
@@ -49,6 +97,73 @@ public class OutgoingBalanceLinkFilter extends AbstractLinkFilter implements Lin
     final InterledgerResponsePacket responsePacket
       = filterChain.doFilter(destinationAccountSettings, outgoingPreparePacket);
 
+    this.handleResponse(destinationAccountSettings, outgoingPreparePacket, responsePacket);
+
+    // ALWAYS return the Response packet _AT ANY COST_ so this connector doesn't lose money.
+    return responsePacket;
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket outgoingPreparePacket,
+    final LinkFilterChain filterChain
+  ) {
+    Objects.requireNonNull(destinationAccountSettings);
+    Objects.requireNonNull(outgoingPreparePacket);
+    Objects.requireNonNull(filterChain);
+
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture =
+      filterChain.doFilterAsync(destinationAccountSettings, outgoingPreparePacket);
+    return CompletableFutures.propagateCancellation(downstreamFuture, downstreamFuture.thenCompose(responsePacket -> {
+      if (asyncFulfill && responsePacket instanceof InterledgerFulfillPacket &&
+        !outgoingPreparePacket.getAmount().equals(BigInteger.ZERO)) {
+        return updateBalanceForFulfillAsync(
+          destinationAccountSettings, outgoingPreparePacket, (InterledgerFulfillPacket) responsePacket
+        );
+      }
+      this.handleResponse(destinationAccountSettings, outgoingPreparePacket, responsePacket);
+
+      // ALWAYS return the Response packet _AT ANY COST_ so this connector doesn't lose money.
+      return CompletableFuture.completedFuture(responsePacket);
+    }));
+  }
+
+  /**
+   * Update the balance for a fulfilled packet, as in {@link #handleResponse}, without waiting for the balance tracker.
+   */
+  private CompletableFuture<InterledgerResponsePacket> updateBalanceForFulfillAsync(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket outgoingPreparePacket,
+    final InterledgerFulfillPacket interledgerFulfillPacket
+  ) {
+    return balanceTracker.updateBalanceForFulfillAsync(
+      destinationAccountSettings, outgoingPreparePacket.getAmount().longValue()
+    ).handle((balanceForFulfillResponse, error) -> {
+      if (error != null) {
+        logger.error(String.format(
+          "RECONCILIATION REQUIRED: Unable to update balance in Redis after receiving a valid Fulfillment. " +
+            "outgoingPreparePacket=%s fulfillmentPacket=%s. error==%s",
+          outgoingPreparePacket, interledgerFulfillPacket, error.getMessage()
+          ), error // position the exception properly for logging.
+        );
+      } else {
+        // Only hands the settlement to the SettlementScheduler, so this never blocks.
+        this.maybeSettle(
+          destinationAccountSettings, outgoingPreparePacket, interledgerFulfillPacket, balanceForFulfillResponse
+        );
+      }
+
+      // ALWAYS return the Response packet _AT ANY COST_ so this connector doesn't lose money.
+      return interledgerFulfillPacket;
+    });
+  }
+
+  private void handleResponse(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket outgoingPreparePacket,
+    final InterledgerResponsePacket responsePacket
+  ) {
     responsePacket.handle(
       //////////////////////
       // If FulfillPacket...
@@ -63,14 +178,17 @@ public class OutgoingBalanceLinkFilter extends AbstractLinkFilter implements Lin
         // Update Balance for Fulfill
         /////////////////////////////
 
+        if (fulfillUpdateQueue.isPresent()) {
+          // Applied (and checked for settlement) off the response path.
+          fulfillUpdateQueue.get().submit(destinationAccountSettings, outgoingPreparePacket.getAmount().longValue());
+          return;
+        }
+
         final BalanceTracker.UpdateBalanceForFulfillResponse balanceForFulfillResponse;
         try {
           balanceForFulfillResponse = balanceTracker.updateBalanceForFulfill(
             destinationAccountSettings, outgoingPreparePacket.getAmount().longValue()
           );
-
-          // TODO: Stats
-
         } catch (Exception e) {
           logger.error(String.format(
             "RECONCILIATION REQUIRED: Unable to update balance in Redis after receiving a valid Fulfillment. " +
@@ -101,14 +219,8 @@ public class OutgoingBalanceLinkFilter extends AbstractLinkFilter implements Lin
           outgoingPreparePacket,
           interledgerRejectPacket
         );
-
-        // TODO: Stats
-        //  this.stats.outgoingDataPacketValue.increment(account, {result :'rejected' },+amount)
       }
     );
-
-    // ALWAYS return the Response packet _AT ANY COST_ so this connector doesn't lose money.
-    return responsePacket;
   }
 
   /**
@@ -130,33 +242,7 @@ public class OutgoingBalanceLinkFilter extends AbstractLinkFilter implements Lin
   ) {
 
     try {
-      // SettlementService throws an exception if no SE is configured, so only trigger it if there's an SE
-      // configured.
-      destinationAccountSettings.settlementEngineDetails().ifPresent(
-        settlementEngineDetails -> {
-
-          // Only trigger settlement if there's a Threshold...
-          destinationAccountSettings.balanceSettings().settleThreshold()
-            // ... and if the calculated clearingAmountToSettle is > the threshold (and not 0)
-            .filter(settleThreshold -> balanceForFulfillResponse.clearingAmountToSettle() > 0 &&
-              balanceForFulfillResponse.clearingAmountToSettle() >= settleThreshold)
-            .ifPresent(settleThreshold -> {
-              final UUID idempotencyId = UUID.randomUUID();
-
-              final SettlementQuantity settlementQuantityInClearingUnits = SettlementQuantity.builder()
-                .amount(BigInteger.valueOf(balanceForFulfillResponse.clearingAmountToSettle()))
-                .scale(destinationAccountSettings.assetScale())
-                .build();
-
-              // NOTE: This method is tightly-coupled to the fulfill balance processing above. Since the
-              // SettlementService is already tightly coupled, this is tolerable, but it might be clearer to have the
-              // SettlementService not roll-back if there's a problem (small case to be made that this method should
-              // handle the rollback).
-              settlementService.initiateLocalSettlement(
-                idempotencyId.toString(), destinationAccountSettings, settlementQuantityInClearingUnits
-              );
-            });
-        });
+      settlementThresholdListener.maybeSettle(destinationAccountSettings, balanceForFulfillResponse);
     } catch (Exception e) {
       logger.error(String.format(
         "While trying to initiate settlement engine payment: PreparePacket=%s; FulfillPacket=%s; Error=%s",
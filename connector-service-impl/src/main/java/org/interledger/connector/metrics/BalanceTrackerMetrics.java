@@ -0,0 +1,144 @@
+package org.interledger.connector.metrics;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * <p>The metrics of a balance tracker that sends balance updates to a remote store (e.g., Redis), and exposes them in
+ * the Prometheus text exposition format.</p>
+ *
+ * <p>A single command may apply several balance updates (see {@code BatchingRedisBalanceTracker}), so the latency of
+ * each command is recorded separately from the latency of each update, which includes the time that the update spent
+ * queued before its command was sent. Like {@link FilterMetrics}, recording never takes a lock.</p>
+ *
+ * <p>Metrics are labelled with the kind of tracker that registered itself (see {@link #registerTracker(String,
+ * IntSupplier)}). A tracker that keeps balances locally (e.g., in memory) sends no commands and never registers, so
+ * no balance-tracker metrics are written for it.</p>
+ */
+public class BalanceTrackerMetrics {
+
+  private static final IntSupplier NO_QUEUE = () -> 0;
+
+  private final LogLinearHistogram commandLatencyNanos = new LogLinearHistogram();
+  private final LogLinearHistogram updateLatencyNanos = new LogLinearHistogram();
+  private final LogLinearHistogram updatesPerCommand = new LogLinearHistogram();
+  private final LongAdder failedCommands = new LongAdder();
+
+  private volatile Optional<String> tracker = Optional.empty();
+  private volatile IntSupplier queueDepth = NO_QUEUE;
+
+  /**
+   * Record a command that was executed successfully.
+   *
+   * @param numUpdates   The number of balance updates that the command applied.
+   * @param elapsedNanos The round-trip time of the command.
+   */
+  public void recordCommand(final int numUpdates, final long elapsedNanos) {
+    commandLatencyNanos.record(elapsedNanos);
+    updatesPerCommand.record(numUpdates);
+  }
+
+  /**
+   * Record a command that failed (e.g., because the store could not be reached).
+   *
+   * @param elapsedNanos The time taken by the command to fail.
+   */
+  public void recordFailedCommand(final long elapsedNanos) {
+    commandLatencyNanos.record(elapsedNanos);
+    failedCommands.increment();
+  }
+
+  /**
+   * Record a balance update that has completed, whether successfully or not.
+   *
+   * @param elapsedNanos The time from the update being requested until it completed.
+   */
+  public void recordUpdate(final long elapsedNanos) {
+    updateLatencyNanos.record(elapsedNanos);
+  }
+
+  /**
+   * Register the tracker that records into these metrics.
+   *
+   * @param tracker    The kind of tracker (e.g., {@code redis}), which every metric is labelled with.
+   * @param queueDepth Reports the number of balance updates waiting to be sent.
+   */
+  public void registerTracker(final String tracker, final IntSupplier queueDepth) {
+    this.queueDepth = Objects.requireNonNull(queueDepth);
+    this.tracker = Optional.of(tracker);
+  }
+
+  /**
+   * Register a tracker that does not queue its balance updates, as described in {@link #registerTracker(String,
+   * IntSupplier)}.
+   */
+  public void registerTracker(final String tracker) {
+    registerTracker(tracker, NO_QUEUE);
+  }
+
+  public LogLinearHistogram.Snapshot commandLatencyNanos() {
+    return commandLatencyNanos.snapshot();
+  }
+
+  public LogLinearHistogram.Snapshot updateLatencyNanos() {
+    return updateLatencyNanos.snapshot();
+  }
+
+  public LogLinearHistogram.Snapshot updatesPerCommand() {
+    return updatesPerCommand.snapshot();
+  }
+
+  public long failedCommandCount() {
+    return failedCommands.sum();
+  }
+
+  /**
+   * The number of balance updates that are currently waiting to be sent.
+   */
+  public int queueDepth() {
+    return queueDepth.getAsInt();
+  }
+
+  /**
+   * Write every balance-tracker metric to {@code output}, unless no tracker has registered.
+   *
+   * @param output The {@link Appendable} to write to.
+   *
+   * @throws IOException If {@code output} cannot be written to.
+   */
+  public void writePrometheusText(final Appendable output) throws IOException {
+    Objects.requireNonNull(output);
+    if (!tracker.isPresent()) {
+      return;
+    }
+    final String labels = "tracker=\"" + tracker.get() + "\"";
+
+    output.append("# HELP ilp_balance_tracker_command_latency_seconds Round-trip time of each balance command.\n");
+    output.append("# TYPE ilp_balance_tracker_command_latency_seconds summary\n");
+    FilterMetricsRegistry.writeSummary(output, "ilp_balance_tracker_command_latency_seconds", labels,
+      commandLatencyNanos(), FilterMetricsRegistry.NANOS_PER_SECOND);
+
+    output.append("# HELP ilp_balance_tracker_update_latency_seconds Time taken by each balance update, "
+      + "including queueing.\n");
+    output.append("# TYPE ilp_balance_tracker_update_latency_seconds summary\n");
+    FilterMetricsRegistry.writeSummary(output, "ilp_balance_tracker_update_latency_seconds", labels,
+      updateLatencyNanos(), FilterMetricsRegistry.NANOS_PER_SECOND);
+
+    output.append("# HELP ilp_balance_tracker_updates_per_command Balance updates applied by each command.\n");
+    output.append("# TYPE ilp_balance_tracker_updates_per_command summary\n");
+    FilterMetricsRegistry.writeSummary(output, "ilp_balance_tracker_updates_per_command", labels,
+      updatesPerCommand(), 1d);
+
+    output.append("# HELP ilp_balance_tracker_failed_commands_total Balance commands that failed.\n");
+    output.append("# TYPE ilp_balance_tracker_failed_commands_total counter\n");
+    FilterMetricsRegistry.writeSample(output, "ilp_balance_tracker_failed_commands_total", labels,
+      failedCommandCount());
+
+    output.append("# HELP ilp_balance_tracker_queue_depth Balance updates waiting to be sent.\n");
+    output.append("# TYPE ilp_balance_tracker_queue_depth gauge\n");
+    FilterMetricsRegistry.writeSample(output, "ilp_balance_tracker_queue_depth", labels, queueDepth());
+  }
+}
@@ -0,0 +1,130 @@
+package org.interledger.connector.metrics;
+
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerRejectPacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latency, outcome and amount metrics of a single filter, for packets on accounts with a single {@link
+ * AccountRelationship}.
+ */
+public class FilterMetrics {
+
+  private final String chain;
+  private final String filterName;
+  private final AccountRelationship accountRelationship;
+
+  private final LogLinearHistogram latencyNanos = new LogLinearHistogram();
+  private final LogLinearHistogram amounts = new LogLinearHistogram();
+  private final LongAdder fulfilled = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  // Keyed by error code (e.g., `F02`), which is a small, bounded set.
+  private final Map<String, LongAdder> rejectedByErrorCode = new ConcurrentHashMap<>();
+
+  FilterMetrics(final String chain, final String filterName, final AccountRelationship accountRelationship) {
+    this.chain = Objects.requireNonNull(chain);
+    this.filterName = Objects.requireNonNull(filterName);
+    this.accountRelationship = Objects.requireNonNull(accountRelationship);
+  }
+
+  /**
+   * Record a packet that the filter responded to.
+   *
+   * @param preparePacket  The {@link InterledgerPreparePacket} that the filter processed.
+   * @param responsePacket The {@link InterledgerResponsePacket} that the filter returned.
+   * @param elapsedNanos   The time taken by the filter (including every filter and link after it) to respond.
+   */
+  void record(
+    final InterledgerPreparePacket preparePacket, final InterledgerResponsePacket responsePacket,
+    final long elapsedNanos
+  ) {
+    latencyNanos.record(elapsedNanos);
+    amounts.record(preparePacket.getAmount().longValue());
+    // Checked directly rather than via `handle` so that recording never allocates.
+    if (responsePacket instanceof InterledgerRejectPacket) {
+      recordReject(((InterledgerRejectPacket) responsePacket).getCode());
+    } else {
+      fulfilled.increment();
+    }
+  }
+
+  /**
+   * Record a packet for which the filter threw an exception instead of responding.
+   *
+   * @param preparePacket The {@link InterledgerPreparePacket} that the filter processed.
+   * @param elapsedNanos  The time taken by the filter to fail.
+   */
+  void recordFailure(final InterledgerPreparePacket preparePacket, final long elapsedNanos) {
+    latencyNanos.record(elapsedNanos);
+    amounts.record(preparePacket.getAmount().longValue());
+    failed.increment();
+  }
+
+  private void recordReject(final InterledgerErrorCode errorCode) {
+    final LongAdder rejected = rejectedByErrorCode.get(errorCode.getCode());
+    if (rejected != null) {
+      rejected.increment();
+    } else {
+      rejectedByErrorCode.computeIfAbsent(errorCode.getCode(), $ -> new LongAdder()).increment();
+    }
+  }
+
+  /**
+   * The filter chain that the filter belongs to (e.g., {@link FilterMetricsRegistry#LINK_CHAIN}).
+   */
+  public String chain() {
+    return chain;
+  }
+
+  public String filterName() {
+    return filterName;
+  }
+
+  public AccountRelationship accountRelationship() {
+    return accountRelationship;
+  }
+
+  /**
+   * The time taken by the filter to respond to each packet, in nanoseconds. This includes the time taken by every
+   * filter and link after this one, so the time spent in the filter itself is the difference from the next filter.
+   */
+  public LogLinearHistogram.Snapshot latencyNanos() {
+    return latencyNanos.snapshot();
+  }
+
+  /**
+   * The amounts of the prepare packets processed by the filter.
+   */
+  public LogLinearHistogram.Snapshot amounts() {
+    return amounts.snapshot();
+  }
+
+  public long fulfilledCount() {
+    return fulfilled.sum();
+  }
+
+  /**
+   * The number of packets for which the filter threw an exception.
+   */
+  public long failedCount() {
+    return failed.sum();
+  }
+
+  /**
+   * The number of rejected packets, keyed by ILP error code.
+   */
+  public Map<String, Long> rejectedCounts() {
+    final Map<String, Long> rejectedCounts = new TreeMap<>();
+    rejectedByErrorCode.forEach((errorCode, count) -> rejectedCounts.put(errorCode, count.sum()));
+    return Collections.unmodifiableMap(rejectedCounts);
+  }
+}
@@ -0,0 +1,159 @@
+package org.interledger.connector.metrics;
+
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.links.filters.LinkFilter;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Instruments {@link PacketSwitchFilter}s and {@link LinkFilter}s so that every packet they process is recorded in a
+ * {@link FilterMetrics}, and exposes those metrics in the Prometheus text exposition format.</p>
+ *
+ * <p>Metrics are tagged by filter (i.e., the filter's simple class name), by chain (either {@link
+ * #PACKET_SWITCH_CHAIN} or {@link #LINK_CHAIN}) and by {@link AccountRelationship}. Recording a packet never takes a
+ * lock, so instrumentation is cheap enough to leave enabled at full packet rate.</p>
+ */
+public class FilterMetricsRegistry {
+
+  public static final String PACKET_SWITCH_CHAIN = "packet_switch";
+  public static final String LINK_CHAIN = "link";
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  // Keyed by chain, then by filter name. Filters of the same type in the same chain share their metrics.
+  private final Map<String, Map<String, FilterMetrics[]>> metricsByChain = new ConcurrentHashMap<>();
+
+  /**
+   * Wrap each of {@code packetSwitchFilters} so that the packets it processes are recorded.
+   *
+   * @param packetSwitchFilters The {@link PacketSwitchFilter}s to instrument.
+   *
+   * @return A new {@link List} of instrumented {@link PacketSwitchFilter}s, in the same order.
+   */
+  public List<PacketSwitchFilter> instrumentPacketSwitchFilters(final List<PacketSwitchFilter> packetSwitchFilters) {
+    Objects.requireNonNull(packetSwitchFilters);
+    return Collections.unmodifiableList(packetSwitchFilters.stream()
+      .map(filter -> new InstrumentedPacketSwitchFilter(filter, metricsFor(PACKET_SWITCH_CHAIN, filter)))
+      .collect(Collectors.toList()));
+  }
+
+  /**
+   * Wrap each of {@code linkFilters} so that the packets it processes are recorded.
+   *
+   * @param linkFilters The {@link LinkFilter}s to instrument.
+   *
+   * @return A new {@link List} of instrumented {@link LinkFilter}s, in the same order.
+   */
+  public List<LinkFilter> instrumentLinkFilters(final List<LinkFilter> linkFilters) {
+    Objects.requireNonNull(linkFilters);
+    return Collections.unmodifiableList(linkFilters.stream()
+      .map(filter -> new InstrumentedLinkFilter(filter, metricsFor(LINK_CHAIN, filter)))
+      .collect(Collectors.toList()));
+  }
+
+  /**
+   * Accessor for the metrics of every instrumented filter.
+   *
+   * @return A {@link List} of {@link FilterMetrics}, ordered by chain, filter name and {@link AccountRelationship}.
+   */
+  public List<FilterMetrics> getAllFilterMetrics() {
+    final List<FilterMetrics> allFilterMetrics = new ArrayList<>();
+    metricsByChain.entrySet().stream()
+      .sorted(Map.Entry.comparingByKey())
+      .flatMap(chainEntry -> chainEntry.getValue().entrySet().stream().sorted(Map.Entry.comparingByKey()))
+      .forEach(filterEntry -> Collections.addAll(allFilterMetrics, filterEntry.getValue()));
+    return allFilterMetrics;
+  }
+
+  /**
+   * Write every metric to {@code output} using the Prometheus text exposition format (version 0.0.4). Latencies are
+   * reported in seconds, and both latencies and amounts are reported as summaries (i.e., quantiles).
+   *
+   * @param output The {@link Appendable} to write to.
+   *
+   * @throws IOException If {@code output} cannot be written to.
+   */
+  public void writePrometheusText(final Appendable output) throws IOException {
+    Objects.requireNonNull(output);
+
+    final List<FilterMetrics> allFilterMetrics = getAllFilterMetrics();
+
+    output.append("# HELP ilp_filter_packets_total Packets processed by each filter, by outcome.\n");
+    output.append("# TYPE ilp_filter_packets_total counter\n");
+    for (FilterMetrics metrics : allFilterMetrics) {
+      final String labels = labels(metrics);
+      writeSample(output, "ilp_filter_packets_total", labels + ",outcome=\"fulfill\"", metrics.fulfilledCount());
+      for (Map.Entry<String, Long> rejected : metrics.rejectedCounts().entrySet()) {
+        writeSample(output, "ilp_filter_packets_total",
+          labels + ",outcome=\"reject\",error_code=\"" + escape(rejected.getKey()) + "\"", rejected.getValue());
+      }
+      writeSample(output, "ilp_filter_packets_total", labels + ",outcome=\"exception\"", metrics.failedCount());
+    }
+
+    output.append("# HELP ilp_filter_latency_seconds Time taken by each filter, and everything after it, to respond.\n");
+    output.append("# TYPE ilp_filter_latency_seconds summary\n");
+    for (FilterMetrics metrics : allFilterMetrics) {
+      writeSummary(output, "ilp_filter_latency_seconds", labels(metrics), metrics.latencyNanos(), NANOS_PER_SECOND);
+    }
+
+    output.append("# HELP ilp_filter_packet_amount Amounts of the prepare packets processed by each filter.\n");
+    output.append("# TYPE ilp_filter_packet_amount summary\n");
+    for (FilterMetrics metrics : allFilterMetrics) {
+      writeSummary(output, "ilp_filter_packet_amount", labels(metrics), metrics.amounts(), 1d);
+    }
+  }
+
+  private FilterMetrics[] metricsFor(final String chain, final Object filter) {
+    final String filterName = filter.getClass().getSimpleName();
+    return metricsByChain
+      .computeIfAbsent(chain, $ -> new ConcurrentHashMap<>())
+      .computeIfAbsent(filterName, $ -> {
+        final AccountRelationship[] accountRelationships = AccountRelationship.values();
+        final FilterMetrics[] metricsByRelationship = new FilterMetrics[accountRelationships.length];
+        for (AccountRelationship accountRelationship : accountRelationships) {
+          metricsByRelationship[accountRelationship.ordinal()] =
+            new FilterMetrics(chain, filterName, accountRelationship);
+        }
+        return metricsByRelationship;
+      });
+  }
+
+  static void writeSummary(
+    final Appendable output, final String name, final String labels, final LogLinearHistogram.Snapshot snapshot,
+    final double divisor
+  ) throws IOException {
+    if (snapshot.count() == 0) {
+      return;
+    }
+    for (double quantile : QUANTILES) {
+      writeSample(output, name, labels + ",quantile=\"" + quantile + "\"",
+        snapshot.valueAtQuantile(quantile) / divisor);
+    }
+    writeSample(output, name + "_sum", labels, snapshot.sum() / divisor);
+    writeSample(output, name + "_count", labels, snapshot.count());
+  }
+
+  static void writeSample(
+    final Appendable output, final String name, final String labels, final Number value
+  ) throws IOException {
+    output.append(name).append('{').append(labels).append("} ").append(String.valueOf(value)).append('\n');
+  }
+
+  private static String labels(final FilterMetrics metrics) {
+    return "chain=\"" + escape(metrics.chain()) + "\",filter=\"" + escape(metrics.filterName())
+      + "\",account_relationship=\"" + metrics.accountRelationship().name() + "\"";
+  }
+
+  private static String escape(final String labelValue) {
+    return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,71 @@
+package org.interledger.connector.metrics;
+
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.links.filters.LinkFilter;
+import org.interledger.connector.links.filters.LinkFilterChain;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link LinkFilter} that records {@link FilterMetrics} for every packet processed by a delegate filter, tagged by
+ * the relationship of the destination account.
+ */
+class InstrumentedLinkFilter implements LinkFilter {
+
+  private final LinkFilter delegate;
+  // Indexed by AccountRelationship#ordinal, so that no lookup is required per packet.
+  private final FilterMetrics[] metricsByRelationship;
+
+  InstrumentedLinkFilter(final LinkFilter delegate, final FilterMetrics[] metricsByRelationship) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.metricsByRelationship = Objects.requireNonNull(metricsByRelationship);
+  }
+
+  @Override
+  public InterledgerResponsePacket doFilter(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket destinationPreparePacket,
+    final LinkFilterChain filterChain
+  ) {
+    final FilterMetrics metrics = metricsByRelationship[destinationAccountSettings.accountRelationship().ordinal()];
+    final long startNanos = System.nanoTime();
+    final InterledgerResponsePacket responsePacket;
+    try {
+      responsePacket = delegate.doFilter(destinationAccountSettings, destinationPreparePacket, filterChain);
+    } catch (RuntimeException e) {
+      metrics.recordFailure(destinationPreparePacket, System.nanoTime() - startNanos);
+      throw e;
+    }
+    metrics.record(destinationPreparePacket, responsePacket, System.nanoTime() - startNanos);
+    return responsePacket;
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings destinationAccountSettings,
+    final InterledgerPreparePacket destinationPreparePacket,
+    final LinkFilterChain filterChain
+  ) {
+    final FilterMetrics metrics = metricsByRelationship[destinationAccountSettings.accountRelationship().ordinal()];
+    final long startNanos = System.nanoTime();
+    final CompletableFuture<InterledgerResponsePacket> responseFuture;
+    try {
+      responseFuture = delegate.doFilterAsync(destinationAccountSettings, destinationPreparePacket, filterChain);
+    } catch (RuntimeException e) {
+      metrics.recordFailure(destinationPreparePacket, System.nanoTime() - startNanos);
+      throw e;
+    }
+    // The delegate's own future is returned (rather than the dependent stage) so that cancellation still reaches it.
+    responseFuture.whenComplete((responsePacket, throwable) -> {
+      if (throwable != null) {
+        metrics.recordFailure(destinationPreparePacket, System.nanoTime() - startNanos);
+      } else {
+        metrics.record(destinationPreparePacket, responsePacket, System.nanoTime() - startNanos);
+      }
+    });
+    return responseFuture;
+  }
+}
@@ -0,0 +1,71 @@
+package org.interledger.connector.metrics;
+
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilterChain;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link PacketSwitchFilter} that records {@link FilterMetrics} for every packet processed by a delegate filter,
+ * tagged by the relationship of the source account.
+ */
+class InstrumentedPacketSwitchFilter implements PacketSwitchFilter {
+
+  private final PacketSwitchFilter delegate;
+  // Indexed by AccountRelationship#ordinal, so that no lookup is required per packet.
+  private final FilterMetrics[] metricsByRelationship;
+
+  InstrumentedPacketSwitchFilter(final PacketSwitchFilter delegate, final FilterMetrics[] metricsByRelationship) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.metricsByRelationship = Objects.requireNonNull(metricsByRelationship);
+  }
+
+  @Override
+  public InterledgerResponsePacket doFilter(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final FilterMetrics metrics = metricsByRelationship[sourceAccountSettings.accountRelationship().ordinal()];
+    final long startNanos = System.nanoTime();
+    final InterledgerResponsePacket responsePacket;
+    try {
+      responsePacket = delegate.doFilter(sourceAccountSettings, sourcePreparePacket, filterChain);
+    } catch (RuntimeException e) {
+      metrics.recordFailure(sourcePreparePacket, System.nanoTime() - startNanos);
+      throw e;
+    }
+    metrics.record(sourcePreparePacket, responsePacket, System.nanoTime() - startNanos);
+    return responsePacket;
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final FilterMetrics metrics = metricsByRelationship[sourceAccountSettings.accountRelationship().ordinal()];
+    final long startNanos = System.nanoTime();
+    final CompletableFuture<InterledgerResponsePacket> responseFuture;
+    try {
+      responseFuture = delegate.doFilterAsync(sourceAccountSettings, sourcePreparePacket, filterChain);
+    } catch (RuntimeException e) {
+      metrics.recordFailure(sourcePreparePacket, System.nanoTime() - startNanos);
+      throw e;
+    }
+    // The delegate's own future is returned (rather than the dependent stage) so that cancellation still reaches it.
+    responseFuture.whenComplete((responsePacket, throwable) -> {
+      if (throwable != null) {
+        metrics.recordFailure(sourcePreparePacket, System.nanoTime() - startNanos);
+      } else {
+        metrics.record(sourcePreparePacket, responsePacket, System.nanoTime() - startNanos);
+      }
+    });
+    return responseFuture;
+  }
+}
@@ -0,0 +1,135 @@
+package org.interledger.connector.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * <p>A fixed-size, lock-free histogram of non-negative {@code long} values (e.g., latencies in nanoseconds or packet
+ * amounts), in the style of an HDR histogram.</p>
+ *
+ * <p>Values are counted into log-linear buckets: every power-of-two range is split into {@link #SUB_BUCKET_COUNT}
+ * equally sized buckets, so any recorded value can be reported to within ~3% of its true value, whatever its
+ * magnitude. Recording a value is a single atomic increment plus an addition to the running sum, and never allocates,
+ * which makes this cheap enough to use on every packet.</p>
+ *
+ * <p>Negative values are interpreted as unsigned (e.g., an ILP amount above {@link Long#MAX_VALUE}), and are counted
+ * into the last bucket.</p>
+ */
+public class LogLinearHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  // Values below SUB_BUCKET_COUNT have a bucket each; every power of two from there up to 2^63 has SUB_BUCKET_COUNT.
+  static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final DoubleAdder sum = new DoubleAdder();
+
+  /**
+   * Record a single occurrence of {@code value}.
+   *
+   * @param value The value to record.
+   */
+  public void record(final long value) {
+    counts.incrementAndGet(bucketIndex(value));
+    sum.add(value >= 0 ? value : Long.MAX_VALUE);
+  }
+
+  /**
+   * Take a point-in-time copy of this histogram. Recording may continue concurrently, so the copy is not guaranteed to
+   * be atomic with respect to in-flight calls to {@link #record(long)}.
+   *
+   * @return A {@link Snapshot}.
+   */
+  public Snapshot snapshot() {
+    final long[] snapshotCounts = new long[BUCKET_COUNT];
+    long totalCount = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshotCounts[i] = counts.get(i);
+      totalCount += snapshotCounts[i];
+    }
+    return new Snapshot(snapshotCounts, totalCount, sum.sum());
+  }
+
+  static int bucketIndex(final long value) {
+    if (value < 0) {
+      return BUCKET_COUNT - 1;
+    } else if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    final int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * The highest value that is counted into the bucket at {@code index}.
+   */
+  static long bucketUpperBound(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    } else if (index == BUCKET_COUNT - 1) {
+      return Long.MAX_VALUE;
+    }
+    final int shift = index / SUB_BUCKET_COUNT - 1;
+    final long lowerBound = ((long) SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+
+  /**
+   * An immutable copy of a {@link LogLinearHistogram}.
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final double sum;
+
+    private Snapshot(final long[] counts, final long count, final double sum) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    /**
+     * The total number of recorded values.
+     */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * The sum of all recorded values.
+     */
+    public double sum() {
+      return sum;
+    }
+
+    /**
+     * Compute the value at a given quantile.
+     *
+     * @param quantile A number between 0 and 1 (e.g., {@code 0.99} for the 99th percentile).
+     *
+     * @return The highest value that is equivalent (to within the histogram's precision) to the value at {@code
+     * quantile}, or {@code 0} if nothing has been recorded.
+     */
+    public long valueAtQuantile(final double quantile) {
+      if (quantile < 0 || quantile > 1) {
+        throw new IllegalArgumentException("quantile must be between 0 and 1");
+      }
+      if (count == 0) {
+        return 0;
+      }
+      final long targetCount = Math.max(1, (long) Math.ceil(quantile * count));
+      long cumulativeCount = 0;
+      for (int i = 0; i < counts.length; i++) {
+        cumulativeCount += counts[i];
+        if (cumulativeCount >= targetCount) {
+          return bucketUpperBound(i);
+        }
+      }
+      return bucketUpperBound(counts.length - 1);
+    }
+  }
+}
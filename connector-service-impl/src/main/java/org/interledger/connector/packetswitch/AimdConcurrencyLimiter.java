@@ -0,0 +1,185 @@
+package org.interledger.connector.packetswitch;
+
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerRejectPacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Limits the number of packets that may be in-flight at once, adapting that limit using an additive-increase,
+ * multiplicative-decrease (AIMD) algorithm.</p>
+ *
+ * <p>Each response that arrives within {@code latencyThreshold} and that does not indicate congestion grows the
+ * limit by one, but only while the limit is actually being used (i.e., while at least half of it is in-flight), so
+ * that an idle account doesn't accrue an arbitrarily large limit. Each response that is too slow, that rejects with
+ * {@link InterledgerErrorCode#T03_CONNECTOR_BUSY} or {@link InterledgerErrorCode#R00_TRANSFER_TIMED_OUT}, or that
+ * fails exceptionally, shrinks the limit by {@code backoffRatio}. This way, the limit converges on whatever
+ * concurrency the downstream can actually sustain, without any per-account tuning.</p>
+ *
+ * <p>A single episode of congestion is typically seen by every packet that was in-flight at the time (e.g., a burst of
+ * timeouts), so the limit is shrunk at most once per round-trip: a congested response only shrinks the limit if its
+ * packet was acquired after the limit was last shrunk.</p>
+ *
+ * <p>This class is thread-safe and lock-free.</p>
+ */
+public class AimdConcurrencyLimiter {
+
+  public static final int DEFAULT_INITIAL_LIMIT = 20;
+  public static final int DEFAULT_MIN_LIMIT = 1;
+  public static final int DEFAULT_MAX_LIMIT = 1_000;
+  public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+  public static final Duration DEFAULT_LATENCY_THRESHOLD = Duration.ofSeconds(2);
+
+  // The value of `lastBackoffNanos` before the limit has ever been shrunk.
+  private static final long NEVER = Long.MIN_VALUE;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final long latencyThresholdNanos;
+
+  private final AtomicInteger limit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final Ticker ticker;
+
+  // The ticker reading at which the limit was last shrunk, or NEVER.
+  private final AtomicLong lastBackoffNanos = new AtomicLong(NEVER);
+
+  /**
+   * No-args Constructor; uses the default limits.
+   */
+  public AimdConcurrencyLimiter() {
+    this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_BACKOFF_RATIO, DEFAULT_LATENCY_THRESHOLD);
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param initialLimit     The number of in-flight packets allowed before any response has been observed.
+   * @param minLimit         The lowest that the limit can shrink to.
+   * @param maxLimit         The highest that the limit can grow to.
+   * @param backoffRatio     The factor, between 0 and 1 (exclusive), to shrink the limit by when congestion is
+   *                         detected.
+   * @param latencyThreshold Responses slower than this are treated as a sign of congestion.
+   */
+  public AimdConcurrencyLimiter(
+    final int initialLimit, final int minLimit, final int maxLimit, final double backoffRatio,
+    final Duration latencyThreshold
+  ) {
+    this(initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  AimdConcurrencyLimiter(
+    final int initialLimit, final int minLimit, final int maxLimit, final double backoffRatio,
+    final Duration latencyThreshold, final Ticker ticker
+  ) {
+    Preconditions.checkArgument(minLimit > 0, "minLimit must be positive");
+    Preconditions.checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+      "initialLimit must be between minLimit and maxLimit");
+    Preconditions.checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+    Preconditions.checkArgument(!latencyThreshold.isNegative() && !latencyThreshold.isZero(),
+      "latencyThreshold must be positive");
+
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.limit = new AtomicInteger(initialLimit);
+    this.ticker = Objects.requireNonNull(ticker);
+  }
+
+  /**
+   * Attempt to reserve a slot for a new in-flight packet. Every successful call must be followed by exactly one call to
+   * {@link #release(long, boolean)}.
+   *
+   * @return {@code true} if the packet may proceed; {@code false} if the limit has been reached and the packet should
+   *   be shed.
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      final int current = inFlight.get();
+      if (current >= limit.get()) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Release a slot reserved by {@link #tryAcquire()}, adjusting the limit using the outcome of the packet.
+   *
+   * @param latencyNanos The time, in nanoseconds, between acquiring the slot and observing the response.
+   * @param congested    {@code true} if the response indicated congestion (see {@link
+   *                     #isCongestionSignal(InterledgerResponsePacket)}), or if no response was received at all.
+   */
+  public void release(final long latencyNanos, final boolean congested) {
+    final int inFlightBeforeRelease = inFlight.getAndDecrement();
+    if (congested || latencyNanos > latencyThresholdNanos) {
+      backoff(latencyNanos);
+    } else if (inFlightBeforeRelease * 2 >= limit.get()) {
+      limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+    }
+  }
+
+  /**
+   * Shrink the limit, unless it has already been shrunk since the packet with the supplied latency was acquired (in
+   * which case the congestion that this packet observed has already been accounted for).
+   */
+  private void backoff(final long latencyNanos) {
+    final long nowNanos = ticker.read();
+    final long lastBackoff = lastBackoffNanos.get();
+    if (lastBackoff != NEVER && (nowNanos - latencyNanos) - lastBackoff < 0) {
+      return;
+    }
+    // If another thread shrinks the limit first, then this packet was acquired before that, too.
+    if (lastBackoffNanos.compareAndSet(lastBackoff, nowNanos)) {
+      limit.updateAndGet(current -> Math.max(minLimit, (int) (current * backoffRatio)));
+    }
+  }
+
+  /**
+   * Determines whether {@code responsePacket} indicates that the downstream is congested.
+   *
+   * @param responsePacket The {@link InterledgerResponsePacket} to inspect.
+   *
+   * @return {@code true} if {@code responsePacket} is a reject that indicates congestion; {@code false} otherwise.
+   */
+  public static boolean isCongestionSignal(final InterledgerResponsePacket responsePacket) {
+    if (responsePacket instanceof InterledgerRejectPacket) {
+      final InterledgerErrorCode errorCode = ((InterledgerRejectPacket) responsePacket).getCode();
+      return InterledgerErrorCode.T03_CONNECTOR_BUSY.equals(errorCode)
+        || InterledgerErrorCode.R00_TRANSFER_TIMED_OUT.equals(errorCode);
+    }
+    return false;
+  }
+
+  /**
+   * Accessor for the current limit.
+   *
+   * @return The number of packets that may currently be in-flight.
+   */
+  public int getLimit() {
+    return limit.get();
+  }
+
+  /**
+   * Accessor for the number of in-flight packets.
+   *
+   * @return The number of packets that have been acquired but not yet released.
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+}
@@ -3,6 +3,8 @@ package org.interledger.connector.packetswitch;
 import com.google.common.annotations.VisibleForTesting;
 import org.interledger.connector.ConnectorExceptionHandler;
 import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountRegistry;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
 import org.interledger.connector.links.LinkManager;
 import org.interledger.connector.links.NextHopPacketMapper;
@@ -17,23 +19,28 @@ import org.interledger.core.InterledgerResponsePacket;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 /**
  * A default implementation of {@link ILPv4PacketSwitch}.
  */
 public class DefaultILPv4PacketSwitch implements ILPv4PacketSwitch {
 
-  private final List<PacketSwitchFilter> packetSwitchFilters;
-  private final List<LinkFilter> linkFilters;
-  private final LinkManager linkManager;
-  private final NextHopPacketMapper nextHopPacketMapper;
+  // Compiled once from the configured PacketSwitchFilters and LinkFilters, and shared by every packet.
+  private final DefaultPacketSwitchFilterChain packetSwitchFilterChain;
   private final ConnectorExceptionHandler connectorExceptionHandler;
   private final PacketRejector packetRejector;
 
   // Loading from the Database is somewhat expensive, so we don't want to do this on every packet processed for a
   // given account. Instead, for higher performance, we only load account settings once per period, and otherwise
-  // rely upon AccountSettings found in this cache.
-  private final AccountSettingsLoadingCache accountSettingsLoadingCache;
+  // rely upon AccountSettings found in this registry, which re-reads them through the AccountSettingsLoadingCache
+  // periodically (see AccountRegistry#resolve).
+  private final AccountRegistry accountRegistry;
+  private final Function<AccountId, Optional<AccountSettings>> accountSettingsLoader;
 
   /**
    * For testing purposes.
@@ -63,13 +70,18 @@ public class DefaultILPv4PacketSwitch implements ILPv4PacketSwitch {
     final PacketRejector packetRejector,
     final AccountSettingsLoadingCache accountSettingsLoadingCache
   ) {
-    this.packetSwitchFilters = Objects.requireNonNull(packetSwitchFilters);
-    this.linkFilters = Objects.requireNonNull(linkFilters);
-    this.linkManager = Objects.requireNonNull(linkManager);
-    this.nextHopPacketMapper = Objects.requireNonNull(nextHopPacketMapper);
     this.connectorExceptionHandler = Objects.requireNonNull(connectorExceptionHandler);
     this.packetRejector = Objects.requireNonNull(packetRejector);
-    this.accountSettingsLoadingCache = Objects.requireNonNull(accountSettingsLoadingCache);
+    Objects.requireNonNull(accountSettingsLoadingCache);
+    this.accountRegistry = Objects.requireNonNull(accountSettingsLoadingCache.getAccountRegistry());
+    this.accountSettingsLoader = accountSettingsLoadingCache::getAccount;
+    this.packetSwitchFilterChain = new DefaultPacketSwitchFilterChain(
+      Objects.requireNonNull(packetSwitchFilters),
+      Objects.requireNonNull(linkFilters),
+      Objects.requireNonNull(linkManager),
+      Objects.requireNonNull(nextHopPacketMapper),
+      accountSettingsLoadingCache // Necessary to load the 'next-hop' account.
+    );
   }
 
   /**
@@ -89,29 +101,78 @@ public class DefaultILPv4PacketSwitch implements ILPv4PacketSwitch {
     Objects.requireNonNull(sourceAccountId);
     Objects.requireNonNull(incomingSourcePreparePacket);
 
-    // The value stored in the Cache is the AccountSettings converted from the entity so we don't have to convert
+    // The value stored in the Registry is the AccountSettings converted from the entity so we don't have to convert
     // on every ILPv4 packet switch.
-    return this.accountSettingsLoadingCache.getAccount(sourceAccountId)
-      .map(accountSettings -> {
-        try {
-          return new DefaultPacketSwitchFilterChain(
-            packetSwitchFilters,
-            linkFilters,
-            linkManager,
-            nextHopPacketMapper,
-            accountSettingsLoadingCache // Necessary to load the 'next-hop' account.
-          ).doFilter(accountSettings, incomingSourcePreparePacket);
+    final AccountRegistry.Entry accountEntry = this.accountRegistry.resolve(sourceAccountId, accountSettingsLoader);
+    if (accountEntry == null) {
+      // REJECT due to no account...
+      throw new InterledgerProtocolException(
+        packetRejector.reject(sourceAccountId, incomingSourcePreparePacket, InterledgerErrorCode.T00_INTERNAL_ERROR,
+          String.format("No Account found: `%s`", sourceAccountId)));
+    }
+
+    try {
+      return packetSwitchFilterChain.doFilter(accountEntry.accountSettings().get(), incomingSourcePreparePacket);
+    } catch (Exception e) {
+      // Any rejections should be caught here, and returned as such....
+      return this.connectorExceptionHandler.handleException(sourceAccountId, incomingSourcePreparePacket, e);
+    }
+  }
 
-        } catch (Exception e) {
-          // Any rejections should be caught here, and returned as such....
-          return this.connectorExceptionHandler.handleException(sourceAccountId, incomingSourcePreparePacket, e);
-        }
-      })
-      .orElseThrow(() -> {
+  /**
+   * Perform the same packet switching logic as {@link #switchPacket(AccountId, InterledgerPreparePacket)}, but using
+   * the asynchronous variants of each filter and link so that no thread is held while the packet is in-flight to the
+   * `next-hop`.
+   *
+   * @param sourceAccountId             An {@link AccountId} for the account that received the {@code
+   *                                    incomingSourcePreparePacket}.
+   * @param incomingSourcePreparePacket The packet received from the inbound/source account.
+   *
+   * @return A {@link CompletableFuture} that resolves to an {@link InterledgerResponsePacket} as received from the
+   * outbound link.
+   */
+  @Override
+  public final CompletableFuture<InterledgerResponsePacket> switchPacketAsync(
+    final AccountId sourceAccountId, final InterledgerPreparePacket incomingSourcePreparePacket
+  ) {
+    Objects.requireNonNull(sourceAccountId);
+    Objects.requireNonNull(incomingSourcePreparePacket);
+
+    final CompletableFuture<InterledgerResponsePacket> responseFuture;
+    try {
+      final AccountRegistry.Entry accountEntry = this.accountRegistry.resolve(sourceAccountId, accountSettingsLoader);
+      if (accountEntry == null) {
         // REJECT due to no account...
-        return new InterledgerProtocolException(
+        responseFuture = new CompletableFuture<>();
+        responseFuture.completeExceptionally(new InterledgerProtocolException(
           packetRejector.reject(sourceAccountId, incomingSourcePreparePacket, InterledgerErrorCode.T00_INTERNAL_ERROR,
-            String.format("No Account found: `%s`", sourceAccountId)));
-      });
+            String.format("No Account found: `%s`", sourceAccountId))));
+        return responseFuture;
+      }
+
+      responseFuture =
+        packetSwitchFilterChain.doFilterAsync(accountEntry.accountSettings().get(), incomingSourcePreparePacket);
+    } catch (Exception e) {
+      return CompletableFuture.completedFuture(
+        this.connectorExceptionHandler.handleException(sourceAccountId, incomingSourcePreparePacket, e)
+      );
+    }
+
+    // Any rejections should be caught here, and returned as such....
+    return responseFuture.exceptionally(throwable -> this.connectorExceptionHandler.handleException(
+      sourceAccountId, incomingSourcePreparePacket, unwrap(throwable)
+    ));
+  }
+
+  /**
+   * Unwrap the cause of a failed {@link CompletableFuture} stage so that it can be mapped by the {@link
+   * ConnectorExceptionHandler} in the same way as a synchronously thrown exception.
+   */
+  private static Exception unwrap(final Throwable throwable) {
+    Throwable cause = throwable;
+    while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
+    return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
   }
 }
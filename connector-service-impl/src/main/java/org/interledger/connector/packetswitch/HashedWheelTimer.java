@@ -0,0 +1,245 @@
+package org.interledger.connector.packetswitch;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A timer, optimized for scheduling large numbers of short-lived timeouts that are nearly always cancelled before
+ * they fire (e.g., the expiry of in-flight ILP packets).</p>
+ *
+ * <p>Timeouts are hashed into a fixed-size ring of buckets (the "wheel") according to their deadline, and a single
+ * worker thread advances through the wheel one bucket per tick, firing every timeout in that bucket whose deadline has
+ * been reached. Scheduling and cancelling a timeout are both O(1), lock-free operations that never block the calling
+ * thread, and a cancelled timeout is discarded the next time the worker visits its bucket.</p>
+ *
+ * <p>Timeouts are never fired early, but may fire up to one tick late. Tasks are run on the worker thread, so they
+ * should be short and must not block.</p>
+ */
+public class HashedWheelTimer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+
+  // Timeouts are handed off to the worker via this queue so that only the worker thread ever touches the wheel.
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+  private final long startNanos;
+  private final Thread workerThread;
+  private volatile boolean running = true;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param tickDuration  The resolution of this timer.
+   * @param ticksPerWheel The number of buckets in the wheel, which is rounded up to a power of two. Timeouts further in
+   *                      the future than one revolution of the wheel are held in a bucket for multiple revolutions.
+   * @param threadFactory The {@link ThreadFactory} used to create the worker thread.
+   */
+  public HashedWheelTimer(final Duration tickDuration, final int ticksPerWheel, final ThreadFactory threadFactory) {
+    Objects.requireNonNull(tickDuration);
+    Objects.requireNonNull(threadFactory);
+    if (tickDuration.isNegative() || tickDuration.isZero()) {
+      throw new IllegalArgumentException("tickDuration must be positive");
+    }
+    if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+      throw new IllegalArgumentException("ticksPerWheel must be between 1 and 2^30");
+    }
+
+    this.tickNanos = tickDuration.toNanos();
+    int wheelSize = 1;
+    while (wheelSize < ticksPerWheel) {
+      wheelSize <<= 1;
+    }
+    this.wheel = new Bucket[wheelSize];
+    for (int i = 0; i < wheelSize; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = wheelSize - 1;
+
+    this.startNanos = System.nanoTime();
+    this.workerThread = threadFactory.newThread(this::run);
+    this.workerThread.start();
+  }
+
+  /**
+   * Schedule {@code task} to be run once {@code delay} has elapsed.
+   *
+   * @param task  The {@link Runnable} to run when the timeout fires.
+   * @param delay The amount of time to wait before firing the timeout.
+   * @param unit  The {@link TimeUnit} of {@code delay}.
+   *
+   * @return A {@link Timeout} that can be used to cancel the task.
+   */
+  public Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+    Objects.requireNonNull(task);
+    Objects.requireNonNull(unit);
+    if (!running) {
+      throw new IllegalStateException("HashedWheelTimer has been closed");
+    }
+
+    final long deadlineNanos = System.nanoTime() - startNanos + Math.max(0, unit.toNanos(delay));
+    final Timeout timeout = new Timeout(task, deadlineNanos);
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(workerThread);
+  }
+
+  @VisibleForTesting
+  int wheelSize() {
+    return wheel.length;
+  }
+
+  private void run() {
+    long tick = 0;
+    while (running) {
+      // Sleep until the end of the current tick.
+      final long tickDeadlineNanos = tickNanos * (tick + 1);
+      long sleepNanos;
+      while (running && (sleepNanos = tickDeadlineNanos - (System.nanoTime() - startNanos)) > 0) {
+        LockSupport.parkNanos(this, sleepNanos);
+      }
+
+      transferPendingTimeouts(tick);
+      wheel[(int) (tick & mask)].expireTimeouts(tickDeadlineNanos);
+      tick++;
+    }
+  }
+
+  private void transferPendingTimeouts(final long currentTick) {
+    Timeout timeout;
+    while ((timeout = pendingTimeouts.poll()) != null) {
+      if (timeout.isCancelled()) {
+        continue;
+      }
+      // Round up, so that a timeout never fires before its deadline.
+      final long deadlineTick = (timeout.deadlineNanos + tickNanos - 1) / tickNanos - 1;
+      // A timeout whose deadline has already passed is placed into the current bucket, so it fires on this tick.
+      final long tick = Math.max(deadlineTick, currentTick);
+      timeout.remainingRounds = (tick - currentTick) / wheel.length;
+      wheel[(int) (tick & mask)].add(timeout);
+    }
+  }
+
+  /**
+   * A handle to a task scheduled via {@link #newTimeout(Runnable, long, TimeUnit)}.
+   */
+  public static final class Timeout {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_CANCELLED = 1;
+    private static final int STATE_EXPIRED = 2;
+
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+      AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final Runnable task;
+    private final long deadlineNanos;
+
+    private volatile int state = STATE_PENDING;
+
+    // Only accessed by the worker thread.
+    private long remainingRounds;
+    private Timeout next;
+    private Timeout prev;
+
+    private Timeout(final Runnable task, final long deadlineNanos) {
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Cancel this timeout, so that its task will never run.
+     *
+     * @return {@code true} if this call cancelled the timeout; {@code false} if it had already fired or been cancelled.
+     */
+    public boolean cancel() {
+      return STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_CANCELLED);
+    }
+
+    private boolean expire() {
+      return STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_EXPIRED);
+    }
+
+    public boolean isCancelled() {
+      return state == STATE_CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state == STATE_EXPIRED;
+    }
+  }
+
+  /**
+   * A doubly-linked list of {@link Timeout}s; only accessed by the worker thread.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+    private Timeout tail;
+
+    private void add(final Timeout timeout) {
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    private void expireTimeouts(final long tickDeadlineNanos) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        final Timeout next = timeout.next;
+        if (timeout.isCancelled()) {
+          remove(timeout);
+        } else if (timeout.remainingRounds <= 0 && timeout.deadlineNanos <= tickDeadlineNanos) {
+          remove(timeout);
+          if (timeout.expire()) {
+            try {
+              timeout.task.run();
+            } catch (Throwable t) {
+              LOGGER.warn("Timeout task threw an exception: " + t.getMessage(), t);
+            }
+          }
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    private void remove(final Timeout timeout) {
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      } else {
+        head = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      } else {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+    }
+  }
+}
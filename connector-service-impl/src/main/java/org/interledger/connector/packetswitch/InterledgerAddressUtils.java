@@ -1,10 +1,11 @@
 package org.interledger.connector.packetswitch;
 
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
 import org.interledger.connector.settings.ConnectorSettings;
 import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.core.InterledgerAddressPrefix;
-import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
 
 import java.util.Objects;
 import java.util.function.Supplier;
@@ -21,13 +22,17 @@ public class InterledgerAddressUtils {
   private static final boolean NOT_ALLOWED = false;
 
   private final Supplier<ConnectorSettings> connectorSettingsSupplier;
-  private final AccountSettingsRepository accountSettingsRepository;
+
+  // Whether an account is internal is answered from cached settings, because it is needed for every `peer.`, `private.`
+  // and `self.` packet (e.g., every CCP route update and `peer.settle` message).
+  private final AccountSettingsLoadingCache accountSettingsLoadingCache;
 
   public InterledgerAddressUtils(
-    final Supplier<ConnectorSettings> connectorSettingsSupplier, final AccountSettingsRepository accountSettingsRepository
+    final Supplier<ConnectorSettings> connectorSettingsSupplier,
+    final AccountSettingsLoadingCache accountSettingsLoadingCache
   ) {
     this.connectorSettingsSupplier = Objects.requireNonNull(connectorSettingsSupplier);
-    this.accountSettingsRepository = Objects.requireNonNull(accountSettingsRepository);
+    this.accountSettingsLoadingCache = Objects.requireNonNull(accountSettingsLoadingCache);
   }
 
   /**
@@ -74,28 +79,76 @@ public class InterledgerAddressUtils {
   public boolean isDestinationAllowedFromAccount(
     final AccountId sourceAccountId, final InterledgerAddress destinationAddress
   ) {
+    Objects.requireNonNull(sourceAccountId);
+    switch (getDestinationPolicy(destinationAddress)) {
+      case ANY_ACCOUNT:
+        return ALLOWED;
+      case INTERNAL_ACCOUNTS_ONLY:
+        return accountSettingsLoadingCache.getAccount(sourceAccountId)
+          .map(AccountSettings::isInternal)
+          .orElse(NOT_ALLOWED);
+      case EXTERNAL_ACCOUNTS_ONLY:
+        return accountSettingsLoadingCache.getAccount(sourceAccountId)
+          .map(accountSettings -> !accountSettings.isInternal())
+          .orElse(NOT_ALLOWED);
+      default:
+        return NOT_ALLOWED;
+    }
+  }
+
+  /**
+   * Determines if an incoming packet is allowed into the Packet Switch from the specified account, when the packet is
+   * destined to be sent to the indicated {@code destinationAddress}. Prefer this variant when the settings of the
+   * source account are already at hand, because it does not need to look them up.
+   *
+   * @param sourceAccountSettings The {@link AccountSettings} of the account that sent the packet.
+   * @param destinationAddress    The {@link InterledgerAddress} of the packet's destination.
+   *
+   * @return {@code true} if the specified account is allowed to send packets to this switch using the specified
+   * destination; {@code false} otherwise.
+   */
+  public boolean isDestinationAllowedFromAccount(
+    final AccountSettings sourceAccountSettings, final InterledgerAddress destinationAddress
+  ) {
+    Objects.requireNonNull(sourceAccountSettings);
+    switch (getDestinationPolicy(destinationAddress)) {
+      case ANY_ACCOUNT:
+        return ALLOWED;
+      case INTERNAL_ACCOUNTS_ONLY:
+        return sourceAccountSettings.isInternal();
+      case EXTERNAL_ACCOUNTS_ONLY:
+        return !sourceAccountSettings.isInternal();
+      default:
+        return NOT_ALLOWED;
+    }
+  }
+
+  /**
+   * Determine which accounts may send packets to {@code destinationAddress}.
+   */
+  private DestinationPolicy getDestinationPolicy(final InterledgerAddress destinationAddress) {
     if (isPaymentNetworkAddress(destinationAddress)) {
-      return ALLOWED;
+      return DestinationPolicy.ANY_ACCOUNT;
     } else if (
       connectorSettingsSupplier.get().operatorAddress().isPresent() &&
         destinationAddress.startsWith(connectorSettingsSupplier.get().operatorAddressSafe())
     ) {
-      return ALLOWED; // Ping allowed.
+      return DestinationPolicy.ANY_ACCOUNT; // Ping allowed.
     } else if (destinationAddress.startsWith(InterledgerAddressPrefix.PRIVATE.getValue())) {
       // Only internal accounts can send to a `private` address prefix.
-      return accountSettingsRepository.isInternal(sourceAccountId).orElse(NOT_ALLOWED);
+      return DestinationPolicy.INTERNAL_ACCOUNTS_ONLY;
     } else if (destinationAddress.startsWith(InterledgerAddressPrefix.PEER.getValue())) {
       // Only external accounts can send to a `peer.` address prefix.
-      return accountSettingsRepository.isNotInternal(sourceAccountId).orElse(NOT_ALLOWED);
+      return DestinationPolicy.EXTERNAL_ACCOUNTS_ONLY;
     } else if (destinationAddress.startsWith(InterledgerAddressPrefix.SELF.getValue())) {
       // Only internal accounts can send to a `self.` address prefix.
-      return accountSettingsRepository.isInternal(sourceAccountId).orElse(NOT_ALLOWED);
+      return DestinationPolicy.INTERNAL_ACCOUNTS_ONLY;
     } //else if (destinationAddress.startsWith(InterledgerAddressPrefix.LOCAL.getValue())) {
     //  REJECT: For now, this isn't supported.
     //}
     else {
       // `example` or any other address-prefixes: Not accepted
-      return NOT_ALLOWED;
+      return DestinationPolicy.NO_ACCOUNT;
     }
   }
 
@@ -119,4 +172,11 @@ public class InterledgerAddressUtils {
         destinationAddress.getAllocationScheme().equals(InterledgerAddress.AllocationScheme.TEST3);
   }
 
+  private enum DestinationPolicy {
+    ANY_ACCOUNT,
+    INTERNAL_ACCOUNTS_ONLY,
+    EXTERNAL_ACCOUNTS_ONLY,
+    NO_ACCOUNT
+  }
+
 }
@@ -0,0 +1,147 @@
+package org.interledger.connector.packetswitch;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A lock-free counter that limits the sum of the values added to it during any sliding window of time.</p>
+ *
+ * <p>The window is divided into a fixed number of slices. Rather than keeping a separate sum per slice (which would
+ * need to be reset, racing with concurrent additions), this counter keeps a single running {@code total} of every value
+ * ever added, and records the running total at the start of each slice. The amount added during the window is then
+ * the current total less the smallest recorded total that still falls within the window. Additions are made with a
+ * compare-and-set against the running total, so the limit is never exceeded, even under contention.</p>
+ *
+ * <p>Because the window slides one slice at a time, values are counted for between {@code (slices - 1) / slices} and
+ * all of the window's duration. Threads do not wait for each other at a slice boundary, so a value added by a thread
+ * that is still in the previous slice may also be counted against the new one (i.e., for slightly longer than the
+ * window). The counter only ever errs in this direction: it may briefly reject a value that would have fit, but it
+ * never admits more than {@code limit} in a window.</p>
+ */
+public class SlidingWindowCounter {
+
+  public static final int DEFAULT_SLICES = 10;
+
+  private final long limit;
+  private final long sliceNanos;
+  private final int slices;
+  private final Ticker ticker;
+
+  // The sum of every value ever added (modulo 2^64; only differences are ever used).
+  private final AtomicLong total = new AtomicLong();
+  // Ring of the running total at the start of each recent slice, indexed by slice number modulo `slices`.
+  private final AtomicReferenceArray<SliceStart> sliceStarts;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param limit  The maximum sum of values that may be added during any {@code window}.
+   * @param window The duration of the sliding window.
+   */
+  public SlidingWindowCounter(final long limit, final Duration window) {
+    this(limit, window, DEFAULT_SLICES, Ticker.systemTicker());
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param limit  The maximum sum of values that may be added during any {@code window}.
+   * @param window The duration of the sliding window.
+   * @param slices The number of slices to divide {@code window} into.
+   * @param ticker A {@link Ticker} to read the current time from.
+   */
+  public SlidingWindowCounter(final long limit, final Duration window, final int slices, final Ticker ticker) {
+    Preconditions.checkArgument(limit >= 0, "limit must not be negative");
+    Preconditions.checkArgument(slices > 0, "slices must be positive");
+    Preconditions.checkArgument(window.toNanos() >= slices, "window must be at least one nanosecond per slice");
+    this.limit = limit;
+    this.sliceNanos = window.toNanos() / slices;
+    this.slices = slices;
+    this.ticker = Objects.requireNonNull(ticker);
+    this.sliceStarts = new AtomicReferenceArray<>(slices);
+  }
+
+  /**
+   * Add {@code value} to this counter, unless doing so would exceed the limit for the current window.
+   *
+   * @param value The non-negative value to add.
+   *
+   * @return {@code true} if {@code value} was added; {@code false} if it would have exceeded the limit.
+   */
+  public boolean tryAdd(final long value) {
+    Preconditions.checkArgument(value >= 0, "value must not be negative");
+
+    final long slice = Math.floorDiv(ticker.read(), sliceNanos);
+    recordSliceStart(slice);
+    final long windowStartTotal = oldestTotalInWindow(slice);
+
+    while (true) {
+      final long currentTotal = total.get();
+      final long used = currentTotal - windowStartTotal;
+      if (value > limit - used) {
+        return false;
+      }
+      if (total.compareAndSet(currentTotal, currentTotal + value)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Accessor for the limit of this counter.
+   *
+   * @return The maximum sum of values that may be added during any window.
+   */
+  public long getLimit() {
+    return limit;
+  }
+
+  /**
+   * Record the running total at the start of {@code slice}, unless another thread already has.
+   */
+  private void recordSliceStart(final long slice) {
+    final int index = (int) Math.floorMod(slice, (long) slices);
+    final SliceStart existing = sliceStarts.get(index);
+    // A thread that read the ticker a while ago may arrive with an older slice than the one already recorded at this
+    // index; it must not replace the newer record, or the additions made during that slice would be forgotten.
+    if (existing == null || existing.slice < slice) {
+      // The total is read before this thread (or any other thread that finds this record) adds anything during
+      // `slice`, so the recorded total is never larger than the true total at the start of `slice`. It may be smaller,
+      // if a thread still in the previous slice adds in the meantime, which only over-counts.
+      sliceStarts.compareAndSet(index, existing, new SliceStart(slice, total.get()));
+    }
+  }
+
+  /**
+   * Totals only ever increase, so the start of the window holds the smallest total of any slice inside the window. The
+   * smallest total is used, rather than that of the oldest slice, because a thread that read the ticker a while ago can
+   * record an older slice (one that saw no additions) with a newer total. A slice that has no record saw no additions,
+   * so skipping it does not change the result.
+   */
+  private long oldestTotalInWindow(final long currentSlice) {
+    long oldestTotal = total.get();
+    for (int i = 0; i < slices; i++) {
+      final SliceStart sliceStart = sliceStarts.get(i);
+      if (sliceStart != null && currentSlice - sliceStart.slice < slices && sliceStart.total - oldestTotal < 0) {
+        oldestTotal = sliceStart.total;
+      }
+    }
+    return oldestTotal;
+  }
+
+  private static final class SliceStart {
+
+    private final long slice;
+    private final long total;
+
+    private SliceStart(final long slice, final long total) {
+      this.slice = slice;
+      this.total = total;
+    }
+  }
+}
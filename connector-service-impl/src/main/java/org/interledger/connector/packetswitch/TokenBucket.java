@@ -0,0 +1,87 @@
+package org.interledger.connector.packetswitch;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A lock-free token-bucket that issues up to {@code permitsPerSecond} permits per second, and that can accumulate
+ * up to one second's worth of unused permits in order to absorb bursts.</p>
+ *
+ * <p>Rather than storing a count of tokens and a refill timestamp (which would need to be updated together, requiring
+ * a lock), the entire state of the bucket is a single {@code long}: the time at which the bucket will next be empty
+ * (sometimes called the "theoretical arrival time" of the generic cell rate algorithm). Acquiring a permit advances
+ * that time by one emission interval using a compare-and-set, and is refused if doing so would move it more than one
+ * second into the future. As a result, many threads can draw from the same bucket without ever blocking each other,
+ * and each bucket occupies only a few primitive fields.</p>
+ */
+public class TokenBucket {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final int permitsPerSecond;
+  private final long emissionIntervalNanos;
+  private final long capacityNanos;
+  private final Ticker ticker;
+
+  // The time, according to `ticker`, at which every permit issued so far will have been paid for.
+  private final AtomicLong emptyAtNanos;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param permitsPerSecond The number of permits to issue per second.
+   */
+  public TokenBucket(final int permitsPerSecond) {
+    this(permitsPerSecond, Ticker.systemTicker());
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param permitsPerSecond The number of permits to issue per second.
+   * @param ticker           A {@link Ticker} to read the current time from.
+   */
+  public TokenBucket(final int permitsPerSecond, final Ticker ticker) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "permitsPerSecond must be positive");
+    this.permitsPerSecond = permitsPerSecond;
+    this.emissionIntervalNanos = NANOS_PER_SECOND / permitsPerSecond;
+    this.capacityNanos = emissionIntervalNanos * permitsPerSecond;
+    this.ticker = Objects.requireNonNull(ticker);
+    // Start full, so that a new bucket can absorb an initial burst.
+    this.emptyAtNanos = new AtomicLong(ticker.read());
+  }
+
+  /**
+   * Acquire a single permit from this bucket if one is available, without waiting.
+   *
+   * @return {@code true} if the permit was acquired; {@code false} otherwise.
+   */
+  public boolean tryAcquire() {
+    final long nowNanos = ticker.read();
+    while (true) {
+      final long emptyAt = emptyAtNanos.get();
+      // If the bucket has been idle, it is full; never credit more than its capacity. Times are compared by their
+      // difference, rather than with Math.max, because Ticker readings may overflow.
+      final long newEmptyAt = (emptyAt - nowNanos < 0 ? nowNanos : emptyAt) + emissionIntervalNanos;
+      if (newEmptyAt - nowNanos > capacityNanos) {
+        return false;
+      }
+      if (emptyAtNanos.compareAndSet(emptyAt, newEmptyAt)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Accessor for the rate of this bucket.
+   *
+   * @return The number of permits issued per second.
+   */
+  public int getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+}
@@ -8,6 +8,7 @@ import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -36,9 +37,7 @@ public class AllowedDestinationPacketFilter extends AbstractPacketFilter impleme
     // Before packet-forwarding is engaged, this code ensures the incoming account/packet information is eligible
     // to be packet-switched, considering the destination address as well as characteristics of the source account.
     if (
-      !addressUtils.isDestinationAllowedFromAccount(
-        sourceAccountSettings.accountId(), sourcePreparePacket.getDestination()
-      )
+      !addressUtils.isDestinationAllowedFromAccount(sourceAccountSettings, sourcePreparePacket.getDestination())
     ) {
       logger.error(
         "AccountId `{}` is not allowed to send to destination address `{}`",
@@ -53,4 +52,20 @@ public class AllowedDestinationPacketFilter extends AbstractPacketFilter impleme
       return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
     }
   }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    if (
+      !addressUtils.isDestinationAllowedFromAccount(sourceAccountSettings, sourcePreparePacket.getDestination())
+    ) {
+      // Only the rejection is computed synchronously; there is nothing to wait on.
+      return CompletableFuture.completedFuture(doFilter(sourceAccountSettings, sourcePreparePacket, filterChain));
+    } else {
+      return filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    }
+  }
 }
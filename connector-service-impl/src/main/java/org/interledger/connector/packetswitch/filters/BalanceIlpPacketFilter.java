@@ -2,13 +2,19 @@ package org.interledger.connector.packetswitch.filters;
 
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.BalanceTrackerBusyException;
 import org.interledger.connector.balances.BalanceTrackerException;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.connector.packetswitch.PacketRejector;
 import org.interledger.core.InterledgerErrorCode;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An implementation of {@link PacketSwitchFilter} for handling balance updates for a given ILP request/response flow.
@@ -30,7 +36,147 @@ public class BalanceIlpPacketFilter extends AbstractPacketFilter implements Pack
     final InterledgerPreparePacket sourcePreparePacket,
     final PacketSwitchFilterChain filterChain
   ) {
+    final Optional<InterledgerResponsePacket> prepareRejection =
+      updateBalanceForPrepare(sourceAccountSettings, sourcePreparePacket);
+    if (prepareRejection.isPresent()) {
+      return prepareRejection.get();
+    }
+
+    return handleResponse(
+      sourceAccountSettings, sourcePreparePacket, filterChain.doFilter(sourceAccountSettings, sourcePreparePacket)
+    );
+  }
+
+  /**
+   * <p>Applies the balance updates of this filter using the asynchronous updates of the {@link BalanceTracker}, so that
+   * no thread waits for the balance tracker while the packet is in flight.</p>
+   *
+   * <p>A packet that is cancelled (e.g., because it expired) is rejected upstream, so the sender is reversed once its
+   * prepare has been applied. The returned future is the one that is cancelled (see ExpiryPacketFilter), but the
+   * downstream future may also be cancelled on its own, so the sender is reversed at most once for either.</p>
+   */
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final CompletableFuture<InterledgerResponsePacket> responseFuture = new CompletableFuture<>();
+    final AtomicBoolean reversed = new AtomicBoolean();
+
+    final CompletableFuture<Void> prepareFuture = this.balanceTracker.updateBalanceForPrepareAsync(
+      sourceAccountSettings.accountId(), sourcePreparePacket.getAmount().longValue(),
+      sourceAccountSettings.balanceSettings().minBalance()
+    );
+    responseFuture.whenComplete(($, throwable) -> {
+      if (responseFuture.isCancelled()) {
+        // Only reverse a prepare that was applied.
+        prepareFuture.thenRun(() -> reverseCancelled(sourceAccountSettings, sourcePreparePacket, reversed));
+      }
+    });
+
+    prepareFuture.whenComplete(($, prepareError) -> {
+      if (prepareError != null) {
+        final Throwable cause = prepareError instanceof CompletionException && prepareError.getCause() != null ?
+          prepareError.getCause() : prepareError;
+        if (!(cause instanceof BalanceTrackerException)) {
+          responseFuture.completeExceptionally(cause);
+          return;
+        }
+        // The prepare balance update was not applied, so simply log the exception and reject.
+        responseFuture.complete(
+          rejectPrepare(sourceAccountSettings, sourcePreparePacket, (BalanceTrackerException) cause)
+        );
+        return;
+      }
+      if (responseFuture.isDone()) {
+        // Cancelled before the packet was sent, and reversed above.
+        return;
+      }
+
+      final CompletableFuture<InterledgerResponsePacket> downstreamFuture =
+        filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+      CompletableFutures.propagateCancellation(downstreamFuture, responseFuture);
+      downstreamFuture.whenComplete((responsePacket, throwable) -> {
+        if (throwable != null) {
+          if (downstreamFuture.isCancelled()) {
+            reverseCancelled(sourceAccountSettings, sourcePreparePacket, reversed);
+          }
+          responseFuture.completeExceptionally(throwable);
+          return;
+        }
+        handleResponseAsync(sourceAccountSettings, sourcePreparePacket, responsePacket).whenComplete(
+          (response, error) -> {
+            if (error != null) {
+              responseFuture.completeExceptionally(error);
+            } else {
+              responseFuture.complete(response);
+            }
+          });
+      });
+    });
+
+    return responseFuture;
+  }
+
+  /**
+   * Reverse the sender of a packet that was cancelled, unless it has already been reversed.
+   */
+  private void reverseCancelled(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final AtomicBoolean reversed
+  ) {
+    if (!reversed.compareAndSet(false, true)) {
+      return;
+    }
+    balanceTracker.updateBalanceForRejectAsync(
+      sourceAccountSettings.accountId(), sourcePreparePacket.getAmount().longValue()
+    ).whenComplete(($, error) -> {
+      if (error != null) {
+        logger.error("RECONCILIATION REQUIRED: Unable to reverse balance update in Redis. " +
+          "PreparePacket: {} (cancelled)", sourcePreparePacket
+        );
+      }
+    });
+  }
+
+  /**
+   * Reverse the sender if {@code responsePacket} is a reject, as in {@link #handleResponse}, without waiting for the
+   * balance tracker.
+   */
+  private CompletableFuture<InterledgerResponsePacket> handleResponseAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final InterledgerResponsePacket responsePacket
+  ) {
+    return responsePacket.<CompletableFuture<InterledgerResponsePacket>>map(
+      // If a packet is fulfilled, then the Receiver's balance is adjusted in the outgoing LinkFilter.
+      CompletableFuture::completedFuture,
+      (interledgerRejectPacket) -> balanceTracker.updateBalanceForRejectAsync(
+        sourceAccountSettings.accountId(), sourcePreparePacket.getAmount().longValue()
+      ).handle(($, error) -> {
+        if (error != null) {
+          logger.error("RECONCILIATION REQUIRED: Unable to reverse balance update in Redis. " +
+            "PreparePacket: {} RejectPacket: {}", sourcePreparePacket, interledgerRejectPacket
+          );
+          throw error instanceof CompletionException ?
+            (CompletionException) error : new CompletionException(error);
+        }
+        return interledgerRejectPacket;
+      })
+    );
+  }
 
+  /**
+   * Preemptively decrease the source account balance.
+   *
+   * @return A reject packet if the balance update could not be applied, or {@link Optional#empty()} if the packet may
+   * continue to be processed.
+   */
+  private Optional<InterledgerResponsePacket> updateBalanceForPrepare(
+    final AccountSettings sourceAccountSettings, final InterledgerPreparePacket sourcePreparePacket
+  ) {
     try {
       // Preemptively decrease the account balance....
       this.balanceTracker.updateBalanceForPrepare(
@@ -45,13 +191,40 @@ public class BalanceIlpPacketFilter extends AbstractPacketFilter implements Pack
     } catch (BalanceTrackerException e) {
       // If there's an error, it means the prepare balance update was not applied, so simply log the exception and
       // reject.
-      logger.error(e.getMessage(), e);
+      return Optional.of(rejectPrepare(sourceAccountSettings, sourcePreparePacket, e));
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * Reject a packet whose prepare balance update was not applied. A balance tracker that is too busy to accept the
+   * update rejects with {@link InterledgerErrorCode#T03_CONNECTOR_BUSY}, so that the sender retries later; any other
+   * failure rejects with {@link InterledgerErrorCode#T04_INSUFFICIENT_LIQUIDITY}.
+   */
+  private InterledgerResponsePacket rejectPrepare(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final BalanceTrackerException e
+  ) {
+    if (e instanceof BalanceTrackerBusyException) {
+      logger.warn(e.getMessage());
       return packetRejector.reject(
-        sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.T04_INSUFFICIENT_LIQUIDITY, ""
+        sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.T03_CONNECTOR_BUSY, ""
       );
     }
+    logger.error(e.getMessage(), e);
+    return packetRejector.reject(
+      sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.T04_INSUFFICIENT_LIQUIDITY, ""
+    );
+  }
 
-    return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket).map(
+  private InterledgerResponsePacket handleResponse(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final InterledgerResponsePacket responsePacket
+  ) {
+    return responsePacket.map(
       //////////////////////
       // If FulfillPacket...
       //////////////////////
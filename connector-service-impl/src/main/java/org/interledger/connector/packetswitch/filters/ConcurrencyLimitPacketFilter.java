@@ -0,0 +1,121 @@
+package org.interledger.connector.packetswitch.filters;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.packetswitch.AimdConcurrencyLimiter;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>An implementation of {@link PacketSwitchFilter} that sheds load by limiting the number of packets each source
+ * account may have in-flight at once.</p>
+ *
+ * <p>Unlike {@link RateLimitIlpPacketFilter}, which allows a fixed number of packets per second, the limit for each
+ * account is adjusted from observed response latency by an {@link AimdConcurrencyLimiter}. When a downstream slows
+ * down and packets begin to pile up, the limit shrinks and excess packets are rejected immediately with {@link
+ * InterledgerErrorCode#T03_CONNECTOR_BUSY}, rather than tying up threads (and balance-tracker round-trips) waiting.</p>
+ *
+ * <p>Limiters are held in a {@link Cache} that expires after 30 seconds of inactivity, so that accounts that do not
+ * send data to this Connector instance will not have an active limiter in memory.</p>
+ */
+public class ConcurrencyLimitPacketFilter extends AbstractPacketFilter implements PacketSwitchFilter {
+
+  private final Supplier<AimdConcurrencyLimiter> limiterSupplier;
+
+  // Account-based concurrency-limiters.
+  private final Cache<AccountId, AimdConcurrencyLimiter> limiters;
+
+  /**
+   * Required-args Constructor; uses the default limits.
+   */
+  public ConcurrencyLimitPacketFilter(final PacketRejector packetRejector) {
+    this(packetRejector, AimdConcurrencyLimiter::new);
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param packetRejector  A {@link PacketRejector}.
+   * @param limiterSupplier Supplies a new {@link AimdConcurrencyLimiter} the first time each account sends a packet.
+   */
+  public ConcurrencyLimitPacketFilter(
+    final PacketRejector packetRejector, final Supplier<AimdConcurrencyLimiter> limiterSupplier
+  ) {
+    super(packetRejector);
+    this.limiterSupplier = Objects.requireNonNull(limiterSupplier);
+    this.limiters = Caffeine.newBuilder()
+      .expireAfterAccess(30, TimeUnit.SECONDS)
+      .build();
+  }
+
+  @Override
+  public InterledgerResponsePacket doFilter(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final AimdConcurrencyLimiter limiter = getLimiter(sourceAccountSettings);
+    if (!limiter.tryAcquire()) {
+      return rejectBusy(sourceAccountSettings, sourcePreparePacket);
+    }
+
+    final long startNanos = System.nanoTime();
+    boolean congested = true;
+    try {
+      final InterledgerResponsePacket responsePacket = filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+      congested = AimdConcurrencyLimiter.isCongestionSignal(responsePacket);
+      return responsePacket;
+    } finally {
+      limiter.release(System.nanoTime() - startNanos, congested);
+    }
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final AimdConcurrencyLimiter limiter = getLimiter(sourceAccountSettings);
+    if (!limiter.tryAcquire()) {
+      return CompletableFuture.completedFuture(rejectBusy(sourceAccountSettings, sourcePreparePacket));
+    }
+
+    final long startNanos = System.nanoTime();
+    final CompletableFuture<InterledgerResponsePacket> responseFuture;
+    try {
+      responseFuture = filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    } catch (RuntimeException e) {
+      limiter.release(System.nanoTime() - startNanos, true);
+      throw e;
+    }
+    // The downstream future is returned (rather than the dependent stage) so that cancellation still reaches it.
+    responseFuture.whenComplete((responsePacket, throwable) -> limiter.release(
+      System.nanoTime() - startNanos, throwable != null || AimdConcurrencyLimiter.isCongestionSignal(responsePacket)
+    ));
+    return responseFuture;
+  }
+
+  private AimdConcurrencyLimiter getLimiter(final AccountSettings sourceAccountSettings) {
+    return limiters.get(sourceAccountSettings.accountId(), $ -> limiterSupplier.get());
+  }
+
+  private InterledgerResponsePacket rejectBusy(
+    final AccountSettings sourceAccountSettings, final InterledgerPreparePacket sourcePreparePacket
+  ) {
+    return packetRejector.reject(
+      sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.T03_CONNECTOR_BUSY,
+      "Concurrency limit exceeded"
+    );
+  }
+}
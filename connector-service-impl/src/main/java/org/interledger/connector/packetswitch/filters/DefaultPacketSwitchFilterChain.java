@@ -1,8 +1,10 @@
 package org.interledger.connector.packetswitch.filters;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountNotFoundProblem;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountRegistry;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
 import org.interledger.connector.link.Link;
 import org.interledger.connector.link.LinkSettings;
@@ -20,16 +22,23 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
- * A default implementation of {@link PacketSwitchFilterChain}.
+ * <p>A default implementation of {@link PacketSwitchFilterChain}.</p>
+ *
+ * <p>The supplied list of {@link PacketSwitchFilter} is compiled once, at construction time, into an immutable
+ * linked list of chain-links, each of which holds a single filter and a reference to the next link in the chain. The
+ * final link in the chain routes the packet and forwards it to the outbound {@link DefaultLinkFilterChain} of the
+ * `next-hop` account. Because no state is tracked per-invocation, a single instance of this class is safe to share
+ * across threads, and switching a packet does not allocate any chain objects.</p>
  */
 public class DefaultPacketSwitchFilterChain implements PacketSwitchFilterChain {
 
   protected final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-  private final List<PacketSwitchFilter> packetSwitchFilters;
-
   // The outbound filter-chain that will be applied to the outgoing packet...
   private final List<LinkFilter> linkFilters;
 
@@ -42,8 +51,16 @@ public class DefaultPacketSwitchFilterChain implements PacketSwitchFilterChain {
   // rely upon AccountSettings found in this cache.
   private final AccountSettingsLoadingCache accountSettingsLoadingCache;
 
-  // The index of the filter to call next...
-  private int _filterIndex;
+  // Holds the settings and the compiled LinkFilterChain of each `next-hop` account, so that a single lookup resolves
+  // both. A LinkFilterChain is evicted when its link disconnects, and a new one is compiled for the next packet.
+  private final AccountRegistry accountRegistry;
+
+  // Reads settings through the cache when the registry has none, or when they are due to be re-checked. Held in a
+  // field so that the method reference is not re-created for every packet.
+  private final Function<AccountId, Optional<AccountSettings>> accountSettingsLoader;
+
+  // The first element of the compiled chain. If no filters are configured, this is the packet-sending step.
+  private final PacketSwitchFilterChain head;
 
   /**
    * For testing purposes only.
@@ -73,12 +90,20 @@ public class DefaultPacketSwitchFilterChain implements PacketSwitchFilterChain {
     final NextHopPacketMapper nextHopPacketMapper,
     final AccountSettingsLoadingCache accountSettingsLoadingCache
   ) {
-    this.packetSwitchFilters = Objects.requireNonNull(packetSwitchFilters);
+    Objects.requireNonNull(packetSwitchFilters);
     this.linkFilters = Objects.requireNonNull(linkFilters);
     this.linkManager = Objects.requireNonNull(linkManager);
     this.nextHopPacketMapper = nextHopPacketMapper;
-    this._filterIndex = 0;
     this.accountSettingsLoadingCache = Objects.requireNonNull(accountSettingsLoadingCache);
+    this.accountRegistry = Objects.requireNonNull(accountSettingsLoadingCache.getAccountRegistry());
+    this.accountSettingsLoader = accountSettingsLoadingCache::getAccount;
+
+    // Compile the chain back-to-front so that each filter holds a reference to its successor.
+    PacketSwitchFilterChain next = new SendPacketStep();
+    for (int i = packetSwitchFilters.size() - 1; i >= 0; i--) {
+      next = new FilterChainLink(packetSwitchFilters.get(i), next);
+    }
+    this.head = next;
   }
 
   @Override
@@ -88,40 +113,121 @@ public class DefaultPacketSwitchFilterChain implements PacketSwitchFilterChain {
     Objects.requireNonNull(sourceAccountSettings);
     Objects.requireNonNull(preparePacket);
 
-    if (this._filterIndex < this.packetSwitchFilters.size()) {
-      // Apply all PacketSwitch filters...
-      return packetSwitchFilters.get(_filterIndex++).doFilter(sourceAccountSettings, preparePacket, this);
-    } else {
-      // ...and then send the new packet to its destination on the correct outbound link.
-      logger.debug(
-        "Sending outbound ILP Prepare: sourceAccountId: `{}` packet={}",
-        sourceAccountSettings.accountId(), preparePacket
-      );
+    return head.doFilter(sourceAccountSettings, preparePacket);
+  }
 
-      // Here, use the link-mapper to get the `next-hop`, create a LinkFilterChain, and then send.
-      final NextHopInfo nextHopInfo = this.nextHopPacketMapper.getNextHopPacket(
-        sourceAccountSettings, preparePacket
-      );
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings, final InterledgerPreparePacket preparePacket
+  ) {
+    Objects.requireNonNull(sourceAccountSettings);
+    Objects.requireNonNull(preparePacket);
+
+    return head.doFilterAsync(sourceAccountSettings, preparePacket);
+  }
+
+  /**
+   * The final step in the chain, which determines the `next-hop` for a packet and then sends the new packet to its
+   * destination via the {@link DefaultLinkFilterChain} for the correct outbound link.
+   */
+  private final class SendPacketStep implements PacketSwitchFilterChain {
+
+    @Override
+    public InterledgerResponsePacket doFilter(
+      final AccountSettings sourceAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      final NextHopInfo nextHopInfo = nextHopPacketMapper.getNextHopPacket(sourceAccountSettings, preparePacket);
+      final AccountRegistry.Entry nextHopEntry = getNextHopEntry(nextHopInfo);
+
+      // The final operation in the filter-chain is `link.sendPacket(newPreparePacket)`.
+      return getLinkFilterChain(sourceAccountSettings, nextHopInfo, nextHopEntry)
+        .doFilter(nextHopEntry.accountSettings().get(), nextHopInfo.nextHopPacket());
+    }
 
+    @Override
+    public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+      final AccountSettings sourceAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      final NextHopInfo nextHopInfo = nextHopPacketMapper.getNextHopPacket(sourceAccountSettings, preparePacket);
+      final AccountRegistry.Entry nextHopEntry = getNextHopEntry(nextHopInfo);
+
+      // The final operation in the filter-chain is `link.sendPacketAsync(newPreparePacket)`.
+      return getLinkFilterChain(sourceAccountSettings, nextHopInfo, nextHopEntry)
+        .doFilterAsync(nextHopEntry.accountSettings().get(), nextHopInfo.nextHopPacket());
+    }
+
+    /**
+     * Resolve the `next-hop` account in the {@link AccountRegistry}, which re-reads its settings through the {@link
+     * AccountSettingsLoadingCache} periodically, so that they are refreshed and invalidated like any other account's.
+     */
+    private AccountRegistry.Entry getNextHopEntry(final NextHopInfo nextHopInfo) {
+      final AccountId nextHopAccountId = nextHopInfo.nextHopAccountId();
+      final AccountRegistry.Entry nextHopEntry = accountRegistry.resolve(nextHopAccountId, accountSettingsLoader);
+      if (nextHopEntry == null) {
+        throw new AccountNotFoundProblem(nextHopAccountId);
+      }
+      return nextHopEntry;
+    }
+  }
+
+  /**
+   * Obtain the compiled {@link DefaultLinkFilterChain} for the `next-hop` account, compiling a new one only if this is
+   * the first packet sent to that account, or if its previous link has disconnected.
+   */
+  private DefaultLinkFilterChain getLinkFilterChain(
+    final AccountSettings sourceAccountSettings, final NextHopInfo nextHopInfo, final AccountRegistry.Entry nextHopEntry
+  ) {
+    final DefaultLinkFilterChain linkFilterChain;
+    if (nextHopEntry.linkFilterChain().isPresent()) {
+      linkFilterChain = nextHopEntry.linkFilterChain().get();
+    } else {
+      final AccountId nextHopAccountId = nextHopInfo.nextHopAccountId();
       final Link<? extends LinkSettings> link;
-      if (nextHopInfo.nextHopAccountId().equals(PaymentRouter.PING_ACCOUNT_ID)) {
+      if (nextHopAccountId.equals(PaymentRouter.PING_ACCOUNT_ID)) {
         link = this.linkManager.getPingLink();
       } else {
-        link = this.linkManager.getOrCreateLink(nextHopInfo.nextHopAccountId());
+        link = this.linkManager.getOrCreateLink(nextHopAccountId);
       }
+      linkFilterChain = new DefaultLinkFilterChain(linkFilters, link);
+      accountRegistry.update(nextHopAccountId, entry -> entry.withLinkFilterChain(linkFilterChain));
+    }
 
+    if (logger.isDebugEnabled()) {
       logger.debug(
         "Sending outbound ILP Prepare: sourceAccountId: `{}` link={} packet={}",
-        sourceAccountSettings.accountId(), link, preparePacket
+        sourceAccountSettings.accountId(), linkFilterChain.getOutboundLink(), nextHopInfo.nextHopPacket()
       );
+    }
 
-      final AccountSettings nextHopAccountSettings = accountSettingsLoadingCache
-        .getAccount(nextHopInfo.nextHopAccountId())
-        .orElseThrow(() -> new AccountNotFoundProblem(nextHopInfo.nextHopAccountId()));
+    return linkFilterChain;
+  }
 
-      // The final operation in the filter-chain is `link.sendPacket(newPreparePacket)`.
-      return new DefaultLinkFilterChain(linkFilters, link)
-        .doFilter(nextHopAccountSettings, nextHopInfo.nextHopPacket());
+  /**
+   * An immutable element of the compiled chain that applies a single {@link PacketSwitchFilter}, supplying the next
+   * element of the chain as the filter's {@link PacketSwitchFilterChain}.
+   */
+  private static final class FilterChainLink implements PacketSwitchFilterChain {
+
+    private final PacketSwitchFilter filter;
+    private final PacketSwitchFilterChain next;
+
+    private FilterChainLink(final PacketSwitchFilter filter, final PacketSwitchFilterChain next) {
+      this.filter = Objects.requireNonNull(filter);
+      this.next = Objects.requireNonNull(next);
+    }
+
+    @Override
+    public InterledgerResponsePacket doFilter(
+      final AccountSettings sourceAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      return filter.doFilter(sourceAccountSettings, preparePacket, next);
+    }
+
+    @Override
+    public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+      final AccountSettings sourceAccountSettings, final InterledgerPreparePacket preparePacket
+    ) {
+      return filter.doFilterAsync(sourceAccountSettings, preparePacket, next);
     }
   }
 }
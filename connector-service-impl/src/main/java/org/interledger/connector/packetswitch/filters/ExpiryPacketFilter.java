@@ -1,5 +1,8 @@
 package org.interledger.connector.packetswitch.filters;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.interledger.connector.packetswitch.HashedWheelTimer;
 import org.interledger.connector.packetswitch.PacketRejector;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.core.InterledgerErrorCode;
@@ -8,49 +11,216 @@ import org.interledger.core.InterledgerResponsePacket;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
 import static org.interledger.core.InterledgerErrorCode.R02_INSUFFICIENT_TIMEOUT;
 
 
 /**
- * An implementation of {@link PacketSwitchFilter} for enforcing packet expiry (i.e., not processing an expired packet
- * but also timing out a pending, outgoing request that has not returned within a given threshold).
+ * <p>An implementation of {@link PacketSwitchFilter} for enforcing packet expiry (i.e., not processing an expired
+ * packet but also timing out a pending, outgoing request that has not returned within a given threshold).</p>
+ *
+ * <p>A timeout is registered with a {@link HashedWheelTimer} so that the packet is rejected with {@link
+ * InterledgerErrorCode#R00_TRANSFER_TIMED_OUT} as soon as it expires. When this happens, the outstanding downstream work
+ * (e.g., an HTTP request to the `next-hop` peer) is cancelled.</p>
+ *
+ * <p>On the asynchronous path, the remainder of the filter chain is started on the calling thread. On the blocking
+ * path, it is run on a worker thread instead, so that the calling thread can be released with an R00 rejection as soon
+ * as the packet expires, even if the chain is still blocked (e.g., on a synchronous HTTP call to the `next-hop`
+ * peer).</p>
  */
 public class ExpiryPacketFilter extends AbstractPacketFilter implements PacketSwitchFilter {
 
+  private final HashedWheelTimer expiryTimer;
+
+  private final Executor blockingExecutor;
+
   public ExpiryPacketFilter(final PacketRejector packetRejector) {
+    this(packetRejector, DefaultExpiryTimerHolder.DEFAULT_EXPIRY_TIMER);
+  }
+
+  @VisibleForTesting
+  ExpiryPacketFilter(final PacketRejector packetRejector, final HashedWheelTimer expiryTimer) {
+    this(packetRejector, expiryTimer, DefaultBlockingExecutorHolder.DEFAULT_BLOCKING_EXECUTOR);
+  }
+
+  @VisibleForTesting
+  ExpiryPacketFilter(
+    final PacketRejector packetRejector, final HashedWheelTimer expiryTimer, final Executor blockingExecutor
+  ) {
     super(packetRejector);
+    this.expiryTimer = Objects.requireNonNull(expiryTimer);
+    this.blockingExecutor = Objects.requireNonNull(blockingExecutor);
   }
 
+  /**
+   * Process the remainder of the filter chain on a worker thread, and wait for it no longer than until the packet
+   * expires. If the packet expires first, the calling thread is released with an R00 rejection while the chain is
+   * still running.
+   */
   @Override
   public InterledgerResponsePacket doFilter(
     final AccountSettings sourceAccountSettings,
     final InterledgerPreparePacket sourcePreparePacket,
     final PacketSwitchFilterChain filterChain
+  ) {
+    try {
+      return this.filter(sourceAccountSettings, sourcePreparePacket, filterChain, true).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Start the remainder of the filter chain on the calling thread. If the chain blocks, the calling thread is only
+   * released once the chain returns, but the returned future is still completed with an R00 rejection at expiry.
+   */
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    return this.filter(sourceAccountSettings, sourcePreparePacket, filterChain, false);
+  }
+
+  private CompletableFuture<InterledgerResponsePacket> filter(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain,
+    final boolean blocking
   ) {
     final Duration timeoutDuration = Duration.between(Instant.now(), sourcePreparePacket.getExpiresAt());
     if (timeoutDuration.isNegative() || timeoutDuration.isZero()) {
-      return packetRejector.reject(
+      return CompletableFuture.completedFuture(packetRejector.reject(
         sourceAccountSettings.accountId(), sourcePreparePacket, R02_INSUFFICIENT_TIMEOUT,
         "The connector could not forward the payment, because the timeout was too low to subtract its safety margin"
-      );
+      ));
     }
 
+    final ExpiringResponse expiringResponse = new ExpiringResponse(sourceAccountSettings, sourcePreparePacket);
+    expiringResponse.timeout = expiryTimer.newTimeout(expiringResponse, timeoutDuration.toNanos(), TimeUnit.NANOSECONDS);
+
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture;
     try {
-      return CompletableFuture.supplyAsync(() -> filterChain.doFilter(sourceAccountSettings, sourcePreparePacket))
-        .get(timeoutDuration.getSeconds(), TimeUnit.SECONDS);
-    } catch (InterruptedException | ExecutionException e) {
-      throw (RuntimeException) e.getCause();
-    } catch (TimeoutException e) {
-      logger.error(e.getMessage(), e);
-      return packetRejector.reject(
+      downstreamFuture = blocking
+        ? CompletableFuture.supplyAsync(
+          () -> filterChain.doFilter(sourceAccountSettings, sourcePreparePacket), blockingExecutor
+        )
+        : filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    } catch (RuntimeException e) {
+      expiringResponse.timeout.cancel();
+      throw e;
+    }
+    expiringResponse.setDownstreamFuture(downstreamFuture);
+    downstreamFuture.whenComplete(expiringResponse);
+
+    return expiringResponse;
+  }
+
+  /**
+   * The response to a single packet, which is completed by whichever happens first: the downstream response, or the
+   * expiry of the packet. A single object plays every role so that only one allocation is needed per packet.
+   */
+  private final class ExpiringResponse extends CompletableFuture<InterledgerResponsePacket>
+    implements Runnable, BiConsumer<InterledgerResponsePacket, Throwable> {
+
+    private final AccountSettings sourceAccountSettings;
+    private final InterledgerPreparePacket sourcePreparePacket;
+
+    private HashedWheelTimer.Timeout timeout;
+    private volatile CompletableFuture<InterledgerResponsePacket> downstreamFuture;
+
+    private ExpiringResponse(
+      final AccountSettings sourceAccountSettings, final InterledgerPreparePacket sourcePreparePacket
+    ) {
+      this.sourceAccountSettings = sourceAccountSettings;
+      this.sourcePreparePacket = sourcePreparePacket;
+    }
+
+    private void setDownstreamFuture(final CompletableFuture<InterledgerResponsePacket> downstreamFuture) {
+      this.downstreamFuture = downstreamFuture;
+      // The packet may have expired before the downstream work was started.
+      if (this.isDone()) {
+        downstreamFuture.cancel(true);
+      }
+    }
+
+    /**
+     * Called by the {@link HashedWheelTimer} when the packet expires.
+     */
+    @Override
+    public void run() {
+      final boolean timedOut = this.complete(packetRejector.reject(
         sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.R00_TRANSFER_TIMED_OUT,
         "Transfer Timed-out"
-      );
+      ));
+      if (timedOut) {
+        logger.error("Transfer Timed-out. preparePacket={}", sourcePreparePacket);
+        final CompletableFuture<InterledgerResponsePacket> downstreamFuture = this.downstreamFuture;
+        if (downstreamFuture != null) {
+          downstreamFuture.cancel(true);
+        }
+      }
     }
+
+    /**
+     * Called when the downstream work completes.
+     */
+    @Override
+    public void accept(final InterledgerResponsePacket responsePacket, final Throwable throwable) {
+      timeout.cancel();
+      if (throwable != null) {
+        this.completeExceptionally(throwable);
+      } else {
+        this.complete(responsePacket);
+      }
+    }
+
+    /**
+     * Cancelling the response (e.g., because the incoming HTTP request was abandoned) also cancels the downstream work.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      final boolean cancelled = super.cancel(mayInterruptIfRunning);
+      timeout.cancel();
+      final CompletableFuture<InterledgerResponsePacket> downstreamFuture = this.downstreamFuture;
+      if (downstreamFuture != null) {
+        downstreamFuture.cancel(mayInterruptIfRunning);
+      }
+      return cancelled;
+    }
+  }
+
+  /**
+   * Lazily creates the timer shared by all instances of this filter that are not supplied with their own.
+   */
+  private static final class DefaultExpiryTimerHolder {
+
+    // A 1ms tick and 1024 buckets covers one second per revolution, which is plenty for typical packet expiries.
+    private static final HashedWheelTimer DEFAULT_EXPIRY_TIMER = new HashedWheelTimer(
+      Duration.ofMillis(1), 1024,
+      new ThreadFactoryBuilder().setNameFormat("ilp-packet-expiry-%d").setDaemon(true).build()
+    );
+  }
+
+  /**
+   * Lazily creates the pool that runs blocking filter chains for all instances of this filter that are not supplied
+   * with their own. It is unbounded because each of its threads is held by a caller that is already waiting.
+   */
+  private static final class DefaultBlockingExecutorHolder {
+
+    private static final Executor DEFAULT_BLOCKING_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("ilp-packet-blocking-%d").setDaemon(true).build()
+    );
   }
 }
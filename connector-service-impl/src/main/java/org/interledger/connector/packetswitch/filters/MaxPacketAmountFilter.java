@@ -6,6 +6,7 @@ import org.interledger.core.InterledgerErrorCode;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An implementation of {@link PacketSwitchFilter} for enforcing a maximum packet account for any given ILP packet.
@@ -42,4 +43,21 @@ public class MaxPacketAmountFilter extends AbstractPacketFilter implements Packe
       // Otherwise, the packet amount is fine...
       .orElseGet(() -> filterChain.doFilter(sourceAccountSettings, sourcePreparePacket));
   }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final boolean exceedsMaxPacketAmount = sourceAccountSettings.maximumPacketAmount()
+      .filter(maxPacketAmount -> sourcePreparePacket.getAmount().longValue() > maxPacketAmount)
+      .isPresent();
+    if (exceedsMaxPacketAmount) {
+      // Only the rejection is computed synchronously; there is nothing to wait on.
+      return CompletableFuture.completedFuture(doFilter(sourceAccountSettings, sourcePreparePacket, filterChain));
+    } else {
+      return filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    }
+  }
 }
@@ -25,6 +25,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
 import static org.interledger.connector.ccp.CcpConstants.CCP_CONTROL_DESTINATION_ADDRESS;
@@ -124,6 +125,20 @@ public class PeerProtocolPacketFilter extends AbstractPacketFilter implements Pa
     }
   }
 
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    // Only packets that are not addressed to a `peer.` protocol continue down the chain, so only these are async.
+    if (sourcePreparePacket.getDestination().startsWith(InterledgerAddress.AllocationScheme.PEER.getValue())) {
+      return PacketSwitchFilter.super.doFilterAsync(sourceAccountSettings, sourcePreparePacket, filterChain);
+    } else {
+      return filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    }
+  }
+
   /**
    * Request IL-DCP configuration information from a server.
    *
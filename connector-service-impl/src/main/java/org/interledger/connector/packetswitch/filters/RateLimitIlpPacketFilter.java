@@ -3,6 +3,7 @@ package org.interledger.connector.packetswitch.filters;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.packetswitch.TokenBucket;
 import org.interledger.core.InterledgerErrorCode;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
@@ -10,24 +11,30 @@ import org.interledger.core.InterledgerResponsePacket;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.util.concurrent.RateLimiter;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * <p>An implementation of {@link PacketSwitchFilter} for limiting per-account traffic on this connector.</p>
  *
- * <p>This implementation uses a combination of a {@link RateLimiter} per-account, combined with a
- * {@link Cache} that expires after 15 seconds. In this way, accounts that do not send data to this Connector
- * instance will not have an active rate-limiter in memory.
- * </p>
+ * <p>This implementation uses a lock-free {@link TokenBucket} per-account, combined with a {@link Cache} that expires
+ * after 30 seconds and that holds at most {@link #DEFAULT_MAXIMUM_SIZE} buckets. In this way, accounts that do not send
+ * data to this Connector instance will not have an active bucket in memory, and memory stays bounded no matter how
+ * many accounts do. Accounts without a {@code maxPacketsPerSecond} are never added to the cache at all.</p>
+ *
+ * <p>A change to an account's {@code maxPacketsPerSecond} takes effect on the next packet from that account, rather
+ * than when its cache entry expires.</p>
  */
 public class RateLimitIlpPacketFilter extends AbstractPacketFilter implements PacketSwitchFilter {
 
-  // Account-based rate-limiters.
-  private final Cache<AccountId, Optional<RateLimiter>> rateLimiters;
+  // Each entry is a few dozen bytes, so this bounds the cache to tens of megabytes.
+  public static final long DEFAULT_MAXIMUM_SIZE = 500_000;
+
+  // Account-based token-buckets.
+  private final Cache<AccountId, TokenBucket> tokenBuckets;
 
   /**
    * Required-args Constructor.
@@ -38,11 +45,11 @@ public class RateLimitIlpPacketFilter extends AbstractPacketFilter implements Pa
     this(packetRejector, buildDefaultCache());
   }
 
-  private static Cache<AccountId, Optional<RateLimiter>> buildDefaultCache() {
+  private static Cache<AccountId, TokenBucket> buildDefaultCache() {
     return Caffeine.newBuilder()
-      //.maximumSize(100) // Not enabled for now in order to support many accounts.
+      .maximumSize(DEFAULT_MAXIMUM_SIZE)
       .expireAfterAccess(30, TimeUnit.SECONDS)
-      .build((key) -> null);
+      .build();
   }
 
   /**
@@ -51,10 +58,10 @@ public class RateLimitIlpPacketFilter extends AbstractPacketFilter implements Pa
   @VisibleForTesting
   RateLimitIlpPacketFilter(
     final PacketRejector packetRejector,
-    final Cache<AccountId, Optional<RateLimiter>> rateLimiterCache
+    final Cache<AccountId, TokenBucket> tokenBucketCache
   ) {
     super(packetRejector);
-    this.rateLimiters = Objects.requireNonNull(rateLimiterCache);
+    this.tokenBuckets = Objects.requireNonNull(tokenBucketCache);
   }
 
   @Override
@@ -64,13 +71,9 @@ public class RateLimitIlpPacketFilter extends AbstractPacketFilter implements Pa
     final PacketSwitchFilterChain filterChain
   ) {
 
-    return rateLimiters
-      .get(sourceAccountSettings.accountId(),
-        (key) -> sourceAccountSettings.rateLimitSettings().maxPacketsPerSecond()
-          .map(packetsPerSecond -> RateLimiter.create(packetsPerSecond))
-      )
-      .map(rateLimiter -> {
-        if (rateLimiter.tryAcquire(1)) {
+    return getTokenBucket(sourceAccountSettings)
+      .map(tokenBucket -> {
+        if (tokenBucket.tryAcquire()) {
           return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
         } else {
           return packetRejector.reject(
@@ -79,9 +82,41 @@ public class RateLimitIlpPacketFilter extends AbstractPacketFilter implements Pa
           );
         }
       })
-      // There is no RateLimiter for this account (because RateLimiting is disabled) so simply continue the
+      // There is no TokenBucket for this account (because RateLimiting is disabled) so simply continue the
       // FilterChain.
       .orElseGet(() -> filterChain.doFilter(sourceAccountSettings, sourcePreparePacket));
 
   }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final Optional<TokenBucket> tokenBucket = getTokenBucket(sourceAccountSettings);
+    if (!tokenBucket.isPresent() || tokenBucket.get().tryAcquire()) {
+      return filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    } else {
+      return CompletableFuture.completedFuture(packetRejector.reject(
+        sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.T03_CONNECTOR_BUSY,
+        "Rate Limit exceeded"
+      ));
+    }
+  }
+
+  private Optional<TokenBucket> getTokenBucket(final AccountSettings sourceAccountSettings) {
+    return sourceAccountSettings.rateLimitSettings().maxPacketsPerSecond()
+      .map(packetsPerSecond -> {
+        final AccountId accountId = sourceAccountSettings.accountId();
+        final TokenBucket tokenBucket = tokenBuckets.get(accountId, (key) -> new TokenBucket(packetsPerSecond));
+        if (tokenBucket.getPermitsPerSecond() == packetsPerSecond) {
+          return tokenBucket;
+        }
+        // The limit has changed since this bucket was created, so replace it now.
+        final TokenBucket replacementTokenBucket = new TokenBucket(packetsPerSecond);
+        tokenBuckets.put(accountId, replacementTokenBucket);
+        return replacementTokenBucket;
+      });
+  }
 }
@@ -0,0 +1,132 @@
+package org.interledger.connector.packetswitch.filters;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.packetswitch.SlidingWindowCounter;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>An implementation of {@link PacketSwitchFilter} for limiting the value, rather than the number, of packets that
+ * each account may send through this connector.</p>
+ *
+ * <p>A few large packets can drain liquidity far faster than many small ones, so this filter limits the sum of the
+ * amounts of each account's prepare packets during any one-second window to that account's {@code
+ * maxAmountPerSecond}, using a lock-free {@link SlidingWindowCounter}. Packets that would exceed the limit are rejected
+ * with {@link InterledgerErrorCode#T04_INSUFFICIENT_LIQUIDITY}, which tells the sender to retry once the window has
+ * moved on.</p>
+ *
+ * <p>As with {@link RateLimitIlpPacketFilter}, counters are held in a bounded {@link Cache} that expires after 30
+ * seconds, and a change to an account's limit takes effect on its next packet.</p>
+ */
+public class ThroughputLimitPacketFilter extends AbstractPacketFilter implements PacketSwitchFilter {
+
+  private static final Duration WINDOW = Duration.ofSeconds(1);
+
+  // Account-based sliding-window counters.
+  private final Cache<AccountId, SlidingWindowCounter> counters;
+
+  /**
+   * Required-args Constructor.
+   */
+  public ThroughputLimitPacketFilter(
+    final PacketRejector packetRejector
+  ) {
+    this(packetRejector, buildDefaultCache());
+  }
+
+  private static Cache<AccountId, SlidingWindowCounter> buildDefaultCache() {
+    return Caffeine.newBuilder()
+      .maximumSize(RateLimitIlpPacketFilter.DEFAULT_MAXIMUM_SIZE)
+      .expireAfterAccess(30, TimeUnit.SECONDS)
+      .build();
+  }
+
+  /**
+   * Required-args Constructor; exists only for testing.
+   */
+  @VisibleForTesting
+  ThroughputLimitPacketFilter(
+    final PacketRejector packetRejector,
+    final Cache<AccountId, SlidingWindowCounter> counterCache
+  ) {
+    super(packetRejector);
+    this.counters = Objects.requireNonNull(counterCache);
+  }
+
+  @Override
+  public InterledgerResponsePacket doFilter(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    if (isWithinLimit(sourceAccountSettings, sourcePreparePacket)) {
+      return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+    } else {
+      return rejectExceeded(sourceAccountSettings, sourcePreparePacket);
+    }
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    if (isWithinLimit(sourceAccountSettings, sourcePreparePacket)) {
+      return filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    } else {
+      return CompletableFuture.completedFuture(rejectExceeded(sourceAccountSettings, sourcePreparePacket));
+    }
+  }
+
+  private boolean isWithinLimit(
+    final AccountSettings sourceAccountSettings, final InterledgerPreparePacket sourcePreparePacket
+  ) {
+    final Optional<SlidingWindowCounter> counter = getCounter(sourceAccountSettings);
+    if (!counter.isPresent()) {
+      // There is no limit for this account, so simply continue the FilterChain.
+      return true;
+    }
+    final long amount = sourcePreparePacket.getAmount().longValue();
+    // Amounts above Long.MAX_VALUE wrap to negative, and certainly exceed any limit.
+    return amount >= 0 && counter.get().tryAdd(amount);
+  }
+
+  private Optional<SlidingWindowCounter> getCounter(final AccountSettings sourceAccountSettings) {
+    return sourceAccountSettings.rateLimitSettings().maxAmountPerSecond()
+      .map(amountPerSecond -> {
+        final AccountId accountId = sourceAccountSettings.accountId();
+        final SlidingWindowCounter counter =
+          counters.get(accountId, (key) -> new SlidingWindowCounter(amountPerSecond, WINDOW));
+        if (counter.getLimit() == amountPerSecond) {
+          return counter;
+        }
+        // The limit has changed since this counter was created, so replace it now.
+        final SlidingWindowCounter replacementCounter = new SlidingWindowCounter(amountPerSecond, WINDOW);
+        counters.put(accountId, replacementCounter);
+        return replacementCounter;
+      });
+  }
+
+  private InterledgerResponsePacket rejectExceeded(
+    final AccountSettings sourceAccountSettings, final InterledgerPreparePacket sourcePreparePacket
+  ) {
+    return packetRejector.reject(
+      sourceAccountSettings.accountId(), sourcePreparePacket, InterledgerErrorCode.T04_INSUFFICIENT_LIQUIDITY,
+      "Throughput limit exceeded"
+    );
+  }
+}
@@ -2,11 +2,14 @@ package org.interledger.connector.packetswitch.filters;
 
 import org.interledger.connector.packetswitch.PacketRejector;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.CompletableFutures;
 import org.interledger.core.InterledgerErrorCode;
 import org.interledger.core.InterledgerFulfillPacket;
 import org.interledger.core.InterledgerPreparePacket;
 import org.interledger.core.InterledgerResponsePacket;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * An implementation of {@link PacketSwitchFilter} for validating the fulfillment of an ILP packet.
  */
@@ -22,9 +25,29 @@ public class ValidateFulfillmentPacketFilter extends AbstractPacketFilter implem
     final InterledgerPreparePacket sourcePreparePacket,
     final PacketSwitchFilterChain filterChain
   ) {
-    final InterledgerResponsePacket responsePacket =
-      filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+    return validateFulfillment(
+      sourceAccountSettings, sourcePreparePacket, filterChain.doFilter(sourceAccountSettings, sourcePreparePacket)
+    );
+  }
+
+  @Override
+  public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final PacketSwitchFilterChain filterChain
+  ) {
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture =
+      filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+    return CompletableFutures.propagateCancellation(downstreamFuture, downstreamFuture.thenApply(
+      responsePacket -> validateFulfillment(sourceAccountSettings, sourcePreparePacket, responsePacket)
+    ));
+  }
 
+  private InterledgerResponsePacket validateFulfillment(
+    final AccountSettings sourceAccountSettings,
+    final InterledgerPreparePacket sourcePreparePacket,
+    final InterledgerResponsePacket responsePacket
+  ) {
     // Only for a fulfill...
     if (InterledgerFulfillPacket.class.isAssignableFrom(responsePacket.getClass())) {
       final InterledgerFulfillPacket fulfillPacket = (InterledgerFulfillPacket) responsePacket;
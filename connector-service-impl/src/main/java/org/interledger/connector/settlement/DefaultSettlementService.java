@@ -175,6 +175,16 @@ public class DefaultSettlementService implements SettlementService {
     final AccountSettings accountSettings,
     final SettlementQuantity settlementQuantityInClearingUnits
   ) throws SettlementServiceException {
+    return this.initiateLocalSettlement(idempotencyKey, accountSettings, settlementQuantityInClearingUnits, true);
+  }
+
+  @Override
+  public SettlementQuantity initiateLocalSettlement(
+    final String idempotencyKey,
+    final AccountSettings accountSettings,
+    final SettlementQuantity settlementQuantityInClearingUnits,
+    final boolean refundOnFailure
+  ) throws SettlementServiceException {
 
     Objects.requireNonNull(idempotencyKey, "idempotencyKey must not be null");
     Objects.requireNonNull(accountSettings, "accountSettings must not be null");
@@ -273,17 +283,19 @@ public class DefaultSettlementService implements SettlementService {
           // that the settlement payment will _eventually_ be completed. Because of this settlement_engine guarantee,
           // the Connector can operate as-if the settlement engine has completed. However, if the request to the
           // settlement-engine instead fails, the amount deducted in the Fulfill script needs to be re-added. This
-          // occurs here.
-          try {
-            balanceTracker.updateBalanceForOutgoingSettlementRefund(
-              accountSettings.accountId(), settlementQuantityInClearingUnits.amount().longValue()
-            );
-          } catch (Exception e2) {
-            // Swallowed (but logged) so that the other error message below is actually emitted too...
-            logger.error(
-              "Swallowed Exception while trying to roll-back balance transfer for failed settlement: "
-                + e.getMessage(), e2
-            );
+          // occurs here (unless the caller intends to retry the same request, and will refund it if it gives up).
+          if (refundOnFailure) {
+            try {
+              balanceTracker.updateBalanceForOutgoingSettlementRefund(
+                accountSettings.accountId(), settlementQuantityInClearingUnits.amount().longValue()
+              );
+            } catch (Exception e2) {
+              // Swallowed (but logged) so that the other error message below is actually emitted too...
+              logger.error(
+                "Swallowed Exception while trying to roll-back balance transfer for failed settlement: "
+                  + e.getMessage(), e2
+              );
+            }
           }
 
           final String errorMessage = String.format(
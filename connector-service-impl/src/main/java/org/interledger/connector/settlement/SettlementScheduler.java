@@ -0,0 +1,309 @@
+package org.interledger.connector.settlement;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.core.settlement.SettlementQuantity;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Initiates settlement payments on a bounded pool of worker threads, so that the threads that process packets never
+ * wait for a settlement engine.</p>
+ *
+ * <p>Each account has at most one settlement in flight. Amounts that are scheduled for an account while one of its
+ * settlements is in flight are merged, and requested from the settlement engine as a single settlement once it
+ * completes. A settlement that cannot be initiated is retried with exponential backoff, using the same idempotency key
+ * and amount, so the settlement engine never settles it twice. Only once the final attempt fails is the amount refunded
+ * to the account's clearing balance (see {@link SettlementService#initiateLocalSettlement(String, AccountSettings,
+ * SettlementQuantity, boolean)}).</p>
+ *
+ * <p>On close, any retry that is waiting out its backoff is made immediately, as the final attempt, so that it is
+ * either initiated or refunded rather than dropped.</p>
+ */
+public class SettlementScheduler implements AutoCloseable {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final SettlementService settlementService;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final long closeTimeoutMillis;
+
+  private final ConcurrentMap<AccountId, AccountSettlements> accountSettlements = new ConcurrentHashMap<>();
+  // Every retry that is waiting out its backoff. Guarded by itself, as is setting `closed`.
+  private final Map<Settlement, ScheduledRetry> scheduledRetries = new HashMap<>();
+  private final ScheduledExecutorService workers;
+
+  private volatile boolean closed;
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param settlementService    The {@link SettlementService} to initiate settlements with.
+   * @param numWorkers           The number of threads that initiate settlements.
+   * @param maxAttempts          The number of times to attempt a settlement before refunding it.
+   * @param initialBackoffMillis How long (in milliseconds) to wait before the first retry. Each subsequent retry waits
+   *                             twice as long as the one before it.
+   * @param maxBackoffMillis     The longest (in milliseconds) to wait before any retry.
+   * @param closeTimeoutMillis   How long (in milliseconds) to keep initiating settlements on close.
+   */
+  public SettlementScheduler(
+    final SettlementService settlementService,
+    final int numWorkers,
+    final int maxAttempts,
+    final long initialBackoffMillis,
+    final long maxBackoffMillis,
+    final long closeTimeoutMillis
+  ) {
+    this.settlementService = Objects.requireNonNull(settlementService);
+    Preconditions.checkArgument(numWorkers > 0, "numWorkers must be positive");
+    Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive");
+    Preconditions.checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+    Preconditions.checkArgument(maxBackoffMillis >= initialBackoffMillis,
+      "maxBackoffMillis must not be less than initialBackoffMillis");
+    this.maxAttempts = maxAttempts;
+    this.initialBackoffMillis = initialBackoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.closeTimeoutMillis = closeTimeoutMillis;
+
+    // Each account has at most one task queued (or one retry scheduled), so the work queue is bounded by the number of
+    // accounts rather than by the number of packets.
+    this.workers = Executors.newScheduledThreadPool(
+      numWorkers, new ThreadFactoryBuilder().setNameFormat("settlement-scheduler-%d").setDaemon(true).build()
+    );
+  }
+
+  /**
+   * Schedule a settlement of {@code amount}, which has already been deducted from the clearing balance of the account
+   * identified by {@code accountSettings}.
+   *
+   * @param accountSettings The {@link AccountSettings} of the account to settle.
+   * @param amount          The amount to settle, in clearing units.
+   */
+  public void schedule(final AccountSettings accountSettings, final long amount) {
+    Objects.requireNonNull(accountSettings);
+    Preconditions.checkArgument(amount > 0, "amount must be positive");
+
+    final AccountSettlements settlements =
+      accountSettlements.computeIfAbsent(accountSettings.accountId(), accountId -> new AccountSettlements());
+    synchronized (settlements) {
+      settlements.accountSettings = accountSettings;
+      settlements.pendingAmount = Math.addExact(settlements.pendingAmount, amount);
+      if (settlements.inFlight) {
+        // Merged into the next settlement of this account.
+        return;
+      }
+      settlements.inFlight = true;
+    }
+    execute(() -> settleNext(settlements));
+  }
+
+  /**
+   * The amount scheduled for the account identified by {@code accountId} that has not yet been requested from its
+   * settlement engine.
+   */
+  @VisibleForTesting
+  long getPendingAmount(final AccountId accountId) {
+    final AccountSettlements settlements = accountSettlements.get(accountId);
+    if (settlements == null) {
+      return 0L;
+    }
+    synchronized (settlements) {
+      return settlements.pendingAmount;
+    }
+  }
+
+  @Override
+  public void close() {
+    final List<ScheduledRetry> retries;
+    synchronized (scheduledRetries) {
+      // Any attempt made from now on is the final one, so nothing is left unsettled or unrefunded.
+      this.closed = true;
+      retries = new ArrayList<>(scheduledRetries.values());
+      scheduledRetries.clear();
+    }
+    // Rather than waiting out their backoff (which may outlast closeTimeoutMillis), make the final attempt now.
+    retries.forEach(retry -> {
+      if (retry.future.cancel(false)) {
+        execute(retry.attempt);
+      }
+    });
+
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        workers.shutdownNow();
+        accountSettlements.forEach((accountId, settlements) -> {
+          synchronized (settlements) {
+            if (settlements.inFlight) {
+              final Settlement settlement = settlements.settlement;
+              logger.error(
+                "RECONCILIATION REQUIRED: Settlement not initiated on shutdown. accountId={} idempotencyKey={} " +
+                  "amount={} pendingAmount={}",
+                accountId, settlement == null ? null : settlement.idempotencyKey,
+                settlement == null ? 0L : settlement.amount, settlements.pendingAmount
+              );
+            }
+          }
+        });
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Request the pending amount of an account from its settlement engine, or mark it as idle if nothing is pending.
+   */
+  private void settleNext(final AccountSettlements settlements) {
+    final Settlement settlement;
+    synchronized (settlements) {
+      if (settlements.pendingAmount == 0) {
+        settlements.inFlight = false;
+        return;
+      }
+      settlement = new Settlement(
+        UUID.randomUUID().toString(), settlements.accountSettings, settlements.pendingAmount
+      );
+      settlements.settlement = settlement;
+      settlements.pendingAmount = 0;
+    }
+    attempt(settlements, settlement, 1);
+  }
+
+  private void attempt(final AccountSettlements settlements, final Settlement settlement, final int attempt) {
+    final boolean finalAttempt = attempt >= maxAttempts || closed;
+    try {
+      settlementService.initiateLocalSettlement(
+        settlement.idempotencyKey, settlement.accountSettings, settlement.quantity(), finalAttempt
+      );
+    } catch (Exception e) {
+      if (!finalAttempt) {
+        final long backoffMillis = backoffMillis(attempt);
+        logger.warn(
+          "Settlement not initiated; retrying in {}ms. accountId={} idempotencyKey={} amount={} attempt={} Error={}",
+          backoffMillis, settlement.accountSettings.accountId(), settlement.idempotencyKey, settlement.amount,
+          attempt, e.getMessage()
+        );
+        scheduleRetry(settlements, settlement, attempt + 1, backoffMillis);
+        return;
+      }
+      logger.error(String.format(
+        "Settlement not initiated after %s attempts, and has been refunded. accountId=%s; idempotencyKey=%s; " +
+          "amount=%s; Error=%s",
+        attempt, settlement.accountSettings.accountId(), settlement.idempotencyKey, settlement.amount, e.getMessage()
+        ), e
+      );
+    }
+    synchronized (settlements) {
+      settlements.settlement = null;
+    }
+    // Any amount that was scheduled in the meantime is settled next, behind other accounts' settlements.
+    execute(() -> settleNext(settlements));
+  }
+
+  /**
+   * Make attempt number {@code attempt} of {@code settlement} once {@code backoffMillis} have passed, or immediately
+   * (as the final attempt) if this scheduler is closed before then.
+   */
+  private void scheduleRetry(
+    final AccountSettlements settlements, final Settlement settlement, final int attempt, final long backoffMillis
+  ) {
+    final ScheduledRetry retry = new ScheduledRetry(() -> attempt(settlements, settlement, attempt));
+    synchronized (scheduledRetries) {
+      if (!closed) {
+        scheduledRetries.put(settlement, retry);
+        // The workers are only shut down once closed, so this is never rejected.
+        retry.future = workers.schedule(() -> {
+          synchronized (scheduledRetries) {
+            scheduledRetries.remove(settlement);
+          }
+          retry.attempt.run();
+        }, backoffMillis, TimeUnit.MILLISECONDS);
+        return;
+      }
+    }
+    // Closed in the meantime, so make the final attempt now.
+    retry.attempt.run();
+  }
+
+  private long backoffMillis(final int attempt) {
+    return Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+  }
+
+  /**
+   * Run {@code task} on a worker, or on the calling thread once this scheduler has been closed.
+   */
+  private void execute(final Runnable task) {
+    try {
+      workers.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  /**
+   * The settlement state of a single account. Guarded by its own monitor.
+   */
+  private static final class AccountSettlements {
+    private AccountSettings accountSettings;
+    private long pendingAmount;
+    private boolean inFlight;
+    // The settlement being attempted (or waiting to be retried), if any.
+    private Settlement settlement;
+  }
+
+  /**
+   * An attempt of a settlement that is waiting out its backoff.
+   */
+  private static final class ScheduledRetry {
+    private final Runnable attempt;
+    private ScheduledFuture<?> future;
+
+    private ScheduledRetry(final Runnable attempt) {
+      this.attempt = attempt;
+    }
+  }
+
+  /**
+   * A single settlement request, which is retried as-is until it succeeds or is refunded.
+   */
+  private static final class Settlement {
+    private final String idempotencyKey;
+    private final AccountSettings accountSettings;
+    private final long amount;
+
+    private Settlement(final String idempotencyKey, final AccountSettings accountSettings, final long amount) {
+      this.idempotencyKey = idempotencyKey;
+      this.accountSettings = accountSettings;
+      this.amount = amount;
+    }
+
+    private SettlementQuantity quantity() {
+      return SettlementQuantity.builder()
+        .amount(BigInteger.valueOf(amount))
+        .scale(accountSettings.assetScale())
+        .build();
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package org.interledger.connector.settlement;
+
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.FulfillUpdateQueue;
+import org.interledger.connector.core.settlement.SettlementQuantity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Initiates a settlement payment whenever a fulfill balance update leaves an account at or above its settle threshold.
+ * If a {@link SettlementScheduler} is supplied, the settlement is handed to it rather than initiated on the calling
+ * thread.
+ */
+public class SettlementThresholdListener implements FulfillUpdateQueue.Listener {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final SettlementService settlementService;
+  private final Optional<SettlementScheduler> settlementScheduler;
+
+  public SettlementThresholdListener(final SettlementService settlementService) {
+    this(settlementService, Optional.empty());
+  }
+
+  /**
+   * Required-args Constructor.
+   *
+   * @param settlementService   The {@link SettlementService} to initiate settlements with.
+   * @param settlementScheduler An optionally-present {@link SettlementScheduler} to initiate settlements with instead.
+   */
+  public SettlementThresholdListener(
+    final SettlementService settlementService, final Optional<SettlementScheduler> settlementScheduler
+  ) {
+    this.settlementService = Objects.requireNonNull(settlementService);
+    this.settlementScheduler = Objects.requireNonNull(settlementScheduler);
+  }
+
+  @Override
+  public void onBalanceUpdated(
+    final AccountSettings destinationAccountSettings,
+    final long amount,
+    final BalanceTracker.UpdateBalanceForFulfillResponse balanceForFulfillResponse
+  ) {
+    try {
+      this.maybeSettle(destinationAccountSettings, balanceForFulfillResponse);
+    } catch (Exception e) {
+      logger.error(String.format(
+        "While trying to initiate settlement engine payment: accountId=%s; amount=%s; Error=%s",
+        destinationAccountSettings.accountId(), amount, e.getMessage()
+        ), e // position the exception properly for logging.
+      );
+    }
+  }
+
+  /**
+   * Determine whether or not a settlement payment should be initiated, and if so, initiate it.
+   *
+   * @param destinationAccountSettings The {@link AccountSettings} of the account whose balance was updated.
+   * @param balanceForFulfillResponse  The result of {@link BalanceTracker#updateBalanceForFulfill}.
+   */
+  public void maybeSettle(
+    final AccountSettings destinationAccountSettings,
+    final BalanceTracker.UpdateBalanceForFulfillResponse balanceForFulfillResponse
+  ) {
+    // SettlementService throws an exception if no SE is configured, so only trigger it if there's an SE
+    // configured.
+    destinationAccountSettings.settlementEngineDetails().ifPresent(
+      settlementEngineDetails -> {
+
+        // Only trigger settlement if there's a Threshold...
+        destinationAccountSettings.balanceSettings().settleThreshold()
+          // ... and if the calculated clearingAmountToSettle is > the threshold (and not 0)
+          .filter(settleThreshold -> balanceForFulfillResponse.clearingAmountToSettle() > 0 &&
+            balanceForFulfillResponse.clearingAmountToSettle() >= settleThreshold)
+          .ifPresent(settleThreshold -> {
+            if (settlementScheduler.isPresent()) {
+              settlementScheduler.get()
+                .schedule(destinationAccountSettings, balanceForFulfillResponse.clearingAmountToSettle());
+              return;
+            }
+
+            final UUID idempotencyId = UUID.randomUUID();
+
+            final SettlementQuantity settlementQuantityInClearingUnits = SettlementQuantity.builder()
+              .amount(BigInteger.valueOf(balanceForFulfillResponse.clearingAmountToSettle()))
+              .scale(destinationAccountSettings.assetScale())
+              .build();
+
+            // NOTE: This method is tightly-coupled to the fulfill balance processing that precedes it. Since the
+            // SettlementService is already tightly coupled, this is tolerable, but it might be clearer to have the
+            // SettlementService not roll-back if there's a problem (small case to be made that this method should
+            // handle the rollback).
+            settlementService.initiateLocalSettlement(
+              idempotencyId.toString(), destinationAccountSettings, settlementQuantityInClearingUnits
+            );
+          });
+      });
+  }
+}
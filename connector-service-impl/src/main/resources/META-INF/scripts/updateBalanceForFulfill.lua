@@ -20,6 +20,18 @@ end
 local settle_threshold = tonumber(ARGV[2]) -- nil if not present.
 local settle_to = numberOrZero(ARGV[3]) -- 0 if not present.
 
+-- An optional key that records this change as applied, so that it is applied at most once (e.g., when a journaled
+-- change is replayed after the outcome of an earlier attempt was lost). Like the idempotency key of an incoming
+-- settlement, it is co-located with the account (see RedisKeyLayout), and expires after 24h (86400 sec).
+local idempotency_key = KEYS[2]
+if idempotency_key then
+    -- An empty reply (rather than nil, which a MULTI reply cannot be) reports that the change was already applied.
+    if redis.call('EXISTS', idempotency_key) == 1 then
+        return {}
+    end
+    redis.call('SET', idempotency_key, 'true', 'EX', 86400)
+end
+
 local clearing_balance = redis.call('HINCRBY', to_account_id, 'clearing_balance', amount)
 local prepaid_amount = numberOrZero(redis.call('HGET', to_account_id, 'prepaid_amount'))
 
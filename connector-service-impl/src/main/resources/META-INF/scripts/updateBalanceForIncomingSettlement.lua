@@ -12,18 +12,19 @@ end
 
 -- The redis id of the `from` account, of the form `accounts:{account_id}`, is where funds will be subtracted from
 local account_id = KEYS[1]
+-- The key that records this settlement as processed. It is passed as a key (rather than an argument) so that, in
+-- Redis Cluster, it is routed to the same slot as the account (see RedisKeyLayout).
+local idempotency_key = KEYS[2]
 local amount = numberOrZero(ARGV[1])
--- NOTE: The prefix `SETTLEMENT_IDEMPOTENCE:` is appended in the controller layer.
-local idempotency_key = ARGV[2]
 
 local clearing_balance, prepaid_amount = unpack(redis.call('HMGET', account_id, 'clearing_balance', 'prepaid_amount'))
 
 clearing_balance = numberOrZero(clearing_balance)
 prepaid_amount = numberOrZero(prepaid_amount)
 
--- If idempotency key has been used, then do not perform any operations
+-- If idempotency key has been used, then do not perform any operations, and reply with nil to report the duplicate
 if redis.call('EXISTS', idempotency_key) == 1 then
-    return clearing_balance + prepaid_amount
+    return false
 end
 
 -- Otherwise, set it to true (there's no value to cache as a response)
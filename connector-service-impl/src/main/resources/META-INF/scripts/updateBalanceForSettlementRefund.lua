@@ -20,5 +20,16 @@ end
 local account_id = KEYS[1]
 local settle_amount = numberOrZero(ARGV[1]) -- The actual amount settled, as reported by the SE.
 
+-- An optional key that records this change as applied, so that it is applied at most once (e.g., when a journaled
+-- change is replayed after the outcome of an earlier attempt was lost). Like the idempotency key of an incoming
+-- settlement, it is co-located with the account (see RedisKeyLayout), and expires after 24h (86400 sec).
+local idempotency_key = KEYS[2]
+if idempotency_key then
+    if redis.call('EXISTS', idempotency_key) == 1 then
+        return false
+    end
+    redis.call('SET', idempotency_key, 'true', 'EX', 86400)
+end
+
 local clearing_balance = redis.call('HINCRBY', account_id, 'clearing_balance', settle_amount)
 return clearing_balance;
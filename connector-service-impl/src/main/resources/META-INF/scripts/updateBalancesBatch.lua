@@ -0,0 +1,88 @@
+local function isempty(s)
+    return s == nil or s == '' or s == false
+end
+
+local function numberOrZero(num)
+    if(isempty(num)) then
+        return 0
+    else
+        return tonumber(num)
+    end
+end
+
+-- Applies a batch of prepare, reject and fulfill balance updates, in order, using a single script invocation. The
+-- logic of each operation is identical to that of `updateBalanceForPrepare.lua`, `updateBalanceForReject.lua` and
+-- `updateBalanceForFulfill.lua`, except that an operation that cannot be applied does not abort the whole batch.
+-- Instead, each operation produces its own result, which is either `{ 1, ...values }` on success, or
+-- `{ 0, error_message }` if the operation was refused.
+--
+-- Operation `i` is applied to the account whose redis id is KEYS[i], of the form `accounts:{account_id}`, and is
+-- described by the four arguments ARGV[4i-3] to ARGV[4i], which are `{ type, amount, arg1, arg2 }`:
+--   * `P` (prepare): arg1 is the optional min_balance; arg2 is unused.
+--   * `R` (reject):  arg1 and arg2 are unused.
+--   * `F` (fulfill): arg1 is the optional settle_threshold; arg2 is settle_to.
+
+local function prepare(from_account_id, from_amount, min_balance)
+    local clearing_balance, prepaid_amount = unpack(redis.call('HMGET', from_account_id, 'clearing_balance', 'prepaid_amount'))
+
+    clearing_balance = numberOrZero(clearing_balance)
+    prepaid_amount = numberOrZero(prepaid_amount)
+
+    -- Check that the prepare wouldn't go under the from-account's minimum clearing_balance
+    if min_balance then
+        if clearing_balance + prepaid_amount - from_amount < min_balance then
+            return { 0, 'Incoming prepare of ' .. from_amount .. ' would bring account ' .. from_account_id .. ' under its minimum clearing_balance. Current clearing_balance: ' .. clearing_balance .. ', min balance: ' .. min_balance }
+        end
+    end
+
+    -- Deduct the from_amount from the prepaid_amount and/or the balance
+    if prepaid_amount >= from_amount then
+        prepaid_amount = redis.call('HINCRBY', from_account_id, 'prepaid_amount', 0 - from_amount)
+    elseif prepaid_amount > 0 then
+        local sub_from_balance = from_amount - prepaid_amount
+        prepaid_amount = 0
+        redis.call('HSET', from_account_id, 'prepaid_amount', 0)
+        clearing_balance = redis.call('HINCRBY', from_account_id, 'clearing_balance', 0 - sub_from_balance)
+    else
+        clearing_balance = redis.call('HINCRBY', from_account_id, 'clearing_balance', 0 - from_amount)
+    end
+
+    return { 1, clearing_balance + prepaid_amount }
+end
+
+local function reject(from_account_id, amount)
+    return { 1, redis.call('HINCRBY', from_account_id, 'clearing_balance', amount) }
+end
+
+local function fulfill(to_account_id, amount, settle_threshold, settle_to)
+    local clearing_balance = redis.call('HINCRBY', to_account_id, 'clearing_balance', amount)
+    local prepaid_amount = numberOrZero(redis.call('HGET', to_account_id, 'prepaid_amount'))
+
+    -- See `updateBalanceForFulfill.lua` for a description of when a settlement is triggered.
+    local settle_amount = 0
+    if settle_threshold and (clearing_balance >= settle_threshold) and (clearing_balance >= settle_to) then
+        settle_amount = clearing_balance - settle_to
+        redis.call('HSET', to_account_id, 'clearing_balance', settle_to)
+    end
+
+    return { 1, clearing_balance, prepaid_amount, settle_amount }
+end
+
+local results = {}
+for i = 1, #KEYS do
+    local type = ARGV[4 * i - 3]
+    local amount = tonumber(ARGV[4 * i - 2])
+    if isempty(amount) then
+        results[i] = { 0, 'amount was nil!' }
+    elseif type == 'P' then
+        results[i] = prepare(KEYS[i], amount, tonumber(ARGV[4 * i - 1]))
+    elseif type == 'R' then
+        results[i] = reject(KEYS[i], amount)
+    elseif type == 'F' then
+        results[i] = fulfill(KEYS[i], amount, tonumber(ARGV[4 * i - 1]), numberOrZero(ARGV[4 * i]))
+    else
+        results[i] = { 0, 'Unknown balance operation: ' .. tostring(type) }
+    end
+end
+
+return results
@@ -0,0 +1,173 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.balances.BalanceJournal.Entry;
+import org.interledger.connector.balances.BalanceJournal.Type;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link BalanceJournal}.
+ */
+public class BalanceJournalTest {
+
+  private static final AccountId ALICE = AccountId.of("alice");
+  private static final AccountId BOB = AccountId.of("bob");
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    this.directory = temporaryFolder.newFolder("journal").toPath();
+  }
+
+  @Test
+  public void foldSumsChangesByStatus() throws Exception {
+    try (BalanceJournal journal = new BalanceJournal(directory, 4096, 1)) {
+      journal.markApplied(journal.append(Type.PREPARE, ALICE, 10L, Optional.empty()));
+      journal.markApplied(journal.append(Type.REJECT, ALICE, 4L, Optional.empty()));
+      journal.markDiscarded(journal.append(Type.PREPARE, ALICE, 100L, Optional.empty()));
+      journal.markFailed(journal.append(Type.FULFILL, BOB, 7L, Optional.empty()));
+      journal.markApplied(journal.append(Type.INCOMING_SETTLEMENT, BOB, 3L, Optional.of("key")));
+      journal.markApplied(journal.append(Type.FULFILL, BOB, 12L, Optional.empty()));
+      journal.markApplied(journal.append(Type.OUTGOING_SETTLEMENT, BOB, 12L, Optional.empty()));
+    }
+
+    final Map<AccountId, BalanceJournal.AccountTotals> totals = BalanceJournal.fold(directory);
+    assertThat(totals.get(ALICE).applied(), is(-6L));
+    assertThat(totals.get(ALICE).discarded(), is(-100L));
+    assertThat(totals.get(ALICE).unresolved(), is(0L));
+    assertThat(totals.get(BOB).applied(), is(3L));
+    assertThat(totals.get(BOB).unresolved(), is(7L));
+  }
+
+  @Test
+  public void failedChangesSurviveReopening() {
+    try (BalanceJournal journal = new BalanceJournal(directory, 4096, 1)) {
+      journal.markApplied(journal.append(Type.REJECT, ALICE, 1L, Optional.empty()));
+      journal.markFailed(journal.append(Type.INCOMING_SETTLEMENT, BOB, 2L, Optional.of("key")));
+      // Never resolved, as if the Connector stopped while applying it.
+      journal.append(Type.REJECT, ALICE, 3L, Optional.empty());
+    }
+
+    try (BalanceJournal journal = new BalanceJournal(directory, 4096, 1)) {
+      final List<Entry> failed = new ArrayList<>(journal.failedEntries());
+      assertThat(failed.size(), is(1));
+      assertThat(failed.get(0).sequence(), is(1L));
+      assertThat(failed.get(0).accountId(), is(BOB));
+      assertThat(failed.get(0).amount(), is(2L));
+      assertThat(failed.get(0).idempotencyKey(), is(Optional.of("key")));
+
+      // Sequence numbers continue where they left off.
+      assertThat(journal.append(Type.REJECT, ALICE, 4L, Optional.empty()).sequence(), is(3L));
+    }
+  }
+
+  @Test
+  public void inFlightChangesAreResolvedAsUnknownOnReopening() throws Exception {
+    try (BalanceJournal journal = new BalanceJournal(directory, 256, 1)) {
+      // Never resolved, as if the Connector stopped while applying it.
+      journal.append(Type.REJECT, ALICE, 3L, Optional.empty());
+    }
+
+    try (BalanceJournal journal = new BalanceJournal(directory, 256, 1)) {
+      assertThat(journal.failedEntries().isEmpty(), is(true));
+      for (int i = 0; i < 100; i++) {
+        journal.markApplied(journal.append(Type.PREPARE, BOB, 1L, Optional.empty()));
+      }
+      // The first segment no longer holds an unresolved change, so it has been deleted.
+      assertThat(journal.getNumSegments(), is(2));
+    }
+  }
+
+  @Test
+  public void unknownChangesAreFoldedAsUnresolved() throws Exception {
+    try (BalanceJournal journal = new BalanceJournal(directory, 4096, 1)) {
+      journal.append(Type.REJECT, ALICE, 3L, Optional.empty());
+    }
+    new BalanceJournal(directory, 4096, 1).close();
+
+    assertThat(BalanceJournal.fold(directory).get(ALICE).unresolved(), is(3L));
+  }
+
+  @Test
+  public void idSurvivesReopening() {
+    final String id;
+    try (BalanceJournal journal = new BalanceJournal(directory, 4096, 1)) {
+      id = journal.id();
+    }
+    try (BalanceJournal journal = new BalanceJournal(directory, 4096, 1)) {
+      assertThat(journal.id(), is(id));
+    }
+  }
+
+  @Test
+  public void resolvedSegmentsAreDeleted() {
+    try (BalanceJournal journal = new BalanceJournal(directory, 256, 1)) {
+      final Entry failed = journal.append(Type.FULFILL, BOB, 1L, Optional.empty());
+      journal.markFailed(failed);
+      for (int i = 0; i < 100; i++) {
+        journal.markApplied(journal.append(Type.PREPARE, ALICE, 1L, Optional.empty()));
+      }
+      // The first segment holds an unresolved change, then one resolved segment is retained, plus the current one.
+      assertThat(journal.getNumSegments(), is(3));
+
+      journal.markApplied(failed);
+      journal.markApplied(journal.append(Type.PREPARE, ALICE, 1L, Optional.empty()));
+      for (int i = 0; i < 10; i++) {
+        journal.markApplied(journal.append(Type.PREPARE, ALICE, 1L, Optional.empty()));
+      }
+      assertThat(journal.getNumSegments(), is(2));
+    }
+  }
+
+  @Test
+  public void concurrentAppendsAcrossSegmentsAreAllJournaled() throws Exception {
+    final int numThreads = 8;
+    final int appendsPerThread = 500;
+    final Set<Long> sequences = ConcurrentHashMap.newKeySet();
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try (BalanceJournal journal = new BalanceJournal(directory, 256, 1000)) {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < numThreads; thread++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < appendsPerThread; i++) {
+            final Entry entry = journal.append(Type.REJECT, ALICE, 1L, Optional.empty());
+            sequences.add(entry.sequence());
+            journal.markApplied(entry);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(sequences.size(), is(numThreads * appendsPerThread));
+    assertThat(BalanceJournal.fold(directory).get(ALICE).applied(), is((long) numThreads * appendsPerThread));
+    assertThat(BalanceJournal.fold(directory).get(ALICE).unresolved(), is(0L));
+  }
+}
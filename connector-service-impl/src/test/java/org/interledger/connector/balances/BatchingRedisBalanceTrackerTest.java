@@ -0,0 +1,509 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.primitives.UnsignedLong;
+import org.interledger.connector.ConnectorExceptionHandler;
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.link.AbstractLink;
+import org.interledger.connector.link.Link;
+import org.interledger.connector.link.LinkSettings;
+import org.interledger.connector.links.LinkManager;
+import org.interledger.connector.links.NextHopInfo;
+import org.interledger.connector.links.filters.OutgoingBalanceLinkFilter;
+import org.interledger.connector.links.loopback.LoopbackLink;
+import org.interledger.connector.metrics.BalanceTrackerMetrics;
+import org.interledger.connector.packetswitch.DefaultILPv4PacketSwitch;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.packetswitch.filters.BalanceIlpPacketFilter;
+import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
+import org.interledger.connector.settlement.SettlementService;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisClusterNode.SlotRange;
+import org.springframework.data.redis.connection.RedisNode.NodeType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+import redis.clients.jedis.JedisCluster;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link BatchingRedisBalanceTracker} that validate that batched balance updates produce the same
+ * results as individually applied ones.
+ */
+@ContextConfiguration(classes = {AbstractRedisBalanceTrackerTest.Config.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class BatchingRedisBalanceTrackerTest extends AbstractRedisBalanceTrackerTest {
+
+  private static final int NUM_THREADS = 16;
+  private static final int UPDATES_PER_THREAD = 50;
+
+  @ClassRule
+  public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
+
+  @Rule
+  public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+  @Autowired
+  private RedisScript<Long> updateBalanceForPrepareScript;
+  @Autowired
+  private RedisScript<List> updateBalanceForFulfillScript;
+  @Autowired
+  private RedisScript<Long> updateBalanceForRejectScript;
+  @Autowired
+  private RedisScript<Long> updateBalanceForIncomingSettlment;
+  @Autowired
+  private RedisScript<Long> updateBalanceForSettlementRefund;
+  @Autowired
+  private RedisScript<List> updateBalancesBatchScript;
+
+  @Autowired
+  private RedisTemplate<String, String> redisTemplate;
+
+  private BalanceTrackerMetrics metrics;
+  private BatchingRedisBalanceTracker balanceTracker;
+  private ExecutorService executor;
+
+  public BatchingRedisBalanceTrackerTest() {
+    super(ZERO, ZERO, ZERO, ZERO, ZERO);
+  }
+
+  @Before
+  public void setUp() {
+    this.metrics = new BalanceTrackerMetrics();
+    this.balanceTracker = new BatchingRedisBalanceTracker(
+      updateBalanceForPrepareScript, updateBalanceForFulfillScript, updateBalanceForRejectScript,
+      updateBalanceForIncomingSettlment, updateBalanceForSettlementRefund, updateBalancesBatchScript,
+      redisTemplate, RedisKeyLayout.STANDALONE, 32, 500, TimeUnit.MICROSECONDS, 1024, metrics
+    );
+    this.executor = Executors.newFixedThreadPool(NUM_THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    balanceTracker.close();
+  }
+
+  @Override
+  protected RedisTemplate getRedisTemplate() {
+    return this.redisTemplate;
+  }
+
+  @Test
+  public void concurrentUpdatesAreBatched() throws Exception {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    final AccountSettings accountSettings = accountSettings(accountId, Optional.empty());
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+          balanceTracker.updateBalanceForPrepare(accountId, TEN, Optional.empty());
+          balanceTracker.updateBalanceForReject(accountId, ONE);
+          balanceTracker.updateBalanceForFulfill(accountSettings, TWO);
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+
+    final int numUpdates = NUM_THREADS * UPDATES_PER_THREAD;
+    final AccountBalance balance = balanceTracker.balance(accountId);
+    assertThat(balance.clearingBalance(), is(numUpdates * (ONE + TWO - TEN)));
+    assertThat(balance.prepaidAmount(), is(ZERO));
+    assertThat(balanceTracker.getNumBatches(), is(greaterThan(0L)));
+    assertThat(balanceTracker.getNumBatches(), is(lessThan(numUpdates * 3L)));
+    assertThat(metrics.commandLatencyNanos().count(), is(balanceTracker.getNumBatches()));
+    assertThat(metrics.updateLatencyNanos().count(), is(numUpdates * 3L));
+    assertThat(metrics.queueDepth(), is(0));
+  }
+
+  @Test
+  public void asyncUpdatesDoNotBlockTheCaller() throws Exception {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    final AccountSettings accountSettings = accountSettings(accountId, Optional.empty());
+
+    final List<CompletableFuture<?>> futures = new ArrayList<>();
+    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+      futures.add(balanceTracker.updateBalanceForPrepareAsync(accountId, TEN, Optional.empty()).toCompletableFuture());
+      futures.add(balanceTracker.updateBalanceForRejectAsync(accountId, ONE).toCompletableFuture());
+      futures.add(balanceTracker.updateBalanceForFulfillAsync(accountSettings, TWO).toCompletableFuture());
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(UPDATES_PER_THREAD * (ONE + TWO - TEN)));
+    // A single thread has still produced multi-update batches.
+    assertThat(balanceTracker.getNumBatches(), is(lessThan(UPDATES_PER_THREAD * 3L)));
+  }
+
+  @Test
+  public void asyncPrepareBelowMinBalance() throws Exception {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    try {
+      balanceTracker.updateBalanceForPrepareAsync(accountId, ONE, Optional.of(ZERO))
+        .toCompletableFuture().get(30, TimeUnit.SECONDS);
+      fail("should have failed but did not!");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof BalanceTrackerException, is(true));
+      assertThat(e.getCause().getMessage(), is(
+        String.format("Error handling prepare with sourceAmount `%s` from accountId `%s`", ONE, accountId)
+      ));
+      assertThat(e.getCause().getCause().getMessage().contains("under its minimum clearing_balance"), is(true));
+    }
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(ZERO));
+  }
+
+  @Test
+  public void asyncFulfillTriggersSettlement() throws Exception {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    initializeAccount(accountId, NINE, ONE);
+
+    final BalanceTracker.UpdateBalanceForFulfillResponse response = balanceTracker
+      .updateBalanceForFulfillAsync(accountSettings(accountId, Optional.of(TEN)), TWO)
+      .toCompletableFuture().get(30, TimeUnit.SECONDS);
+
+    assertThat(response.accountBalance().clearingBalance(), is(11L));
+    assertThat(response.clearingAmountToSettle(), is(11L));
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(ZERO));
+  }
+
+  @Test
+  public void minBalanceFailuresOnlyAffectTheirOwnUpdate() throws Exception {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    initializeAccount(accountId, ZERO, ZERO);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<Boolean>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        try {
+          balanceTracker.updateBalanceForPrepare(accountId, ONE, Optional.of(-5L));
+          return true;
+        } catch (BalanceTrackerException e) {
+          return false;
+        }
+      }));
+    }
+    start.countDown();
+
+    int numSucceeded = 0;
+    for (Future<Boolean> future : futures) {
+      if (future.get(30, TimeUnit.SECONDS)) {
+        numSucceeded++;
+      }
+    }
+    assertThat(numSucceeded, is(5));
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(-5L));
+  }
+
+  @Test
+  public void updateBalanceForPrepareBelowMinBalance() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    try {
+      balanceTracker.updateBalanceForPrepare(accountId, ONE, Optional.of(ZERO));
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      assertThat(e.getMessage(), is(
+        String.format("Error handling prepare with sourceAmount `%s` from accountId `%s`", ONE, accountId)
+      ));
+      assertThat(e.getCause().getMessage().contains("under its minimum clearing_balance"), is(true));
+    }
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(ZERO));
+  }
+
+  @Test
+  public void updateBalanceForFulfillTriggersSettlement() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    initializeAccount(accountId, NINE, ONE);
+
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings(accountId, Optional.of(TEN)), TWO);
+
+    assertThat(response.accountBalance().clearingBalance(), is(11L));
+    assertThat(response.accountBalance().prepaidAmount(), is(ONE));
+    assertThat(response.clearingAmountToSettle(), is(11L));
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(ZERO));
+  }
+
+  @Test(expected = BalanceTrackerException.class)
+  public void updateAfterClose() {
+    balanceTracker.close();
+    balanceTracker.updateBalanceForReject(ACCOUNT_ID, ONE);
+  }
+
+  /**
+   * The stages that the packet switch chains onto an asynchronous update go on to send the packet and, for a blocking
+   * link, to apply the fulfill using a blocking update. Neither may run on the batching thread, or that update would
+   * wait for itself.
+   */
+  @Test
+  public void switchPacketAsyncOverBlockingLink() throws Exception {
+    final AccountId incomingAccountId = AccountId.of(UUID.randomUUID().toString());
+    final AccountId outgoingAccountId = AccountId.of(UUID.randomUUID().toString());
+    final InterledgerAddress operatorAddress = InterledgerAddress.of("test.operator");
+    final PacketRejector packetRejector = new PacketRejector(() -> Optional.of(operatorAddress));
+    final InterledgerPreparePacket preparePacket = InterledgerPreparePacket.builder()
+      .destination(InterledgerAddress.of("test.foo"))
+      .amount(UnsignedLong.valueOf(TEN))
+      .expiresAt(Instant.now().plusSeconds(30))
+      .executionCondition(InterledgerCondition.of(new byte[32]))
+      .build();
+
+    // A link that only has a blocking send, so its response is handled on whichever thread sent the packet.
+    final Link<?> blockingLink = new LoopbackLink(
+      () -> Optional.of(operatorAddress),
+      LinkSettings.builder().linkType(LoopbackLink.LINK_TYPE).build(),
+      new AbstractLink.EventBusEventEmitter(new EventBus()),
+      packetRejector
+    ) {
+      @Override
+      public InterledgerResponsePacket sendPacket(final InterledgerPreparePacket preparePacket) {
+        assertThat(Thread.currentThread().getName(), is(not("balance-tracker-batching")));
+        return InterledgerFulfillPacket.builder().fulfillment(LoopbackLink.LOOPBACK_FULFILLMENT).build();
+      }
+    };
+    final LinkManager linkManager = mock(LinkManager.class);
+    when(linkManager.getOrCreateLink(outgoingAccountId)).thenReturn((Link) blockingLink);
+    final AccountSettingsRepository accountSettingsRepository = mock(AccountSettingsRepository.class);
+    when(accountSettingsRepository.findByAccountIdWithConversion(incomingAccountId))
+      .thenReturn(Optional.of(peerAccountSettings(incomingAccountId)));
+    when(accountSettingsRepository.findByAccountIdWithConversion(outgoingAccountId))
+      .thenReturn(Optional.of(peerAccountSettings(outgoingAccountId)));
+
+    final DefaultILPv4PacketSwitch packetSwitch = new DefaultILPv4PacketSwitch(
+      Collections.singletonList(new BalanceIlpPacketFilter(packetRejector, balanceTracker)),
+      Collections.singletonList(
+        new OutgoingBalanceLinkFilter(() -> operatorAddress, balanceTracker, mock(SettlementService.class))
+      ),
+      linkManager,
+      (sourceAccountSettings, incomingPreparePacket) -> NextHopInfo.builder()
+        .nextHopAccountId(outgoingAccountId)
+        .nextHopPacket(incomingPreparePacket)
+        .build(),
+      mock(ConnectorExceptionHandler.class),
+      packetRejector,
+      new AccountSettingsLoadingCache(accountSettingsRepository)
+    );
+
+    final InterledgerResponsePacket response =
+      packetSwitch.switchPacketAsync(incomingAccountId, preparePacket).get(30, TimeUnit.SECONDS);
+
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+    assertThat(balanceTracker.balance(incomingAccountId).clearingBalance(), is(-TEN));
+    assertThat(balanceTracker.balance(outgoingAccountId).clearingBalance(), is(TEN));
+  }
+
+  @Test
+  public void preparesAreRefusedWhileTheQueueIsFull() throws Exception {
+    final CountDownLatch redisCalled = new CountDownLatch(1);
+    final CountDownLatch redisReleased = new CountDownLatch(1);
+    final RedisTemplate<String, String> blockingRedisTemplate = mock(RedisTemplate.class);
+    when(blockingRedisTemplate.execute(any(RedisCallback.class))).thenAnswer(invocation -> {
+      redisCalled.countDown();
+      redisReleased.await();
+      throw new IllegalStateException("Redis is unavailable");
+    });
+    final BatchingRedisBalanceTracker busyTracker = new BatchingRedisBalanceTracker(
+      updateBalanceForPrepareScript, updateBalanceForFulfillScript, updateBalanceForRejectScript,
+      updateBalanceForIncomingSettlment, updateBalanceForSettlementRefund, updateBalancesBatchScript,
+      blockingRedisTemplate, RedisKeyLayout.STANDALONE, 1, 0, TimeUnit.MICROSECONDS, 2, metrics
+    );
+    try {
+      // The batching thread takes the first update, and then waits for Redis while the queue fills up.
+      final CompletableFuture<Void> inFlight =
+        busyTracker.updateBalanceForPrepareAsync(ACCOUNT_ID, ONE, Optional.empty());
+      assertThat(redisCalled.await(30, TimeUnit.SECONDS), is(true));
+      final CompletableFuture<Void> queued1 =
+        busyTracker.updateBalanceForPrepareAsync(ACCOUNT_ID, ONE, Optional.empty());
+      final CompletableFuture<Void> queued2 = busyTracker.updateBalanceForRejectAsync(ACCOUNT_ID, ONE);
+
+      final CompletableFuture<Void> refused =
+        busyTracker.updateBalanceForPrepareAsync(ACCOUNT_ID, ONE, Optional.empty());
+      try {
+        refused.get(30, TimeUnit.SECONDS);
+        fail("should have failed but did not!");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause() instanceof BalanceTrackerBusyException, is(true));
+      }
+      assertThat(queued1.isDone(), is(false));
+      assertThat(queued2.isDone(), is(false));
+
+      redisReleased.countDown();
+      for (CompletableFuture<Void> future : Arrays.asList(inFlight, queued1, queued2)) {
+        try {
+          future.get(30, TimeUnit.SECONDS);
+          fail("should have failed but did not!");
+        } catch (ExecutionException e) {
+          assertThat(e.getCause() instanceof BalanceTrackerBusyException, is(false));
+        }
+      }
+    } finally {
+      redisReleased.countDown();
+      busyTracker.close();
+    }
+  }
+
+  @Test
+  public void updatesQueuedWhileClosingAllComplete() throws Exception {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    final CountDownLatch start = new CountDownLatch(NUM_THREADS);
+    final List<Future<List<CompletableFuture<Void>>>> submitters = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      submitters.add(executor.submit(() -> {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        start.countDown();
+        for (int j = 0; j < UPDATES_PER_THREAD * 10; j++) {
+          futures.add(balanceTracker.updateBalanceForRejectAsync(accountId, ONE));
+        }
+        return futures;
+      }));
+    }
+    start.await();
+    balanceTracker.close();
+
+    for (Future<List<CompletableFuture<Void>>> submitter : submitters) {
+      for (CompletableFuture<Void> future : submitter.get(30, TimeUnit.SECONDS)) {
+        // Every update either succeeds or fails, but none is left behind in the queue.
+        try {
+          future.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          assertThat(e.getCause() instanceof BalanceTrackerException, is(true));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void clusterMastersAreSentTheirSlotsInParallel() throws Exception {
+    final RedisClusterNode master1 = RedisClusterNode.newRedisClusterNode()
+      .listeningAt("redis-1", 6379).promotedAs(NodeType.MASTER).serving(new SlotRange(0, 8191)).build();
+    final RedisClusterNode master2 = RedisClusterNode.newRedisClusterNode()
+      .listeningAt("redis-2", 6379).promotedAs(NodeType.MASTER).serving(new SlotRange(8192, 16383)).build();
+    final AccountId account1 = accountIdInSlots(0, 8191);
+    final AccountId account2 = accountIdInSlots(8192, 16383);
+
+    // Each master waits for the other, so the batch only succeeds if both are sent their slots at the same time.
+    final CyclicBarrier bothMasters = new CyclicBarrier(2);
+    final JedisCluster jedisCluster = mock(JedisCluster.class, invocation -> {
+      if (!invocation.getMethod().getName().equals("evalsha")) {
+        throw new UnsupportedOperationException(invocation.getMethod().getName());
+      }
+      bothMasters.await(10, TimeUnit.SECONDS);
+      final List<Object> results = new ArrayList<>();
+      for (int i = 0; i < (Integer) invocation.getArgument(1); i++) {
+        results.add(Arrays.asList(1L, 0L));
+      }
+      return results;
+    });
+    final RedisClusterConnection clusterConnection = mock(RedisClusterConnection.class);
+    when(clusterConnection.getNativeConnection()).thenReturn(jedisCluster);
+    when(clusterConnection.clusterGetNodes()).thenReturn(Arrays.asList(master1, master2));
+    final RedisTemplate<String, String> clusterRedisTemplate = mock(RedisTemplate.class);
+    when(clusterRedisTemplate.execute(any(RedisCallback.class))).thenAnswer(
+      invocation -> ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(clusterConnection)
+    );
+
+    final BatchingRedisBalanceTracker clusterTracker = new BatchingRedisBalanceTracker(
+      updateBalanceForPrepareScript, updateBalanceForFulfillScript, updateBalanceForRejectScript,
+      updateBalanceForIncomingSettlment, updateBalanceForSettlementRefund, updateBalancesBatchScript,
+      clusterRedisTemplate, RedisKeyLayout.CLUSTER, 2, 10, TimeUnit.SECONDS, 1024, metrics
+    );
+    try {
+      final CompletableFuture<Void> update1 = clusterTracker.updateBalanceForRejectAsync(account1, ONE);
+      final CompletableFuture<Void> update2 = clusterTracker.updateBalanceForRejectAsync(account2, ONE);
+
+      CompletableFuture.allOf(update1, update2).get(30, TimeUnit.SECONDS);
+      assertThat(clusterTracker.getNumBatches(), is(2L));
+    } finally {
+      clusterTracker.close();
+    }
+  }
+
+  /**
+   * @return The id of an account whose balance is kept, under {@link RedisKeyLayout#CLUSTER}, in a slot between {@code
+   * minSlot} and {@code maxSlot}.
+   */
+  private AccountId accountIdInSlots(final int minSlot, final int maxSlot) {
+    for (int i = 0; ; i++) {
+      final AccountId accountId = AccountId.of("account" + i);
+      final int slot = ClusterSlotHashUtil.calculateSlot(RedisKeyLayout.CLUSTER.accountKey(accountId));
+      if (slot >= minSlot && slot <= maxSlot) {
+        return accountId;
+      }
+    }
+  }
+
+  private static AccountSettings peerAccountSettings(final AccountId accountId) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .accountRelationship(AccountRelationship.PEER)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LoopbackLink.LINK_TYPE)
+      .build();
+  }
+
+  private AccountSettings accountSettings(final AccountId accountId, final Optional<Long> settleThreshold) {
+    final AccountBalanceSettings balanceSettings = mock(AccountBalanceSettings.class);
+    when(balanceSettings.settleThreshold()).thenReturn(settleThreshold);
+    when(balanceSettings.settleTo()).thenReturn(ZERO);
+
+    final AccountSettings accountSettings = mock(AccountSettings.class);
+    when(accountSettings.accountId()).thenReturn(accountId);
+    when(accountSettings.balanceSettings()).thenReturn(balanceSettings);
+    return accountSettings;
+  }
+}
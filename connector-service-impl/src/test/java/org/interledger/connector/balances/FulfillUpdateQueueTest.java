@@ -0,0 +1,250 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.link.LinkType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Unit tests for {@link FulfillUpdateQueue}, using an {@link InMemoryBalanceTracker}.
+ */
+public class FulfillUpdateQueueTest {
+
+  private static final AccountSettings ALICE = accountSettings(AccountId.of("alice"));
+  private static final AccountSettings BOB = accountSettings(AccountId.of("bob"));
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private InMemoryBalanceTracker balanceTracker;
+  private List<Long> appliedAmounts;
+  private CountDownLatch release;
+  private Path spillDirectory;
+
+  @Before
+  public void setUp() throws Exception {
+    this.balanceTracker = new InMemoryBalanceTracker();
+    this.appliedAmounts = Collections.synchronizedList(new ArrayList<>());
+    this.release = new CountDownLatch(0);
+    this.spillDirectory = temporaryFolder.newFolder("spill").toPath();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+  }
+
+  @Test
+  public void updatesAreAppliedInOrder() {
+    try (FulfillUpdateQueue queue = newQueue(4, 1000)) {
+      for (long i = 1; i <= 100; i++) {
+        queue.submit(ALICE, i);
+        queue.submit(BOB, 1L);
+      }
+      awaitTrue(() -> balanceTracker.balance(BOB.accountId()).clearingBalance() == 100L);
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 5050L);
+
+      final List<Long> aliceAmounts = new ArrayList<>();
+      synchronized (appliedAmounts) {
+        appliedAmounts.stream().filter(amount -> amount != 1L).forEach(aliceAmounts::add);
+      }
+      for (int i = 1; i < aliceAmounts.size(); i++) {
+        assertThat(aliceAmounts.get(i) > aliceAmounts.get(i - 1), is(true));
+      }
+    }
+  }
+
+  @Test
+  public void overflowIsSpilledAndApplied() {
+    this.release = new CountDownLatch(1);
+    try (FulfillUpdateQueue queue = newQueue(1, 2)) {
+      for (long i = 1; i <= 20; i++) {
+        queue.submit(ALICE, i);
+      }
+      assertThat(queue.isSpilling(), is(true));
+
+      release.countDown();
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 210L);
+      awaitTrue(() -> !queue.isSpilling());
+
+      final List<Long> expected = new ArrayList<>();
+      for (long i = 1; i <= 20; i++) {
+        expected.add(i);
+      }
+      assertThat(appliedAmounts, is(expected));
+
+      // Once drained, updates are queued in memory again.
+      queue.submit(ALICE, 1L);
+      assertThat(queue.isSpilling(), is(false));
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 211L);
+    }
+  }
+
+  @Test
+  public void spilledUpdatesAreAppliedOnRestart() {
+    this.release = new CountDownLatch(1);
+    final FulfillUpdateQueue queue = newQueue(1, 2);
+    for (long i = 1; i <= 20; i++) {
+      queue.submit(ALICE, i);
+    }
+    // The first update is stuck in the listener, and everything else ends up on disk.
+    queue.close();
+    assertThat(balanceTracker.balance(ALICE.accountId()).clearingBalance(), is(1L));
+    release.countDown();
+
+    try (FulfillUpdateQueue restarted = newQueue(1, 2)) {
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 210L);
+      awaitTrue(() -> !restarted.isSpilling());
+    }
+  }
+
+  @Test
+  public void failedUpdatesAreRetriedUntilApplied() {
+    this.balanceTracker = spy(new InMemoryBalanceTracker());
+    final AtomicInteger failuresRemaining = new AtomicInteger(3);
+    doAnswer(invocation -> {
+      if (failuresRemaining.getAndDecrement() > 0) {
+        throw new BalanceTrackerException("balance tracker unavailable");
+      }
+      return invocation.callRealMethod();
+    }).when(balanceTracker).updateBalanceForFulfill(any(), anyLong());
+
+    try (FulfillUpdateQueue queue = newQueue(1, 1000)) {
+      for (long i = 1; i <= 5; i++) {
+        queue.submit(ALICE, i);
+      }
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 15L);
+      awaitTrue(() -> !queue.isSpilling());
+      assertThat(appliedAmounts.size(), is(5));
+    }
+  }
+
+  @Test
+  public void retriesReuseTheIdempotencyKey() {
+    this.balanceTracker = spy(new InMemoryBalanceTracker());
+    final Map<Long, Set<String>> keysByAmount = new ConcurrentHashMap<>();
+    final AtomicInteger failuresRemaining = new AtomicInteger(3);
+    doAnswer(invocation -> {
+      keysByAmount.computeIfAbsent(invocation.getArgument(2), amount -> ConcurrentHashMap.newKeySet())
+        .add(invocation.getArgument(0));
+      if (failuresRemaining.getAndDecrement() > 0) {
+        throw new BalanceTrackerException("balance tracker unavailable");
+      }
+      return invocation.callRealMethod();
+    }).when(balanceTracker).updateBalanceForFulfill(anyString(), any(), anyLong());
+
+    try (FulfillUpdateQueue queue = newQueue(1, 1000)) {
+      queue.submit(ALICE, 1L);
+      queue.submit(ALICE, 2L);
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 3L);
+    }
+
+    // The first update failed three times, but every attempt of it used the same key.
+    assertThat(keysByAmount.get(1L).size(), is(1));
+    assertThat(keysByAmount.get(2L).size(), is(1));
+    assertThat(keysByAmount.get(1L).equals(keysByAmount.get(2L)), is(false));
+  }
+
+  @Test
+  public void spilledUpdatesKeepTheirIdempotencyKeyOnRestart() {
+    this.balanceTracker = spy(new InMemoryBalanceTracker());
+    final List<String> keys = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> {
+      keys.add(invocation.getArgument(0));
+      return invocation.callRealMethod();
+    }).when(balanceTracker).updateBalanceForFulfill(anyString(), any(), anyLong());
+
+    this.release = new CountDownLatch(1);
+    final FulfillUpdateQueue queue = newQueue(1, 2);
+    for (long i = 1; i <= 20; i++) {
+      queue.submit(ALICE, i);
+    }
+    queue.close();
+    release.countDown();
+
+    try (FulfillUpdateQueue restarted = newQueue(1, 2)) {
+      awaitTrue(() -> balanceTracker.balance(ALICE.accountId()).clearingBalance() == 210L);
+    }
+
+    // Updates replayed by the restarted queue carry the keys that the first queue gave them.
+    assertThat(keys.size(), is(20));
+    assertThat(new HashSet<>(keys).size(), is(20));
+    final String prefix = keys.get(0).substring(0, keys.get(0).lastIndexOf(':') + 1);
+    for (String key : keys) {
+      assertThat(key, startsWith(prefix));
+    }
+  }
+
+  private FulfillUpdateQueue newQueue(final int numLanes, final int laneCapacity) {
+    return new FulfillUpdateQueue(
+      balanceTracker,
+      (accountSettings, amount, response) -> {
+        appliedAmounts.add(amount);
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      },
+      accountId -> accountId.equals(ALICE.accountId()) ? Optional.of(ALICE) : Optional.of(BOB),
+      numLanes,
+      laneCapacity,
+      spillDirectory,
+      100
+    );
+  }
+
+  private void awaitTrue(final BooleanSupplier condition) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertThat("timed out", System.nanoTime() < deadline, is(true));
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static AccountSettings accountSettings(final AccountId accountId) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LinkType.of("Loopback"))
+      .accountRelationship(AccountRelationship.PEER)
+      .balanceSettings(AccountBalanceSettings.builder().build())
+      .build();
+  }
+}
@@ -0,0 +1,163 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link InMemoryBalanceTracker}.
+ */
+public class InMemoryBalanceTrackerTest {
+
+  private static final AccountId ACCOUNT_ID = AccountId.of("alice");
+  private static final int NUM_THREADS = 16;
+  private static final int UPDATES_PER_THREAD = 1000;
+
+  private InMemoryBalanceTracker balanceTracker;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    this.balanceTracker = new InMemoryBalanceTracker();
+    this.executor = Executors.newFixedThreadPool(NUM_THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void balanceOfUnknownAccount() {
+    final AccountBalance balance = balanceTracker.balance(ACCOUNT_ID);
+    assertThat(balance.clearingBalance(), is(0L));
+    assertThat(balance.prepaidAmount(), is(0L));
+  }
+
+  @Test
+  public void prepareAfterIncomingSettlement() {
+    balanceTracker.updateBalanceForIncomingSettlement("idempotence", ACCOUNT_ID, 5L);
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 8L, Optional.of(-10L));
+
+    final AccountBalance balance = balanceTracker.balance(ACCOUNT_ID);
+    assertThat(balance.clearingBalance(), is(-3L));
+    assertThat(balance.prepaidAmount(), is(0L));
+  }
+
+  @Test
+  public void prepareBelowMinBalance() {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 5L, Optional.of(-5L));
+    try {
+      balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-5L));
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      assertThat(e.getMessage().contains("under its minimum balance"), is(true));
+    }
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-5L));
+  }
+
+  @Test
+  public void concurrentPreparesNeverExceedMinBalance() throws Exception {
+    final long minBalance = -(NUM_THREADS * UPDATES_PER_THREAD / 2);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        int numSucceeded = 0;
+        for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+          try {
+            balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(minBalance));
+            numSucceeded++;
+          } catch (BalanceTrackerException e) {
+            // Expected once the account reaches its min balance.
+          }
+        }
+        return numSucceeded;
+      }));
+    }
+    start.countDown();
+
+    long numSucceeded = 0;
+    for (Future<Integer> future : futures) {
+      numSucceeded += future.get(30, TimeUnit.SECONDS);
+    }
+    assertThat(numSucceeded, is(-minBalance));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(minBalance));
+  }
+
+  @Test
+  public void concurrentUpdatesAreNotLost() throws Exception {
+    final AccountSettings accountSettings = accountSettings(Optional.empty());
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int j = 0; j < UPDATES_PER_THREAD; j++) {
+          balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 10L, Optional.empty());
+          balanceTracker.updateBalanceForReject(ACCOUNT_ID, 1L);
+          balanceTracker.updateBalanceForFulfill(accountSettings, 2L);
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(NUM_THREADS * UPDATES_PER_THREAD * -7L));
+  }
+
+  @Test
+  public void fulfillAboveSettleThreshold() {
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings(Optional.of(10L)), 11L);
+
+    assertThat(response.accountBalance().clearingBalance(), is(11L));
+    assertThat(response.clearingAmountToSettle(), is(11L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+  }
+
+  @Test
+  public void fulfillAtSettleThreshold() {
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings(Optional.of(10L)), 10L);
+
+    assertThat(response.clearingAmountToSettle(), is(10L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+  }
+
+  private AccountSettings accountSettings(final Optional<Long> settleThreshold) {
+    final AccountBalanceSettings balanceSettings = mock(AccountBalanceSettings.class);
+    when(balanceSettings.settleThreshold()).thenReturn(settleThreshold);
+    when(balanceSettings.settleTo()).thenReturn(0L);
+
+    final AccountSettings accountSettings = mock(AccountSettings.class);
+    when(accountSettings.accountId()).thenReturn(ACCOUNT_ID);
+    when(accountSettings.balanceSettings()).thenReturn(balanceSettings);
+    return accountSettings;
+  }
+}
@@ -0,0 +1,324 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.link.LinkType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Unit tests for {@link JournalingBalanceTracker}, using an {@link InMemoryBalanceTracker} that can be made
+ * unavailable.
+ */
+public class JournalingBalanceTrackerTest {
+
+  private static final AccountSettings ACCOUNT = AccountSettings.builder()
+    .accountId(AccountId.of("alice"))
+    .assetCode("USD")
+    .assetScale(2)
+    .linkType(LinkType.of("Loopback"))
+    .accountRelationship(AccountRelationship.PEER)
+    .balanceSettings(AccountBalanceSettings.builder().settleThreshold(10L).settleTo(0L).build())
+    .build();
+  private static final AccountId ACCOUNT_ID = ACCOUNT.accountId();
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private UnreliableBalanceTracker delegate;
+  private List<Long> settledAmounts;
+  private Path directory;
+  private JournalingBalanceTracker balanceTracker;
+
+  @Before
+  public void setUp() throws Exception {
+    this.delegate = new UnreliableBalanceTracker();
+    this.settledAmounts = new ArrayList<>();
+    this.directory = temporaryFolder.newFolder("journal").toPath();
+    this.balanceTracker = newBalanceTracker();
+  }
+
+  @After
+  public void tearDown() {
+    balanceTracker.close();
+  }
+
+  @Test
+  public void changesAreJournaled() throws Exception {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 10L, Optional.empty());
+    balanceTracker.updateBalanceForReject(ACCOUNT_ID, 4L);
+    balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 1L);
+    balanceTracker.close();
+
+    assertThat(delegate.balance(ACCOUNT_ID).netBalance().longValue(), is(-5L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(-5L));
+  }
+
+  @Test
+  public void failedPreparesAreDiscarded() throws Exception {
+    delegate.available = false;
+    try {
+      balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 10L, Optional.empty());
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      // Expected.
+    }
+    delegate.available = true;
+    balanceTracker.replay();
+    balanceTracker.close();
+
+    assertThat(delegate.balance(ACCOUNT_ID).netBalance().longValue(), is(0L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).discarded(), is(-10L));
+  }
+
+  @Test
+  public void failedChangesAreReplayedOnceRecovered() {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 20L, Optional.empty());
+
+    delegate.available = false;
+    updateBalanceForRejectQuietly(5L);
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(-20L));
+
+    delegate.available = true;
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(-15L));
+
+    // Replaying again has no effect.
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(-15L));
+  }
+
+  @Test
+  public void failedChangesAreReplayedAfterRestart() throws Exception {
+    delegate.available = false;
+    updateBalanceForRejectQuietly(5L);
+    try {
+      balanceTracker.updateBalanceForFulfill(ACCOUNT, 11L);
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      // Expected.
+    }
+    balanceTracker.close();
+
+    delegate.available = true;
+    this.balanceTracker = newBalanceTracker();
+    balanceTracker.replay();
+
+    // The replayed fulfill crossed the settle threshold, so its settlement was still initiated.
+    assertThat(settledAmounts, is(Collections.singletonList(16L)));
+    balanceTracker.close();
+    // The settlement is journaled too, so the journal folds to the balance in the delegate.
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(0L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).unresolved(), is(0L));
+  }
+
+  @Test
+  public void failedAsyncChangesAreReplayedOnceRecovered() throws Exception {
+    balanceTracker.updateBalanceForPrepareAsync(ACCOUNT_ID, 20L, Optional.empty()).get(30, TimeUnit.SECONDS);
+
+    delegate.available = false;
+    assertThat(balanceTracker.updateBalanceForRejectAsync(ACCOUNT_ID, 5L).isCompletedExceptionally(), is(true));
+    assertThat(
+      balanceTracker.updateBalanceForPrepareAsync(ACCOUNT_ID, 1L, Optional.empty()).isCompletedExceptionally(), is(true)
+    );
+
+    delegate.available = true;
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(-15L));
+    balanceTracker.close();
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(-15L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).discarded(), is(-1L));
+  }
+
+  @Test
+  public void settlementsAreJournaled() throws Exception {
+    balanceTracker.updateBalanceForFulfill(ACCOUNT, 12L);
+    balanceTracker.updateBalanceForFulfillAsync(ACCOUNT, 3L).get(30, TimeUnit.SECONDS);
+    balanceTracker.close();
+
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(3L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(3L));
+  }
+
+  @Test
+  public void duplicateIncomingSettlementsAreDiscarded() throws Exception {
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 5L), is(true));
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 5L), is(false));
+    balanceTracker.close();
+
+    assertThat(delegate.balance(ACCOUNT_ID).netBalance().longValue(), is(5L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(5L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).discarded(), is(5L));
+  }
+
+  @Test
+  public void replaysThatWereAppliedAreNotAppliedAgain() throws Exception {
+    delegate.available = false;
+    updateBalanceForRejectQuietly(5L);
+
+    // The replay is applied, but reported as failed (e.g., a timeout after Redis executed the update).
+    delegate.available = true;
+    delegate.failAfterApplying = true;
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(5L));
+
+    delegate.failAfterApplying = false;
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(5L));
+    balanceTracker.close();
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(5L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).unresolved(), is(0L));
+  }
+
+  /**
+   * A fulfill that fails is retried by the journal alone, and not also by the {@link FulfillUpdateQueue} that submitted
+   * it, whether or not the failed attempt was applied.
+   */
+  @Test
+  public void queuedFulfillsAreAppliedOnceWhenJournaled() throws Exception {
+    final List<Long> queuedAmounts = Collections.synchronizedList(new ArrayList<>());
+    final Path spillDirectory = temporaryFolder.newFolder("spill").toPath();
+    final Supplier<FulfillUpdateQueue> newQueue = () -> new FulfillUpdateQueue(
+      balanceTracker,
+      (accountSettings, amount, response) -> queuedAmounts.add(amount),
+      accountId -> Optional.of(ACCOUNT),
+      1, 100, spillDirectory, 5_000
+    );
+
+    // Not applied at all.
+    delegate.available = false;
+    try (FulfillUpdateQueue queue = newQueue.get()) {
+      queue.submit(ACCOUNT, 1L);
+    }
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+
+    // Applied, but reported as failed (e.g., a timeout after Redis executed the update).
+    delegate.available = true;
+    delegate.failAfterApplying = true;
+    try (FulfillUpdateQueue queue = newQueue.get()) {
+      queue.submit(ACCOUNT, 2L);
+      queue.submit(ACCOUNT, 3L);
+    }
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(5L));
+    // The queue handed every update over to the journal, rather than applying it again.
+    assertThat(queuedAmounts.isEmpty(), is(true));
+
+    delegate.failAfterApplying = false;
+    balanceTracker.replay();
+    assertThat(delegate.balance(ACCOUNT_ID).clearingBalance(), is(6L));
+    assertThat(settledAmounts.size(), is(1));
+    balanceTracker.close();
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).applied(), is(6L));
+    assertThat(BalanceJournal.fold(directory).get(ACCOUNT_ID).unresolved(), is(0L));
+  }
+
+  private JournalingBalanceTracker newBalanceTracker() {
+    return new JournalingBalanceTracker(
+      delegate,
+      new BalanceJournal(directory, 4096, 1),
+      accountId -> Optional.of(ACCOUNT),
+      (accountSettings, amount, response) -> settledAmounts.add(response.clearingAmountToSettle()),
+      1, TimeUnit.HOURS
+    );
+  }
+
+  private void updateBalanceForRejectQuietly(final long amount) {
+    try {
+      balanceTracker.updateBalanceForReject(ACCOUNT_ID, amount);
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      // Expected.
+    }
+  }
+
+  /**
+   * Like Redis, this de-duplicates incoming settlements and keyed updates.
+   */
+  private static class UnreliableBalanceTracker extends InMemoryBalanceTracker {
+    private final Set<String> idempotencyKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean available = true;
+    private volatile boolean failAfterApplying;
+
+    @Override
+    public void updateBalanceForPrepare(AccountId sourceAccountId, long amount, Optional<Long> minBalance) {
+      checkAvailable();
+      super.updateBalanceForPrepare(sourceAccountId, amount, minBalance);
+    }
+
+    @Override
+    public UpdateBalanceForFulfillResponse updateBalanceForFulfill(AccountSettings accountSettings, long amount) {
+      checkAvailable();
+      return super.updateBalanceForFulfill(accountSettings, amount);
+    }
+
+    @Override
+    public Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+      String idempotencyKey, AccountSettings accountSettings, long amount
+    ) {
+      checkAvailable();
+      if (!idempotencyKeys.add(idempotencyKey)) {
+        return Optional.empty();
+      }
+      final UpdateBalanceForFulfillResponse response = super.updateBalanceForFulfill(accountSettings, amount);
+      if (failAfterApplying) {
+        throw new BalanceTrackerException("Timed out after applying the update");
+      }
+      return Optional.of(response);
+    }
+
+    @Override
+    public void updateBalanceForReject(AccountId sourceAccountId, long amount) {
+      checkAvailable();
+      super.updateBalanceForReject(sourceAccountId, amount);
+    }
+
+    @Override
+    public boolean updateBalanceForReject(String idempotencyKey, AccountId sourceAccountId, long amount) {
+      checkAvailable();
+      if (!idempotencyKeys.add(idempotencyKey)) {
+        return false;
+      }
+      super.updateBalanceForReject(sourceAccountId, amount);
+      if (failAfterApplying) {
+        throw new BalanceTrackerException("Timed out after applying the update");
+      }
+      return true;
+    }
+
+    @Override
+    public boolean updateBalanceForIncomingSettlement(String idempotencyKey, AccountId accountId, long amount) {
+      checkAvailable();
+      return idempotencyKeys.add(idempotencyKey) && super.updateBalanceForIncomingSettlement(
+        idempotencyKey, accountId, amount
+      );
+    }
+
+    private void checkAvailable() {
+      if (!available) {
+        throw new BalanceTrackerException("Balance store is unavailable");
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link LeasingBalanceTracker}, using an {@link InMemoryBalanceTracker} as the shared tracker.
+ */
+public class LeasingBalanceTrackerTest {
+
+  private static final AccountId ACCOUNT_ID = AccountId.of("alice");
+
+  private InMemoryBalanceTracker sharedTracker;
+  private List<BalanceTracker.UpdateBalanceForFulfillResponse> flushedFulfills;
+  private LeasingBalanceTracker balanceTracker;
+
+  @Before
+  public void setUp() {
+    this.sharedTracker = spy(new InMemoryBalanceTracker());
+    this.flushedFulfills = new ArrayList<>();
+    // Flush manually, so that the tests are deterministic.
+    this.balanceTracker = new LeasingBalanceTracker(
+      sharedTracker, 10, 1, TimeUnit.HOURS, (accountSettings, amount, response) -> flushedFulfills.add(response)
+    );
+  }
+
+  @After
+  public void tearDown() {
+    balanceTracker.close();
+  }
+
+  @Test
+  public void prepareWithMinBalanceTakesLease() {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-100L));
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-100L));
+
+    // The whole lease is debited from the shared tracker up front...
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(-10L));
+    assertThat(balanceTracker.getLeases().get(ACCOUNT_ID), is(8L));
+    // ...but the unused part of it still counts towards this node's view of the balance.
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-2L));
+  }
+
+  @Test
+  public void prepareEnforcesMinBalanceWithoutFullLease() {
+    // Only 5 units of headroom, which is not enough for a lease of 10.
+    for (int i = 0; i < 5; i++) {
+      balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-5L));
+    }
+    try {
+      balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-5L));
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      assertThat(e.getMessage().contains("under its minimum balance"), is(true));
+    }
+
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(-5L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-5L));
+  }
+
+  @Test
+  public void rejectCreditsLease() {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 2L, Optional.of(-100L));
+    balanceTracker.updateBalanceForReject(ACCOUNT_ID, 2L);
+
+    assertThat(balanceTracker.getLeases().get(ACCOUNT_ID), is(20L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+  }
+
+  @Test
+  public void deltasAreFlushedAndIdleLeasesReturned() {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 3L, Optional.empty());
+    balanceTracker.updateBalanceForReject(ACCOUNT_ID, 1L);
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-100L));
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(-10L));
+
+    // The lease was used since the last flush, so only the deltas are flushed.
+    balanceTracker.flush();
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(-12L));
+    assertThat(balanceTracker.getLeases().get(ACCOUNT_ID), is(9L));
+
+    // The lease was idle since the last flush, so it is returned.
+    balanceTracker.flush();
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(-3L));
+    assertThat(balanceTracker.getLeases().get(ACCOUNT_ID), is(0L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-3L));
+  }
+
+  @Test
+  public void fulfillBelowSettleThresholdIsDeferred() {
+    final AccountSettings accountSettings = accountSettings(Optional.of(100L));
+
+    // The first fulfill is applied synchronously, to learn the shared balance.
+    balanceTracker.updateBalanceForFulfill(accountSettings, 10L);
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(10L));
+
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings, 10L);
+    assertThat(response.accountBalance().clearingBalance(), is(20L));
+    assertThat(response.clearingAmountToSettle(), is(0L));
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(10L));
+
+    balanceTracker.flush();
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(20L));
+  }
+
+  @Test
+  public void fulfillReachingSettleThresholdTriggersSettlement() {
+    final AccountSettings accountSettings = accountSettings(Optional.of(15L));
+
+    balanceTracker.updateBalanceForFulfill(accountSettings, 10L);
+    balanceTracker.updateBalanceForFulfill(accountSettings, 4L);
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings, 2L);
+
+    assertThat(response.accountBalance().clearingBalance(), is(16L));
+    assertThat(response.clearingAmountToSettle(), is(16L));
+    // The shared tracker reset the balance to `settleTo` when it decided to settle.
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+  }
+
+  @Test
+  public void keyedFulfillKeepsCreditThatFailedToApply() {
+    final AccountSettings accountSettings = accountSettings(Optional.of(15L));
+    balanceTracker.updateBalanceForFulfill(accountSettings, 10L);
+    doThrow(new BalanceTrackerException("unavailable")).when(sharedTracker).updateBalanceForFulfill(any(), anyLong());
+
+    // The credit is owned by this tracker from now on, so it is not thrown back for the caller to retry.
+    final Optional<BalanceTracker.UpdateBalanceForFulfillResponse> response =
+      balanceTracker.updateBalanceForFulfill("fulfill:1", accountSettings, 6L);
+    assertThat(response.get().accountBalance().clearingBalance(), is(16L));
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(10L));
+
+    doCallRealMethod().when(sharedTracker).updateBalanceForFulfill(any(), anyLong());
+    balanceTracker.flush();
+    assertThat(flushedFulfills.size(), is(1));
+    assertThat(flushedFulfills.get(0).clearingAmountToSettle(), is(16L));
+  }
+
+  @Test
+  public void balanceIncludesDeferredFulfills() {
+    final AccountSettings accountSettings = accountSettings(Optional.of(1_000L));
+    balanceTracker.updateBalanceForFulfill(accountSettings, 100L);
+    balanceTracker.updateBalanceForFulfill(accountSettings, 50L);
+
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(100L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(150L));
+  }
+
+  /**
+   * Another node's fulfills may take the cluster-wide balance over the settle threshold, which only the shared tracker
+   * can see, so deferred fulfills must be flushed as fulfills rather than as plain credits.
+   */
+  @Test
+  public void flushedFulfillsAreCheckedAgainstSettleThreshold() {
+    final AccountSettings accountSettings = accountSettings(Optional.of(100L));
+    balanceTracker.updateBalanceForFulfill(accountSettings, 10L);
+    balanceTracker.updateBalanceForFulfill(accountSettings, 10L);
+    // Credited by another node.
+    sharedTracker.updateBalanceForReject(ACCOUNT_ID, 85L);
+
+    balanceTracker.flush();
+
+    assertThat(flushedFulfills.size(), is(1));
+    assertThat(flushedFulfills.get(0).clearingAmountToSettle(), is(105L));
+  }
+
+  @Test
+  public void failedBalanceRefreshDoesNotReapplyFlushedDelta() {
+    balanceTracker.updateBalanceForFulfill(accountSettings(Optional.empty()), 5L);
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 3L, Optional.empty());
+    doThrow(new BalanceTrackerException("unavailable")).when(sharedTracker).balance(ACCOUNT_ID);
+
+    balanceTracker.flush();
+    balanceTracker.flush();
+
+    doCallRealMethod().when(sharedTracker).balance(ACCOUNT_ID);
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(2L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(2L));
+  }
+
+  @Test
+  public void closeFlushesEverything() {
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-100L));
+    balanceTracker.updateBalanceForFulfill(accountSettings(Optional.empty()), 5L);
+    balanceTracker.updateBalanceForFulfill(accountSettings(Optional.empty()), 5L);
+
+    balanceTracker.close();
+    assertThat(sharedTracker.balance(ACCOUNT_ID).clearingBalance(), is(9L));
+  }
+
+  private AccountSettings accountSettings(final Optional<Long> settleThreshold) {
+    final AccountBalanceSettings balanceSettings = mock(AccountBalanceSettings.class);
+    when(balanceSettings.settleThreshold()).thenReturn(settleThreshold);
+    when(balanceSettings.settleTo()).thenReturn(0L);
+
+    final AccountSettings accountSettings = mock(AccountSettings.class);
+    when(accountSettings.accountId()).thenReturn(ACCOUNT_ID);
+    when(accountSettings.balanceSettings()).thenReturn(balanceSettings);
+    return accountSettings;
+  }
+}
@@ -0,0 +1,67 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for {@link LongRedisSerializer}.
+ */
+public class LongRedisSerializerTest {
+
+  private static final long[] VALUES = {
+    0L, 1L, -1L, 9L, 10L, -10L, 99L, 100L, 123456789L, -987654321L,
+    999_999_999_999_999_999L, 1_000_000_000_000_000_000L, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1
+  };
+
+  @Test
+  public void serializeLongMatchesDecimalString() {
+    for (long value : VALUES) {
+      assertThat(
+        new String(LongRedisSerializer.serializeLong(value), StandardCharsets.US_ASCII), is(Long.toString(value))
+      );
+    }
+  }
+
+  @Test
+  public void deserializeLongRoundTrips() {
+    for (long value : VALUES) {
+      assertThat(LongRedisSerializer.deserializeLong(Long.toString(value).getBytes(StandardCharsets.US_ASCII)),
+        is(value));
+    }
+  }
+
+  @Test
+  public void deserializeLongOfMissingValue() {
+    assertThat(LongRedisSerializer.deserializeLong(null), is(0L));
+    assertThat(LongRedisSerializer.deserializeLong(new byte[0]), is(0L));
+  }
+
+  @Test(expected = SerializationException.class)
+  public void deserializeLongOfNonNumber() {
+    LongRedisSerializer.deserializeLong("12a".getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test(expected = SerializationException.class)
+  public void deserializeLongOfSignOnly() {
+    LongRedisSerializer.deserializeLong("-".getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test(expected = SerializationException.class)
+  public void deserializeLongOfOverflow() {
+    LongRedisSerializer.deserializeLong("9223372036854775808".getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void serializeAndDeserializeNull() {
+    final LongRedisSerializer serializer = new LongRedisSerializer();
+    assertThat(serializer.serialize(null).length, is(0));
+    assertThat(serializer.deserialize(null), is(nullValue()));
+    assertThat(serializer.deserialize(serializer.serialize(-42L)), is(-42L));
+  }
+}
@@ -0,0 +1,196 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.link.LinkType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link MappedBalanceTracker}.
+ */
+public class MappedBalanceTrackerTest {
+
+  private static final AccountId ACCOUNT_ID = AccountId.of("alice");
+  private static final int NUM_THREADS = 8;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path path;
+  private MappedBalanceTracker balanceTracker;
+
+  @Before
+  public void setUp() throws Exception {
+    this.path = temporaryFolder.getRoot().toPath().resolve("balances.dat");
+    this.balanceTracker = new MappedBalanceTracker(path, 16, 1, TimeUnit.HOURS);
+  }
+
+  @After
+  public void tearDown() {
+    balanceTracker.close();
+  }
+
+  @Test
+  public void prepareDrawsDownPrepaidAmountFirst() {
+    balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 10L);
+    assertThat(balanceTracker.balance(ACCOUNT_ID).prepaidAmount(), is(10L));
+
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 15L, Optional.empty());
+    assertThat(balanceTracker.balance(ACCOUNT_ID).prepaidAmount(), is(0L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-5L));
+
+    balanceTracker.updateBalanceForReject(ACCOUNT_ID, 15L);
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(10L));
+  }
+
+  @Test
+  public void prepareBelowMinBalance() {
+    try {
+      balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 11L, Optional.of(-10L));
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      assertThat(e.getMessage().contains("under its minimum clearing_balance"), is(true));
+    }
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(0L));
+  }
+
+  @Test
+  public void fulfillTriggersSettlement() {
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings(Optional.of(10L)), 12L);
+
+    assertThat(response.accountBalance().clearingBalance(), is(12L));
+    assertThat(response.clearingAmountToSettle(), is(10L));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(2L));
+  }
+
+  @Test
+  public void incomingSettlementsAreIdempotent() {
+    balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 10L);
+    balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 10L);
+    assertThat(balanceTracker.balance(ACCOUNT_ID).netBalance().longValue(), is(10L));
+  }
+
+  @Test
+  public void incomingSettlementsAreIdempotentAcrossRestarts() {
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 10L), is(true));
+    balanceTracker.close();
+
+    this.balanceTracker = new MappedBalanceTracker(path, 16, 1, TimeUnit.HOURS);
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement("key", ACCOUNT_ID, 10L), is(false));
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement("key", AccountId.of("bob"), 10L), is(true));
+    assertThat(balanceTracker.balance(ACCOUNT_ID).netBalance().longValue(), is(10L));
+  }
+
+  @Test
+  public void closingAWrappingTrackerClosesTheMappedTracker() {
+    final MappedBalanceTracker delegate = spy(balanceTracker);
+    new StripedBalanceTracker(
+      delegate, Collections.singletonList(AccountId.of("bob")), 2, 1, TimeUnit.HOURS
+    ).close();
+
+    verify(delegate).close();
+  }
+
+  @Test
+  public void balancesAreReloaded() {
+    final AccountId otherAccountId = AccountId.of("bob");
+    balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 7L, Optional.empty());
+    balanceTracker.updateBalanceForOutgoingSettlementRefund(otherAccountId, 3L);
+    balanceTracker.close();
+
+    this.balanceTracker = new MappedBalanceTracker(path, 16, 1, TimeUnit.HOURS);
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-7L));
+    assertThat(balanceTracker.balance(otherAccountId).clearingBalance(), is(3L));
+
+    // New accounts are allocated after the reloaded ones.
+    balanceTracker.updateBalanceForReject(AccountId.of("carol"), 1L);
+    assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-7L));
+    assertThat(balanceTracker.balance(AccountId.of("carol")).clearingBalance(), is(1L));
+  }
+
+  @Test
+  public void tableFull() {
+    for (int i = 0; i < 16; i++) {
+      balanceTracker.updateBalanceForReject(AccountId.of("account-" + i), 1L);
+    }
+    try {
+      balanceTracker.updateBalanceForReject(ACCOUNT_ID, 1L);
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      assertThat(e.getMessage().contains("all 16 balance slots are in use"), is(true));
+    }
+  }
+
+  @Test
+  public void concurrentPreparesNeverExceedMinBalance() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < NUM_THREADS; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          int numSucceeded = 0;
+          for (int j = 0; j < 100; j++) {
+            try {
+              balanceTracker.updateBalanceForPrepare(ACCOUNT_ID, 1L, Optional.of(-500L));
+              numSucceeded++;
+            } catch (BalanceTrackerException e) {
+              // Expected once the account runs out of headroom.
+            }
+          }
+          return numSucceeded;
+        }));
+      }
+      start.countDown();
+
+      int numSucceeded = 0;
+      for (Future<Integer> future : futures) {
+        numSucceeded += future.get(30, TimeUnit.SECONDS);
+      }
+      assertThat(numSucceeded, is(500));
+      assertThat(balanceTracker.balance(ACCOUNT_ID).clearingBalance(), is(-500L));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private AccountSettings accountSettings(final Optional<Long> settleThreshold) {
+    return AccountSettings.builder()
+      .accountId(ACCOUNT_ID)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LinkType.of("Loopback"))
+      .accountRelationship(AccountRelationship.PEER)
+      .balanceSettings(AccountBalanceSettings.builder()
+        .settleThreshold(settleThreshold)
+        .settleTo(2L)
+        .build())
+      .build();
+  }
+}
@@ -156,6 +156,20 @@ public class RedisBalanceTrackerFulfillPacketTest extends AbstractRedisBalanceTr
     assertThat(loadedBalance.netBalance().longValue(), is(ONE));
   }
 
+  @Test
+  public void updateBalanceForFulfillIsAppliedOncePerIdempotencyKey() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    when(accountSettingsMock.accountId()).thenReturn(accountId);
+    assertThat(
+      balanceTracker.updateBalanceForFulfill("journal:1", accountSettingsMock, ONE).get().accountBalance()
+        .clearingBalance(),
+      is(ONE)
+    );
+    assertThat(balanceTracker.updateBalanceForFulfill("journal:1", accountSettingsMock, ONE).isPresent(), is(false));
+
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(ONE));
+  }
+
   @Test
   public void updateBalanceForFulfillWithParamterizedValues() {
     this.initializeAccount(ACCOUNT_ID, this.existingClearingBalance, this.existingPrepaidBalance);
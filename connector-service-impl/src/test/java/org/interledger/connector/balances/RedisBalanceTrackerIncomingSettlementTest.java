@@ -149,6 +149,16 @@ public class RedisBalanceTrackerIncomingSettlementTest extends AbstractRedisBala
     assertThat(loadedBalance.netBalance().longValue(), is(ONE));
   }
 
+  @Test
+  public void duplicateIncomingSettlementIsNotApplied() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    final String idempotencyKey = UUID.randomUUID().toString();
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement(idempotencyKey, accountId, ONE), is(true));
+    assertThat(balanceTracker.updateBalanceForIncomingSettlement(idempotencyKey, accountId, ONE), is(false));
+
+    assertThat(balanceTracker.balance(accountId).netBalance().longValue(), is(ONE));
+  }
+
   @Test
   public void updateBalanceForIncomingSettlementWithParamterizedValues() {
     this.initializeAccount(ACCOUNT_ID, this.existingClearingBalance, this.existingPrepaidBalance);
@@ -129,6 +129,16 @@ public class RedisBalanceTrackerRejectPacketTest extends AbstractRedisBalanceTra
     assertThat(loadedBalance.netBalance().longValue(), is(ONE));
   }
 
+  @Test
+  public void updateBalanceForRejectIsAppliedOncePerIdempotencyKey() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    assertThat(balanceTracker.updateBalanceForReject("journal:1", accountId, ONE), is(true));
+    assertThat(balanceTracker.updateBalanceForReject("journal:1", accountId, ONE), is(false));
+    assertThat(balanceTracker.updateBalanceForReject("journal:2", accountId, ONE), is(true));
+
+    assertThat(balanceTracker.balance(accountId).clearingBalance(), is(2L));
+  }
+
   @Test
   public void updateBalanceForRejectWithParamterizedValues() {
     this.initializeAccount(ACCOUNT_ID, this.existingClearingBalance, this.existingPrepaidBalance);
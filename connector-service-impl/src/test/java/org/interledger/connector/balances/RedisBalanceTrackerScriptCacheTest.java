@@ -0,0 +1,105 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.metrics.BalanceTrackerMetrics;
+
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Unit tests for {@link RedisBalanceTracker} that validate that balance updates survive the loss of Redis's script
+ * cache (e.g., after Redis restarts or fails over).
+ */
+@ContextConfiguration(classes = {AbstractRedisBalanceTrackerTest.Config.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class RedisBalanceTrackerScriptCacheTest extends AbstractRedisBalanceTrackerTest {
+
+  @ClassRule
+  public static final SpringClassRule SPRING_CLASS_RULE = new SpringClassRule();
+
+  @Rule
+  public final SpringMethodRule springMethodRule = new SpringMethodRule();
+
+  @Autowired
+  private RedisBalanceTracker balanceTracker;
+
+  @Autowired
+  private RedisTemplate<String, String> redisTemplate;
+
+  @Autowired
+  private BalanceTrackerMetrics metrics;
+
+  public RedisBalanceTrackerScriptCacheTest() {
+    super(ZERO, ZERO, ZERO, ZERO, ZERO);
+  }
+
+  @Override
+  protected RedisTemplate getRedisTemplate() {
+    return this.redisTemplate;
+  }
+
+  @Test
+  public void updateBalanceAfterScriptCacheFlushed() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    balanceTracker.updateBalanceForPrepare(accountId, TEN, Optional.empty());
+
+    flushScripts();
+    balanceTracker.updateBalanceForPrepare(accountId, ONE, Optional.of(-20L));
+
+    flushScripts();
+    balanceTracker.updateBalanceForReject(accountId, TWO);
+
+    final AccountBalance loadedBalance = balanceTracker.balance(accountId);
+    assertThat(loadedBalance.clearingBalance(), is(-9L));
+    assertThat(loadedBalance.prepaidAmount(), is(ZERO));
+  }
+
+  @Test
+  public void balanceOfLargeAmounts() {
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    initializeAccount(accountId, Long.MIN_VALUE + 1, Long.MAX_VALUE);
+
+    final AccountBalance loadedBalance = balanceTracker.balance(accountId);
+    assertThat(loadedBalance.clearingBalance(), is(Long.MIN_VALUE + 1));
+    assertThat(loadedBalance.prepaidAmount(), is(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void updatesAreRecordedInMetrics() throws IOException {
+    final long numCommands = metrics.commandLatencyNanos().count();
+    final long numUpdates = metrics.updateLatencyNanos().count();
+
+    final AccountId accountId = AccountId.of(UUID.randomUUID().toString());
+    balanceTracker.updateBalanceForPrepare(accountId, TEN, Optional.empty());
+    balanceTracker.updateBalanceForReject(accountId, TWO);
+
+    assertThat(metrics.commandLatencyNanos().count(), is(numCommands + 2));
+    assertThat(metrics.updateLatencyNanos().count(), is(numUpdates + 2));
+    final StringWriter output = new StringWriter();
+    metrics.writePrometheusText(output);
+    assertThat(output.toString().contains("ilp_balance_tracker_failed_commands_total{tracker=\"redis\"}"), is(true));
+  }
+
+  private void flushScripts() {
+    redisTemplate.execute((RedisCallback<Void>) connection -> {
+      connection.scriptFlush();
+      return null;
+    });
+  }
+}
@@ -0,0 +1,51 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.interledger.connector.accounts.AccountId;
+
+import org.junit.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+
+/**
+ * Unit tests for {@link RedisKeyLayout}.
+ */
+public class RedisKeyLayoutTest {
+
+  private static final AccountId ACCOUNT_ID = AccountId.of("alice");
+
+  @Test
+  public void standaloneKeys() {
+    assertThat(RedisKeyLayout.STANDALONE.accountKey(ACCOUNT_ID), is("accounts:alice"));
+    assertThat(RedisKeyLayout.STANDALONE.settlementIdempotenceKey(ACCOUNT_ID, "abc"), is("abc"));
+    assertThat(
+      RedisKeyLayout.STANDALONE.changeIdempotenceKey(ACCOUNT_ID, "abc"), is("accounts:alice:change_idempotence:abc")
+    );
+  }
+
+  @Test
+  public void clusterKeys() {
+    assertThat(RedisKeyLayout.CLUSTER.accountKey(ACCOUNT_ID), is("accounts:{alice}"));
+    assertThat(
+      RedisKeyLayout.CLUSTER.settlementIdempotenceKey(ACCOUNT_ID, "abc"),
+      is("accounts:{alice}:settlement_idempotence:abc")
+    );
+    assertThat(
+      RedisKeyLayout.CLUSTER.changeIdempotenceKey(ACCOUNT_ID, "abc"), is("accounts:{alice}:change_idempotence:abc")
+    );
+  }
+
+  @Test
+  public void clusterKeysOfAnAccountShareASlot() {
+    final int slot = ClusterSlotHashUtil.calculateSlot(RedisKeyLayout.CLUSTER.accountKey(ACCOUNT_ID));
+
+    assertThat(ClusterSlotHashUtil.calculateSlot(
+      RedisKeyLayout.CLUSTER.settlementIdempotenceKey(ACCOUNT_ID, "abc")
+    ), is(slot));
+    assertThat(ClusterSlotHashUtil.calculateSlot(
+      RedisKeyLayout.CLUSTER.changeIdempotenceKey(ACCOUNT_ID, "abc")
+    ), is(slot));
+    assertThat(ClusterSlotHashUtil.calculateSlot("alice"), is(slot));
+  }
+}
@@ -0,0 +1,229 @@
+package org.interledger.connector.balances;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.link.LinkType;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link StripedBalanceTracker}, using an {@link InMemoryBalanceTracker} as the delegate.
+ */
+public class StripedBalanceTrackerTest {
+
+  private static final AccountId PARENT = AccountId.of("parent");
+  private static final AccountId PEER = AccountId.of("peer");
+  private static final int NUM_STRIPES = 4;
+  private static final int NUM_THREADS = 8;
+
+  private InMemoryBalanceTracker delegate;
+  private StripedBalanceTracker balanceTracker;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    this.delegate = new InMemoryBalanceTracker();
+    // Rebalance manually, so that the tests are deterministic.
+    this.balanceTracker = new StripedBalanceTracker(
+      delegate, ImmutableList.of(PARENT), NUM_STRIPES, 1, TimeUnit.HOURS
+    );
+    this.executor = Executors.newFixedThreadPool(NUM_THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    balanceTracker.close();
+  }
+
+  @Test
+  public void unstripedAccountsArePassedThrough() {
+    balanceTracker.updateBalanceForPrepare(PEER, 10L, Optional.of(-10L));
+    balanceTracker.updateBalanceForFulfill(accountSettings(PEER, Optional.empty()), 3L);
+
+    assertThat(delegate.balance(PEER).clearingBalance(), is(-7L));
+    assertThat(balanceTracker.balance(PEER).clearingBalance(), is(-7L));
+  }
+
+  @Test
+  public void balanceIsAggregatedAcrossStripes() {
+    for (int i = 0; i < 100; i++) {
+      balanceTracker.updateBalanceForPrepare(PARENT, 10L, Optional.empty());
+      balanceTracker.updateBalanceForReject(PARENT, 1L);
+      balanceTracker.updateBalanceForFulfill(accountSettings(PARENT, Optional.empty()), 2L);
+    }
+
+    assertThat(balanceTracker.balance(PARENT).clearingBalance(), is(-700L));
+    assertThat(delegate.balance(PARENT).clearingBalance(), is(0L));
+
+    balanceTracker.rebalance();
+    assertThat(balanceTracker.balance(PARENT).clearingBalance(), is(-700L));
+    assertThat(delegate.balance(PARENT).clearingBalance(), is(-700L));
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      assertThat(delegate.balance(StripedBalanceTracker.toStripeAccountId(PARENT, i)).clearingBalance(), is(0L));
+    }
+  }
+
+  @Test
+  public void headroomIsAllocatedBetweenStripes() {
+    balanceTracker.updateBalanceForPrepare(PARENT, 1L, Optional.of(-102L));
+    assertThat(balanceTracker.getStripeMinBalance(PARENT, 0), is(-26L));
+    assertThat(balanceTracker.getStripeMinBalance(PARENT, 1), is(-26L));
+    assertThat(balanceTracker.getStripeMinBalance(PARENT, 2), is(-25L));
+    assertThat(balanceTracker.getStripeMinBalance(PARENT, 3), is(-25L));
+
+    // The first prepare has used up one unit of headroom.
+    balanceTracker.rebalance();
+    assertThat(balanceTracker.getStripeMinBalance(PARENT, 0), is(-26L));
+    for (int i = 1; i < NUM_STRIPES; i++) {
+      assertThat(balanceTracker.getStripeMinBalance(PARENT, i), is(-25L));
+    }
+  }
+
+  @Test
+  public void concurrentPreparesNeverExceedMinBalance() throws Exception {
+    final long minBalance = -1000L;
+
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < NUM_THREADS; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        int numSucceeded = 0;
+        for (int j = 0; j < 200; j++) {
+          try {
+            balanceTracker.updateBalanceForPrepare(PARENT, 1L, Optional.of(minBalance));
+            numSucceeded++;
+          } catch (BalanceTrackerException e) {
+            // Expected once the stripes run out of headroom.
+          }
+        }
+        return numSucceeded;
+      }));
+    }
+    start.countDown();
+
+    long numSucceeded = 0;
+    for (Future<Integer> future : futures) {
+      numSucceeded += future.get(30, TimeUnit.SECONDS);
+    }
+    final long balance = balanceTracker.balance(PARENT).clearingBalance();
+    assertThat(balance, is(-numSucceeded));
+    assertThat(balance >= minBalance, is(true));
+
+    // Once all remaining headroom has been reallocated, the account can be drawn down to exactly its min balance.
+    balanceTracker.rebalance();
+    while (balanceTracker.balance(PARENT).clearingBalance() > minBalance) {
+      balanceTracker.updateBalanceForPrepare(PARENT, 1L, Optional.of(minBalance));
+      balanceTracker.rebalance();
+    }
+    assertThat(balanceTracker.balance(PARENT).clearingBalance(), is(minBalance));
+  }
+
+  @Test
+  public void prepareBelowMinBalance() {
+    for (int i = 0; i < 4; i++) {
+      balanceTracker.updateBalanceForPrepare(PARENT, 1L, Optional.of(-4L));
+    }
+    try {
+      balanceTracker.updateBalanceForPrepare(PARENT, 1L, Optional.of(-4L));
+      fail("should have failed but did not!");
+    } catch (BalanceTrackerException e) {
+      assertThat(e.getMessage().contains("under its minimum balance"), is(true));
+    }
+    assertThat(balanceTracker.balance(PARENT).clearingBalance(), is(-4L));
+  }
+
+  @Test
+  public void asyncPreparesAreRetriedOnOtherStripesBeforeBeingRejected() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      balanceTracker.updateBalanceForPrepareAsync(PARENT, 1L, Optional.of(-4L)).get(30, TimeUnit.SECONDS);
+    }
+    try {
+      balanceTracker.updateBalanceForPrepareAsync(PARENT, 1L, Optional.of(-4L)).get(30, TimeUnit.SECONDS);
+      fail("should have failed but did not!");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof BalanceTrackerException, is(true));
+      assertThat(e.getCause().getMessage().contains("under its minimum balance"), is(true));
+    }
+    balanceTracker.updateBalanceForRejectAsync(PARENT, 1L).get(30, TimeUnit.SECONDS);
+    assertThat(balanceTracker.balance(PARENT).clearingBalance(), is(-3L));
+  }
+
+  @Test
+  public void fulfillWithSettleThresholdUsesHomeBalance() {
+    final AccountSettings accountSettings = accountSettings(PARENT, Optional.of(10L));
+
+    final BalanceTracker.UpdateBalanceForFulfillResponse response =
+      balanceTracker.updateBalanceForFulfill(accountSettings, 11L);
+
+    assertThat(response.clearingAmountToSettle(), is(11L));
+    // The settled amount was deducted from the home balance, which is reset to `settleTo`.
+    assertThat(delegate.balance(PARENT).clearingBalance(), is(0L));
+  }
+
+  @Test
+  public void keyedFulfillsAreAlwaysAppliedToTheSameStripe() {
+    final Map<String, Set<AccountId>> stripesByKey = new HashMap<>();
+    final InMemoryBalanceTracker recordingDelegate = new InMemoryBalanceTracker() {
+      @Override
+      public Optional<UpdateBalanceForFulfillResponse> updateBalanceForFulfill(
+        final String idempotencyKey, final AccountSettings destinationAccountSettings, final long amount
+      ) {
+        stripesByKey.computeIfAbsent(idempotencyKey, key -> new HashSet<>()).add(destinationAccountSettings.accountId());
+        return super.updateBalanceForFulfill(idempotencyKey, destinationAccountSettings, amount);
+      }
+    };
+    try (StripedBalanceTracker stripedTracker = new StripedBalanceTracker(
+      recordingDelegate, ImmutableList.of(PARENT), NUM_STRIPES, 1, TimeUnit.HOURS
+    )) {
+      for (int attempt = 0; attempt < 10; attempt++) {
+        for (int change = 0; change < 20; change++) {
+          final Optional<BalanceTracker.UpdateBalanceForFulfillResponse> response = stripedTracker
+            .updateBalanceForFulfill("change-" + change, accountSettings(PARENT, Optional.empty()), 1L);
+          assertThat(response.get().accountBalance().accountId(), is(PARENT));
+        }
+      }
+    }
+
+    assertThat(stripesByKey.size(), is(20));
+    stripesByKey.values().forEach(stripes -> assertThat(stripes.size(), is(1)));
+  }
+
+  private AccountSettings accountSettings(final AccountId accountId, final Optional<Long> settleThreshold) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LinkType.of("Loopback"))
+      .accountRelationship(AccountRelationship.PARENT)
+      .balanceSettings(AccountBalanceSettings.builder()
+        .settleThreshold(settleThreshold)
+        .settleTo(0L)
+        .build())
+      .build();
+  }
+}
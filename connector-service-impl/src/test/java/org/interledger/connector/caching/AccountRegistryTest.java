@@ -0,0 +1,219 @@
+package org.interledger.connector.caching;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.link.Link;
+import org.interledger.connector.link.LinkType;
+import org.interledger.connector.links.filters.DefaultLinkFilterChain;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Unit tests for {@link AccountRegistry}.
+ */
+public class AccountRegistryTest {
+
+  private static final AccountId ALICE = AccountId.of("alice");
+  private static final AccountId BOB = AccountId.of("bob");
+
+  private AccountRegistry accountRegistry;
+
+  @Before
+  public void setUp() {
+    accountRegistry = new AccountRegistry();
+  }
+
+  @Test
+  public void registerAssignsDenseHandles() {
+    assertThat(accountRegistry.getHandle(ALICE), is(AccountRegistry.NO_HANDLE));
+    assertThat(accountRegistry.getEntry(ALICE), is(nullValue()));
+
+    assertThat(accountRegistry.register(ALICE), is(0));
+    assertThat(accountRegistry.register(BOB), is(1));
+    assertThat(accountRegistry.register(ALICE), is(0));
+
+    assertThat(accountRegistry.size(), is(2));
+    assertThat(accountRegistry.getHandle(BOB), is(1));
+    assertThat(accountRegistry.getEntry(1).accountId(), is(BOB));
+    assertThat(accountRegistry.getEntry(1).linkFilterChain(), is(Optional.empty()));
+    assertThat(accountRegistry.getEntry(2), is(nullValue()));
+    assertThat(accountRegistry.getEntry(AccountRegistry.NO_HANDLE), is(nullValue()));
+  }
+
+  @Test
+  public void updatePublishesNewEntry() {
+    final DefaultLinkFilterChain linkFilterChain =
+      new DefaultLinkFilterChain(Collections.emptyList(), mock(Link.class));
+
+    final AccountRegistry.Entry originalEntry = accountRegistry.getEntry(accountRegistry.register(ALICE));
+    final AccountRegistry.Entry updatedEntry =
+      accountRegistry.update(ALICE, entry -> entry.withLinkFilterChain(linkFilterChain));
+
+    assertThat(updatedEntry.handle(), is(0));
+    assertThat(updatedEntry.linkFilterChain(), is(Optional.of(linkFilterChain)));
+    assertThat(accountRegistry.getEntry(ALICE), is(sameInstance(updatedEntry)));
+    // Entries are immutable, so a reader holding the previous entry is unaffected.
+    assertThat(originalEntry.linkFilterChain(), is(Optional.empty()));
+  }
+
+  @Test
+  public void evictLinkFilterChainDiscardsOnlyThatAccountsChain() {
+    final Link<?> link = mock(Link.class);
+    accountRegistry.update(
+      ALICE, entry -> entry.withLinkFilterChain(new DefaultLinkFilterChain(Collections.emptyList(), link))
+    );
+    accountRegistry.update(
+      BOB, entry -> entry.withLinkFilterChain(new DefaultLinkFilterChain(Collections.emptyList(), link))
+    );
+
+    accountRegistry.evictLinkFilterChain(ALICE);
+    accountRegistry.evictLinkFilterChain(AccountId.of("unregistered"));
+
+    assertThat(accountRegistry.getEntry(ALICE).linkFilterChain(), is(Optional.empty()));
+    assertThat(accountRegistry.getEntry(BOB).linkFilterChain().isPresent(), is(true));
+    assertThat(accountRegistry.getHandle(ALICE), is(0));
+    assertThat(accountRegistry.getHandle(AccountId.of("unregistered")), is(AccountRegistry.NO_HANDLE));
+  }
+
+  @Test
+  public void resolveReadsSettingsOncePerRecheckInterval() {
+    final AtomicLong nanos = new AtomicLong();
+    accountRegistry = new AccountRegistry(nanos::get);
+    final AccountSettings originalSettings = accountSettings(ALICE, "USD");
+    final AccountSettings updatedSettings = accountSettings(ALICE, "EUR");
+    final AtomicReference<AccountSettings> source = new AtomicReference<>(originalSettings);
+    final AtomicInteger numReads = new AtomicInteger();
+    final Function<AccountId, Optional<AccountSettings>> loader = accountId -> {
+      numReads.incrementAndGet();
+      return Optional.of(source.get());
+    };
+
+    final AccountRegistry.Entry entry = accountRegistry.resolve(ALICE, loader);
+    assertThat(entry.accountSettings(), is(Optional.of(originalSettings)));
+    assertThat(numReads.get(), is(1));
+
+    // Served from the registry until the settings are due to be re-checked.
+    source.set(updatedSettings);
+    nanos.addAndGet(AccountRegistry.ACCOUNT_SETTINGS_RECHECK_INTERVAL.toNanos() - 1);
+    assertThat(accountRegistry.resolve(ALICE, loader), is(sameInstance(entry)));
+    assertThat(numReads.get(), is(1));
+
+    nanos.incrementAndGet();
+    assertThat(accountRegistry.resolve(ALICE, loader).accountSettings(), is(Optional.of(updatedSettings)));
+    assertThat(numReads.get(), is(2));
+    assertThat(accountRegistry.getHandle(ALICE), is(0));
+  }
+
+  @Test
+  public void resolveKeepsLinkFilterChainWhenSettingsAreReRead() {
+    final AtomicLong nanos = new AtomicLong();
+    accountRegistry = new AccountRegistry(nanos::get);
+    final DefaultLinkFilterChain linkFilterChain =
+      new DefaultLinkFilterChain(Collections.emptyList(), mock(Link.class));
+    accountRegistry.publishAccountSettings(accountSettings(ALICE, "USD"));
+    accountRegistry.update(ALICE, entry -> entry.withLinkFilterChain(linkFilterChain));
+
+    nanos.addAndGet(AccountRegistry.ACCOUNT_SETTINGS_RECHECK_INTERVAL.toNanos());
+    final AccountRegistry.Entry entry =
+      accountRegistry.resolve(ALICE, accountId -> Optional.of(accountSettings(ALICE, "EUR")));
+
+    assertThat(entry.accountSettings().get().assetCode(), is("EUR"));
+    assertThat(entry.linkFilterChain(), is(Optional.of(linkFilterChain)));
+  }
+
+  @Test
+  public void resolveEvictsAccountThatIsNoLongerFound() {
+    accountRegistry.publishAccountSettings(accountSettings(ALICE, "USD"));
+    accountRegistry.update(
+      ALICE, entry -> entry.withLinkFilterChain(new DefaultLinkFilterChain(Collections.emptyList(), mock(Link.class)))
+    );
+    accountRegistry.evict(ALICE);
+
+    assertThat(accountRegistry.resolve(ALICE, accountId -> Optional.empty()), is(nullValue()));
+    assertThat(accountRegistry.resolve(BOB, accountId -> Optional.empty()), is(nullValue()));
+
+    assertThat(accountRegistry.getEntry(ALICE).accountSettings(), is(Optional.empty()));
+    assertThat(accountRegistry.getEntry(ALICE).linkFilterChain(), is(Optional.empty()));
+    // An account that was never found is not registered.
+    assertThat(accountRegistry.getHandle(BOB), is(AccountRegistry.NO_HANDLE));
+  }
+
+  @Test
+  public void registerGrowsAcrossChunks() {
+    final int numAccounts = 5_000;
+    for (int i = 0; i < numAccounts; i++) {
+      assertThat(accountRegistry.register(AccountId.of("account" + i)), is(i));
+    }
+    for (int i = 0; i < numAccounts; i++) {
+      assertThat(accountRegistry.getEntry(i).accountId(), is(AccountId.of("account" + i)));
+    }
+    assertThat(accountRegistry.size(), is(numAccounts));
+  }
+
+  @Test
+  public void concurrentRegistrationsAssignOneHandlePerAccount() throws Exception {
+    final int numThreads = 8;
+    final int numAccounts = 2_000;
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<int[]>> results = new ArrayList<>();
+    try {
+      for (int t = 0; t < numThreads; t++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          final int[] handles = new int[numAccounts];
+          for (int i = 0; i < numAccounts; i++) {
+            final AccountId accountId = AccountId.of("account" + i);
+            handles[i] = accountRegistry.register(accountId);
+            // A handle is never visible before its entry.
+            assertThat(accountRegistry.getEntry(handles[i]).accountId(), is(accountId));
+          }
+          return handles;
+        }));
+      }
+      start.countDown();
+
+      final int[] expectedHandles = results.get(0).get(30, TimeUnit.SECONDS);
+      for (Future<int[]> result : results) {
+        assertThat(result.get(30, TimeUnit.SECONDS), is(expectedHandles));
+      }
+      assertThat(IntStream.of(expectedHandles).distinct().count(), is((long) numAccounts));
+      assertThat(accountRegistry.size(), is(numAccounts));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static AccountSettings accountSettings(final AccountId accountId, final String assetCode) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .assetCode(assetCode)
+      .assetScale(2)
+      .linkType(LinkType.of("Loopback"))
+      .accountRelationship(AccountRelationship.PEER)
+      .build();
+  }
+}
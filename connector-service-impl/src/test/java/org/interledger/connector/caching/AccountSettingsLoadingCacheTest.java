@@ -0,0 +1,195 @@
+package org.interledger.connector.caching;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
+import org.interledger.connector.link.Link;
+import org.interledger.connector.link.LinkId;
+import org.interledger.connector.link.LinkType;
+import org.interledger.connector.link.events.LinkDisconnectedEvent;
+import org.interledger.connector.links.filters.DefaultLinkFilterChain;
+import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Unit tests for {@link AccountSettingsLoadingCache}.
+ */
+public class AccountSettingsLoadingCacheTest {
+
+  @Mock
+  private AccountSettingsRepository accountSettingsRepositoryMock;
+
+  private AccountSettingsLoadingCache accountSettingsLoadingCache;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(accountSettingsRepositoryMock.findByAccountIdWithConversion(any())).thenReturn(Optional.empty());
+    accountSettingsLoadingCache = new AccountSettingsLoadingCache(accountSettingsRepositoryMock);
+  }
+
+  @Test
+  public void getAccountLoadsOnce() {
+    final AccountSettings accountSettings = accountSettings("alice", "USD");
+    when(accountSettingsRepositoryMock.findByAccountIdWithConversion(accountSettings.accountId()))
+      .thenReturn(Optional.of(accountSettings));
+
+    assertThat(accountSettingsLoadingCache.getAccount(accountSettings.accountId()), is(Optional.of(accountSettings)));
+    assertThat(accountSettingsLoadingCache.getAccount(accountSettings.accountId()), is(Optional.of(accountSettings)));
+    verify(accountSettingsRepositoryMock, times(1)).findByAccountIdWithConversion(accountSettings.accountId());
+  }
+
+  @Test
+  public void preloadStreamsAllPages() {
+    final List<AccountSettings> accounts = Lists.newArrayList(
+      accountSettings("alice", "USD"), accountSettings("bob", "EUR"), accountSettings("carl", "XRP")
+    );
+    final Pageable firstPage = PageRequest.of(0, 2, Sort.by("id"));
+    when(accountSettingsRepositoryMock.findAllWithConversion(firstPage))
+      .thenReturn(new SliceImpl<>(accounts.subList(0, 2), firstPage, true));
+    when(accountSettingsRepositoryMock.findAllWithConversion(firstPage.next()))
+      .thenReturn(new SliceImpl<>(accounts.subList(2, 3), firstPage.next(), false));
+
+    assertThat(accountSettingsLoadingCache.preload(2), is(3));
+
+    final AccountRegistry accountRegistry = accountSettingsLoadingCache.getAccountRegistry();
+    assertThat(accountRegistry.size(), is(3));
+    for (int handle = 0; handle < accounts.size(); handle++) {
+      final AccountSettings accountSettings = accounts.get(handle);
+      assertThat(accountSettingsLoadingCache.getAccount(accountSettings.accountId()),
+        is(Optional.of(accountSettings)));
+      assertThat(accountRegistry.getHandle(accountSettings.accountId()), is(handle));
+      assertThat(accountRegistry.getEntry(handle).accountSettings(), is(Optional.of(accountSettings)));
+    }
+    verify(accountSettingsRepositoryMock).findAllWithConversion(firstPage);
+    verify(accountSettingsRepositoryMock).findAllWithConversion(firstPage.next());
+    verifyNoMoreInteractions(accountSettingsRepositoryMock);
+  }
+
+  @Test
+  public void accountSettingsChangedEventReplacesCachedSettings() {
+    final EventBus eventBus = new EventBus();
+    eventBus.register(accountSettingsLoadingCache);
+    final AccountId accountId = AccountId.of("alice");
+
+    // Not found yet, and that result is cached.
+    assertThat(accountSettingsLoadingCache.getAccount(accountId), is(Optional.empty()));
+
+    final AccountSettings createdAccountSettings = accountSettings("alice", "USD");
+    eventBus.post(AccountSettingsChangedEvent.builder().accountSettings(createdAccountSettings).build());
+    assertThat(accountSettingsLoadingCache.getAccount(accountId), is(Optional.of(createdAccountSettings)));
+
+    final AccountSettings updatedAccountSettings = accountSettings("alice", "EUR");
+    eventBus.post(AccountSettingsChangedEvent.builder().accountSettings(updatedAccountSettings).build());
+    assertThat(accountSettingsLoadingCache.getAccount(accountId), is(Optional.of(updatedAccountSettings)));
+    assertThat(accountSettingsLoadingCache.getAccountRegistry().getHandle(accountId), is(0));
+    // The change is visible to the very next packet, without waiting for the registry to re-check the cache.
+    assertThat(accountSettingsLoadingCache.getAccountRegistry().getEntry(accountId).accountSettings(),
+      is(Optional.of(updatedAccountSettings)));
+
+    verify(accountSettingsRepositoryMock, times(1)).findByAccountIdWithConversion(accountId);
+  }
+
+  @Test
+  public void accountSettingsInvalidatedEventReloadsSettings() {
+    // Reload on the calling thread, so that the refresh has completed when the event has been handled.
+    final LoadingCache<AccountId, Optional<AccountSettings>> cache = Caffeine.newBuilder()
+      .executor(Runnable::run)
+      .build(accountSettingsRepositoryMock::findByAccountIdWithConversion);
+    accountSettingsLoadingCache = new AccountSettingsLoadingCache(accountSettingsRepositoryMock, cache);
+    final EventBus eventBus = new EventBus();
+    eventBus.register(accountSettingsLoadingCache);
+
+    final AccountSettings originalAccountSettings = accountSettings("alice", "USD");
+    final AccountSettings updatedAccountSettings = accountSettings("alice", "EUR");
+    when(accountSettingsRepositoryMock.findByAccountIdWithConversion(originalAccountSettings.accountId()))
+      .thenReturn(Optional.of(originalAccountSettings))
+      .thenReturn(Optional.of(updatedAccountSettings));
+
+    assertThat(accountSettingsLoadingCache.getAccount(originalAccountSettings.accountId()),
+      is(Optional.of(originalAccountSettings)));
+    eventBus.post(AccountSettingsInvalidatedEvent.builder().accountId(originalAccountSettings.accountId()).build());
+    assertThat(accountSettingsLoadingCache.getAccount(originalAccountSettings.accountId()),
+      is(Optional.of(updatedAccountSettings)));
+
+    verify(accountSettingsRepositoryMock, times(2)).findByAccountIdWithConversion(originalAccountSettings.accountId());
+  }
+
+  @Test
+  public void accountThatIsNoLongerFoundIsEvicted() {
+    final AccountId accountId = AccountId.of("alice");
+    final AccountRegistry accountRegistry = accountSettingsLoadingCache.getAccountRegistry();
+    final DefaultLinkFilterChain linkFilterChain =
+      new DefaultLinkFilterChain(Collections.emptyList(), mock(Link.class));
+    accountRegistry.publishAccountSettings(accountSettings("alice", "USD"));
+    accountRegistry.update(accountId, entry -> entry.withLinkFilterChain(linkFilterChain));
+
+    assertThat(accountSettingsLoadingCache.getAccount(accountId), is(Optional.empty()));
+
+    assertThat(accountRegistry.getEntry(accountId).accountSettings(), is(Optional.empty()));
+    assertThat(accountRegistry.getEntry(accountId).linkFilterChain(), is(Optional.empty()));
+  }
+
+  @Test
+  public void linkDisconnectedEventEvictsLinkFilterChainOfItsAccount() {
+    final EventBus eventBus = new EventBus();
+    eventBus.register(accountSettingsLoadingCache);
+    final AccountRegistry accountRegistry = accountSettingsLoadingCache.getAccountRegistry();
+    final AccountId alice = AccountId.of("alice");
+    final AccountId bob = AccountId.of("bob");
+    final AccountSettings aliceAccountSettings = accountSettings("alice", "USD");
+    final Link<?> aliceLink = mock(Link.class);
+    when(aliceLink.getLinkId()).thenReturn(LinkId.of("alice"));
+    final Link<?> bobLink = mock(Link.class);
+    accountRegistry.publishAccountSettings(aliceAccountSettings);
+    accountRegistry.update(
+      alice, entry -> entry.withLinkFilterChain(new DefaultLinkFilterChain(Collections.emptyList(), aliceLink))
+    );
+    accountRegistry.update(
+      bob, entry -> entry.withLinkFilterChain(new DefaultLinkFilterChain(Collections.emptyList(), bobLink))
+    );
+
+    eventBus.post(LinkDisconnectedEvent.of(aliceLink));
+
+    assertThat(accountRegistry.getEntry(alice).linkFilterChain(), is(Optional.empty()));
+    assertThat(accountRegistry.getEntry(alice).accountSettings(), is(Optional.of(aliceAccountSettings)));
+    assertThat(accountRegistry.getEntry(bob).linkFilterChain().isPresent(), is(true));
+  }
+
+  private static AccountSettings accountSettings(final String accountId, final String assetCode) {
+    return AccountSettings.builder()
+      .accountId(AccountId.of(accountId))
+      .assetCode(assetCode)
+      .assetScale(2)
+      .linkType(LinkType.of("Loopback"))
+      .accountRelationship(AccountRelationship.PEER)
+      .build();
+  }
+}
@@ -0,0 +1,152 @@
+package org.interledger.connector.caching;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.events.AccountSettingsChangedEvent;
+import org.interledger.connector.events.AccountSettingsInvalidatedEvent;
+import org.interledger.connector.link.LinkType;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import redis.embedded.RedisServer;
+import redis.embedded.RedisServerBuilder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link RedisAccountSettingsInvalidationBus}, using an embedded Redis to stand in for the Redis that a
+ * cluster of Connectors would share.
+ */
+public class RedisAccountSettingsInvalidationBusTest {
+
+  private static final AccountId ALICE = AccountId.of("alice");
+
+  private static RedisServer redisServer;
+  private static int redisPort;
+
+  private Node nodeA;
+  private Node nodeB;
+
+  @BeforeClass
+  public static void startRedisServer() throws IOException {
+    try (ServerSocket serverSocket = new ServerSocket(0)) {
+      redisPort = serverSocket.getLocalPort();
+    }
+    redisServer = new RedisServerBuilder().port(redisPort).build();
+    redisServer.start();
+  }
+
+  @AfterClass
+  public static void stopRedisServer() {
+    if (redisServer != null && redisServer.isActive()) {
+      redisServer.stop();
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    nodeA = new Node("a");
+    nodeB = new Node("b");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    nodeA.stop();
+    nodeB.stop();
+  }
+
+  @Test
+  public void accountSettingsChangedOnOneNodeInvalidatesOtherNodes() throws Exception {
+    final AccountSettingsChangedEvent changedEvent = AccountSettingsChangedEvent.builder()
+      .accountSettings(AccountSettings.builder()
+        .accountId(ALICE)
+        .assetCode("USD")
+        .assetScale(2)
+        .linkType(LinkType.of("Loopback"))
+        .accountRelationship(AccountRelationship.PEER)
+        .build())
+      .build();
+
+    // Subscriptions are established asynchronously, so keep announcing the change until node B is listening.
+    AccountSettingsInvalidatedEvent invalidatedEvent = null;
+    for (int i = 0; i < 50 && invalidatedEvent == null; i++) {
+      nodeA.eventBus.post(changedEvent);
+      invalidatedEvent = nodeB.invalidatedEvents.poll(100, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(invalidatedEvent.accountId(), is(ALICE));
+    // Node A's caches were updated by the original event, so it ignores its own announcement.
+    assertThat(nodeA.invalidatedEvents.poll(100, TimeUnit.MILLISECONDS), is(nullValue()));
+  }
+
+  @Test
+  public void onMessageIgnoresMalformedMessages() {
+    final byte[] channel = RedisAccountSettingsInvalidationBus.CHANNEL.getBytes(StandardCharsets.UTF_8);
+    for (String body : new String[] {"", "alice", " alice", "b "}) {
+      nodeA.invalidationBus.onMessage(new DefaultMessage(channel, body.getBytes(StandardCharsets.UTF_8)), null);
+    }
+    assertThat(nodeA.invalidatedEvents.isEmpty(), is(true));
+
+    nodeA.invalidationBus.onMessage(new DefaultMessage(channel, "b bob smith".getBytes(StandardCharsets.UTF_8)), null);
+    assertThat(nodeA.invalidatedEvents.poll().accountId(), is(AccountId.of("bob smith")));
+  }
+
+  /**
+   * A Connector, as far as invalidation is concerned.
+   */
+  private static final class Node {
+
+    private final EventBus eventBus = new EventBus();
+    private final BlockingQueue<AccountSettingsInvalidatedEvent> invalidatedEvents = new LinkedBlockingQueue<>();
+    private final JedisConnectionFactory connectionFactory;
+    private final RedisMessageListenerContainer container;
+    private final RedisAccountSettingsInvalidationBus invalidationBus;
+
+    private Node(final String nodeId) throws Exception {
+      connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration("localhost", redisPort));
+      connectionFactory.afterPropertiesSet();
+
+      invalidationBus =
+        new RedisAccountSettingsInvalidationBus(new StringRedisTemplate(connectionFactory), eventBus, nodeId);
+      eventBus.register(invalidationBus);
+      eventBus.register(this);
+
+      container = new RedisMessageListenerContainer();
+      container.setConnectionFactory(connectionFactory);
+      container.addMessageListener(invalidationBus, new ChannelTopic(RedisAccountSettingsInvalidationBus.CHANNEL));
+      container.afterPropertiesSet();
+      container.start();
+    }
+
+    @Subscribe
+    public void onAccountSettingsInvalidated(final AccountSettingsInvalidatedEvent event) {
+      invalidatedEvents.add(event);
+    }
+
+    private void stop() throws Exception {
+      container.destroy();
+      connectionFactory.destroy();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.interledger.connector.fx;
+
+import com.google.common.primitives.UnsignedLong;
+import org.javamoney.moneta.spi.DefaultNumberValue;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.money.CurrencyUnit;
+import javax.money.Monetary;
+import javax.money.convert.ExchangeRate;
+import javax.money.convert.ExchangeRateProvider;
+import java.math.BigDecimal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link CachingFxConverter}.
+ */
+public class CachingFxConverterTest {
+
+  private static final CurrencyUnit USD = Monetary.getCurrency("USD");
+  private static final CurrencyUnit EUR = Monetary.getCurrency("EUR");
+
+  @Mock
+  private ExchangeRateProvider exchangeRateProviderMock;
+
+  @Mock
+  private ExchangeRate exchangeRateMock;
+
+  private CachingFxConverter fxConverter;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    when(exchangeRateMock.getFactor()).thenReturn(new DefaultNumberValue(new BigDecimal("0.9")));
+    when(exchangeRateProviderMock.getExchangeRate(USD, EUR)).thenReturn(exchangeRateMock);
+
+    fxConverter = new CachingFxConverter(exchangeRateProviderMock);
+  }
+
+  @Test
+  public void convertSameAssetDoesNotQueryProvider() {
+    assertThat(fxConverter.convert("USD", 2, "USD", 9, UnsignedLong.valueOf(1)),
+      is(UnsignedLong.valueOf(10_000_000)));
+    verifyZeroInteractions(exchangeRateProviderMock);
+  }
+
+  @Test
+  public void convertCachesRatePerAssetPair() {
+    for (int i = 0; i < 3; i++) {
+      assertThat(fxConverter.convert("USD", 2, "EUR", 2, UnsignedLong.valueOf(100)), is(UnsignedLong.valueOf(90)));
+    }
+    verify(exchangeRateProviderMock, times(1)).getExchangeRate(USD, EUR);
+
+    // A different scale is a different pair, but the same currencies.
+    assertThat(fxConverter.convert("USD", 2, "EUR", 3, UnsignedLong.valueOf(100)), is(UnsignedLong.valueOf(900)));
+    verify(exchangeRateProviderMock, times(2)).getExchangeRate(USD, EUR);
+  }
+
+  @Test
+  public void convertRoundsDownInexactAmounts() {
+    // 0.9 * 0.11 = 0.099, which could not be converted exactly.
+    assertThat(fxConverter.convert("USD", 2, "EUR", 1, UnsignedLong.valueOf(11)), is(UnsignedLong.ZERO));
+    assertThat(fxConverter.convert("USD", 2, "EUR", 2, UnsignedLong.valueOf(11)), is(UnsignedLong.valueOf(9)));
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void convertOverflows() {
+    fxConverter.convert("USD", 2, "EUR", 9, UnsignedLong.MAX_VALUE);
+  }
+}
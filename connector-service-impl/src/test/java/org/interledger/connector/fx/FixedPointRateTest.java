@@ -0,0 +1,151 @@
+package org.interledger.connector.fx;
+
+import com.google.common.primitives.UnsignedLong;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Unit tests for {@link FixedPointRate}.
+ */
+public class FixedPointRateTest {
+
+  private static final BigInteger TWO_TO_THE_64 = BigInteger.ONE.shiftLeft(64);
+
+  ///////////////////
+  // convert
+  ///////////////////
+
+  @Test
+  public void convertWithSameScale() {
+    final FixedPointRate rate = FixedPointRate.of(new BigDecimal("0.9"), 2, 2);
+    assertThat(rate.convert(UnsignedLong.valueOf(100)), is(UnsignedLong.valueOf(90)));
+    assertThat(rate.convert(UnsignedLong.ZERO), is(UnsignedLong.ZERO));
+  }
+
+  @Test
+  public void convertWithDifferentScales() {
+    // 1 USD (scale 2) = 1.5 EUR (scale 9)
+    assertThat(FixedPointRate.of(new BigDecimal("1.5"), 2, 9).convert(UnsignedLong.valueOf(100)),
+      is(UnsignedLong.valueOf(1_500_000_000L)));
+    // 1 XRP (scale 9) = 0.25 USD (scale 2)
+    assertThat(FixedPointRate.of(new BigDecimal("0.25"), 9, 2).convert(UnsignedLong.valueOf(4_000_000_000L)),
+      is(UnsignedLong.valueOf(100)));
+  }
+
+  @Test
+  public void convertRoundsDown() {
+    final FixedPointRate rate = FixedPointRate.of(new BigDecimal("0.333333"), 0, 0);
+    assertThat(rate.convert(UnsignedLong.valueOf(10)), is(UnsignedLong.valueOf(3)));
+    assertThat(rate.convert(UnsignedLong.valueOf(2)), is(UnsignedLong.ZERO));
+
+    // Losing scale truncates rather than rounding to the nearest unit.
+    assertThat(FixedPointRate.of(BigDecimal.ONE, 9, 2).convert(UnsignedLong.valueOf(9_999_999L)),
+      is(UnsignedLong.ZERO));
+  }
+
+  @Test
+  public void convertWithWholeNumberRate() {
+    final FixedPointRate rate = FixedPointRate.of(new BigDecimal("1E+3"), 0, 0);
+    assertThat(rate.convert(UnsignedLong.valueOf(7)), is(UnsignedLong.valueOf(7_000)));
+  }
+
+  @Test
+  public void convertMaxAmount() {
+    assertThat(FixedPointRate.of(BigDecimal.ONE, 9, 9).convert(UnsignedLong.MAX_VALUE), is(UnsignedLong.MAX_VALUE));
+    assertThat(FixedPointRate.of(new BigDecimal("0.5"), 0, 0).convert(UnsignedLong.MAX_VALUE),
+      is(UnsignedLong.valueOf(Long.MAX_VALUE)));
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void convertOverflows() {
+    FixedPointRate.of(new BigDecimal("2"), 0, 0).convert(UnsignedLong.valueOf(Long.MAX_VALUE).plus(UnsignedLong.ONE));
+  }
+
+  @Test
+  public void convertWithTinyRate() {
+    final FixedPointRate rate = FixedPointRate.of(new BigDecimal("1E-20"), 0, 0);
+    assertThat(rate.convert(UnsignedLong.MAX_VALUE), is(UnsignedLong.ZERO));
+    assertThat(FixedPointRate.of(new BigDecimal("1E-19"), 0, 0).convert(UnsignedLong.MAX_VALUE),
+      is(UnsignedLong.ONE));
+  }
+
+  @Test
+  public void convertWithHugeRate() {
+    final FixedPointRate rate = FixedPointRate.of(new BigDecimal("1E+19"), 0, 0);
+    assertThat(rate.convert(UnsignedLong.ONE), is(UnsignedLong.valueOf("10000000000000000000")));
+  }
+
+  @Test(expected = ArithmeticException.class)
+  public void convertWithHugeRateOverflows() {
+    FixedPointRate.of(new BigDecimal("1E+19"), 0, 0).convert(UnsignedLong.valueOf(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeRate() {
+    FixedPointRate.of(new BigDecimal("-1"), 0, 0);
+  }
+
+  @Test
+  public void convertMatchesBigDecimal() {
+    final Random random = new Random(1);
+    for (int i = 0; i < 10_000; i++) {
+      final BigDecimal exchangeRate = BigDecimal.valueOf(random.nextInt(Integer.MAX_VALUE), random.nextInt(12));
+      final int sourceScale = random.nextInt(10);
+      final int destinationScale = random.nextInt(10);
+      final UnsignedLong amount = UnsignedLong.fromLongBits(random.nextLong() >>> random.nextInt(64));
+
+      final BigInteger expected = new BigDecimal(amount.bigIntegerValue())
+        .multiply(exchangeRate.scaleByPowerOfTen(destinationScale - sourceScale))
+        .setScale(0, RoundingMode.DOWN)
+        .toBigInteger();
+      final FixedPointRate rate = FixedPointRate.of(exchangeRate, sourceScale, destinationScale);
+      if (expected.bitLength() > Long.SIZE) {
+        continue;
+      }
+      assertThat(rate.convert(amount).bigIntegerValue(), is(expected));
+    }
+  }
+
+  ///////////////////
+  // 128-bit arithmetic
+  ///////////////////
+
+  @Test
+  public void multiplyHighUnsignedMatchesBigInteger() {
+    final Random random = new Random(2);
+    for (int i = 0; i < 10_000; i++) {
+      final long x = random.nextLong();
+      final long y = random.nextLong();
+      final BigInteger expected = unsigned(x).multiply(unsigned(y)).shiftRight(64);
+      assertThat(unsigned(FixedPointRate.multiplyHighUnsigned(x, y)), is(expected));
+    }
+    assertThat(FixedPointRate.multiplyHighUnsigned(-1L, -1L), is(-2L));
+  }
+
+  @Test
+  public void divideUnsignedMatchesBigInteger() {
+    final Random random = new Random(3);
+    for (int i = 0; i < 10_000; i++) {
+      final long divisor = random.nextLong() >>> random.nextInt(63);
+      if (divisor == 0) {
+        continue;
+      }
+      final long high = Long.remainderUnsigned(random.nextLong(), divisor);
+      final long low = random.nextLong();
+      final BigInteger expected = unsigned(high).shiftLeft(64).add(unsigned(low)).divide(unsigned(divisor));
+      assertThat(unsigned(FixedPointRate.divideUnsigned(high, low, divisor)), is(expected));
+    }
+  }
+
+  private static BigInteger unsigned(final long value) {
+    final BigInteger bigInteger = BigInteger.valueOf(value);
+    return value < 0 ? bigInteger.add(TWO_TO_THE_64) : bigInteger;
+  }
+}
@@ -1,27 +1,54 @@
 package org.interledger.connector.javax.money.providers;
 
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import org.interledger.connector.javax.money.providers.CryptoCompareRateProvider;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.money.MonetaryException;
+import javax.money.convert.ConversionQuery;
 import javax.money.convert.ConversionQueryBuilder;
 import javax.money.convert.ExchangeRate;
 import javax.money.convert.RateType;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -29,6 +56,15 @@ import static org.mockito.Mockito.when;
  */
 public class CryptoCompareRateProviderTest {
 
+  private static final ConversionQuery XRP_TO_USD =
+    ConversionQueryBuilder.of().setBaseCurrency("XRP").setTermCurrency("USD").setRateTypes(RateType.DEFERRED).build();
+
+  private static final Duration REFRESH_INTERVAL = Duration.ofSeconds(30);
+  private static final Duration MAX_STALENESS = Duration.ofMinutes(10);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Mock
   RestTemplate restTemplate;
   @Mock
@@ -38,6 +74,11 @@ public class CryptoCompareRateProviderTest {
 
   private CryptoCompareRateProvider provider;
 
+  private final FakeTime fakeTime = new FakeTime();
+
+  // Background refreshes (and cache maintenance) only run when a test asks them to.
+  private final List<Runnable> pendingRefreshes = Lists.newArrayList();
+
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
@@ -93,4 +134,217 @@ public class CryptoCompareRateProviderTest {
     assertThat(actual.getContext().getProviderName(), is("CC"));
     assertThat(actual.getContext().getRateType(), is(RateType.DEFERRED));
   }
+
+  @Test
+  public void getExchangeRateIsCached() {
+    ratesResponseMap.put("USD", "0.31234");
+    provider.getExchangeRate(XRP_TO_USD);
+    provider.getExchangeRate(XRP_TO_USD);
+
+    verifyApiCalls(1);
+  }
+
+  @Test
+  public void getExchangeRateServesStaleRateWhileRefreshing() {
+    final CryptoCompareRateProvider provider = providerWithFakeTime(Optional.empty());
+    ratesResponseMap.put("USD", "0.3");
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+
+    ratesResponseMap.put("USD", "0.4");
+    fakeTime.advance(REFRESH_INTERVAL.plusSeconds(1));
+    // The old rate is returned immediately, and a refresh is scheduled.
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+    verifyApiCalls(1);
+
+    runPendingRefreshes();
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.4"));
+    verifyApiCalls(2);
+  }
+
+  @Test
+  public void getExchangeRateServesStaleRateUntilMaxStaleness() {
+    final CryptoCompareRateProvider provider = providerWithFakeTime(Optional.empty());
+    ratesResponseMap.put("USD", "0.3");
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+
+    failApiCalls();
+    fakeTime.advance(REFRESH_INTERVAL.plusSeconds(1));
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+    runPendingRefreshes();
+    // The refresh failed, so the old rate is still served.
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+
+    fakeTime.advance(MAX_STALENESS);
+    try {
+      provider.getExchangeRate(XRP_TO_USD);
+      throw new AssertionError("Expected a MonetaryException");
+    } catch (MonetaryException e) {
+      assertThat(e.getMessage(), is("Failed to load currency conversion data"));
+    }
+  }
+
+  @Test
+  public void preloadRates() {
+    final CryptoCompareRateProvider provider = providerWithFakeTime(Optional.empty());
+    ratesResponseMap.put("USD", "0.3");
+    ratesResponseMap.put("XRP", "3");
+
+    provider.preloadRates(Lists.newArrayList("XRP", "USD", "usd"));
+    runPendingRefreshes();
+    verifyApiCalls(2);
+
+    assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+    assertThat(factor(provider.getExchangeRate(
+      ConversionQueryBuilder.of().setBaseCurrency("USD").setTermCurrency("XRP").build()
+    )), is("3"));
+    verifyApiCalls(2);
+  }
+
+  @Test
+  public void snapshotFileWarmsRestartedProvider() throws IOException {
+    final Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("fx-rates.snapshot");
+    ratesResponseMap.put("USD", "0.3");
+    providerWithFakeTime(Optional.of(snapshotFile)).getExchangeRate(XRP_TO_USD);
+    // The snapshot is written in the background.
+    runPendingRefreshes();
+
+    // The rate API is down when the Connector restarts, but the snapshot rate can be used.
+    failApiCalls();
+    final CryptoCompareRateProvider restartedProvider = providerWithFakeTime(Optional.of(snapshotFile));
+    assertThat(factor(restartedProvider.getExchangeRate(XRP_TO_USD)), is("0.3"));
+    verifyApiCalls(1);
+    // The snapshot rate is revalidated straight away.
+    runPendingRefreshes();
+    verifyApiCalls(2);
+  }
+
+  @Test
+  public void snapshotFileIsWrittenInTheBackground() throws IOException {
+    final Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("fx-rates.snapshot");
+    ratesResponseMap.put("USD", "0.3");
+    ratesResponseMap.put("XRP", "3");
+    final CryptoCompareRateProvider provider = providerWithFakeTime(Optional.of(snapshotFile));
+    provider.getExchangeRate(XRP_TO_USD);
+    provider.getExchangeRate(ConversionQueryBuilder.of().setBaseCurrency("USD").setTermCurrency("XRP").build());
+
+    // Loading a rate does not write the snapshot on the loading thread.
+    assertThat(Files.exists(snapshotFile), is(false));
+    runPendingRefreshes();
+    assertThat(Files.readAllLines(snapshotFile, StandardCharsets.UTF_8).size(), is(2));
+  }
+
+  @Test
+  public void snapshotFileIgnoresExpiredRates() throws IOException {
+    final Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("fx-rates.snapshot");
+    ratesResponseMap.put("USD", "0.3");
+    providerWithFakeTime(Optional.of(snapshotFile)).getExchangeRate(XRP_TO_USD);
+    // The snapshot is written in the background.
+    runPendingRefreshes();
+
+    failApiCalls();
+    fakeTime.advance(MAX_STALENESS);
+    final CryptoCompareRateProvider restartedProvider = providerWithFakeTime(Optional.of(snapshotFile));
+    try {
+      restartedProvider.getExchangeRate(XRP_TO_USD);
+      throw new AssertionError("Expected a MonetaryException");
+    } catch (MonetaryException e) {
+      assertThat(e.getMessage(), is("Failed to load currency conversion data"));
+    }
+  }
+
+  @Test
+  public void getExchangeRateFromHttpStub() throws IOException {
+    final AtomicInteger requestCount = new AtomicInteger();
+    final AtomicReference<String> authorization = new AtomicReference<>();
+    final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/data/price", exchange -> {
+      requestCount.incrementAndGet();
+      authorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+      final byte[] body = "{\"USD\":\"0.31234\"}".getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream outputStream = exchange.getResponseBody()) {
+        outputStream.write(body);
+      }
+    });
+    server.start();
+    try {
+      final CryptoCompareRateProvider provider = new CryptoCompareRateProvider(() -> "apiKey", new RestTemplate());
+      provider.setApiUrlTemplate(
+        "http://localhost:" + server.getAddress().getPort() + "/data/price?fsym={fsym}&tsyms={tsyms}"
+      );
+
+      assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.31234"));
+      assertThat(factor(provider.getExchangeRate(XRP_TO_USD)), is("0.31234"));
+      assertThat(requestCount.get(), is(1));
+      assertThat(authorization.get(), is("Apikey apiKey"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private CryptoCompareRateProvider providerWithFakeTime(final Optional<Path> snapshotFile) {
+    return new CryptoCompareRateProvider(
+      () -> "apiKey", restTemplate, REFRESH_INTERVAL, MAX_STALENESS, snapshotFile, fakeTime, fakeTime.clock(),
+      pendingRefreshes::add
+    );
+  }
+
+  private void runPendingRefreshes() {
+    final List<Runnable> refreshes = Lists.newArrayList(pendingRefreshes);
+    pendingRefreshes.clear();
+    refreshes.forEach(Runnable::run);
+  }
+
+  private void failApiCalls() {
+    when(restTemplate.exchange(any(), any(), any(),
+      Mockito.<ParameterizedTypeReference<Map<String, String>>>any(), anyString(), anyString())
+    ).thenThrow(new RestClientException("Rate API is unavailable"));
+  }
+
+  private void verifyApiCalls(final int count) {
+    verify(restTemplate, times(count)).exchange(any(), eq(HttpMethod.GET), any(),
+      Mockito.<ParameterizedTypeReference<Map<String, String>>>any(), anyString(), anyString());
+  }
+
+  private static String factor(final ExchangeRate exchangeRate) {
+    return exchangeRate.getFactor().numberValue(BigDecimal.class).toPlainString();
+  }
+
+  /**
+   * A {@link Ticker} and a {@link Clock} that only move when a test advances them.
+   */
+  private static final class FakeTime implements Ticker {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Instant epoch = Instant.parse("2019-01-01T00:00:00Z");
+
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+
+    void advance(final Duration duration) {
+      nanos.addAndGet(duration.toNanos());
+    }
+
+    Clock clock() {
+      return new Clock() {
+        @Override
+        public ZoneId getZone() {
+          return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+          return epoch.plusNanos(nanos.get());
+        }
+      };
+    }
+  }
 }
@@ -0,0 +1,190 @@
+package org.interledger.connector.metrics;
+
+import com.google.common.primitives.UnsignedLong;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.links.filters.LinkFilter;
+import org.interledger.connector.links.loopback.LoopbackLink;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.packetswitch.filters.MaxPacketAmountFilter;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilterChain;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerFulfillment;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link FilterMetricsRegistry}.
+ */
+public class FilterMetricsRegistryTest {
+
+  private static final InterledgerAddress OPERATOR_ADDRESS = InterledgerAddress.of("test.operator");
+
+  private static final AccountSettings PEER_ACCOUNT_SETTINGS = AccountSettings.builder()
+    .accountId(AccountId.of("peer-account"))
+    .accountRelationship(AccountRelationship.PEER)
+    .assetCode("USD")
+    .assetScale(2)
+    .maximumPacketAmount(100L)
+    .linkType(LoopbackLink.LINK_TYPE)
+    .build();
+
+  private static final InterledgerFulfillPacket FULFILL_PACKET = InterledgerFulfillPacket.builder()
+    .fulfillment(InterledgerFulfillment.of(new byte[32]))
+    .build();
+
+  private static final PacketSwitchFilterChain FULFILLING_FILTER_CHAIN =
+    (sourceAccountSettings, preparePacket) -> FULFILL_PACKET;
+
+  private FilterMetricsRegistry registry;
+
+  private PacketSwitchFilter instrumentedFilter;
+
+  @Before
+  public void setUp() {
+    this.registry = new FilterMetricsRegistry();
+    final List<PacketSwitchFilter> instrumentedFilters = registry.instrumentPacketSwitchFilters(
+      Collections.singletonList(new MaxPacketAmountFilter(new PacketRejector(() -> Optional.of(OPERATOR_ADDRESS))))
+    );
+    assertThat(instrumentedFilters.size(), is(1));
+    this.instrumentedFilter = instrumentedFilters.get(0);
+  }
+
+  @Test
+  public void recordsFulfillsAndRejectsByRelationship() {
+    instrumentedFilter.doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(10), FULFILLING_FILTER_CHAIN);
+    instrumentedFilter.doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(20), FULFILLING_FILTER_CHAIN);
+    // Exceeds the maximum packet amount, so is rejected with F08.
+    instrumentedFilter.doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(1_000), FULFILLING_FILTER_CHAIN);
+
+    final FilterMetrics peerMetrics = metricsFor("MaxPacketAmountFilter", AccountRelationship.PEER);
+    assertThat(peerMetrics.chain(), is(FilterMetricsRegistry.PACKET_SWITCH_CHAIN));
+    assertThat(peerMetrics.fulfilledCount(), is(2L));
+    assertThat(peerMetrics.rejectedCounts(), is(Collections.singletonMap("F08", 1L)));
+    assertThat(peerMetrics.failedCount(), is(0L));
+    assertThat(peerMetrics.latencyNanos().count(), is(3L));
+    assertThat(peerMetrics.amounts().count(), is(3L));
+    assertThat(peerMetrics.amounts().sum(), is(1_030d));
+
+    final FilterMetrics childMetrics = metricsFor("MaxPacketAmountFilter", AccountRelationship.CHILD);
+    assertThat(childMetrics.latencyNanos().count(), is(0L));
+  }
+
+  @Test
+  public void recordsExceptions() {
+    try {
+      instrumentedFilter.doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(10), (sourceAccountSettings, preparePacket) -> {
+        throw new IllegalStateException("foo");
+      });
+      fail("Should have thrown an IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("foo"));
+    }
+
+    final FilterMetrics peerMetrics = metricsFor("MaxPacketAmountFilter", AccountRelationship.PEER);
+    assertThat(peerMetrics.failedCount(), is(1L));
+    assertThat(peerMetrics.latencyNanos().count(), is(1L));
+  }
+
+  @Test
+  public void recordsAsyncResponseOnCompletion() {
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture = new CompletableFuture<>();
+    final PacketSwitchFilterChain filterChain = new PacketSwitchFilterChain() {
+      @Override
+      public InterledgerResponsePacket doFilter(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        throw new IllegalStateException("The blocking variant should not be called!");
+      }
+
+      @Override
+      public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        return downstreamFuture;
+      }
+    };
+
+    final CompletableFuture<InterledgerResponsePacket> responseFuture =
+      instrumentedFilter.doFilterAsync(PEER_ACCOUNT_SETTINGS, preparePacket(10), filterChain);
+
+    final FilterMetrics peerMetrics = metricsFor("MaxPacketAmountFilter", AccountRelationship.PEER);
+    assertThat(peerMetrics.latencyNanos().count(), is(0L));
+
+    downstreamFuture.complete(FULFILL_PACKET);
+    assertThat(responseFuture.join(), is(FULFILL_PACKET));
+    assertThat(peerMetrics.fulfilledCount(), is(1L));
+    assertThat(peerMetrics.latencyNanos().count(), is(1L));
+  }
+
+  @Test
+  public void linkFiltersAreTaggedByChain() {
+    final LinkFilter linkFilter = (destinationAccountSettings, destinationPreparePacket, filterChain) ->
+      filterChain.doFilter(destinationAccountSettings, destinationPreparePacket);
+    registry.instrumentLinkFilters(Collections.singletonList(linkFilter)).get(0)
+      .doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(10), (destinationAccountSettings, preparePacket) -> FULFILL_PACKET);
+
+    final long linkFulfills = registry.getAllFilterMetrics().stream()
+      .filter(metrics -> metrics.chain().equals(FilterMetricsRegistry.LINK_CHAIN))
+      .mapToLong(FilterMetrics::fulfilledCount)
+      .sum();
+    assertThat(linkFulfills, is(1L));
+  }
+
+  @Test
+  public void writePrometheusText() throws Exception {
+    instrumentedFilter.doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(10), FULFILLING_FILTER_CHAIN);
+    instrumentedFilter.doFilter(PEER_ACCOUNT_SETTINGS, preparePacket(1_000), FULFILLING_FILTER_CHAIN);
+
+    final StringBuilder output = new StringBuilder();
+    registry.writePrometheusText(output);
+
+    final String labels = "chain=\"packet_switch\",filter=\"MaxPacketAmountFilter\",account_relationship=\"PEER\"";
+    assertThat(output.toString(), containsString("# TYPE ilp_filter_packets_total counter\n"));
+    assertThat(output.toString(),
+      containsString("ilp_filter_packets_total{" + labels + ",outcome=\"fulfill\"} 1\n"));
+    assertThat(output.toString(),
+      containsString("ilp_filter_packets_total{" + labels + ",outcome=\"reject\",error_code=\"F08\"} 1\n"));
+    assertThat(output.toString(), containsString("# TYPE ilp_filter_latency_seconds summary\n"));
+    assertThat(output.toString(), containsString("ilp_filter_latency_seconds_count{" + labels + "} 2\n"));
+    assertThat(output.toString(), containsString("ilp_filter_packet_amount{" + labels + ",quantile=\"0.5\"} 10.0\n"));
+    assertThat(output.toString(), containsString("ilp_filter_packet_amount_sum{" + labels + "} 1010.0\n"));
+    // Nothing was recorded for other relationships, so their summaries are omitted.
+    assertThat(output.toString().contains("ilp_filter_latency_seconds_count{chain=\"packet_switch\","
+      + "filter=\"MaxPacketAmountFilter\",account_relationship=\"CHILD\"}"), is(false));
+  }
+
+  private FilterMetrics metricsFor(final String filterName, final AccountRelationship accountRelationship) {
+    return registry.getAllFilterMetrics().stream()
+      .filter(metrics -> metrics.filterName().equals(filterName))
+      .filter(metrics -> metrics.accountRelationship() == accountRelationship)
+      .findFirst()
+      .orElseThrow(() -> new IllegalStateException("No metrics for " + filterName));
+  }
+
+  private static InterledgerPreparePacket preparePacket(final long amount) {
+    return InterledgerPreparePacket.builder()
+      .destination(InterledgerAddress.of("test.foo"))
+      .amount(UnsignedLong.valueOf(amount))
+      .expiresAt(Instant.now().plusSeconds(30))
+      .executionCondition(InterledgerCondition.of(new byte[32]))
+      .build();
+  }
+}
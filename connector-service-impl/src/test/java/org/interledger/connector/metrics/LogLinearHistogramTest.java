@@ -0,0 +1,94 @@
+package org.interledger.connector.metrics;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Unit tests for {@link LogLinearHistogram}.
+ */
+public class LogLinearHistogramTest {
+
+  @Test
+  public void emptySnapshot() {
+    final LogLinearHistogram.Snapshot snapshot = new LogLinearHistogram().snapshot();
+
+    assertThat(snapshot.count(), is(0L));
+    assertThat(snapshot.sum(), is(0d));
+    assertThat(snapshot.valueAtQuantile(0.99), is(0L));
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    final LogLinearHistogram histogram = new LogLinearHistogram();
+    for (long value = 0; value < LogLinearHistogram.SUB_BUCKET_COUNT; value++) {
+      histogram.record(value);
+    }
+
+    final LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count(), is((long) LogLinearHistogram.SUB_BUCKET_COUNT));
+    assertThat(snapshot.valueAtQuantile(0), is(0L));
+    assertThat(snapshot.valueAtQuantile(0.5), is(15L));
+    assertThat(snapshot.valueAtQuantile(1), is(31L));
+  }
+
+  /**
+   * Every value must fall into a bucket whose upper bound is no lower than the value, and no more than ~3% higher.
+   */
+  @Test
+  public void bucketsAreWithinRelativeError() {
+    for (long value : new long[] {32, 33, 63, 64, 100, 1_000, 12_345, 1_000_000, 987_654_321L, Long.MAX_VALUE / 3}) {
+      final long upperBound = LogLinearHistogram.bucketUpperBound(LogLinearHistogram.bucketIndex(value));
+      assertThat(upperBound, greaterThanOrEqualTo(value));
+      assertThat((double) (upperBound - value), lessThanOrEqualTo(value / 32d));
+    }
+  }
+
+  @Test
+  public void bucketIndexIsMonotonic() {
+    int previousIndex = -1;
+    for (long value = 1; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 / 2 + 1) {
+      final int index = LogLinearHistogram.bucketIndex(value);
+      assertThat(index, greaterThanOrEqualTo(previousIndex));
+      previousIndex = index;
+    }
+    assertThat(LogLinearHistogram.bucketIndex(Long.MAX_VALUE), is(LogLinearHistogram.BUCKET_COUNT - 1));
+  }
+
+  @Test
+  public void negativeValuesAreCountedAsLargest() {
+    final LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(-1L);
+
+    assertThat(histogram.snapshot().valueAtQuantile(0.5), is(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void quantiles() {
+    final LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int i = 0; i < 990; i++) {
+      histogram.record(1_000);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(1_000_000);
+    }
+
+    final LogLinearHistogram.Snapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.count(), is(1_000L));
+    assertThat(snapshot.sum(), is(990d * 1_000 + 10d * 1_000_000));
+    assertThat(snapshot.valueAtQuantile(0.5), is(LogLinearHistogram.bucketUpperBound(
+      LogLinearHistogram.bucketIndex(1_000))));
+    assertThat(snapshot.valueAtQuantile(0.99), is(LogLinearHistogram.bucketUpperBound(
+      LogLinearHistogram.bucketIndex(1_000))));
+    assertThat(snapshot.valueAtQuantile(0.999), is(LogLinearHistogram.bucketUpperBound(
+      LogLinearHistogram.bucketIndex(1_000_000))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void quantileOutOfRange() {
+    new LogLinearHistogram().snapshot().valueAtQuantile(1.5);
+  }
+}
@@ -0,0 +1,137 @@
+package org.interledger.connector.packetswitch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerFulfillment;
+import org.interledger.core.InterledgerRejectPacket;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for {@link AimdConcurrencyLimiter}.
+ */
+public class AimdConcurrencyLimiterTest {
+
+  private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long SLOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  @Test
+  public void tryAcquireStopsAtLimit() {
+    final AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 1, 10, 0.5, Duration.ofSeconds(1));
+
+    assertThat(limiter.tryAcquire(), is(true));
+    assertThat(limiter.tryAcquire(), is(true));
+    assertThat(limiter.tryAcquire(), is(false));
+    assertThat(limiter.getInFlight(), is(2));
+
+    limiter.release(FAST_NANOS, false);
+    assertThat(limiter.tryAcquire(), is(true));
+  }
+
+  @Test
+  public void fastResponsesIncreaseLimitWhenSaturated() {
+    final AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(4, 1, 5, 0.5, Duration.ofSeconds(1));
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(limiter.tryAcquire(), is(true));
+    }
+    limiter.release(FAST_NANOS, false);
+    assertThat(limiter.getLimit(), is(5));
+
+    // Never grows beyond the maximum.
+    limiter.release(FAST_NANOS, false);
+    assertThat(limiter.getLimit(), is(5));
+  }
+
+  @Test
+  public void fastResponsesDoNotIncreaseLimitWhenIdle() {
+    final AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(10, 1, 100, 0.5, Duration.ofSeconds(1));
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(limiter.tryAcquire(), is(true));
+      limiter.release(FAST_NANOS, false);
+    }
+    assertThat(limiter.getLimit(), is(10));
+  }
+
+  @Test
+  public void slowOrCongestedResponsesDecreaseLimit() {
+    final AtomicLong nanos = new AtomicLong();
+    final AimdConcurrencyLimiter limiter =
+      new AimdConcurrencyLimiter(8, 3, 10, 0.5, Duration.ofSeconds(1), nanos::get);
+
+    limiter.tryAcquire();
+    nanos.addAndGet(SLOW_NANOS);
+    limiter.release(SLOW_NANOS, false);
+    assertThat(limiter.getLimit(), is(4));
+
+    limiter.tryAcquire();
+    nanos.addAndGet(FAST_NANOS);
+    limiter.release(FAST_NANOS, true);
+    assertThat(limiter.getLimit(), is(3));
+
+    // Never shrinks beyond the minimum.
+    limiter.tryAcquire();
+    nanos.addAndGet(FAST_NANOS);
+    limiter.release(FAST_NANOS, true);
+    assertThat(limiter.getLimit(), is(3));
+    assertThat(limiter.getInFlight(), is(0));
+  }
+
+  /**
+   * A burst of slow responses to packets that were in-flight together is a single episode of congestion, so it shrinks
+   * the limit only once. Packets acquired after that shrink it again.
+   */
+  @Test
+  public void burstOfSlowResponsesDecreasesLimitOnce() {
+    final AtomicLong nanos = new AtomicLong();
+    final AimdConcurrencyLimiter limiter =
+      new AimdConcurrencyLimiter(20, 1, 100, 0.5, Duration.ofSeconds(1), nanos::get);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(limiter.tryAcquire(), is(true));
+    }
+    nanos.addAndGet(SLOW_NANOS);
+    for (int i = 0; i < 10; i++) {
+      limiter.release(SLOW_NANOS, true);
+    }
+    assertThat(limiter.getLimit(), is(10));
+
+    assertThat(limiter.tryAcquire(), is(true));
+    nanos.addAndGet(SLOW_NANOS);
+    limiter.release(SLOW_NANOS, true);
+    assertThat(limiter.getLimit(), is(5));
+    assertThat(limiter.getInFlight(), is(0));
+  }
+
+  @Test
+  public void isCongestionSignal() {
+    assertThat(AimdConcurrencyLimiter.isCongestionSignal(reject(InterledgerErrorCode.T03_CONNECTOR_BUSY)), is(true));
+    assertThat(AimdConcurrencyLimiter.isCongestionSignal(reject(InterledgerErrorCode.R00_TRANSFER_TIMED_OUT)), is(true));
+    assertThat(AimdConcurrencyLimiter.isCongestionSignal(reject(InterledgerErrorCode.F02_UNREACHABLE)), is(false));
+    assertThat(AimdConcurrencyLimiter.isCongestionSignal(InterledgerFulfillPacket.builder()
+      .fulfillment(InterledgerFulfillment.of(new byte[32]))
+      .build()), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void initialLimitOutOfRange() {
+    new AimdConcurrencyLimiter(20, 1, 10, 0.5, Duration.ofSeconds(1));
+  }
+
+  private static InterledgerRejectPacket reject(final InterledgerErrorCode errorCode) {
+    return InterledgerRejectPacket.builder()
+      .triggeredBy(InterledgerAddress.of("test.conn"))
+      .code(errorCode)
+      .message("error message")
+      .build();
+  }
+}
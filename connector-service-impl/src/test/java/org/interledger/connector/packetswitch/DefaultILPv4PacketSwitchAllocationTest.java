@@ -0,0 +1,223 @@
+package org.interledger.connector.packetswitch;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.primitives.UnsignedLong;
+import org.interledger.connector.ConnectorExceptionHandler;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.link.AbstractLink;
+import org.interledger.connector.link.Link;
+import org.interledger.connector.link.LinkSettings;
+import org.interledger.connector.links.LinkManager;
+import org.interledger.connector.links.NextHopInfo;
+import org.interledger.connector.links.filters.LinkFilter;
+import org.interledger.connector.links.loopback.LoopbackLink;
+import org.interledger.connector.packetswitch.filters.PacketSwitchFilter;
+import org.interledger.connector.persistence.repositories.AccountSettingsRepository;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.when;
+
+/**
+ * Allocation-rate benchmark for {@link DefaultILPv4PacketSwitch} that asserts that, once warmed up, switching a packet
+ * onto a loopback link allocates (close to) nothing beyond what the link itself allocates for its response packet.
+ */
+public class DefaultILPv4PacketSwitchAllocationTest {
+
+  private static final int WARMUP_ITERATIONS = 50_000;
+  private static final int MEASURED_ITERATIONS = 100_000;
+  private static final int MEASURED_ROUNDS = 5;
+
+  // Allow for a small amount of measurement noise.
+  private static final long MAX_ALLOCATED_BYTES_PER_PACKET = 16;
+
+  private static final InterledgerAddress OPERATOR_ADDRESS = InterledgerAddress.of("test.operator");
+  private static final Supplier<Optional<InterledgerAddress>> OPERATOR_ADDRESS_SUPPLIER =
+    () -> Optional.of(OPERATOR_ADDRESS);
+
+  private static final AccountId INCOMING_ACCOUNT_ID = AccountId.of("source-account");
+  private static final AccountId OUTGOING_ACCOUNT_ID = AccountId.of("destination-account");
+
+  private static final InterledgerPreparePacket PREPARE_PACKET = InterledgerPreparePacket.builder()
+    .destination(InterledgerAddress.of("test.foo"))
+    .amount(UnsignedLong.ONE)
+    .expiresAt(Instant.now().plusSeconds(300))
+    .executionCondition(InterledgerCondition.of(new byte[32]))
+    .build();
+
+  private static final InterledgerFulfillPacket FULFILL_PACKET = InterledgerFulfillPacket.builder()
+    .fulfillment(LoopbackLink.LOOPBACK_FULFILLMENT)
+    .build();
+
+  // Pass-through filters, so that only the overhead of the chains themselves is measured.
+  private static final PacketSwitchFilter PASS_THROUGH_PACKET_SWITCH_FILTER =
+    (sourceAccountSettings, sourcePreparePacket, filterChain) ->
+      filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+  private static final LinkFilter PASS_THROUGH_LINK_FILTER =
+    (destinationAccountSettings, destinationPreparePacket, filterChain) ->
+      filterChain.doFilter(destinationAccountSettings, destinationPreparePacket);
+
+  @Mock
+  private AccountSettingsRepository accountSettingsRepositoryMock;
+  @Mock
+  private ConnectorExceptionHandler connectorExceptionHandlerMock;
+
+  private com.sun.management.ThreadMXBean threadMXBean;
+
+  private Link<?> outgoingLink;
+
+  private DefaultILPv4PacketSwitch packetSwitch;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    this.threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+    threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+    when(accountSettingsRepositoryMock.findByAccountIdWithConversion(INCOMING_ACCOUNT_ID))
+      .thenReturn(Optional.of(accountSettings(INCOMING_ACCOUNT_ID)));
+    when(accountSettingsRepositoryMock.findByAccountIdWithConversion(OUTGOING_ACCOUNT_ID))
+      .thenReturn(Optional.of(accountSettings(OUTGOING_ACCOUNT_ID)));
+
+    // The response packet is pre-built, so that the link itself allocates nothing per packet. (A real LoopbackLink
+    // builds a response per packet, and whether escape analysis removes those temporaries depends on how deep in the
+    // call-stack the link is invoked, which is not what this test is measuring.)
+    this.outgoingLink = new LoopbackLink(
+      OPERATOR_ADDRESS_SUPPLIER,
+      LinkSettings.builder().linkType(LoopbackLink.LINK_TYPE).build(),
+      new AbstractLink.EventBusEventEmitter(new EventBus()),
+      new PacketRejector(OPERATOR_ADDRESS_SUPPLIER)
+    ) {
+      @Override
+      public InterledgerResponsePacket sendPacket(final InterledgerPreparePacket preparePacket) {
+        return FULFILL_PACKET;
+      }
+    };
+
+    // The next-hop packet is pre-computed so that only the packet-switch itself is measured.
+    final NextHopInfo nextHopInfo = NextHopInfo.builder()
+      .nextHopAccountId(OUTGOING_ACCOUNT_ID)
+      .nextHopPacket(PREPARE_PACKET)
+      .build();
+
+    this.packetSwitch = new DefaultILPv4PacketSwitch(
+      Arrays.asList(PASS_THROUGH_PACKET_SWITCH_FILTER, PASS_THROUGH_PACKET_SWITCH_FILTER),
+      Arrays.asList(PASS_THROUGH_LINK_FILTER, PASS_THROUGH_LINK_FILTER),
+      new SingleLinkManager(outgoingLink),
+      (sourceAccountSettings, incomingPreparePacket) -> nextHopInfo,
+      connectorExceptionHandlerMock,
+      new PacketRejector(OPERATOR_ADDRESS_SUPPLIER),
+      new AccountSettingsLoadingCache(accountSettingsRepositoryMock)
+    );
+  }
+
+  @Test
+  public void switchPacketAllocatesNothingBeyondResponsePacket() {
+    final Supplier<InterledgerResponsePacket> linkSender = () -> outgoingLink.sendPacket(PREPARE_PACKET);
+    final Supplier<InterledgerResponsePacket> switchSender =
+      () -> packetSwitch.switchPacket(INCOMING_ACCOUNT_ID, PREPARE_PACKET);
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      linkSender.get();
+      switchSender.get();
+    }
+
+    // Measure the link and the switch in alternating rounds, and compare the quietest round of each, so that a GC or
+    // a deoptimization in one round does not skew the comparison.
+    long linkBytesPerPacket = Long.MAX_VALUE;
+    long switchBytesPerPacket = Long.MAX_VALUE;
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      linkBytesPerPacket = Math.min(linkBytesPerPacket, allocatedBytesPerPacket(linkSender));
+      switchBytesPerPacket = Math.min(switchBytesPerPacket, allocatedBytesPerPacket(switchSender));
+    }
+
+    assertThat(
+      String.format("switchPacket allocated %s bytes/packet vs %s bytes/packet for the link alone",
+        switchBytesPerPacket, linkBytesPerPacket),
+      switchBytesPerPacket - linkBytesPerPacket, lessThanOrEqualTo(MAX_ALLOCATED_BYTES_PER_PACKET)
+    );
+  }
+
+  private long allocatedBytesPerPacket(final Supplier<InterledgerResponsePacket> sender) {
+    final long threadId = Thread.currentThread().getId();
+
+    final long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      sender.get();
+    }
+    final long endBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+
+    return (endBytes - startBytes) / MEASURED_ITERATIONS;
+  }
+
+  private static AccountSettings accountSettings(final AccountId accountId) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .accountRelationship(AccountRelationship.PEER)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LoopbackLink.LINK_TYPE)
+      .build();
+  }
+
+  /**
+   * A {@link LinkManager} that always returns the same link, without the allocations a Mockito mock would incur.
+   */
+  private static final class SingleLinkManager implements LinkManager {
+
+    private final Link<?> link;
+
+    private SingleLinkManager(final Link<?> link) {
+      this.link = link;
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getOrCreateLink(AccountId accountId) {
+      return (Link) link;
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getOrCreateLink(AccountSettings accountSettings) {
+      return (Link) link;
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getOrCreateLink(AccountId accountId, LinkSettings linkSettings) {
+      return (Link) link;
+    }
+
+    @Override
+    public Set<Link<?>> getAllConnectedLinks() {
+      return Collections.singleton(link);
+    }
+
+    @Override
+    public Link<? extends LinkSettings> getPingLink() {
+      return (Link) link;
+    }
+  }
+}
@@ -6,6 +6,7 @@ import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountRelationship;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.accounts.ImmutableAccountSettings;
+import org.interledger.connector.caching.AccountRegistry;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
 import org.interledger.connector.link.AbstractLink;
 import org.interledger.connector.link.Link;
@@ -32,6 +33,7 @@ import java.math.BigInteger;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -101,6 +103,7 @@ public class DefaultILPv4PacketSwitchTest {
       new PacketRejector(() -> Optional.of(OPERATOR_ADDRESS))
     );
 
+    when(accountSettingsLoadingCacheMock.getAccountRegistry()).thenReturn(new AccountRegistry());
     this.packetSwitch = new DefaultILPv4PacketSwitch(
       packetSwitchFiltersMock,
       linkFiltersMock,
@@ -145,7 +148,9 @@ public class DefaultILPv4PacketSwitchTest {
       verifyZeroInteractions(nextHopPacketMapperMock);
       verifyZeroInteractions(linkFiltersMock);
       verifyZeroInteractions(linkManagerMock);
-      verifyZeroInteractions(packetSwitchFiltersMock);
+      // The PacketSwitchFilter chain is compiled at construction time, and is not touched by this packet.
+      verify(packetSwitchFiltersMock).size();
+      verifyNoMoreInteractions(packetSwitchFiltersMock);
       verifyZeroInteractions(packetRejectorMock);
       throw e;
     }
@@ -195,11 +200,16 @@ public class DefaultILPv4PacketSwitchTest {
       );
     }
 
-    verify(packetSwitchFiltersMock, times(numReps)).size();
-    verify(linkFiltersMock, times(numReps)).size();
-    verify(linkManagerMock, times(numReps)).getOrCreateLink(OUTGOING_ACCOUNT_ID);
+    // The filter chains are compiled once, and then reused for every packet, along with the outbound link.
+    verify(packetSwitchFiltersMock).size();
+    verify(linkFiltersMock).size();
+    verify(linkManagerMock).getOrCreateLink(OUTGOING_ACCOUNT_ID);
     verify(nextHopPacketMapperMock, times(numReps)).getNextHopPacket(incomingAccountSettings, PREPARE_PACKET);
-    verify(accountSettingsLoadingCacheMock, times(10)).getAccount(any());
+    // The settings of both accounts are read through the cache once, and then served by the AccountRegistry until
+    // they are due to be re-checked.
+    verify(accountSettingsLoadingCacheMock).getAccount(INCOMING_ACCOUNT_ID);
+    verify(accountSettingsLoadingCacheMock).getAccount(OUTGOING_ACCOUNT_ID);
+    verify(accountSettingsLoadingCacheMock, times(2)).getAccountRegistry();
 
     verifyZeroInteractions(connectorExceptionHandlerMock);
     verifyZeroInteractions(packetRejectorMock);
@@ -209,6 +219,88 @@ public class DefaultILPv4PacketSwitchTest {
     verifyNoMoreInteractions(accountSettingsLoadingCacheMock);
   }
 
+  /**
+   * Validate the asynchronous PacketSwitch when the supplied account does not exist.
+   */
+  @Test
+  public void switchPacketAsyncWithNoAccount() throws InterruptedException {
+    final AccountId NON_EXISTENT_ACCOUNT_ID = AccountId.of("123");
+
+    when(accountSettingsLoadingCacheMock.getAccount(any())).thenReturn(Optional.empty());
+
+    final InterledgerRejectPacket rejectPacket = InterledgerRejectPacket.builder()
+      .code(T00_INTERNAL_ERROR)
+      .message("")
+      .build();
+    when(packetRejectorMock.reject(any(), any(), any(), anyString())).thenReturn(rejectPacket);
+
+    try {
+      packetSwitch.switchPacketAsync(NON_EXISTENT_ACCOUNT_ID, PREPARE_PACKET).get();
+      fail("Should have completed with an InterledgerProtocolException!");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof InterledgerProtocolException, is(true));
+      assertThat(((InterledgerProtocolException) e.getCause()).getInterledgerRejectPacket(), is(rejectPacket));
+
+      verify(accountSettingsLoadingCacheMock).getAccount(eq(NON_EXISTENT_ACCOUNT_ID));
+      verifyZeroInteractions(connectorExceptionHandlerMock);
+      verifyZeroInteractions(nextHopPacketMapperMock);
+      verifyZeroInteractions(linkManagerMock);
+    }
+  }
+
+  /**
+   * Validate the asynchronous PacketSwitch with the same account multiple times, and assert that the same compiled
+   * filter chains are used as for the synchronous path.
+   */
+  @Test
+  public void switchPacketAsyncMultipleTimeWithSameAccount() throws Exception {
+    final ImmutableAccountSettings incomingAccountSettings = AccountSettings.builder()
+      .accountId(INCOMING_ACCOUNT_ID)
+      .accountRelationship(AccountRelationship.PEER)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LoopbackLink.LINK_TYPE)
+      .build();
+    when(accountSettingsLoadingCacheMock.getAccount(INCOMING_ACCOUNT_ID))
+      .thenReturn(Optional.of(incomingAccountSettings));
+
+    final ImmutableAccountSettings outgoingAccountSettings = AccountSettings.builder()
+      .accountId(OUTGOING_ACCOUNT_ID)
+      .accountRelationship(AccountRelationship.PEER)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LoopbackLink.LINK_TYPE)
+      .build();
+    when(accountSettingsLoadingCacheMock.getAccount(OUTGOING_ACCOUNT_ID))
+      .thenReturn(Optional.of(outgoingAccountSettings));
+
+    final NextHopInfo nextHopInfo = NextHopInfo.builder()
+      .nextHopAccountId(OUTGOING_ACCOUNT_ID)
+      .nextHopPacket(PREPARE_PACKET)
+      .build();
+    when(nextHopPacketMapperMock.getNextHopPacket(eq(incomingAccountSettings), eq(PREPARE_PACKET)))
+      .thenReturn(nextHopInfo);
+    when(linkManagerMock.getOrCreateLink(OUTGOING_ACCOUNT_ID)).thenReturn(outgoingLink);
+
+    final int numReps = 5;
+    for (int i = 0; i < numReps; i++) {
+      packetSwitch.switchPacketAsync(INCOMING_ACCOUNT_ID, PREPARE_PACKET).get().handle(
+        fulfillPacket -> assertThat(fulfillPacket.getFulfillment(), is(LoopbackLink.LOOPBACK_FULFILLMENT)),
+        rejectPacket -> fail("Should have fulfilled but rejected!")
+      );
+    }
+
+    verify(packetSwitchFiltersMock).size();
+    verify(linkFiltersMock).size();
+    verify(linkManagerMock).getOrCreateLink(OUTGOING_ACCOUNT_ID);
+    verify(nextHopPacketMapperMock, times(numReps)).getNextHopPacket(incomingAccountSettings, PREPARE_PACKET);
+
+    verifyZeroInteractions(connectorExceptionHandlerMock);
+    verifyZeroInteractions(packetRejectorMock);
+    verifyNoMoreInteractions(packetSwitchFiltersMock);
+    verifyNoMoreInteractions(linkFiltersMock);
+  }
+
   /**
    * Validate the PacketSwitch with the five different accounts and assert that the Cache is not engaged (i.e.,
    * AccountSettingsRepository is engaged five times).
@@ -248,12 +340,14 @@ public class DefaultILPv4PacketSwitchTest {
       verify(linkManagerMock).getOrCreateLink(eq(incomingAccountID));
       verify(linkManagerMock).getOrCreateLink(eq(outgoingAccountID));
       verify(nextHopPacketMapperMock).getNextHopPacket(incomingAccountSettings, PREPARE_PACKET);
-      verify(accountSettingsLoadingCacheMock, times(2)).getAccount(incomingAccountID);
-      verify(accountSettingsLoadingCacheMock, times(2)).getAccount(outgoingAccountID);
+      verify(accountSettingsLoadingCacheMock).getAccount(incomingAccountID);
+      verify(accountSettingsLoadingCacheMock).getAccount(outgoingAccountID);
     }
 
-    verify(packetSwitchFiltersMock, times(numReps)).size();
+    // The PacketSwitchFilter chain is compiled once, but each new outgoing account compiles its own LinkFilter chain.
+    verify(packetSwitchFiltersMock).size();
     verify(linkFiltersMock, times(numReps)).size();
+    verify(accountSettingsLoadingCacheMock, times(2)).getAccountRegistry();
 
     verifyZeroInteractions(connectorExceptionHandlerMock);
     verifyZeroInteractions(packetRejectorMock);
@@ -0,0 +1,121 @@
+package org.interledger.connector.packetswitch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Unit tests for {@link HashedWheelTimer}.
+ */
+public class HashedWheelTimerTest {
+
+  private HashedWheelTimer timer;
+
+  @Before
+  public void setUp() {
+    this.timer = new HashedWheelTimer(
+      Duration.ofMillis(1), 8, new ThreadFactoryBuilder().setNameFormat("test-timer-%d").setDaemon(true).build()
+    );
+  }
+
+  @After
+  public void tearDown() {
+    timer.close();
+  }
+
+  @Test
+  public void wheelSizeIsRoundedUpToPowerOfTwo() {
+    final HashedWheelTimer oddTimer = new HashedWheelTimer(
+      Duration.ofMillis(1), 100, new ThreadFactoryBuilder().setDaemon(true).build()
+    );
+    try {
+      assertThat(oddTimer.wheelSize(), is(128));
+    } finally {
+      oddTimer.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroTickDuration() {
+    new HashedWheelTimer(Duration.ZERO, 8, new ThreadFactoryBuilder().build());
+  }
+
+  @Test
+  public void timeoutNeverFiresEarly() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicLong firedAfterNanos = new AtomicLong();
+    final long startNanos = System.nanoTime();
+
+    final HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> {
+      firedAfterNanos.set(System.nanoTime() - startNanos);
+      latch.countDown();
+    }, 25, TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(firedAfterNanos.get(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(25)));
+    assertThat(timeout.isExpired(), is(true));
+    assertThat(timeout.cancel(), is(false));
+  }
+
+  /**
+   * A deadline several revolutions of the (8 bucket) wheel away must only fire once its rounds have elapsed.
+   */
+  @Test
+  public void timeoutFiresAfterMultipleRevolutions() throws InterruptedException {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicLong firedAfterNanos = new AtomicLong();
+    final long startNanos = System.nanoTime();
+
+    timer.newTimeout(() -> {
+      firedAfterNanos.set(System.nanoTime() - startNanos);
+      latch.countDown();
+    }, 50, TimeUnit.MILLISECONDS);
+
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(firedAfterNanos.get(), greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)));
+  }
+
+  @Test
+  public void cancelledTimeoutNeverFires() throws InterruptedException {
+    final AtomicInteger fired = new AtomicInteger();
+    final HashedWheelTimer.Timeout timeout = timer.newTimeout(fired::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+    assertThat(timeout.cancel(), is(true));
+    assertThat(timeout.isCancelled(), is(true));
+
+    // A later timeout acts as a barrier, proving that the worker has passed the cancelled timeout's deadline.
+    final CountDownLatch latch = new CountDownLatch(1);
+    timer.newTimeout(latch::countDown, 30, TimeUnit.MILLISECONDS);
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+
+    assertThat(fired.get(), is(0));
+  }
+
+  @Test
+  public void timeoutTaskThatThrowsDoesNotStopTimer() throws InterruptedException {
+    timer.newTimeout(() -> {
+      throw new RuntimeException("foo");
+    }, 1, TimeUnit.MILLISECONDS);
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    timer.newTimeout(latch::countDown, 10, TimeUnit.MILLISECONDS);
+    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void newTimeoutAfterClose() {
+    timer.close();
+    timer.newTimeout(() -> {
+    }, 1, TimeUnit.MILLISECONDS);
+  }
+}
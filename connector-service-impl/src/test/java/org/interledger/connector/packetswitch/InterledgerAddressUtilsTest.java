@@ -0,0 +1,146 @@
+package org.interledger.connector.packetswitch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountSettingsLoadingCache;
+import org.interledger.connector.settings.ConnectorSettings;
+import org.interledger.core.InterledgerAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Optional;
+
+/**
+ * Unit tests for {@link InterledgerAddressUtils}.
+ */
+public class InterledgerAddressUtilsTest {
+
+  private static final InterledgerAddress OPERATOR_ADDRESS = InterledgerAddress.of("test.connector");
+
+  private static final InterledgerAddress GLOBAL_DESTINATION = InterledgerAddress.of("g.bob");
+  private static final InterledgerAddress TEST_DESTINATION = InterledgerAddress.of("test.bob");
+  private static final InterledgerAddress PING_DESTINATION = OPERATOR_ADDRESS;
+  private static final InterledgerAddress PRIVATE_DESTINATION = InterledgerAddress.of("private.bob");
+  private static final InterledgerAddress PEER_DESTINATION = InterledgerAddress.of("peer.config");
+  private static final InterledgerAddress SELF_DESTINATION = InterledgerAddress.of("self.bob");
+  private static final InterledgerAddress EXAMPLE_DESTINATION = InterledgerAddress.of("example.bob");
+
+  private static final AccountId INTERNAL_ACCOUNT_ID = AccountId.of("internal");
+  private static final AccountId EXTERNAL_ACCOUNT_ID = AccountId.of("external");
+  private static final AccountId UNKNOWN_ACCOUNT_ID = AccountId.of("unknown");
+
+  @Mock
+  private ConnectorSettings connectorSettingsMock;
+
+  @Mock
+  private AccountSettingsLoadingCache accountSettingsLoadingCacheMock;
+
+  @Mock
+  private AccountSettings internalAccountSettingsMock;
+
+  @Mock
+  private AccountSettings externalAccountSettingsMock;
+
+  private InterledgerAddressUtils addressUtils;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    when(connectorSettingsMock.operatorAddress()).thenReturn(Optional.of(OPERATOR_ADDRESS));
+    when(connectorSettingsMock.operatorAddressSafe()).thenReturn(OPERATOR_ADDRESS);
+
+    when(internalAccountSettingsMock.accountId()).thenReturn(INTERNAL_ACCOUNT_ID);
+    when(internalAccountSettingsMock.isInternal()).thenReturn(true);
+    when(externalAccountSettingsMock.accountId()).thenReturn(EXTERNAL_ACCOUNT_ID);
+    when(externalAccountSettingsMock.isInternal()).thenReturn(false);
+
+    when(accountSettingsLoadingCacheMock.getAccount(any())).thenReturn(Optional.empty());
+    when(accountSettingsLoadingCacheMock.getAccount(INTERNAL_ACCOUNT_ID))
+      .thenReturn(Optional.of(internalAccountSettingsMock));
+    when(accountSettingsLoadingCacheMock.getAccount(EXTERNAL_ACCOUNT_ID))
+      .thenReturn(Optional.of(externalAccountSettingsMock));
+
+    this.addressUtils = new InterledgerAddressUtils(() -> connectorSettingsMock, accountSettingsLoadingCacheMock);
+  }
+
+  @Test
+  public void isDestinationAllowedFromInternalAccountSettings() {
+    assertThat(addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, GLOBAL_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, TEST_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, PING_DESTINATION), is(true));
+    assertThat(
+      addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, PRIVATE_DESTINATION), is(true)
+    );
+    assertThat(addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, PEER_DESTINATION), is(false));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, SELF_DESTINATION), is(true));
+    assertThat(
+      addressUtils.isDestinationAllowedFromAccount(internalAccountSettingsMock, EXAMPLE_DESTINATION), is(false)
+    );
+
+    // The settings are already at hand, so nothing should be looked up.
+    verifyNoMoreInteractions(accountSettingsLoadingCacheMock);
+  }
+
+  @Test
+  public void isDestinationAllowedFromExternalAccountSettings() {
+    assertThat(addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, GLOBAL_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, TEST_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, PING_DESTINATION), is(true));
+    assertThat(
+      addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, PRIVATE_DESTINATION), is(false)
+    );
+    assertThat(addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, PEER_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, SELF_DESTINATION), is(false));
+    assertThat(
+      addressUtils.isDestinationAllowedFromAccount(externalAccountSettingsMock, EXAMPLE_DESTINATION), is(false)
+    );
+
+    verifyNoMoreInteractions(accountSettingsLoadingCacheMock);
+  }
+
+  @Test
+  public void isDestinationAllowedFromAccountIdUsesCachedSettings() {
+    assertThat(addressUtils.isDestinationAllowedFromAccount(INTERNAL_ACCOUNT_ID, PRIVATE_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(INTERNAL_ACCOUNT_ID, PEER_DESTINATION), is(false));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(INTERNAL_ACCOUNT_ID, SELF_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(EXTERNAL_ACCOUNT_ID, PRIVATE_DESTINATION), is(false));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(EXTERNAL_ACCOUNT_ID, PEER_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(EXTERNAL_ACCOUNT_ID, SELF_DESTINATION), is(false));
+
+    // Payment-network destinations don't depend on the source account, so they don't need a lookup.
+    assertThat(addressUtils.isDestinationAllowedFromAccount(EXTERNAL_ACCOUNT_ID, GLOBAL_DESTINATION), is(true));
+
+    verify(accountSettingsLoadingCacheMock, times(3)).getAccount(INTERNAL_ACCOUNT_ID);
+    verify(accountSettingsLoadingCacheMock, times(3)).getAccount(EXTERNAL_ACCOUNT_ID);
+    verifyNoMoreInteractions(accountSettingsLoadingCacheMock);
+  }
+
+  @Test
+  public void isDestinationAllowedFromUnknownAccount() {
+    assertThat(addressUtils.isDestinationAllowedFromAccount(UNKNOWN_ACCOUNT_ID, GLOBAL_DESTINATION), is(true));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(UNKNOWN_ACCOUNT_ID, PRIVATE_DESTINATION), is(false));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(UNKNOWN_ACCOUNT_ID, PEER_DESTINATION), is(false));
+    assertThat(addressUtils.isDestinationAllowedFromAccount(UNKNOWN_ACCOUNT_ID, SELF_DESTINATION), is(false));
+  }
+
+  @Test
+  public void isExternalForwardingAllowed() {
+    assertThat(addressUtils.isExternalForwardingAllowed(GLOBAL_DESTINATION), is(true));
+    assertThat(addressUtils.isExternalForwardingAllowed(TEST_DESTINATION), is(true));
+    assertThat(addressUtils.isExternalForwardingAllowed(InterledgerAddress.of("test.connector.alice")), is(false));
+    assertThat(addressUtils.isExternalForwardingAllowed(PEER_DESTINATION), is(false));
+    assertThat(addressUtils.isExternalForwardingAllowed(PRIVATE_DESTINATION), is(false));
+  }
+}
@@ -0,0 +1,132 @@
+package org.interledger.connector.packetswitch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for {@link SlidingWindowCounter}.
+ */
+public class SlidingWindowCounterTest {
+
+  private final FakeTicker ticker = new FakeTicker();
+
+  @Test
+  public void rejectsValuesOverLimit() {
+    final SlidingWindowCounter counter = new SlidingWindowCounter(100, Duration.ofSeconds(1), 10, ticker);
+
+    assertThat(counter.tryAdd(60), is(true));
+    assertThat(counter.tryAdd(50), is(false));
+    assertThat(counter.tryAdd(40), is(true));
+    assertThat(counter.tryAdd(1), is(false));
+    assertThat(counter.tryAdd(0), is(true));
+  }
+
+  @Test
+  public void valuesExpireAsWindowSlides() {
+    final SlidingWindowCounter counter = new SlidingWindowCounter(100, Duration.ofSeconds(1), 10, ticker);
+
+    assertThat(counter.tryAdd(60), is(true));
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(500));
+    assertThat(counter.tryAdd(40), is(true));
+    assertThat(counter.tryAdd(1), is(false));
+
+    // The first 60 has left the window, but the later 40 has not.
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(500));
+    assertThat(counter.tryAdd(61), is(false));
+    assertThat(counter.tryAdd(60), is(true));
+
+    // Everything has left the window.
+    ticker.advance(TimeUnit.SECONDS.toNanos(5));
+    assertThat(counter.tryAdd(100), is(true));
+  }
+
+  /**
+   * A thread that read the ticker during an earlier slice may only record that slice once later values have been added.
+   * That record must not hide the values that were added since.
+   */
+  @Test
+  public void staleSliceDoesNotHideLaterValues() {
+    final SlidingWindowCounter counter = new SlidingWindowCounter(100, Duration.ofSeconds(1), 10, ticker);
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(500));
+    assertThat(counter.tryAdd(60), is(true));
+
+    // Behaves like a thread that read the ticker 100ms ago, during a slice that saw no additions.
+    ticker.advance(-TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(counter.tryAdd(0), is(true));
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(100));
+
+    assertThat(counter.tryAdd(50), is(false));
+    assertThat(counter.tryAdd(40), is(true));
+  }
+
+  /**
+   * A thread that read the ticker a whole window ago must not replace the record of the slice that shares its index.
+   */
+  @Test
+  public void staleSliceDoesNotReplaceNewerSlice() {
+    final SlidingWindowCounter counter = new SlidingWindowCounter(100, Duration.ofSeconds(1), 10, ticker);
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(1_000));
+    assertThat(counter.tryAdd(60), is(true));
+
+    ticker.advance(-TimeUnit.MILLISECONDS.toNanos(1_000));
+    assertThat(counter.tryAdd(0), is(true));
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(1_050));
+
+    assertThat(counter.tryAdd(50), is(false));
+    assertThat(counter.tryAdd(40), is(true));
+  }
+
+  @Test
+  public void neverExceedsLimitUnderContention() throws InterruptedException {
+    final SlidingWindowCounter counter = new SlidingWindowCounter(10_000, Duration.ofSeconds(1), 10, ticker);
+    final AtomicLong added = new AtomicLong();
+    final CountDownLatch done = new CountDownLatch(8);
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (int i = 0; i < 8; i++) {
+        executor.submit(() -> {
+          for (int j = 0; j < 1_000; j++) {
+            if (counter.tryAdd(7)) {
+              added.addAndGet(7);
+            }
+          }
+          done.countDown();
+        });
+      }
+      assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(added.get(), is(10_000L / 7 * 7));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeValue() {
+    new SlidingWindowCounter(100, Duration.ofSeconds(1), 10, ticker).tryAdd(-1);
+  }
+
+  private static final class FakeTicker extends Ticker {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+
+    void advance(final long deltaNanos) {
+      nanos.addAndGet(deltaNanos);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.interledger.connector.packetswitch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unit tests for {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+
+  private final FakeTicker ticker = new FakeTicker();
+
+  @Test
+  public void absorbsOneSecondBurst() {
+    final TokenBucket tokenBucket = new TokenBucket(10, ticker);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(tokenBucket.tryAcquire(), is(true));
+    }
+    assertThat(tokenBucket.tryAcquire(), is(false));
+  }
+
+  @Test
+  public void refillsAtConfiguredRate() {
+    final TokenBucket tokenBucket = new TokenBucket(10, ticker);
+    for (int i = 0; i < 10; i++) {
+      tokenBucket.tryAcquire();
+    }
+    assertThat(tokenBucket.tryAcquire(), is(false));
+
+    ticker.advance(TimeUnit.MILLISECONDS.toNanos(100));
+    assertThat(tokenBucket.tryAcquire(), is(true));
+    assertThat(tokenBucket.tryAcquire(), is(false));
+  }
+
+  @Test
+  public void neverAccumulatesMoreThanCapacity() {
+    final TokenBucket tokenBucket = new TokenBucket(2, ticker);
+
+    ticker.advance(TimeUnit.MINUTES.toNanos(1));
+    assertThat(tokenBucket.tryAcquire(), is(true));
+    assertThat(tokenBucket.tryAcquire(), is(true));
+    assertThat(tokenBucket.tryAcquire(), is(false));
+  }
+
+  @Test
+  public void toleratesTickerOverflow() {
+    ticker.set(Long.MAX_VALUE - TimeUnit.MILLISECONDS.toNanos(500));
+    final TokenBucket tokenBucket = new TokenBucket(1, ticker);
+    assertThat(tokenBucket.tryAcquire(), is(true));
+    assertThat(tokenBucket.tryAcquire(), is(false));
+
+    // The ticker wraps around to negative values.
+    ticker.advance(TimeUnit.SECONDS.toNanos(1));
+    assertThat(tokenBucket.tryAcquire(), is(true));
+    assertThat(tokenBucket.tryAcquire(), is(false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveRate() {
+    new TokenBucket(0, ticker);
+  }
+
+  private static final class FakeTicker extends Ticker {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+
+    void advance(final long deltaNanos) {
+      nanos.addAndGet(deltaNanos);
+    }
+
+    void set(final long nanos) {
+      this.nanos.set(nanos);
+    }
+  }
+}
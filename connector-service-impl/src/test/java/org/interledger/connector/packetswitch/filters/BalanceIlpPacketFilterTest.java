@@ -0,0 +1,197 @@
+package org.interledger.connector.packetswitch.filters;
+
+import com.google.common.primitives.UnsignedLong;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.balances.BalanceTracker;
+import org.interledger.connector.balances.BalanceTrackerBusyException;
+import org.interledger.connector.balances.BalanceTrackerException;
+import org.interledger.connector.balances.InMemoryBalanceTracker;
+import org.interledger.connector.links.loopback.LoopbackLink;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerRejectPacket;
+import org.interledger.core.InterledgerResponsePacket;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for {@link BalanceIlpPacketFilter}.
+ */
+public class BalanceIlpPacketFilterTest {
+
+  private static final InterledgerAddress OPERATOR_ADDRESS = InterledgerAddress.of("test.operator");
+
+  private static final AccountSettings SOURCE_ACCOUNT_SETTINGS = AccountSettings.builder()
+    .accountId(AccountId.of("source-account"))
+    .accountRelationship(AccountRelationship.PEER)
+    .assetCode("USD")
+    .assetScale(2)
+    .linkType(LoopbackLink.LINK_TYPE)
+    .build();
+
+  private static final InterledgerPreparePacket PREPARE_PACKET = InterledgerPreparePacket.builder()
+    .destination(InterledgerAddress.of("test.destination"))
+    .amount(UnsignedLong.valueOf(10))
+    .expiresAt(Instant.now().plusSeconds(30))
+    .executionCondition(InterledgerCondition.of(new byte[32]))
+    .build();
+
+  private BalanceTracker balanceTracker;
+  private CompletableFuture<InterledgerResponsePacket> downstreamFuture;
+  private AtomicInteger numDownstreamCalls;
+
+  private BalanceIlpPacketFilter filter;
+
+  @Before
+  public void setUp() {
+    this.balanceTracker = spy(new InMemoryBalanceTracker());
+    this.downstreamFuture = new CompletableFuture<>();
+    this.numDownstreamCalls = new AtomicInteger();
+    this.filter = new BalanceIlpPacketFilter(new PacketRejector(() -> Optional.of(OPERATOR_ADDRESS)), balanceTracker);
+  }
+
+  /**
+   * ExpiryPacketFilter cancels the future returned by this filter (not the downstream one), so the sender must still be
+   * reversed.
+   */
+  @Test
+  public void doFilterAsyncReversesSenderWhenReturnedFutureIsCancelled() {
+    final CompletableFuture<InterledgerResponsePacket> responseFuture =
+      filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain());
+
+    responseFuture.cancel(true);
+
+    assertThat(downstreamFuture.isCancelled(), is(true));
+    verify(balanceTracker, times(1)).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), eq(10L));
+  }
+
+  @Test
+  public void doFilterAsyncReversesSenderWhenDownstreamIsCancelled() {
+    final CompletableFuture<InterledgerResponsePacket> responseFuture =
+      filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain());
+
+    downstreamFuture.cancel(true);
+
+    assertThat(responseFuture.isCompletedExceptionally(), is(true));
+    verify(balanceTracker, times(1)).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), eq(10L));
+  }
+
+  @Test
+  public void doFilterAsyncDoesNotReverseSenderOnOtherFailures() {
+    final CompletableFuture<InterledgerResponsePacket> responseFuture =
+      filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain());
+
+    downstreamFuture.completeExceptionally(new IllegalStateException("boom"));
+
+    assertThat(responseFuture.isCompletedExceptionally(), is(true));
+    verify(balanceTracker, never()).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), anyLong());
+  }
+
+  @Test
+  public void doFilterAsyncDoesNotSendPacketUntilAsyncPrepareIsApplied() {
+    final CompletableFuture<Void> prepareFuture = new CompletableFuture<>();
+    doReturn(prepareFuture).when(balanceTracker).updateBalanceForPrepareAsync(any(), anyLong(), any());
+
+    final CompletableFuture<InterledgerResponsePacket> responseFuture =
+      filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain());
+    assertThat(numDownstreamCalls.get(), is(0));
+
+    prepareFuture.complete(null);
+    assertThat(numDownstreamCalls.get(), is(1));
+    assertThat(responseFuture.isDone(), is(false));
+  }
+
+  @Test
+  public void doFilterAsyncRejectsWhenAsyncPrepareFails() {
+    final CompletableFuture<Void> prepareFuture = new CompletableFuture<>();
+    prepareFuture.completeExceptionally(new BalanceTrackerException("under its minimum balance"));
+    doReturn(prepareFuture).when(balanceTracker).updateBalanceForPrepareAsync(any(), anyLong(), any());
+
+    final InterledgerResponsePacket response =
+      filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain()).join();
+
+    assertThat(((InterledgerRejectPacket) response).getCode(), is(InterledgerErrorCode.T04_INSUFFICIENT_LIQUIDITY));
+    assertThat(numDownstreamCalls.get(), is(0));
+    verify(balanceTracker, never()).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), anyLong());
+  }
+
+  @Test
+  public void doFilterAsyncRejectsAsBusyWhenBalanceTrackerIsBusy() {
+    final CompletableFuture<Void> prepareFuture = new CompletableFuture<>();
+    prepareFuture.completeExceptionally(new BalanceTrackerBusyException("queue is full"));
+    doReturn(prepareFuture).when(balanceTracker).updateBalanceForPrepareAsync(any(), anyLong(), any());
+
+    final InterledgerResponsePacket response =
+      filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain()).join();
+
+    assertThat(((InterledgerRejectPacket) response).getCode(), is(InterledgerErrorCode.T03_CONNECTOR_BUSY));
+    assertThat(numDownstreamCalls.get(), is(0));
+    verify(balanceTracker, never()).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), anyLong());
+  }
+
+  @Test
+  public void doFilterRejectsAsBusyWhenBalanceTrackerIsBusy() {
+    doThrow(new BalanceTrackerBusyException("queue is full"))
+      .when(balanceTracker).updateBalanceForPrepare(any(), anyLong(), any());
+
+    final InterledgerResponsePacket response =
+      filter.doFilter(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain());
+
+    assertThat(((InterledgerRejectPacket) response).getCode(), is(InterledgerErrorCode.T03_CONNECTOR_BUSY));
+    verify(balanceTracker, never()).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), anyLong());
+  }
+
+  @Test
+  public void doFilterAsyncReversesSenderOnceWhenCancelledBeforeAsyncPrepareIsApplied() {
+    final CompletableFuture<Void> prepareFuture = new CompletableFuture<>();
+    doReturn(prepareFuture).when(balanceTracker).updateBalanceForPrepareAsync(any(), anyLong(), any());
+
+    filter.doFilterAsync(SOURCE_ACCOUNT_SETTINGS, PREPARE_PACKET, pendingFilterChain()).cancel(true);
+    verify(balanceTracker, never()).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), anyLong());
+
+    prepareFuture.complete(null);
+    assertThat(numDownstreamCalls.get(), is(0));
+    verify(balanceTracker, times(1)).updateBalanceForReject(eq(SOURCE_ACCOUNT_SETTINGS.accountId()), eq(10L));
+  }
+
+  private PacketSwitchFilterChain pendingFilterChain() {
+    return new PacketSwitchFilterChain() {
+      @Override
+      public InterledgerResponsePacket doFilter(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        throw new IllegalStateException("The blocking variant should not be called!");
+      }
+
+      @Override
+      public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        numDownstreamCalls.incrementAndGet();
+        return downstreamFuture;
+      }
+    };
+  }
+}
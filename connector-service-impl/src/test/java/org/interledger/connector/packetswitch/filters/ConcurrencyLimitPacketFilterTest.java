@@ -0,0 +1,133 @@
+package org.interledger.connector.packetswitch.filters;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.packetswitch.AimdConcurrencyLimiter;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerFulfillment;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerRejectPacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Unit tests for {@link ConcurrencyLimitPacketFilter}.
+ */
+public class ConcurrencyLimitPacketFilterTest {
+
+  private static final AccountId SOURCE_ACCOUNT_ID = AccountId.of("123");
+
+  private static final InterledgerPreparePacket PREPARE_PACKET = InterledgerPreparePacket.builder()
+    .expiresAt(Instant.now())
+    .destination(InterledgerAddress.of("test.dest"))
+    .executionCondition(InterledgerCondition.of(new byte[32]))
+    .build();
+
+  private static final InterledgerFulfillPacket FULFILL_PACKET = InterledgerFulfillPacket.builder()
+    .fulfillment(InterledgerFulfillment.of(new byte[32]))
+    .build();
+
+  private static final InterledgerRejectPacket BUSY_REJECT_PACKET = InterledgerRejectPacket.builder()
+    .triggeredBy(InterledgerAddress.of("test.conn"))
+    .code(InterledgerErrorCode.T03_CONNECTOR_BUSY)
+    .message("Concurrency limit exceeded")
+    .build();
+
+  @Mock
+  private PacketRejector packetRejectorMock;
+
+  @Mock
+  private AccountSettings accountSettingsMock;
+
+  @Mock
+  private PacketSwitchFilterChain filterChainMock;
+
+  private AimdConcurrencyLimiter limiter;
+
+  private ConcurrencyLimitPacketFilter filter;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    when(accountSettingsMock.accountId()).thenReturn(SOURCE_ACCOUNT_ID);
+    when(packetRejectorMock.reject(any(), any(), any(), any())).thenReturn(BUSY_REJECT_PACKET);
+
+    limiter = new AimdConcurrencyLimiter(1, 1, 1, 0.5, Duration.ofSeconds(30));
+    filter = new ConcurrencyLimitPacketFilter(packetRejectorMock, () -> limiter);
+  }
+
+  @Test
+  public void doFilterReleasesAfterResponse() {
+    when(filterChainMock.doFilter(accountSettingsMock, PREPARE_PACKET)).thenReturn(FULFILL_PACKET);
+
+    assertThat(filter.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock), is(FULFILL_PACKET));
+    assertThat(filter.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock), is(FULFILL_PACKET));
+    assertThat(limiter.getInFlight(), is(0));
+    verifyZeroInteractions(packetRejectorMock);
+  }
+
+  @Test
+  public void doFilterReleasesAfterException() {
+    when(filterChainMock.doFilter(accountSettingsMock, PREPARE_PACKET)).thenThrow(new RuntimeException("foo"));
+
+    try {
+      filter.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
+      fail("Should have thrown a RuntimeException");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), is("foo"));
+    }
+    assertThat(limiter.getInFlight(), is(0));
+  }
+
+  @Test
+  public void doFilterAsyncShedsLoadWhileLimitInUse() {
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture = new CompletableFuture<>();
+    when(filterChainMock.doFilterAsync(accountSettingsMock, PREPARE_PACKET)).thenReturn(downstreamFuture);
+
+    final CompletableFuture<InterledgerResponsePacket> firstResponse =
+      filter.doFilterAsync(accountSettingsMock, PREPARE_PACKET, filterChainMock);
+    assertThat(firstResponse.isDone(), is(false));
+
+    // The only slot is in use, so the second packet is rejected without reaching the filter chain.
+    assertThat(filter.doFilterAsync(accountSettingsMock, PREPARE_PACKET, filterChainMock).join(),
+      is(BUSY_REJECT_PACKET));
+    verify(packetRejectorMock).reject(
+      SOURCE_ACCOUNT_ID, PREPARE_PACKET, InterledgerErrorCode.T03_CONNECTOR_BUSY, "Concurrency limit exceeded"
+    );
+
+    downstreamFuture.complete(FULFILL_PACKET);
+    assertThat(firstResponse.join(), is(FULFILL_PACKET));
+    assertThat(limiter.getInFlight(), is(0));
+  }
+
+  @Test
+  public void doFilterAsyncReleasesOnCancellation() {
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture = new CompletableFuture<>();
+    when(filterChainMock.doFilterAsync(accountSettingsMock, PREPARE_PACKET)).thenReturn(downstreamFuture);
+
+    filter.doFilterAsync(accountSettingsMock, PREPARE_PACKET, filterChainMock).cancel(true);
+
+    assertThat(downstreamFuture.isCancelled(), is(true));
+    assertThat(limiter.getInFlight(), is(0));
+  }
+}
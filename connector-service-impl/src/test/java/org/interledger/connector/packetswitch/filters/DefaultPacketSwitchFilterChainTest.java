@@ -5,6 +5,7 @@ import com.google.common.eventbus.EventBus;
 import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountRelationship;
 import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.caching.AccountRegistry;
 import org.interledger.connector.caching.AccountSettingsLoadingCache;
 import org.interledger.connector.link.AbstractLink;
 import org.interledger.connector.link.Link;
@@ -19,6 +20,7 @@ import org.interledger.connector.packetswitch.PacketRejector;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.core.InterledgerCondition;
 import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
 
 import com.google.common.primitives.UnsignedLong;
 import org.junit.Before;
@@ -30,6 +32,8 @@ import java.math.BigInteger;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -38,6 +42,7 @@ import static org.interledger.connector.routing.PaymentRouter.PING_ACCOUNT_ID;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -99,6 +104,8 @@ public class DefaultPacketSwitchFilterChainTest {
 
   private Link outgoingLink;
 
+  private AccountRegistry accountRegistry;
+
   private List<PacketSwitchFilter> packetSwitchFilters;
 
   private DefaultPacketSwitchFilterChain filterChain;
@@ -116,13 +123,9 @@ public class DefaultPacketSwitchFilterChainTest {
       new PacketRejector(() -> Optional.of(OPERATOR_ADDRESS))
     );
 
-    this.filterChain = new DefaultPacketSwitchFilterChain(
-      packetSwitchFilters,
-      linkFiltersMock,
-      linkManagerMock,
-      nextHopPacketMapperMock,
-      accountSettingsLoadingCacheMock
-    );
+    this.accountRegistry = new AccountRegistry();
+    when(accountSettingsLoadingCacheMock.getAccountRegistry()).thenReturn(accountRegistry);
+    this.filterChain = newFilterChain();
 
     when(accountSettingsLoadingCacheMock.getAccount(INCOMING_ACCOUNT_ID))
       .thenReturn(Optional.of(INCOMING_ACCOUNT_SETTINGS));
@@ -160,17 +163,28 @@ public class DefaultPacketSwitchFilterChainTest {
 
   @Test
   public void filterPacketWithMultipleFilters() {
+    final AtomicInteger filter1Calls = new AtomicInteger();
     final PacketSwitchFilter packetSwitchFilter1 =
-      (sourceAccountSettings, sourcePreparePacket, filterChain) -> filterChain
-        .doFilter(sourceAccountSettings, sourcePreparePacket);
+      (sourceAccountSettings, sourcePreparePacket, filterChain) -> {
+        filter1Calls.incrementAndGet();
+        return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+      };
     this.packetSwitchFilters.add(packetSwitchFilter1);
 
-    final PacketSwitchFilter packetSwitchFilter2 = (sourceAccountSettings, sourcePreparePacket, filterChain) ->
-      filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+    final AtomicInteger filter2Calls = new AtomicInteger();
+    final PacketSwitchFilter packetSwitchFilter2 = (sourceAccountSettings, sourcePreparePacket, filterChain) -> {
+      // The first filter must always run before the second one.
+      assertThat(filter1Calls.get(), is(filter2Calls.get() + 1));
+      filter2Calls.incrementAndGet();
+      return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+    };
     this.packetSwitchFilters.add(packetSwitchFilter2);
 
     assertThat(this.packetSwitchFilters.size(), is(2));
 
+    // The chain is compiled at construction time, so it must be re-created after adding filters.
+    this.filterChain = newFilterChain();
+
     final NextHopInfo nextHopInfo = NextHopInfo.builder()
       .nextHopAccountId(OUTGOING_ACCOUNT_ID)
       .nextHopPacket(PREPARE_PACKET)
@@ -184,6 +198,8 @@ public class DefaultPacketSwitchFilterChainTest {
     );
 
     // Each filter should only be called once...
+    assertThat(filter1Calls.get(), is(1));
+    assertThat(filter2Calls.get(), is(1));
     verify(linkFiltersMock).size();
     verify(linkManagerMock).getOrCreateLink(OUTGOING_ACCOUNT_ID);
     verify(nextHopPacketMapperMock).getNextHopPacket(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET);
@@ -234,4 +250,140 @@ public class DefaultPacketSwitchFilterChainTest {
     verifyNoMoreInteractions(linkFiltersMock);
   }
 
+  /**
+   * Validates that a single chain instance can be re-used for many packets, and that the outbound LinkFilter chain (and
+   * its link) is only obtained once per `next-hop` account.
+   */
+  @Test
+  public void filterPacketMultipleTimesReusesChain() {
+    final AtomicInteger filterCalls = new AtomicInteger();
+    this.packetSwitchFilters.add((sourceAccountSettings, sourcePreparePacket, filterChain) -> {
+      filterCalls.incrementAndGet();
+      return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+    });
+    this.filterChain = newFilterChain();
+
+    final NextHopInfo nextHopInfo = NextHopInfo.builder()
+      .nextHopAccountId(OUTGOING_ACCOUNT_ID)
+      .nextHopPacket(PREPARE_PACKET)
+      .build();
+    when(nextHopPacketMapperMock.getNextHopPacket(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET)).thenReturn(nextHopInfo);
+    when(linkManagerMock.getOrCreateLink(OUTGOING_ACCOUNT_ID)).thenReturn(outgoingLink);
+
+    final int numReps = 5;
+    for (int i = 0; i < numReps; i++) {
+      filterChain.doFilter(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET).handle(
+        fulfillPacket -> assertThat(fulfillPacket.getFulfillment(), is(LoopbackLink.LOOPBACK_FULFILLMENT)),
+        rejectPacket -> fail("Should have fulfilled but rejected!")
+      );
+    }
+
+    assertThat(filterCalls.get(), is(numReps));
+    verify(linkFiltersMock).size();
+    verify(linkManagerMock).getOrCreateLink(OUTGOING_ACCOUNT_ID);
+    verify(accountSettingsLoadingCacheMock).getAccount(OUTGOING_ACCOUNT_ID);
+    verifyNoMoreInteractions(linkFiltersMock);
+  }
+
+  /**
+   * Validates that once the link of a `next-hop` account disconnects, the next packet obtains a new link from the
+   * LinkManager and compiles a new LinkFilter chain for it.
+   */
+  @Test
+  public void filterPacketAfterLinkDisconnectsCompilesNewChain() {
+    final NextHopInfo nextHopInfo = NextHopInfo.builder()
+      .nextHopAccountId(OUTGOING_ACCOUNT_ID)
+      .nextHopPacket(PREPARE_PACKET)
+      .build();
+    when(nextHopPacketMapperMock.getNextHopPacket(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET)).thenReturn(nextHopInfo);
+    when(linkManagerMock.getOrCreateLink(OUTGOING_ACCOUNT_ID)).thenReturn(outgoingLink);
+
+    filterChain.doFilter(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET);
+    assertThat(accountRegistry.getEntry(OUTGOING_ACCOUNT_ID).linkFilterChain().get().getOutboundLink(),
+      is(outgoingLink));
+
+    final Link reconnectedLink = new LoopbackLink(
+      () -> Optional.of(OPERATOR_ADDRESS),
+      OUTGOING_LINK_SETTINGS,
+      new AbstractLink.EventBusEventEmitter(new EventBus()),
+      new PacketRejector(() -> Optional.of(OPERATOR_ADDRESS))
+    );
+    when(linkManagerMock.getOrCreateLink(OUTGOING_ACCOUNT_ID)).thenReturn(reconnectedLink);
+    accountRegistry.evictLinkFilterChain(OUTGOING_ACCOUNT_ID);
+
+    filterChain.doFilter(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET).handle(
+      fulfillPacket -> assertThat(fulfillPacket.getFulfillment(), is(LoopbackLink.LOOPBACK_FULFILLMENT)),
+      rejectPacket -> fail("Should have fulfilled but rejected!")
+    );
+
+    assertThat(accountRegistry.getEntry(OUTGOING_ACCOUNT_ID).linkFilterChain().get().getOutboundLink(),
+      is(reconnectedLink));
+    verify(linkManagerMock, times(2)).getOrCreateLink(OUTGOING_ACCOUNT_ID);
+    verify(linkFiltersMock, times(2)).size();
+  }
+
+  /**
+   * Validates that the asynchronous chain calls each filter's async variant, and that a filter that only implements
+   * the blocking variant still participates in the chain.
+   */
+  @Test
+  public void filterPacketAsyncWithMixedFilters() throws Exception {
+    final AtomicInteger asyncFilterCalls = new AtomicInteger();
+    this.packetSwitchFilters.add(new PacketSwitchFilter() {
+      @Override
+      public InterledgerResponsePacket doFilter(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket sourcePreparePacket,
+        PacketSwitchFilterChain filterChain
+      ) {
+        throw new IllegalStateException("The blocking variant should not be called!");
+      }
+
+      @Override
+      public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket sourcePreparePacket,
+        PacketSwitchFilterChain filterChain
+      ) {
+        asyncFilterCalls.incrementAndGet();
+        return filterChain.doFilterAsync(sourceAccountSettings, sourcePreparePacket);
+      }
+    });
+
+    final AtomicInteger blockingFilterCalls = new AtomicInteger();
+    this.packetSwitchFilters.add((sourceAccountSettings, sourcePreparePacket, filterChain) -> {
+      blockingFilterCalls.incrementAndGet();
+      return filterChain.doFilter(sourceAccountSettings, sourcePreparePacket);
+    });
+    this.filterChain = newFilterChain();
+
+    final NextHopInfo nextHopInfo = NextHopInfo.builder()
+      .nextHopAccountId(OUTGOING_ACCOUNT_ID)
+      .nextHopPacket(PREPARE_PACKET)
+      .build();
+    when(nextHopPacketMapperMock.getNextHopPacket(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET)).thenReturn(nextHopInfo);
+    when(linkManagerMock.getOrCreateLink(OUTGOING_ACCOUNT_ID)).thenReturn(outgoingLink);
+
+    filterChain.doFilterAsync(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET).get().handle(
+      fulfillPacket -> assertThat(fulfillPacket.getFulfillment(), is(LoopbackLink.LOOPBACK_FULFILLMENT)),
+      rejectPacket -> fail("Should have fulfilled but rejected!")
+    );
+
+    assertThat(asyncFilterCalls.get(), is(1));
+    assertThat(blockingFilterCalls.get(), is(1));
+    verify(linkFiltersMock).size();
+    verify(linkManagerMock).getOrCreateLink(OUTGOING_ACCOUNT_ID);
+    verify(nextHopPacketMapperMock).getNextHopPacket(INCOMING_ACCOUNT_SETTINGS, PREPARE_PACKET);
+    verifyNoMoreInteractions(nextHopPacketMapperMock);
+    verifyNoMoreInteractions(linkFiltersMock);
+  }
+
+  private DefaultPacketSwitchFilterChain newFilterChain() {
+    return new DefaultPacketSwitchFilterChain(
+      packetSwitchFilters,
+      linkFiltersMock,
+      linkManagerMock,
+      nextHopPacketMapperMock,
+      accountSettingsLoadingCacheMock
+    );
+  }
+
 }
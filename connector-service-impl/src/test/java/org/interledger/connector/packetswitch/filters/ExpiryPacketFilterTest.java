@@ -0,0 +1,247 @@
+package org.interledger.connector.packetswitch.filters;
+
+import com.google.common.primitives.UnsignedLong;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.links.loopback.LoopbackLink;
+import org.interledger.connector.packetswitch.HashedWheelTimer;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerFulfillment;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerResponsePacket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link ExpiryPacketFilter}.
+ */
+public class ExpiryPacketFilterTest {
+
+  private static final InterledgerAddress OPERATOR_ADDRESS = InterledgerAddress.of("test.operator");
+
+  private static final AccountSettings SOURCE_ACCOUNT_SETTINGS = AccountSettings.builder()
+    .accountId(AccountId.of("source-account"))
+    .accountRelationship(AccountRelationship.PEER)
+    .assetCode("USD")
+    .assetScale(2)
+    .linkType(LoopbackLink.LINK_TYPE)
+    .build();
+
+  private static final InterledgerFulfillPacket FULFILL_PACKET = InterledgerFulfillPacket.builder()
+    .fulfillment(InterledgerFulfillment.of(new byte[32]))
+    .build();
+
+  private HashedWheelTimer timer;
+
+  private ExpiryPacketFilter filter;
+
+  @Before
+  public void setUp() {
+    this.timer = new HashedWheelTimer(
+      Duration.ofMillis(1), 64, new ThreadFactoryBuilder().setNameFormat("test-expiry-%d").setDaemon(true).build()
+    );
+    this.filter = new ExpiryPacketFilter(new PacketRejector(() -> Optional.of(OPERATOR_ADDRESS)), timer);
+  }
+
+  @After
+  public void tearDown() {
+    timer.close();
+  }
+
+  @Test
+  public void doFilterAsyncWithExpiredPacket() throws Exception {
+    final InterledgerResponsePacket responsePacket = filter.doFilterAsync(
+      SOURCE_ACCOUNT_SETTINGS, preparePacket(Instant.now().minusSeconds(1)), unreachableFilterChain()
+    ).get();
+
+    assertRejectCode(responsePacket, InterledgerErrorCode.R02_INSUFFICIENT_TIMEOUT);
+  }
+
+  @Test
+  public void doFilterAsyncRunsChainOnCallingThread() throws Exception {
+    final Thread callingThread = Thread.currentThread();
+    final AtomicReference<Thread> chainThread = new AtomicReference<>();
+    final PacketSwitchFilterChain filterChain = new PacketSwitchFilterChain() {
+      @Override
+      public InterledgerResponsePacket doFilter(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        chainThread.set(Thread.currentThread());
+        return FULFILL_PACKET;
+      }
+    };
+
+    final CompletableFuture<InterledgerResponsePacket> responseFuture = filter.doFilterAsync(
+      SOURCE_ACCOUNT_SETTINGS, preparePacket(Instant.now().plusSeconds(30)), filterChain
+    );
+
+    // A blocking chain completes before doFilterAsync returns, without a thread hop.
+    assertThat(responseFuture.isDone(), is(true));
+    assertThat(responseFuture.get(), is(FULFILL_PACKET));
+    assertThat(chainThread.get(), is(callingThread));
+  }
+
+  /**
+   * Sub-second expiries must be enforced (i.e., not truncated to zero seconds), and must cancel the downstream work.
+   */
+  @Test
+  public void doFilterAsyncRejectsAtExpiryAndCancelsDownstream() throws Exception {
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture = new CompletableFuture<>();
+    final PacketSwitchFilterChain filterChain = new PacketSwitchFilterChain() {
+      @Override
+      public InterledgerResponsePacket doFilter(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        throw new IllegalStateException("The blocking variant should not be called!");
+      }
+
+      @Override
+      public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        return downstreamFuture;
+      }
+    };
+
+    final Instant expiresAt = Instant.now().plusMillis(250);
+    final InterledgerResponsePacket responsePacket = filter.doFilterAsync(
+      SOURCE_ACCOUNT_SETTINGS, preparePacket(expiresAt), filterChain
+    ).get(5, TimeUnit.SECONDS);
+
+    assertThat(Instant.now().toEpochMilli(), greaterThanOrEqualTo(expiresAt.toEpochMilli()));
+    assertRejectCode(responsePacket, InterledgerErrorCode.R00_TRANSFER_TIMED_OUT);
+    // The timer thread completes the response before it cancels the downstream work, so wait for the latter.
+    try {
+      downstreamFuture.get(5, TimeUnit.SECONDS);
+      fail("Downstream work should have been cancelled");
+    } catch (CancellationException e) {
+      assertThat(downstreamFuture.isCancelled(), is(true));
+    }
+  }
+
+  @Test
+  public void doFilterAsyncPropagatesDownstreamException() throws Exception {
+    final CompletableFuture<InterledgerResponsePacket> downstreamFuture = new CompletableFuture<>();
+    final PacketSwitchFilterChain filterChain = new PacketSwitchFilterChain() {
+      @Override
+      public InterledgerResponsePacket doFilter(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        throw new IllegalStateException("The blocking variant should not be called!");
+      }
+
+      @Override
+      public CompletableFuture<InterledgerResponsePacket> doFilterAsync(
+        AccountSettings sourceAccountSettings, InterledgerPreparePacket preparePacket
+      ) {
+        return downstreamFuture;
+      }
+    };
+
+    final CompletableFuture<InterledgerResponsePacket> responseFuture = filter.doFilterAsync(
+      SOURCE_ACCOUNT_SETTINGS, preparePacket(Instant.now().plusSeconds(30)), filterChain
+    );
+    downstreamFuture.completeExceptionally(new IllegalArgumentException("foo"));
+
+    assertThat(responseFuture.isCompletedExceptionally(), is(true));
+  }
+
+  @Test
+  public void doFilterRethrowsDownstreamException() {
+    final PacketSwitchFilterChain filterChain = (sourceAccountSettings, preparePacket) -> {
+      throw new IllegalArgumentException("foo");
+    };
+
+    try {
+      filter.doFilter(SOURCE_ACCOUNT_SETTINGS, preparePacket(Instant.now().plusSeconds(30)), filterChain);
+      fail("Should have thrown an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), is("foo"));
+    }
+  }
+
+  @Test
+  public void doFilterWithBlockingChain() {
+    final InterledgerResponsePacket responsePacket = filter.doFilter(
+      SOURCE_ACCOUNT_SETTINGS, preparePacket(Instant.now().plusSeconds(30)),
+      (sourceAccountSettings, preparePacket) -> FULFILL_PACKET
+    );
+
+    assertThat(responsePacket, is(FULFILL_PACKET));
+  }
+
+  /**
+   * A blocking chain must not hold the calling thread past the packet's expiry.
+   */
+  @Test
+  public void doFilterRejectsBlockedChainAtExpiry() throws Exception {
+    final CountDownLatch chainReleased = new CountDownLatch(1);
+    final PacketSwitchFilterChain filterChain = (sourceAccountSettings, preparePacket) -> {
+      try {
+        chainReleased.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return FULFILL_PACKET;
+    };
+
+    try {
+      final Instant expiresAt = Instant.now().plusMillis(250);
+      final CompletableFuture<InterledgerResponsePacket> responseFuture = CompletableFuture.supplyAsync(
+        () -> filter.doFilter(SOURCE_ACCOUNT_SETTINGS, preparePacket(expiresAt), filterChain)
+      );
+
+      final InterledgerResponsePacket responsePacket = responseFuture.get(5, TimeUnit.SECONDS);
+      assertThat(Instant.now().toEpochMilli(), greaterThanOrEqualTo(expiresAt.toEpochMilli()));
+      assertRejectCode(responsePacket, InterledgerErrorCode.R00_TRANSFER_TIMED_OUT);
+    } finally {
+      chainReleased.countDown();
+    }
+  }
+
+  private static InterledgerPreparePacket preparePacket(final Instant expiresAt) {
+    return InterledgerPreparePacket.builder()
+      .destination(InterledgerAddress.of("test.foo"))
+      .amount(UnsignedLong.ONE)
+      .expiresAt(expiresAt)
+      .executionCondition(InterledgerCondition.of(new byte[32]))
+      .build();
+  }
+
+  private static PacketSwitchFilterChain unreachableFilterChain() {
+    return (sourceAccountSettings, preparePacket) -> {
+      fail("The filter chain should not have been called!");
+      return null;
+    };
+  }
+
+  private static void assertRejectCode(
+    final InterledgerResponsePacket responsePacket, final InterledgerErrorCode expectedCode
+  ) {
+    responsePacket.handle(
+      fulfillPacket -> fail("Should have rejected but fulfilled!"),
+      rejectPacket -> assertThat(rejectPacket.getCode(), is(expectedCode))
+    );
+  }
+}
@@ -12,6 +12,7 @@ import org.interledger.connector.accounts.AccountId;
 import org.interledger.connector.accounts.AccountRateLimitSettings;
 import org.interledger.connector.accounts.AccountSettings;
 import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.packetswitch.TokenBucket;
 import org.interledger.core.InterledgerAddress;
 import org.interledger.core.InterledgerCondition;
 import org.interledger.core.InterledgerErrorCode;
@@ -21,7 +22,6 @@ import org.interledger.core.InterledgerRejectPacket;
 import org.interledger.core.InterledgerResponsePacket;
 
 import com.github.benmanes.caffeine.cache.Cache;
-import com.google.common.util.concurrent.RateLimiter;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -66,10 +66,10 @@ public class RateLimitIlpPacketFilterTest {
   private PacketSwitchFilterChain filterChainMock;
 
   @Mock
-  private Cache<AccountId, Optional<RateLimiter>> cacheMock;
+  private Cache<AccountId, TokenBucket> cacheMock;
 
   @Mock
-  private RateLimiter rateLimiterMock;
+  private TokenBucket tokenBucketMock;
 
   private RateLimitIlpPacketFilter filter;
 
@@ -91,6 +91,8 @@ public class RateLimitIlpPacketFilterTest {
     when(packetRejectorMock.reject(any(), any(), any(), any())).thenReturn(REJECT_PACKET);
     filter = new RateLimitIlpPacketFilter(packetRejectorMock);
     filterWithMockCache = new RateLimitIlpPacketFilter(packetRejectorMock, cacheMock);
+
+    when(tokenBucketMock.getPermitsPerSecond()).thenReturn(1000);
   }
 
   ///////////////////////
@@ -139,15 +141,32 @@ public class RateLimitIlpPacketFilterTest {
     verify(packetRejectorMock, times(2)).reject(any(), any(), any(), any());
   }
 
+  @Test
+  public void doFilterAppliesChangedLimitImmediately() {
+    when(rateLimitSettingsMock.maxPacketsPerSecond()).thenReturn(Optional.of(1));
+
+    InterledgerResponsePacket response = filter.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+    response = filter.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
+    assertThat(response instanceof InterledgerRejectPacket, is(true));
+
+    // Raising the limit must not wait for the cached bucket to expire.
+    when(rateLimitSettingsMock.maxPacketsPerSecond()).thenReturn(Optional.of(1000));
+    response = filter.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+
+    verify(filterChainMock, times(2)).doFilter(accountSettingsMock, PREPARE_PACKET);
+  }
+
   ///////////////////////
   // Tests with a Mock Loading Cache...
   ///////////////////////
 
   @Test
   public void doFilterWithNoPermits() throws ExecutionException {
-    when(cacheMock.get(any(), any())).thenReturn(Optional.of(rateLimiterMock));
+    when(cacheMock.get(any(), any())).thenReturn(tokenBucketMock);
 
-    when(rateLimiterMock.tryAcquire(1)).thenReturn(Boolean.FALSE);
+    when(tokenBucketMock.tryAcquire()).thenReturn(Boolean.FALSE);
 
     InterledgerResponsePacket response =
       filterWithMockCache.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
@@ -160,8 +179,8 @@ public class RateLimitIlpPacketFilterTest {
 
   @Test
   public void doFilterWithPermit() throws ExecutionException {
-    when(cacheMock.get(any(), any())).thenReturn(Optional.of(rateLimiterMock));
-    when(rateLimiterMock.tryAcquire(1)).thenReturn(true);
+    when(cacheMock.get(any(), any())).thenReturn(tokenBucketMock);
+    when(tokenBucketMock.tryAcquire()).thenReturn(true);
 
     InterledgerResponsePacket response =
       filterWithMockCache.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
@@ -174,7 +193,7 @@ public class RateLimitIlpPacketFilterTest {
 
   @Test
   public void doFilterWithNoRateLimiter() throws ExecutionException {
-    when(cacheMock.get(any(), any())).thenReturn(Optional.empty());
+    when(rateLimitSettingsMock.maxPacketsPerSecond()).thenReturn(Optional.empty());
 
     InterledgerResponsePacket response =
       filterWithMockCache.doFilter(accountSettingsMock, PREPARE_PACKET, filterChainMock);
@@ -183,6 +202,7 @@ public class RateLimitIlpPacketFilterTest {
     assertThat(response instanceof InterledgerFulfillPacket, is(true));
 
     verify(filterChainMock, times(2)).doFilter(accountSettingsMock, PREPARE_PACKET);
+    verifyZeroInteractions(cacheMock);
   }
 
 }
@@ -0,0 +1,158 @@
+package org.interledger.connector.packetswitch.filters;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRateLimitSettings;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.packetswitch.PacketRejector;
+import org.interledger.connector.packetswitch.SlidingWindowCounter;
+import org.interledger.core.InterledgerAddress;
+import org.interledger.core.InterledgerCondition;
+import org.interledger.core.InterledgerErrorCode;
+import org.interledger.core.InterledgerFulfillPacket;
+import org.interledger.core.InterledgerPreparePacket;
+import org.interledger.core.InterledgerRejectPacket;
+import org.interledger.core.InterledgerResponsePacket;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.primitives.UnsignedLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Unit tests for {@link ThroughputLimitPacketFilter}.
+ */
+public class ThroughputLimitPacketFilterTest {
+
+  private static final AccountId SOURCE_ACCOUNT_ID = AccountId.of("123");
+
+  private static final InterledgerRejectPacket REJECT_PACKET = InterledgerRejectPacket.builder()
+    .triggeredBy(InterledgerAddress.of("test.conn"))
+    .code(InterledgerErrorCode.T04_INSUFFICIENT_LIQUIDITY)
+    .message("error message")
+    .build();
+
+  @Mock
+  private PacketRejector packetRejectorMock;
+
+  @Mock
+  private AccountRateLimitSettings rateLimitSettingsMock;
+
+  @Mock
+  private AccountSettings accountSettingsMock;
+
+  @Mock
+  private InterledgerFulfillPacket responsePacketMock;
+
+  @Mock
+  private PacketSwitchFilterChain filterChainMock;
+
+  @Mock
+  private Cache<AccountId, SlidingWindowCounter> cacheMock;
+
+  private ThroughputLimitPacketFilter filter;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    when(filterChainMock.doFilter(any(), any())).thenReturn(responsePacketMock);
+
+    when(rateLimitSettingsMock.maxAmountPerSecond()).thenReturn(Optional.of(100L));
+
+    when(accountSettingsMock.accountId()).thenReturn(SOURCE_ACCOUNT_ID);
+    when(accountSettingsMock.rateLimitSettings()).thenReturn(rateLimitSettingsMock);
+
+    when(packetRejectorMock.reject(any(), any(), any(), any())).thenReturn(REJECT_PACKET);
+    filter = new ThroughputLimitPacketFilter(packetRejectorMock);
+  }
+
+  @Test
+  public void doFilterWithNoMaxAmountPerSecond() {
+    when(rateLimitSettingsMock.maxAmountPerSecond()).thenReturn(Optional.empty());
+    final ThroughputLimitPacketFilter filterWithMockCache = new ThroughputLimitPacketFilter(
+      packetRejectorMock, cacheMock
+    );
+
+    for (int i = 0; i < 3; i++) {
+      final InterledgerResponsePacket response =
+        filterWithMockCache.doFilter(accountSettingsMock, preparePacket(1_000), filterChainMock);
+      assertThat(response instanceof InterledgerFulfillPacket, is(true));
+    }
+
+    verifyZeroInteractions(cacheMock);
+    verifyZeroInteractions(packetRejectorMock);
+  }
+
+  @Test
+  public void doFilterRejectsOnceAmountExceeded() {
+    InterledgerResponsePacket response = filter.doFilter(accountSettingsMock, preparePacket(60), filterChainMock);
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+    response = filter.doFilter(accountSettingsMock, preparePacket(50), filterChainMock);
+    assertThat(response instanceof InterledgerRejectPacket, is(true));
+    // A smaller packet still fits within the remaining amount.
+    response = filter.doFilter(accountSettingsMock, preparePacket(40), filterChainMock);
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+
+    verify(filterChainMock, times(2)).doFilter(any(), any());
+    verify(packetRejectorMock).reject(
+      SOURCE_ACCOUNT_ID, preparePacket(50), InterledgerErrorCode.T04_INSUFFICIENT_LIQUIDITY,
+      "Throughput limit exceeded"
+    );
+  }
+
+  @Test
+  public void doFilterRejectsAmountAboveLongMaxValue() {
+    when(rateLimitSettingsMock.maxAmountPerSecond()).thenReturn(Optional.of(Long.MAX_VALUE));
+
+    final InterledgerResponsePacket response = filter.doFilter(
+      accountSettingsMock, preparePacket(UnsignedLong.MAX_VALUE), filterChainMock
+    );
+    assertThat(response instanceof InterledgerRejectPacket, is(true));
+  }
+
+  @Test
+  public void doFilterAppliesChangedLimitImmediately() {
+    InterledgerResponsePacket response = filter.doFilter(accountSettingsMock, preparePacket(100), filterChainMock);
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+    response = filter.doFilter(accountSettingsMock, preparePacket(1), filterChainMock);
+    assertThat(response instanceof InterledgerRejectPacket, is(true));
+
+    when(rateLimitSettingsMock.maxAmountPerSecond()).thenReturn(Optional.of(1_000L));
+    response = filter.doFilter(accountSettingsMock, preparePacket(1), filterChainMock);
+    assertThat(response instanceof InterledgerFulfillPacket, is(true));
+  }
+
+  @Test
+  public void doFilterAsyncRejectsOnceAmountExceeded() {
+    final InterledgerResponsePacket response =
+      filter.doFilterAsync(accountSettingsMock, preparePacket(101), filterChainMock).join();
+    assertThat(response instanceof InterledgerRejectPacket, is(true));
+    verifyZeroInteractions(filterChainMock);
+  }
+
+  private static InterledgerPreparePacket preparePacket(final long amount) {
+    return preparePacket(UnsignedLong.valueOf(amount));
+  }
+
+  private static InterledgerPreparePacket preparePacket(final UnsignedLong amount) {
+    return InterledgerPreparePacket.builder()
+      .expiresAt(Instant.EPOCH)
+      .amount(amount)
+      .destination(InterledgerAddress.of("test.dest"))
+      .executionCondition(InterledgerCondition.of(new byte[32]))
+      .build();
+  }
+}
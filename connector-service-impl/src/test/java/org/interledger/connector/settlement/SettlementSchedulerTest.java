@@ -0,0 +1,201 @@
+package org.interledger.connector.settlement;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.interledger.connector.accounts.AccountBalanceSettings;
+import org.interledger.connector.accounts.AccountId;
+import org.interledger.connector.accounts.AccountRelationship;
+import org.interledger.connector.accounts.AccountSettings;
+import org.interledger.connector.accounts.SettlementEngineAccountId;
+import org.interledger.connector.core.settlement.SettlementQuantity;
+import org.interledger.connector.link.LinkType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Unit tests for {@link SettlementScheduler}, using a mock {@link SettlementService}.
+ */
+public class SettlementSchedulerTest {
+
+  private static final AccountSettings ALICE = accountSettings(AccountId.of("alice"));
+  private static final AccountSettings BOB = accountSettings(AccountId.of("bob"));
+
+  private List<Request> requests;
+  private CountDownLatch release;
+  private AtomicInteger failuresRemaining;
+  private SettlementScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    this.requests = Collections.synchronizedList(new ArrayList<>());
+    this.release = new CountDownLatch(0);
+    this.failuresRemaining = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (scheduler != null) {
+      scheduler.close();
+    }
+  }
+
+  @Test
+  public void amountsScheduledWhileInFlightAreMerged() {
+    this.release = new CountDownLatch(1);
+    this.scheduler = newScheduler(2, 3);
+
+    scheduler.schedule(ALICE, 10L);
+    awaitTrue(() -> requests.size() == 1);
+    for (int i = 0; i < 10; i++) {
+      scheduler.schedule(ALICE, 5L);
+    }
+    // Only one settlement per account is in flight at a time.
+    assertThat(requests.size(), is(1));
+    assertThat(scheduler.getPendingAmount(ALICE.accountId()), is(50L));
+
+    release.countDown();
+    awaitTrue(() -> requests.size() == 2);
+    assertThat(requests.get(0).amount, is(10L));
+    assertThat(requests.get(1).amount, is(50L));
+    awaitTrue(() -> scheduler.getPendingAmount(ALICE.accountId()) == 0L);
+  }
+
+  @Test
+  public void accountsAreSettledIndependently() {
+    this.release = new CountDownLatch(1);
+    this.scheduler = newScheduler(2, 3);
+
+    scheduler.schedule(ALICE, 10L);
+    scheduler.schedule(BOB, 20L);
+    awaitTrue(() -> requests.size() == 2);
+    release.countDown();
+  }
+
+  @Test
+  public void failedSettlementIsRetriedWithTheSameIdempotencyKey() {
+    this.failuresRemaining.set(2);
+    this.scheduler = newScheduler(1, 3);
+
+    scheduler.schedule(ALICE, 10L);
+    awaitTrue(() -> requests.size() == 3);
+
+    assertThat(requests.get(0).idempotencyKey, is(requests.get(1).idempotencyKey));
+    assertThat(requests.get(1).idempotencyKey, is(requests.get(2).idempotencyKey));
+    // Only the final attempt refunds the amount if it fails.
+    assertThat(requests.get(0).refundOnFailure, is(false));
+    assertThat(requests.get(1).refundOnFailure, is(false));
+    assertThat(requests.get(2).refundOnFailure, is(true));
+  }
+
+  @Test
+  public void settlementIsRefundedAfterFinalAttemptAndNextAmountIsSettled() {
+    this.failuresRemaining.set(2);
+    this.scheduler = newScheduler(1, 2);
+
+    scheduler.schedule(ALICE, 10L);
+    awaitTrue(() -> requests.size() == 2);
+    assertThat(requests.get(1).refundOnFailure, is(true));
+
+    // The account is no longer in flight, so a new amount is settled with a new idempotency key.
+    scheduler.schedule(ALICE, 7L);
+    awaitTrue(() -> requests.size() == 3);
+    assertThat(requests.get(2).amount, is(7L));
+    assertThat(requests.get(2).idempotencyKey.equals(requests.get(0).idempotencyKey), is(false));
+  }
+
+  @Test
+  public void retryWaitingOutItsBackoffIsMadeAsTheFinalAttemptOnClose() {
+    this.failuresRemaining.set(1);
+    this.scheduler = newScheduler(1, 3, 60_000);
+
+    scheduler.schedule(ALICE, 10L);
+    awaitTrue(() -> requests.size() == 1);
+    // The retry would otherwise not be attempted for another minute, well beyond the close timeout.
+    scheduler.close();
+
+    assertThat(requests.size(), is(2));
+    assertThat(requests.get(1).idempotencyKey, is(requests.get(0).idempotencyKey));
+    assertThat(requests.get(1).amount, is(10L));
+    assertThat(requests.get(1).refundOnFailure, is(true));
+  }
+
+  private SettlementScheduler newScheduler(final int numWorkers, final int maxAttempts) {
+    return newScheduler(numWorkers, maxAttempts, 1);
+  }
+
+  private SettlementScheduler newScheduler(
+    final int numWorkers, final int maxAttempts, final long initialBackoffMillis
+  ) {
+    final SettlementService settlementService = mock(SettlementService.class);
+    when(settlementService.initiateLocalSettlement(anyString(), any(), any(), anyBoolean())).thenAnswer(invocation -> {
+      final AccountSettings accountSettings = invocation.getArgument(1);
+      final SettlementQuantity settlementQuantity = invocation.getArgument(2);
+      requests.add(new Request(
+        invocation.getArgument(0), settlementQuantity.amount().longValue(), invocation.getArgument(3)
+      ));
+      release.await();
+      if (failuresRemaining.getAndDecrement() > 0) {
+        throw new SettlementServiceException(
+          "settlement engine unavailable", accountSettings.accountId(), SettlementEngineAccountId.of("n/a")
+        );
+      }
+      return settlementQuantity;
+    });
+    return new SettlementScheduler(
+      settlementService, numWorkers, maxAttempts, initialBackoffMillis, Math.max(10, initialBackoffMillis), 1000
+    );
+  }
+
+  private void awaitTrue(final BooleanSupplier condition) {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      assertThat("timed out", System.nanoTime() < deadline, is(true));
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static AccountSettings accountSettings(final AccountId accountId) {
+    return AccountSettings.builder()
+      .accountId(accountId)
+      .assetCode("USD")
+      .assetScale(2)
+      .linkType(LinkType.of("Loopback"))
+      .accountRelationship(AccountRelationship.PEER)
+      .balanceSettings(AccountBalanceSettings.builder().build())
+      .build();
+  }
+
+  private static final class Request {
+    private final String idempotencyKey;
+    private final long amount;
+    private final boolean refundOnFailure;
+
+    private Request(final String idempotencyKey, final long amount, final boolean refundOnFailure) {
+      this.idempotencyKey = idempotencyKey;
+      this.amount = amount;
+      this.refundOnFailure = refundOnFailure;
+    }
+  }
+}